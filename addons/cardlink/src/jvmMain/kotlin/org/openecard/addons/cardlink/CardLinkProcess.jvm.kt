@@ -235,7 +235,7 @@ class CardLinkProcess(
 
 	private fun waitForSessionInformation(dynCtx: DynamicContext, wsPair: WsPair) {
 		val wsListener = wsPair.listener
-		runBlocking {
+		runBlocking(DynamicContextElement()) {
 			val sessionInformation = wsListener.nextMessage(Duration.parse("5s"))
 			val payload = sessionInformation?.payload
 
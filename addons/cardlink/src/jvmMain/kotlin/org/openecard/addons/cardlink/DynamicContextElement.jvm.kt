@@ -0,0 +1,49 @@
+/****************************************************************************
+ * Copyright (C) 2026 ecsec GmbH.
+ * All rights reserved.
+ * Contact: ecsec GmbH (info@ecsec.de)
+ *
+ * This file is part of the Open eCard App.
+ *
+ * GNU General Public License Usage
+ * This file may be used under the terms of the GNU General Public
+ * License version 3.0 as published by the Free Software Foundation
+ * and appearing in the file LICENSE.GPL included in the packaging of
+ * this file. Please review the following information to ensure the
+ * GNU General Public License version 3.0 requirements will be met:
+ * http://www.gnu.org/copyleft/gpl.html.
+ *
+ * Other Usage
+ * Alternatively, this file may be used in accordance with the terms
+ * and conditions contained in a signed written agreement between
+ * you and ecsec GmbH.
+ *
+ ***************************************************************************/
+
+package org.openecard.addons.cardlink
+
+import kotlinx.coroutines.ThreadContextElement
+import org.openecard.common.DynamicContext
+import kotlin.coroutines.AbstractCoroutineContextElement
+import kotlin.coroutines.CoroutineContext
+
+/**
+ * Coroutine context element binding a [DynamicContext.Scope] to every thread the coroutine runs on.
+ * By default the scope of the thread creating the element is captured, so that a coroutine started with
+ * `runBlocking(DynamicContextElement())` sees the same dynamic context as the calling flow, regardless of the
+ * dispatcher it is resumed on.
+ */
+class DynamicContextElement(
+	val scope: DynamicContext.Scope = DynamicContext.currentScope(),
+) : AbstractCoroutineContextElement(Key), ThreadContextElement<DynamicContext.Scope> {
+
+	companion object Key : CoroutineContext.Key<DynamicContextElement>
+
+	override fun updateThreadContext(context: CoroutineContext): DynamicContext.Scope {
+		return scope.enter()
+	}
+
+	override fun restoreThreadContext(context: CoroutineContext, oldState: DynamicContext.Scope) {
+		DynamicContext.Scope.restore(oldState)
+	}
+}
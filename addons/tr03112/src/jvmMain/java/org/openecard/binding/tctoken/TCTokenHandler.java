@@ -48,10 +48,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.xml.sax.ErrorHandler;
 import org.xml.sax.SAXException;
 
 import javax.annotation.Nonnull;
 import javax.xml.transform.TransformerException;
+import javax.xml.validation.ValidatorHandler;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -118,6 +120,7 @@ public class TCTokenHandler {
 
 	schemaValidator = new FuturePromise<>(() -> {
 	    boolean noValid = Boolean.valueOf(OpenecardProperties.getProperty("legacy.invalid_schema"));
+	    noValid |= SchemaValidationMode.fromProperties() == SchemaValidationMode.OFF;
 	    if (!noValid) {
 		try {
 		    return JAXPSchemaValidator.load("Management.xsd");
@@ -135,6 +138,11 @@ public class TCTokenHandler {
 		@Override
 		public void validate(Element doc) throws DocumentValidatorException {
 		}
+
+		@Override
+		public ValidatorHandler newValidatorHandler(ErrorHandler errorHandler) {
+		    return null;
+		}
 	    };
 	});
     }
@@ -40,7 +40,13 @@ import java.util.List;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.xml.namespace.QName;
+import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
+import javax.xml.validation.ValidatorHandler;
 import oasis.names.tc.dss._1_0.core.schema.ResponseBaseType;
 import oasis.names.tc.dss._1_0.core.schema.Result;
 import org.apache.http.HttpEntity;
@@ -77,13 +83,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.xml.sax.ErrorHandler;
 import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
 import static org.openecard.binding.tctoken.ex.ErrorTranslations.*;
 import org.openecard.common.DynamicContext;
 import org.openecard.common.interfaces.DocumentSchemaValidator;
 import org.openecard.common.interfaces.DocumentValidatorException;
 import org.openecard.common.util.ByteUtils;
 import org.openecard.common.util.Promise;
+import org.openecard.common.util.SchemaValidationMode;
 import org.openecard.common.util.ValueGenerators;
 
 
@@ -123,7 +132,10 @@ public class PAOS {
 
     private final String serviceString;
     private final DocumentSchemaValidator schemaValidator;
+    private final SchemaValidationMode validationMode;
     private final Promise<DocumentValidatorException> validationError;
+    // transformer factories are not thread safe, so each instance has its own
+    private final SAXTransformerFactory saxFactory = (SAXTransformerFactory) TransformerFactory.newInstance();
 
     /**
      * Creates a PAOS instance and configures it for a given endpoint.
@@ -140,6 +152,7 @@ public class PAOS {
 	this.dispatcher = dispatcher.getFilter();
 	this.tlsHandler = tlsHandler;
 	this.schemaValidator = schemaValidator;
+	this.validationMode = SchemaValidationMode.fromProperties();
 	this.validationError = new Promise<>();
 	this.serviceString = buildServiceString();
 	this.headerValuePaos = String.format("ver=\"%s\" %s", ECardConstants.PAOS_VERSION_20, this.serviceString);
@@ -240,20 +253,14 @@ public class PAOS {
 	    // while there are the eID-Servers to blame, some don't get it right and actually Profile is a useless attribute anyway
 	    if (body.getLocalName().equals("StartPAOSResponse") && ! body.hasAttribute("Profile")) {
 		LOG.warn("Received message without Profile attribute, adding one for proper validation.");
-		body.setAttribute("Profile", ECardConstants.Profile.ECARD_1_1);
-
-		try {
-		    // copy or the validation produces strange errors
-		    String docStr = m.doc2str(body);
-		    Document newDoc = m.str2doc(docStr);
-		    body = newDoc.getDocumentElement();
-		} catch (SAXException | TransformerException ex) {
-		    throw new PAOSException("Failed to copy document.", ex);
-		}
+		// use the namespace aware variant, otherwise the DOM validation does not recognize the attribute
+		body.setAttributeNS(null, "Profile", ECardConstants.Profile.ECARD_1_1);
 	    }
 
 	    // validate input message
-	    schemaValidator.validate(body);
+	    if (validationMode.validateInbound()) {
+		schemaValidator.validate(body);
+	    }
 
 	    return m.unmarshal(body);
 	} catch (MarshallingTypeException ex) {
@@ -280,17 +287,7 @@ public class PAOS {
     }
 
     private SOAPMessage createSOAPMessage(Object content) throws MarshallingTypeException, SOAPException {
-	Document contentDoc = m.marshal(content);
-
-	try {
-	    String docStr = m.doc2str(contentDoc);
-	    Document newDoc = m.str2doc(docStr);
-	    schemaValidator.validate(newDoc);
-	} catch (DocumentValidatorException ex) {
-	    LOG.warn("Schema validation of outgoing message failed.", ex);
-	} catch (SAXException | TransformerException ex) {
-	    throw new MarshallingTypeException("Failed to copy document.", ex);
-	}
+	Document contentDoc = marshalAndValidate(content);
 
 	SOAPMessage msg = m.add2soap(contentDoc);
 	SOAPHeader header = msg.getSoapHeader();
@@ -319,6 +316,45 @@ public class PAOS {
 	return msg;
     }
 
+    /**
+     * Marshals the given object into a DOM document and validates it in the same pass.
+     * The SAX events produced by the marshaller are fed through the validator of the schema before they reach the DOM
+     * builder, so the document does not need to be serialized and parsed again for the validation. Validation errors
+     * of outgoing messages are only logged.
+     *
+     * @param content The JAXB object to marshal.
+     * @return The DOM representation of the given object.
+     * @throws MarshallingTypeException In case the object could not be marshalled.
+     */
+    private Document marshalAndValidate(Object content) throws MarshallingTypeException {
+	DOMResult result = new DOMResult();
+	TransformerHandler domBuilder;
+	try {
+	    domBuilder = saxFactory.newTransformerHandler();
+	} catch (TransformerConfigurationException ex) {
+	    throw new MarshallingTypeException("Failed to create DOM builder.", ex);
+	}
+	domBuilder.setResult(result);
+
+	ValidationErrorCollector errors = new ValidationErrorCollector();
+	ValidatorHandler validator = null;
+	if (validationMode.validateOutbound()) {
+	    validator = schemaValidator.newValidatorHandler(errors);
+	}
+	if (validator != null) {
+	    validator.setContentHandler(domBuilder);
+	    m.marshal(content, validator);
+	} else {
+	    m.marshal(content, domBuilder);
+	}
+
+	if (errors.firstError != null) {
+	    LOG.warn("Schema validation of outgoing message failed.", errors.firstError);
+	}
+
+	return (Document) result.getNode();
+    }
+
     /**
      * Sends start PAOS and answers all successor messages to the server associated with this instance.
      * Messages are exchanged until the server replies with a {@code StartPAOSResponse} message.
@@ -624,4 +660,30 @@ public class PAOS {
 	}
     }
 
+    /**
+     * Error handler remembering the first validation error instead of aborting the processing.
+     */
+    private static class ValidationErrorCollector implements ErrorHandler {
+
+	private SAXParseException firstError;
+
+	@Override
+	public void warning(SAXParseException exception) {
+	    LOG.debug("Schema validation warning: {}", exception.getLocalizedMessage());
+	}
+
+	@Override
+	public void error(SAXParseException exception) {
+	    if (firstError == null) {
+		firstError = exception;
+	    }
+	}
+
+	@Override
+	public void fatalError(SAXParseException exception) {
+	    error(exception);
+	}
+
+    }
+
 }
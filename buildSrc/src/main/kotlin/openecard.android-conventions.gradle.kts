@@ -15,6 +15,7 @@ android {
 
     packaging {
 	    resources.excludes.add("cif-repo/repo-config.properties")
+	    resources.excludes.add("cif-repo/cif-index.properties")
     }
  
     publishing {
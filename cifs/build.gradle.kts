@@ -4,6 +4,56 @@ plugins {
 	id("openecard.lib-multiplatform-conventions")
 }
 
+// index mapping the CIF files of the repository to their card types, so that LocalCifRepo does not have to parse all
+// CIFs on startup
+val generateCifIndex by tasks.registering {
+	description = "Generates the card type index of the CIF repository."
+	val repoDir = layout.projectDirectory.dir("src/jvmMain/resources/cif-repo")
+	val outDir = layout.buildDirectory.dir("generated/cif-index")
+	inputs.dir(repoDir)
+	outputs.dir(outDir)
+
+	doLast {
+		val conf = java.util.Properties()
+		repoDir.file("repo-config.properties").asFile.inputStream().use { conf.load(it) }
+		val files = conf.getProperty("cifFiles").split(",").map { it.trim() }.filter { it.isNotEmpty() }
+
+		val lines = files.map { file ->
+			val type = repoDir.file(file).asFile.inputStream().use { readCardType(it) }
+				?: throw GradleException("CIF file $file does not contain a card type.")
+			"$file = $type"
+		}
+
+		val indexFile = outDir.get().file("cif-repo/cif-index.properties").asFile
+		indexFile.parentFile.mkdirs()
+		indexFile.writeText(lines.joinToString("\n", postfix = "\n"), Charsets.ISO_8859_1)
+	}
+}
+
+/**
+ * Reads the content of CardInfo/CardType/ObjectIdentifier without parsing the rest of the document.
+ */
+fun readCardType(input: java.io.InputStream): String? {
+	val reader = javax.xml.stream.XMLInputFactory.newInstance().createXMLStreamReader(input)
+	try {
+		val path = ArrayList<String>()
+		while (reader.hasNext()) {
+			when (reader.next()) {
+				javax.xml.stream.XMLStreamConstants.START_ELEMENT -> {
+					path.add(reader.localName)
+					if (path == listOf("CardInfo", "CardType", "ObjectIdentifier")) {
+						return reader.elementText.trim()
+					}
+				}
+				javax.xml.stream.XMLStreamConstants.END_ELEMENT -> path.removeAt(path.size - 1)
+			}
+		}
+		return null
+	} finally {
+		reader.close()
+	}
+}
+
 kotlin {
 	sourceSets {
 		val commonMain by getting {
@@ -17,6 +67,7 @@ kotlin {
 			}
 		}
 		val jvmMain by getting {
+			resources.srcDir(generateCifIndex)
 			dependencies {}
 		}
 		val jvmTest by getting {
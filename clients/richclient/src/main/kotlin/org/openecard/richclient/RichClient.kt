@@ -49,6 +49,7 @@ import org.openecard.common.WSHelper.checkResult
 import org.openecard.common.event.EventDispatcherImpl
 import org.openecard.common.event.EventType
 import org.openecard.common.sal.CombinedCIFProvider
+import org.openecard.common.util.StartupStages
 import org.openecard.control.binding.http.HttpBinding
 import org.openecard.gui.message.DialogType
 import org.openecard.gui.swing.SwingDialogWrapper
@@ -68,6 +69,7 @@ import org.openecard.richclient.updater.VersionUpdateChecker
 import org.openecard.sal.TinySAL
 import org.openecard.transport.dispatcher.MessageDispatcher
 import org.openecard.ws.SAL
+import org.openecard.ws.marshal.WSMarshallerFactory
 import java.io.IOException
 import java.net.BindException
 import java.net.Socket
@@ -114,6 +116,8 @@ class RichClient {
     private var contextHandle: ByteArray? = null
 
     fun setup() {
+        // creating the first marshaller starts building the JAXB context, let it run while the GUI is set up
+        StartupStages.submit("marshaller") { WSMarshallerFactory.createInstance() }
         GUIDefaults.initialize()
 
         val title = LANG.translationForKey("client.startup.failed.headline", name)
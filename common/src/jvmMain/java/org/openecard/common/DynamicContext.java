@@ -22,9 +22,10 @@
 
 package org.openecard.common;
 
-import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import org.openecard.common.util.FuturePromise;
@@ -38,6 +39,10 @@ import org.slf4j.LoggerFactory;
  * Dynamic context information is needed at various places in the app. Perhaps the most important use case is the
  * eService certificate validation as defined in TR-03112-7.<br>
  * The underlying datastructure does permit {@code null} values to be saved.
+ * <p>The contexts of a thread are grouped in a {@link Scope}. Newly created threads share the scope of their parent
+ * thread. Threads which are not created by the flow itself, such as pooled threads or coroutine dispatchers, must be
+ * given the scope explicitly, either with {@link Scope#wrap(Runnable)} and {@link Scope#run(Runnable)}, or by
+ * submitting the work through an executor obtained from {@link #propagating(Executor)}.</p>
  *
  * @author Tobias Wich
  */
@@ -45,19 +50,19 @@ public class DynamicContext {
 
     private static final Logger LOG = LoggerFactory.getLogger(DynamicContext.class);
 
-    private static final InheritableThreadLocal<Map<String, DynamicContext>> LOCAL_MAP;
+    private static final InheritableThreadLocal<Scope> LOCAL_SCOPE;
 
     private final Map<String, Promise<Object>> context;
 
 
     static {
-	LOCAL_MAP = new InheritableThreadLocal<Map<String, DynamicContext>>() {
+	LOCAL_SCOPE = new InheritableThreadLocal<Scope>() {
 	    @Override
-	    protected Map<String, DynamicContext> initialValue() {
-		return new ConcurrentSkipListMap<>();
+	    protected Scope initialValue() {
+		return new Scope();
 	    }
 	    @Override
-	    protected Map<String, DynamicContext> childValue(Map<String, DynamicContext> parentValue) {
+	    protected Scope childValue(Scope parentValue) {
 		return parentValue;
 	    }
 	};
@@ -72,17 +77,7 @@ public class DynamicContext {
      */
     @Nonnull
     public static DynamicContext getInstance(@Nonnull String key) {
-	final Map<String, DynamicContext> local = LOCAL_MAP.get();
-	synchronized (local) {
-	    DynamicContext inst;
-	    if (local.containsKey(key)) {
-		inst = local.get(key);
-	    } else {
-		inst = new DynamicContext();
-		local.put(key, inst);
-	    }
-	    return inst;
-	}
+	return LOCAL_SCOPE.get().getInstance(key);
     }
 
     /**
@@ -92,14 +87,145 @@ public class DynamicContext {
      *
      * @see ThreadLocal#remove()
      */
-    public static synchronized void remove() {
-	LOG.debug("Removing DynamicContext which contains {} map entries.", LOCAL_MAP.get().size());
-	LOCAL_MAP.remove();
+    public static void remove() {
+	LOG.debug("Removing DynamicContext which contains {} map entries.", LOCAL_SCOPE.get().contexts.size());
+	LOCAL_SCOPE.remove();
+    }
+
+    /**
+     * Gets the scope holding the contexts of the current thread.
+     * The returned object can be handed to other threads to make the same contexts available there.
+     *
+     * @return The scope of the current thread.
+     */
+    @Nonnull
+    public static Scope currentScope() {
+	return LOCAL_SCOPE.get();
+    }
+
+    /**
+     * Creates a new scope without any contexts.
+     *
+     * @return The new scope.
+     */
+    @Nonnull
+    public static Scope newScope() {
+	return new Scope();
+    }
+
+    /**
+     * Wraps the given executor, so that tasks run in the scope of the thread submitting them.
+     *
+     * @param delegate Executor running the tasks.
+     * @return Executor propagating the scope of the caller.
+     */
+    @Nonnull
+    public static Executor propagating(@Nonnull Executor delegate) {
+	return task -> delegate.execute(currentScope().wrap(task));
+    }
+
+
+    /**
+     * Set of DynamicContext instances which belong to one flow.
+     * A scope is bound to the current thread while a task runs in it, and the previous scope of the thread is restored
+     * afterwards. Lookups in a scope do not take any locks.
+     */
+    public static final class Scope {
+
+	private final ConcurrentHashMap<String, DynamicContext> contexts = new ConcurrentHashMap<>();
+
+	private Scope() {
+	}
+
+	private DynamicContext getInstance(String key) {
+	    DynamicContext inst = contexts.get(key);
+	    if (inst == null) {
+		inst = contexts.computeIfAbsent(key, k -> new DynamicContext());
+	    }
+	    return inst;
+	}
+
+	/**
+	 * Binds this scope to the current thread.
+	 * The returned scope must be passed to {@link #restore(Scope)} when the task is finished.
+	 *
+	 * @return The scope which has been bound to the current thread before.
+	 */
+	@Nonnull
+	public Scope enter() {
+	    Scope previous = LOCAL_SCOPE.get();
+	    LOCAL_SCOPE.set(this);
+	    return previous;
+	}
+
+	/**
+	 * Binds a scope previously returned by {@link #enter()} to the current thread again.
+	 *
+	 * @param previous The scope to restore.
+	 */
+	public static void restore(@Nonnull Scope previous) {
+	    LOCAL_SCOPE.set(previous);
+	}
+
+	/**
+	 * Runs the given task with this scope bound to the current thread.
+	 *
+	 * @param task Task to run.
+	 */
+	public void run(@Nonnull Runnable task) {
+	    Scope previous = enter();
+	    try {
+		task.run();
+	    } finally {
+		restore(previous);
+	    }
+	}
+
+	/**
+	 * Calls the given task with this scope bound to the current thread.
+	 *
+	 * @param <T> Type of the result.
+	 * @param task Task to call.
+	 * @return The result of the task.
+	 * @throws Exception Any exception thrown by the task.
+	 */
+	public <T> T call(@Nonnull Callable<T> task) throws Exception {
+	    Scope previous = enter();
+	    try {
+		return task.call();
+	    } finally {
+		restore(previous);
+	    }
+	}
+
+	/**
+	 * Creates a task which runs the given task in this scope.
+	 *
+	 * @param task Task to wrap.
+	 * @return The wrapped task.
+	 */
+	@Nonnull
+	public Runnable wrap(@Nonnull Runnable task) {
+	    return () -> run(task);
+	}
+
+	/**
+	 * Creates a task which calls the given task in this scope.
+	 *
+	 * @param <T> Type of the result.
+	 * @param task Task to wrap.
+	 * @return The wrapped task.
+	 */
+	@Nonnull
+	public <T> Callable<T> wrap(@Nonnull Callable<T> task) {
+	    return () -> call(task);
+	}
+
     }
 
 
     private DynamicContext() {
-	this.context = new HashMap<>();
+	this.context = new ConcurrentHashMap<>();
     }
 
 
@@ -111,15 +237,12 @@ public class DynamicContext {
      * @param key Key for which the promise should be retrieved.
      * @return Promise for the given key.
      */
-    public synchronized @Nonnull Promise<Object> getPromise(@Nonnull String key) {
+    public @Nonnull Promise<Object> getPromise(@Nonnull String key) {
 	Promise<Object> p = context.get(key);
-	if (p != null) {
-	    return p;
-	} else {
-	    p = new Promise<>();
-	    context.put(key, p);
-	    return p;
+	if (p == null) {
+	    p = context.computeIfAbsent(key, k -> new Promise<>());
 	}
+	return p;
     }
 
     /**
@@ -166,11 +289,9 @@ public class DynamicContext {
      * @param key Key for which the value should be saved.
      * @param p Promise yielding the value which should be saved for the given key.
      */
-    public synchronized void putPromise(@Nonnull String key, @Nonnull Promise p) {
-	if (context.get(key) != null) {
+    public void putPromise(@Nonnull String key, @Nonnull Promise p) {
+	if (context.putIfAbsent(key, p) != null) {
 	    throw new IllegalStateException("Promise already exists and can therefore not be delivered anymore.");
-	} else {
-	    context.put(key, p);
 	}
     }
 
@@ -28,6 +28,7 @@ import org.openecard.common.apdu.common.CardCommandAPDU;
 import org.openecard.common.tlv.TLV;
 import org.openecard.common.tlv.TLVException;
 import org.openecard.common.util.ByteUtils;
+import org.openecard.common.util.IntegerUtils;
 import org.openecard.common.util.ShortUtils;
 
 
@@ -115,22 +116,40 @@ public class ReadBinary extends CardCommandAPDU {
      */
     public ReadBinary(short fileID, short offset, short length) {
 	super(x00, READ_BINARY_INS_2, x00, x00);
+	setP1P2(ShortUtils.toByteArray(fileID, true));
+	setData(makeOffsetData(offset & 0xFFFF));
+	setLE(length);
+    }
 
-	try {
-		// offset DO according to ISO/IEC 7816-4, Sec. 7.2.2
-		var discretionaryData = new TLV();
-		discretionaryData.setTagNumWithClass((byte) 0x53);
-		var offsetDo = new TLV();
-		offsetDo.setTagNumWithClass((byte) 0x54);
-		offsetDo.setValue(ShortUtils.toByteArray(offset));
-		discretionaryData.setValue(offsetDo.toBER());
-		var content = discretionaryData.toBER();
+    /**
+     * Creates a new READ BINARY APDU with odd instruction byte.
+     * P1-P2 identify the file, '0000' being the current EF and '001F' or below a short EF identifier. The offset data
+     * object is encoded in the command data field in the same way as in {@link #ReadBinary(short, short, short)}, but
+     * offsets beyond 32 767 can be addressed.
+     *
+     * @param fileID File identifier
+     * @param offset Offset
+     * @param length Expected length
+     */
+    public ReadBinary(short fileID, int offset, int length) {
+	super(x00, READ_BINARY_INS_2, x00, x00);
+	setP1P2(ShortUtils.toByteArray(fileID, true));
+	setData(makeOffsetData(offset));
+	setLE(length);
+    }
 
-		setP1P2(ShortUtils.toByteArray(fileID, true));
-		setData(content);
-		setLE(length);
+    private static byte[] makeOffsetData(int offset) {
+	try {
+	    // offset DO according to ISO/IEC 7816-4, Sec. 7.2.2
+	    TLV discretionaryData = new TLV();
+	    discretionaryData.setTagNumWithClass((byte) 0x53);
+	    TLV offsetDo = new TLV();
+	    offsetDo.setTagNumWithClass((byte) 0x54);
+	    offsetDo.setValue(IntegerUtils.toByteArray(offset));
+	    discretionaryData.setValue(offsetDo.toBER());
+	    return discretionaryData.toBER();
 	} catch (TLVException ex) {
-		throw new RuntimeException("Error encoding offset DO.", ex);
+	    throw new RuntimeException("Error encoding offset DO.", ex);
 	}
     }
 
@@ -0,0 +1,152 @@
+/****************************************************************************
+ * Copyright (C) 2026 ecsec GmbH.
+ * All rights reserved.
+ * Contact: ecsec GmbH (info@ecsec.de)
+ *
+ * This file is part of the Open eCard App.
+ *
+ * GNU General Public License Usage
+ * This file may be used under the terms of the GNU General Public
+ * License version 3.0 as published by the Free Software Foundation
+ * and appearing in the file LICENSE.GPL included in the packaging of
+ * this file. Please review the following information to ensure the
+ * GNU General Public License version 3.0 requirements will be met:
+ * http://www.gnu.org/copyleft/gpl.html.
+ *
+ * Other Usage
+ * Alternatively, this file may be used in accordance with the terms
+ * and conditions contained in a signed written agreement between
+ * you and ecsec GmbH.
+ *
+ ***************************************************************************/
+
+package org.openecard.common.apdu.common;
+
+import iso.std.iso_iec._24727.tech.schema.InputAPDUInfoType;
+import iso.std.iso_iec._24727.tech.schema.Transmit;
+import iso.std.iso_iec._24727.tech.schema.TransmitResponse;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.Nullable;
+import org.openecard.common.WSHelper;
+import org.openecard.common.WSHelper.WSException;
+import org.openecard.common.apdu.exception.APDUException;
+import org.openecard.common.interfaces.Dispatcher;
+
+
+/**
+ * Sequence of command APDUs sent to the card in a single Transmit call.
+ * The IFD processes all commands in one go on the channel of the card, instead of one dispatcher round trip per APDU.
+ *
+ * Each command carries its own list of acceptable status codes. The IFD aborts the sequence at the first response
+ * whose status code is not acceptable, so later commands are not sent to the card. Commands without acceptable status
+ * codes accept any response and never abort the sequence.
+ */
+public class CardCommandBatch {
+
+    private final List<InputAPDUInfoType> commands = new ArrayList<>();
+
+    /**
+     * Adds a command which must be answered with 0x9000.
+     *
+     * @param apdu Command APDU
+     * @return This instance for chaining.
+     */
+    public CardCommandBatch add(CardCommandAPDU apdu) {
+	return add(apdu.toByteArray(), CardCommandStatus.responseOk());
+    }
+
+    /**
+     * Adds a command with the given acceptable status codes.
+     *
+     * @param apdu Command APDU
+     * @param responses Acceptable status codes. {@code null} or an empty list accepts any status code.
+     * @return This instance for chaining.
+     */
+    public CardCommandBatch add(CardCommandAPDU apdu, @Nullable List<byte[]> responses) {
+	return add(apdu.toByteArray(), responses);
+    }
+
+    /**
+     * Adds an encoded command with the given acceptable status codes.
+     *
+     * @param apdu Encoded command APDU
+     * @param responses Acceptable status codes. {@code null} or an empty list accepts any status code.
+     * @return This instance for chaining.
+     */
+    public CardCommandBatch add(byte[] apdu, @Nullable List<byte[]> responses) {
+	InputAPDUInfoType info = new InputAPDUInfoType();
+	info.setInputAPDU(apdu);
+	if (responses != null) {
+	    info.getAcceptableStatusCode().addAll(responses);
+	}
+	commands.add(info);
+	return this;
+    }
+
+    /**
+     * Gets the number of commands in this batch.
+     *
+     * @return Number of commands.
+     */
+    public int size() {
+	return commands.size();
+    }
+
+    /**
+     * Checks whether this batch contains no command.
+     *
+     * @return {@code true} if the batch is empty, {@code false} otherwise.
+     */
+    public boolean isEmpty() {
+	return commands.isEmpty();
+    }
+
+    /**
+     * Creates a Transmit message containing all commands of this batch.
+     *
+     * @param slotHandle Slot handle
+     * @return Transmit
+     */
+    public Transmit makeTransmit(byte[] slotHandle) {
+	Transmit t = new Transmit();
+	t.setSlotHandle(slotHandle);
+	t.getInputAPDUInfo().addAll(commands);
+	return t;
+    }
+
+    /**
+     * Transmits all commands of this batch with a single Transmit call.
+     * In case the sequence is aborted, the thrown exception contains the TransmitResponse with the responses received
+     * so far. Its response APDU is the one whose status code was not acceptable.
+     *
+     * @param dispatcher Dispatcher
+     * @param slotHandle Slot handle
+     * @return Response APDUs in the order of the commands.
+     * @throws APDUException Thrown in case the transmission failed or a response has an unacceptable status code.
+     */
+    public List<CardResponseAPDU> transmit(Dispatcher dispatcher, byte[] slotHandle) throws APDUException {
+	if (commands.isEmpty()) {
+	    return Collections.emptyList();
+	}
+
+	TransmitResponse tr = null;
+	try {
+	    tr = (TransmitResponse) dispatcher.safeDeliver(makeTransmit(slotHandle));
+	    WSHelper.checkResult(tr);
+
+	    List<byte[]> outputs = tr.getOutputAPDU();
+	    List<CardResponseAPDU> responses = new ArrayList<>(outputs.size());
+	    for (byte[] next : outputs) {
+		responses.add(new CardResponseAPDU(next));
+	    }
+	    return responses;
+	} catch (WSException ex) {
+	    throw new APDUException(ex, tr);
+	} catch (Exception ex) {
+	    throw new APDUException(ex);
+	}
+    }
+
+}
@@ -23,6 +23,7 @@
 package org.openecard.common.apdu.exception;
 
 import iso.std.iso_iec._24727.tech.schema.TransmitResponse;
+import java.util.List;
 import javax.annotation.Nullable;
 import oasis.names.tc.dss._1_0.core.schema.Result;
 import org.openecard.common.ECardException;
@@ -96,9 +97,7 @@ public final class APDUException extends ECardException {
 	this(cause);
 
 	transmitResponse = tr;
-	if (! tr.getOutputAPDU().isEmpty()) {
-	    responseAPDU = new CardResponseAPDU(tr);
-	}
+	responseAPDU = lastResponse(tr);
     }
 
     /**
@@ -111,8 +110,17 @@ public final class APDUException extends ECardException {
 	this(ex);
 
 	transmitResponse = tr;
-	if (! tr.getOutputAPDU().isEmpty()) {
-	    responseAPDU = new CardResponseAPDU(tr);
+	responseAPDU = lastResponse(tr);
+    }
+
+    @Nullable
+    private static CardResponseAPDU lastResponse(TransmitResponse tr) {
+	List<byte[]> outputs = tr.getOutputAPDU();
+	if (outputs.isEmpty()) {
+	    return null;
+	} else {
+	    // the last response is the one which caused the error when several APDUs were sent
+	    return new CardResponseAPDU(outputs.get(outputs.size() - 1));
 	}
     }
 
@@ -0,0 +1,261 @@
+/****************************************************************************
+ * Copyright (C) 2026 ecsec GmbH.
+ * All rights reserved.
+ * Contact: ecsec GmbH (info@ecsec.de)
+ *
+ * This file is part of the Open eCard App.
+ *
+ * GNU General Public License Usage
+ * This file may be used under the terms of the GNU General Public
+ * License version 3.0 as published by the Free Software Foundation
+ * and appearing in the file LICENSE.GPL included in the packaging of
+ * this file. Please review the following information to ensure the
+ * GNU General Public License version 3.0 requirements will be met:
+ * http://www.gnu.org/copyleft/gpl.html.
+ *
+ * Other Usage
+ * Alternatively, this file may be used in accordance with the terms
+ * and conditions contained in a signed written agreement between
+ * you and ecsec GmbH.
+ *
+ ***************************************************************************/
+
+package org.openecard.common.apdu.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.annotation.Nullable;
+import org.openecard.common.apdu.ReadBinary;
+import org.openecard.common.apdu.common.CardCommandAPDU;
+import org.openecard.common.apdu.common.CardCommandBatch;
+import org.openecard.common.apdu.common.CardCommandStatus;
+import org.openecard.common.apdu.common.CardResponseAPDU;
+import org.openecard.common.apdu.exception.APDUException;
+import org.openecard.common.interfaces.Dispatcher;
+import org.openecard.common.tlv.TLVException;
+import org.openecard.common.tlv.TLVView;
+
+
+/**
+ * Reads the content of a transparent EF.
+ *
+ * When the size of the file is known, the content is read into a buffer of exactly that size and all READ BINARY
+ * commands are sent in a single {@link CardCommandBatch}. Otherwise, or when the card answers with less data than
+ * requested, the file is read one command at a time. Offsets which can not be encoded in P1-P2 are addressed with the
+ * odd instruction byte and an offset data object. The response data of these commands is accepted with and without
+ * the wrapping discretionary data object.
+ */
+final class BinaryFileReader {
+
+    // 0x6A84 code for the estonian identity card. The card returns this code after the last read process.
+    private static final List<byte[]> RESPONSES = CardCommandStatus.response(0x9000, 0x6282, 0x6A84, 0x6A83,
+	    0x6A86, 0x6B00);
+
+    /**
+     * Maximum size of the tag and length of the discretionary data object wrapping the response of READ BINARY with odd
+     * instruction byte.
+     */
+    private static final int ODD_INS_OVERHEAD = 4;
+    private static final int MAX_SHORT_OFFSET = 0x7FFF;
+    private static final int MAX_SFI_OFFSET = 0xFF;
+
+    private final Dispatcher dispatcher;
+    private final byte[] slotHandle;
+    @Nullable
+    private final Byte shortEf;
+    private final int maxLe;
+
+    private byte[] buffer;
+    private int numRead;
+    private boolean eof;
+    private int numCommands;
+    private int numRoundTrips;
+
+    /**
+     * Creates a reader for the currently selected EF or the EF with the given short identifier.
+     *
+     * @param dispatcher Dispatcher
+     * @param slotHandle Slot handle
+     * @param shortEf Short EF identifier, may be null
+     * @param extendedLength {@code true} if commands with extended length can be used, {@code false} otherwise.
+     */
+    BinaryFileReader(Dispatcher dispatcher, byte[] slotHandle, @Nullable Byte shortEf, boolean extendedLength) {
+	this.dispatcher = dispatcher;
+	this.slotHandle = slotHandle;
+	this.shortEf = shortEf;
+	this.maxLe = extendedLength ? 0xFFFF : 0xFF;
+    }
+
+    /**
+     * Reads the file.
+     *
+     * @param fileSize Size of the file according to its FCP, may be null if it is unknown.
+     * @return The content of the file.
+     * @throws APDUException Thrown in case a command failed.
+     */
+    byte[] read(@Nullable Long fileSize) throws APDUException {
+	boolean sizeKnown = fileSize != null && fileSize > 0 && fileSize <= Integer.MAX_VALUE - 8;
+	if (sizeKnown) {
+	    buffer = new byte[fileSize.intValue()];
+	    readBatch();
+	} else {
+	    buffer = new byte[maxLe];
+	}
+
+	while (! eof && (! sizeKnown || numRead < buffer.length)) {
+	    readNext(sizeKnown ? buffer.length - numRead : Integer.MAX_VALUE);
+	}
+
+	if (numRead == buffer.length) {
+	    return buffer;
+	} else {
+	    return Arrays.copyOf(buffer, numRead);
+	}
+    }
+
+    /**
+     * Gets the number of commands sent by this reader.
+     *
+     * @return Number of READ BINARY commands.
+     */
+    int getNumCommands() {
+	return numCommands;
+    }
+
+    /**
+     * Gets the number of Transmit calls performed by this reader.
+     *
+     * @return Number of round trips through the dispatcher.
+     */
+    int getNumRoundTrips() {
+	return numRoundTrips;
+    }
+
+    private void readBatch() throws APDUException {
+	CardCommandBatch batch = new CardCommandBatch();
+	List<Boolean> oddIns = new ArrayList<>();
+	List<Integer> expected = new ArrayList<>();
+	int offset = 0;
+	while (offset < buffer.length) {
+	    int n = Math.min(maxContent(offset), buffer.length - offset);
+	    batch.add(makeCommand(offset, n), RESPONSES);
+	    oddIns.add(isOddIns(offset));
+	    expected.add(n);
+	    offset += n;
+	}
+
+	numCommands += batch.size();
+	numRoundTrips++;
+	List<CardResponseAPDU> responses = batch.transmit(dispatcher, slotHandle);
+	for (int i = 0; i < responses.size() && ! eof; i++) {
+	    int n = consume(responses.get(i), oddIns.get(i));
+	    if (n != expected.get(i)) {
+		// the card returned less than requested, so the offsets of the following commands are wrong
+		break;
+	    }
+	}
+    }
+
+    private void readNext(int remaining) throws APDUException {
+	int n = Math.min(maxContent(numRead), remaining);
+	CardCommandAPDU cmd = makeCommand(numRead, n);
+	numCommands++;
+	numRoundTrips++;
+	CardResponseAPDU response = cmd.transmit(dispatcher, slotHandle, RESPONSES);
+	if (consume(response, isOddIns(numRead)) == 0) {
+	    // some cards are just pure shit and return 9000 when no bytes have been read
+	    eof = true;
+	}
+    }
+
+    /**
+     * Appends the data of the response to the buffer.
+     *
+     * @return Number of bytes appended.
+     */
+    private int consume(CardResponseAPDU response, boolean oddIns) {
+	byte[] trailer = response.getTrailer();
+	if (! response.isNormalProcessed()) {
+	    eof = true;
+	    if (trailer[0] != (byte) 0x62) {
+		// no data in error responses
+		return 0;
+	    }
+	}
+
+	byte[] data = response.getData();
+	int dataOffset = 0;
+	int dataLength = data.length;
+	if (oddIns && dataLength > 0) {
+	    // ISO/IEC 7816-4 wraps the data in a discretionary data object, but not all cards do so
+	    TLVView ddo = discretionaryData(data);
+	    if (ddo != null) {
+		dataOffset = ddo.getValueOffset();
+		dataLength = ddo.getValueLength();
+	    }
+	}
+
+	ensureCapacity(numRead + dataLength);
+	System.arraycopy(data, dataOffset, buffer, numRead, dataLength);
+	numRead += dataLength;
+	return dataLength;
+    }
+
+    /**
+     * Gets the discretionary data object wrapping the response data.
+     *
+     * @return The data object, or {@code null} if the data is not a single data object with tag '53'.
+     */
+    @Nullable
+    private static TLVView discretionaryData(byte[] data) {
+	if (data[0] != 0x53) {
+	    return null;
+	}
+	try {
+	    TLVView ddo = TLVView.fromBER(data);
+	    if (ddo != null && ddo.getRawLength() == data.length) {
+		return ddo;
+	    }
+	} catch (TLVException ex) {
+	    // plain data starting with the same byte
+	}
+	return null;
+    }
+
+    private void ensureCapacity(int size) {
+	if (size > buffer.length) {
+	    buffer = Arrays.copyOf(buffer, Math.max(size, buffer.length * 2));
+	}
+    }
+
+    private boolean isOddIns(int offset) {
+	return offset > (shortEf != null ? MAX_SFI_OFFSET : MAX_SHORT_OFFSET);
+    }
+
+    private int maxContent(int offset) {
+	return isOddIns(offset) ? maxLe - ODD_INS_OVERHEAD : maxLe;
+    }
+
+    private CardCommandAPDU makeCommand(int offset, int length) {
+	if (isOddIns(offset)) {
+	    short fileID = (short) (shortEf != null ? shortEf & 0x1F : 0);
+	    return new ReadBinary(fileID, offset, length + ddoHeaderLength(length));
+	} else if (shortEf != null) {
+	    return new ReadBinary(shortEf, (byte) offset, (short) length);
+	} else {
+	    return new ReadBinary((short) offset, (short) length);
+	}
+    }
+
+    private static int ddoHeaderLength(int length) {
+	if (length < 0x80) {
+	    return 2;
+	} else if (length <= 0xFF) {
+	    return 3;
+	} else {
+	    return 4;
+	}
+    }
+
+}
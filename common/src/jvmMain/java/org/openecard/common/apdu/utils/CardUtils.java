@@ -26,7 +26,6 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import org.openecard.common.apdu.ReadBinary;
 import org.openecard.common.apdu.ReadRecord;
 import org.openecard.common.apdu.Select;
 import org.openecard.common.apdu.Select.MasterFile;
@@ -235,34 +234,30 @@ public class CardUtils {
 
     /**
      * Reads a file.
+     * Transparent files with a known size are read into a buffer of that size with all READ BINARY commands sent in a
+     * single Transmit.
      *
      * @param dispatcher Dispatcher
      * @param slotHandle Slot handle
      * @param fcp File Control Parameters, may be null
 	 * @param shortEf Short EF identifier, may be null
+     * @param readWithExtendedLength {@code true} if the card and reader support commands with extended length.
      * @return File content
      * @throws APDUException
      */
     public static byte[] readFile(FCP fcp, Byte shortEf, Dispatcher dispatcher, byte[] slotHandle, boolean readWithExtendedLength) throws APDUException {
-	ByteArrayOutputStream baos = new ByteArrayOutputStream();
-	// Read as much bytes per APDU as possible
-	short length = (short) (readWithExtendedLength ? 0xFFFF : 0xFF);
-	short numToRead = -1; // -1 indicates I don't know
-	if (fcp != null) {
-	    Long fcpNumBytes = fcp.getNumBytes();
-	    if (fcpNumBytes != null) {
-		// more than short is not possible and besides that very unrealistic
-		numToRead = fcpNumBytes.shortValue();
-		// reduce readout size
-		if (numToRead < 255) {
-		    length = (byte) numToRead;
-		}
-	    }
+	if (isRecordEF(fcp)) {
+	    return readRecords(shortEf, dispatcher, slotHandle);
+	} else {
+	    Long numBytes = fcp != null ? fcp.getNumBytes() : null;
+	    BinaryFileReader reader = new BinaryFileReader(dispatcher, slotHandle, shortEf, readWithExtendedLength);
+	    return reader.read(numBytes);
 	}
+    }
 
-	boolean isRecord = isRecordEF(fcp);
-	byte i = (byte) (isRecord ? 1 : 0); // records start at index 1
-	short numRead = 0;
+    private static byte[] readRecords(Byte shortEf, Dispatcher dispatcher, byte[] slotHandle) throws APDUException {
+	ByteArrayOutputStream baos = new ByteArrayOutputStream();
+	byte i = 1; // records start at index 1
 
 	try {
 	    CardResponseAPDU response;
@@ -270,57 +265,26 @@ public class CardUtils {
 	    int lastNumRead = 0;
 	    boolean goAgain;
 	    do {
-		if (! isRecord) {
-		    CardCommandAPDU readBinary;
-			if (shortEf != null) {
-				if (numRead > 0xFF) {
-					readBinary = new ReadBinary(shortEf, numRead, length);
-				} else {
-					readBinary = new ReadBinary(shortEf, (byte) numRead, length);
-				}
-			} else {
-				readBinary = new ReadBinary(numRead, length);
-			}
-		    // 0x6A84 code for the estonian identity card. The card returns this code
-		    // after the last read process.
-		    response = readBinary.transmit(dispatcher, slotHandle, CardCommandStatus.response(0x9000, 0x6282,
-			    0x6A84, 0x6A83, 0x6A86, 0x6B00));
+		CardCommandAPDU readRecord;
+		if (shortEf != null) {
+		    readRecord = new ReadRecord(shortEf, (byte) i);
 		} else {
-		    CardCommandAPDU readRecord;
-			if (shortEf != null) {
-				readRecord = new ReadRecord(shortEf, (byte) i);
-			} else {
-				readRecord = new ReadRecord((byte) i);
-			}
-		    response = readRecord.transmit(dispatcher, slotHandle, CardCommandStatus.response(0x9000, 0x6282,
-			    0x6A84, 0x6A83));
+		    readRecord = new ReadRecord((byte) i);
 		}
+		response = readRecord.transmit(dispatcher, slotHandle, CardCommandStatus.response(0x9000, 0x6282,
+			0x6A84, 0x6A83));
 
 		trailer = response.getTrailer();
 		if (! Arrays.equals(trailer, new byte[] {(byte) 0x6A, (byte) 0x84}) &&
-			! Arrays.equals(trailer, new byte[] {(byte) 0x6A, (byte) 0x83}) &&
-			! Arrays.equals(trailer, new byte[] {(byte) 0x6A, (byte) 0x86})) {
+			! Arrays.equals(trailer, new byte[] {(byte) 0x6A, (byte) 0x83})) {
 		    byte[] data = response.getData();
-		    // some cards are just pure shit and return 9000 when no bytes have been read
 		    baos.write(data);
 		    lastNumRead = data.length;
-		    numRead += lastNumRead;
 		}
 		i++;
 
-		// update length value
 		goAgain = response.isNormalProcessed() && lastNumRead != 0
-			|| (Arrays.equals(trailer, new byte[]{(byte) 0x62, (byte) 0x82}) && isRecord);
-		if (goAgain && numToRead != -1) {
-		    // we have a limit, enforce it
-		    short remainingBytes = (short) (numToRead - numRead);
-		    if (remainingBytes <= 0) {
-			goAgain = false;
-		    } else if (remainingBytes < 255) {
-			// update length when we reached the area below 255
-			length = (byte) remainingBytes;
-		    }
-		}
+			|| Arrays.equals(trailer, new byte[]{(byte) 0x62, (byte) 0x82});
 	    } while (goAgain);
 	    baos.close();
 	} catch (IOException e) {
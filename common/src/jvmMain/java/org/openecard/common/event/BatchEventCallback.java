@@ -0,0 +1,44 @@
+/****************************************************************************
+ * Copyright (C) 2026 ecsec GmbH.
+ * All rights reserved.
+ * Contact: ecsec GmbH (info@ecsec.de)
+ *
+ * This file is part of the Open eCard App.
+ *
+ * GNU General Public License Usage
+ * This file may be used under the terms of the GNU General Public
+ * License version 3.0 as published by the Free Software Foundation
+ * and appearing in the file LICENSE.GPL included in the packaging of
+ * this file. Please review the following information to ensure the
+ * GNU General Public License version 3.0 requirements will be met:
+ * http://www.gnu.org/copyleft/gpl.html.
+ *
+ * Other Usage
+ * Alternatively, this file may be used in accordance with the terms
+ * and conditions contained in a signed written agreement between
+ * you and ecsec GmbH.
+ *
+ ***************************************************************************/
+
+package org.openecard.common.event;
+
+import java.util.List;
+import org.openecard.common.interfaces.EventCallback;
+
+
+/**
+ * Callback receiving the events queued for it in batches.
+ * High-rate events such as {@link EventType#API_CALL_STARTED} and {@link EventType#API_CALL_FINISHED} accumulate
+ * while the callback is busy. Instead of being called once per event, a callback implementing this interface is
+ * handed all pending events at once, in the order in which they were emitted.
+ */
+public interface BatchEventCallback extends EventCallback {
+
+    /**
+     * Callback function for a batch of events.
+     *
+     * @param events The pending events in the order of their emission, never empty.
+     */
+    void signalEvents(List<EventNotification> events);
+
+}
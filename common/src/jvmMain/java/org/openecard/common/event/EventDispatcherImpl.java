@@ -24,12 +24,18 @@ package org.openecard.common.event;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.openecard.common.interfaces.EventCallback;
 import org.openecard.common.interfaces.EventDispatcher;
@@ -41,6 +47,12 @@ import org.slf4j.LoggerFactory;
 /**
  * EventDispatcherImpl class distributing the events to all registered listeners.
  * Filtering is applied as requested at registration of the listener.
+ * <p>The subscriptions are kept in an immutable table which is replaced when a listener is added or removed, so
+ * emitting an event does not take any locks. Listeners registered only with {@link EventTypeFilter}s are indexed by
+ * event type, all others are checked for every event.</p>
+ * <p>The events of one listener are delivered one after another in the order of emission. All listeners share one
+ * executor. Events arriving while a listener is still busy are queued and delivered in one run afterwards, to a
+ * {@link BatchEventCallback} even in one call.</p>
  *
  * @author Tobias Wich
  * @author René Lottes
@@ -49,13 +61,27 @@ public class EventDispatcherImpl implements EventDispatcher {
 
     private static final Logger LOG = LoggerFactory.getLogger(EventDispatcherImpl.class);
 
+    // upper limit of the events handed to a callback in one run, so that a busy listener can not starve the others
+    private static final int MAX_BATCH_SIZE = 256;
+
     private final ThreadFactory threadFactory;
+    private final Executor externalExecutor;
 
-    private ConcurrentHashMap<EventCallback, ArrayList<EventFilter>> eventFilter;
-    private HashMap<EventCallback, ExecutorService> threadPools;
-    private boolean initialized;
+    private volatile SubscriptionTable table;
+    private ExecutorService ownExecutor;
 
     public EventDispatcherImpl() {
+	this(null);
+    }
+
+    /**
+     * Creates a dispatcher delivering the events on the given executor.
+     * The executor must be able to run as many tasks concurrently as there are listeners blocking in their callbacks.
+     *
+     * @param executor Executor running the callbacks, or {@code null} to use an internal thread pool.
+     */
+    public EventDispatcherImpl(Executor executor) {
+	this.externalExecutor = executor;
 	this.threadFactory = new ThreadFactory() {
 	    private final AtomicInteger num = new AtomicInteger(0);
 	    private final ThreadGroup group = new ThreadGroup("Event Dispatcher");
@@ -73,23 +99,27 @@ public class EventDispatcherImpl implements EventDispatcher {
 
     @Override
     public synchronized void start() {
-	this.eventFilter = new ConcurrentHashMap<>();
-	this.threadPools = new HashMap<>();
-
-	this.initialized = true;
+	Executor executor = externalExecutor;
+	if (executor == null) {
+	    // callbacks may block, so threads are created as needed and reused afterwards
+	    ownExecutor = Executors.newCachedThreadPool(threadFactory);
+	    executor = ownExecutor;
+	}
+	this.table = new SubscriptionTable(executor);
     }
 
     @Override
     public synchronized void terminate() {
-	if (initialized) {
-	    // remove everything and thereby shutdown thread pools
-	    for (EventCallback entry : Collections.list(eventFilter.keys())) {
-		del(entry);
+	SubscriptionTable old = table;
+	if (old != null) {
+	    table = null;
+	    for (Subscriber next : old.subscribers.values()) {
+		next.cancel();
+	    }
+	    if (ownExecutor != null) {
+		ownExecutor.shutdownNow();
+		ownExecutor = null;
 	    }
-
-	    initialized = false;
-	    eventFilter = null;
-	    threadPools = null;
 	}
     }
 
@@ -108,48 +138,233 @@ public class EventDispatcherImpl implements EventDispatcher {
 
     @Override
     public synchronized EventCallback add(EventCallback cb, EventFilter filter) {
-	if (initialized) {
-	    if (! eventFilter.containsKey(cb)) {
-		eventFilter.put(cb, new ArrayList<>());
+	SubscriptionTable old = table;
+	if (old != null) {
+	    Subscriber existing = old.subscribers.get(cb);
+	    Subscriber sub;
+	    if (existing == null) {
+		sub = new Subscriber(cb, Collections.singletonList(filter), old.executor);
+	    } else {
+		List<EventFilter> filters = new ArrayList<>(existing.filters);
+		filters.add(filter);
+		// keep queue and ordering of the existing subscription
+		sub = existing.withFilters(filters);
 	    }
-	    eventFilter.get(cb).add(filter);
-	    // create an executor service for each callback
-	    createExecutorService(cb);
+	    table = old.with(sub);
 	}
 	return cb;
     }
 
     @Override
     public synchronized EventCallback del(EventCallback cb) {
-	if (initialized && eventFilter.containsKey(cb)) {
-	    eventFilter.remove(cb);
-	    ExecutorService exec = threadPools.remove(cb);
-	    exec.shutdownNow();
+	SubscriptionTable old = table;
+	if (old != null) {
+	    Subscriber sub = old.subscribers.get(cb);
+	    if (sub != null) {
+		table = old.without(cb);
+		sub.cancel();
+	    }
 	}
 	return cb;
     }
 
     @Override
-    public synchronized void notify(EventType t, EventObject o) {
-	if (initialized) {
-	    for (Map.Entry<EventCallback, ArrayList<EventFilter>> entry : eventFilter.entrySet()) {
-		EventCallback cb = entry.getKey();
-		for (EventFilter filter : entry.getValue()) {
-		    // when there is a filter match, then fire out the event (only once!)
-		    if (filter.matches(t, o)) {
-			LOG.debug("Sending event notification {} to EventCallback {}.", t, cb);
-			ExecutorService executor = threadPools.get(cb);
-			executor.execute(() -> cb.signalEvent(t, o));
-			break;
+    public void notify(EventType t, EventObject o) {
+	SubscriptionTable current = table;
+	if (current != null) {
+	    for (Subscriber sub : current.byType.get(t)) {
+		sub.enqueue(t, o);
+	    }
+	    for (Subscriber sub : current.filtered) {
+		if (sub.matches(t, o)) {
+		    sub.enqueue(t, o);
+		}
+	    }
+	}
+    }
+
+    @Override
+    public boolean hasListeners(EventType t) {
+	SubscriptionTable current = table;
+	return current != null && (current.byType.get(t).length > 0 || current.filtered.length > 0);
+    }
+
+
+    /**
+     * Immutable snapshot of all subscriptions.
+     */
+    private static final class SubscriptionTable {
+
+	private static final Subscriber[] NONE = new Subscriber[0];
+
+	private final Executor executor;
+	private final Map<EventCallback, Subscriber> subscribers;
+	private final EnumMap<EventType, Subscriber[]> byType;
+	private final Subscriber[] filtered;
+
+	SubscriptionTable(Executor executor) {
+	    this(executor, Collections.emptyMap());
+	}
+
+	private SubscriptionTable(Executor executor, Map<EventCallback, Subscriber> subscribers) {
+	    this.executor = executor;
+	    this.subscribers = subscribers;
+
+	    EnumMap<EventType, List<Subscriber>> typeLists = new EnumMap<>(EventType.class);
+	    for (EventType next : EventType.values()) {
+		typeLists.put(next, new ArrayList<>());
+	    }
+	    List<Subscriber> filteredList = new ArrayList<>();
+	    for (Subscriber sub : subscribers.values()) {
+		if (sub.types != null) {
+		    for (EventType next : sub.types) {
+			typeLists.get(next).add(sub);
 		    }
+		} else {
+		    filteredList.add(sub);
 		}
 	    }
+
+	    this.byType = new EnumMap<>(EventType.class);
+	    for (Map.Entry<EventType, List<Subscriber>> next : typeLists.entrySet()) {
+		this.byType.put(next.getKey(), next.getValue().toArray(NONE));
+	    }
+	    this.filtered = filteredList.toArray(NONE);
 	}
+
+	SubscriptionTable with(Subscriber sub) {
+	    Map<EventCallback, Subscriber> copy = new HashMap<>(subscribers);
+	    copy.put(sub.callback, sub);
+	    return new SubscriptionTable(executor, copy);
+	}
+
+	SubscriptionTable without(EventCallback cb) {
+	    Map<EventCallback, Subscriber> copy = new HashMap<>(subscribers);
+	    copy.remove(cb);
+	    return new SubscriptionTable(executor, copy);
+	}
+
     }
 
-    private void createExecutorService(EventCallback cb) {
-	ExecutorService executor = Executors.newSingleThreadExecutor(threadFactory);
-	threadPools.put(cb, executor);
+    /**
+     * Registered callback with its own queue of pending events.
+     * At most one delivery task per subscriber is active at a time, which keeps the events in order.
+     */
+    private static final class Subscriber implements Runnable {
+
+	private final EventCallback callback;
+	private final List<EventFilter> filters;
+	// event types if all filters are type filters, null otherwise
+	private final EnumSet<EventType> types;
+	private final Executor executor;
+	private final ConcurrentLinkedQueue<EventNotification> queue;
+	private final AtomicBoolean scheduled;
+	private final AtomicBoolean cancelled;
+
+	Subscriber(EventCallback callback, List<EventFilter> filters, Executor executor) {
+	    this(callback, filters, executor, new ConcurrentLinkedQueue<>(), new AtomicBoolean(), new AtomicBoolean());
+	}
+
+	private Subscriber(EventCallback callback, List<EventFilter> filters, Executor executor,
+		ConcurrentLinkedQueue<EventNotification> queue, AtomicBoolean scheduled, AtomicBoolean cancelled) {
+	    this.callback = callback;
+	    this.filters = Collections.unmodifiableList(filters);
+	    this.types = collectTypes(filters);
+	    this.executor = executor;
+	    this.queue = queue;
+	    this.scheduled = scheduled;
+	    this.cancelled = cancelled;
+	}
+
+	private static EnumSet<EventType> collectTypes(List<EventFilter> filters) {
+	    EnumSet<EventType> result = EnumSet.noneOf(EventType.class);
+	    for (EventFilter next : filters) {
+		if (next instanceof EventTypeFilter) {
+		    result.addAll(((EventTypeFilter) next).getEventTypes());
+		} else {
+		    return null;
+		}
+	    }
+	    return result;
+	}
+
+	Subscriber withFilters(List<EventFilter> filters) {
+	    return new Subscriber(callback, filters, executor, queue, scheduled, cancelled);
+	}
+
+	boolean matches(EventType t, EventObject o) {
+	    for (EventFilter filter : filters) {
+		if (filter.matches(t, o)) {
+		    return true;
+		}
+	    }
+	    return false;
+	}
+
+	void enqueue(EventType t, EventObject o) {
+	    queue.add(new EventNotification(t, o));
+	    schedule();
+	}
+
+	void cancel() {
+	    cancelled.set(true);
+	    queue.clear();
+	}
+
+	private void schedule() {
+	    if (! cancelled.get() && scheduled.compareAndSet(false, true)) {
+		try {
+		    executor.execute(this);
+		} catch (RejectedExecutionException ex) {
+		    scheduled.set(false);
+		    LOG.warn("Failed to schedule event delivery to EventCallback {}.", callback, ex);
+		}
+	    }
+	}
+
+	@Override
+	public void run() {
+	    try {
+		List<EventNotification> batch = new ArrayList<>();
+		EventNotification next;
+		while (batch.size() < MAX_BATCH_SIZE && (next = queue.poll()) != null) {
+		    batch.add(next);
+		}
+		if (! batch.isEmpty() && ! cancelled.get()) {
+		    deliver(batch);
+		}
+	    } finally {
+		scheduled.set(false);
+		// events which arrived during the delivery
+		if (! queue.isEmpty()) {
+		    schedule();
+		}
+	    }
+	}
+
+	private void deliver(List<EventNotification> batch) {
+	    if (callback instanceof BatchEventCallback) {
+		LOG.debug("Sending {} event notifications to EventCallback {}.", batch.size(), callback);
+		try {
+		    ((BatchEventCallback) callback).signalEvents(Collections.unmodifiableList(batch));
+		} catch (RuntimeException ex) {
+		    LOG.error("EventCallback {} failed to process events.", callback, ex);
+		}
+	    } else {
+		for (EventNotification next : batch) {
+		    if (cancelled.get()) {
+			return;
+		    }
+		    LOG.debug("Sending event notification {} to EventCallback {}.", next.getType(), callback);
+		    try {
+			callback.signalEvent(next.getType(), next.getEvent());
+		    } catch (RuntimeException ex) {
+			LOG.error("EventCallback {} failed to process event {}.", callback, next.getType(), ex);
+		    }
+		}
+	    }
+	}
+
     }
 
 }
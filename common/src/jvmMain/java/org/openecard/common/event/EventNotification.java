@@ -0,0 +1,47 @@
+/****************************************************************************
+ * Copyright (C) 2026 ecsec GmbH.
+ * All rights reserved.
+ * Contact: ecsec GmbH (info@ecsec.de)
+ *
+ * This file is part of the Open eCard App.
+ *
+ * GNU General Public License Usage
+ * This file may be used under the terms of the GNU General Public
+ * License version 3.0 as published by the Free Software Foundation
+ * and appearing in the file LICENSE.GPL included in the packaging of
+ * this file. Please review the following information to ensure the
+ * GNU General Public License version 3.0 requirements will be met:
+ * http://www.gnu.org/copyleft/gpl.html.
+ *
+ * Other Usage
+ * Alternatively, this file may be used in accordance with the terms
+ * and conditions contained in a signed written agreement between
+ * you and ecsec GmbH.
+ *
+ ***************************************************************************/
+
+package org.openecard.common.event;
+
+
+/**
+ * Event together with its type, as delivered to a {@link BatchEventCallback}.
+ */
+public final class EventNotification {
+
+    private final EventType type;
+    private final EventObject event;
+
+    public EventNotification(EventType type, EventObject event) {
+	this.type = type;
+	this.event = event;
+    }
+
+    public EventType getType() {
+	return type;
+    }
+
+    public EventObject getEvent() {
+	return event;
+    }
+
+}
@@ -22,8 +22,9 @@
 
 package org.openecard.common.event;
 
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
 import org.openecard.common.interfaces.EventFilter;
 
 /**
@@ -32,25 +33,28 @@ import org.openecard.common.interfaces.EventFilter;
  */
 public class EventTypeFilter implements EventFilter {
 
-    private final ArrayList<EventType> eventType;
+    private final EnumSet<EventType> eventType;
 
     public EventTypeFilter(EventType ... eventType) {
 	if (eventType.length == 0) {
-	    this.eventType = new ArrayList<>(Arrays.asList(EventType.values()));
+	    this.eventType = EnumSet.allOf(EventType.class);
 	} else {
-	    this.eventType = new ArrayList<>(Arrays.asList(eventType));
+	    this.eventType = EnumSet.noneOf(EventType.class);
+	    Collections.addAll(this.eventType, eventType);
 	}
     }
 
 
     @Override
     public boolean matches(EventType t, EventObject o) {
-	for (EventType next : eventType) {
-	    if (t.equals(next)) {
-		return true;
-	    }
-	}
-	return false;
+	return eventType.contains(t);
+    }
+
+    /**
+     * @return The event types accepted by this filter.
+     */
+    public Set<EventType> getEventTypes() {
+	return Collections.unmodifiableSet(eventType);
     }
 
 }
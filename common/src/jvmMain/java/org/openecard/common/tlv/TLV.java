@@ -22,8 +22,8 @@
 
 package org.openecard.common.tlv;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.LinkedList;
 import java.util.List;
 import org.openecard.common.util.ByteUtils;
@@ -46,6 +46,10 @@ public class TLV {
 	tag = new TagLengthValue();
     }
 
+    TLV(TagLengthValue tag) {
+	this.tag = tag;
+    }
+
     public TLV(TLV obj) {
 	this.tag = obj.tag;
 	this.next = (obj.next != null) ? new TLV(obj.next) : null;
@@ -169,10 +173,7 @@ public class TLV {
 
 	TLV nextTag = this;
 	while (nextTag != null) {
-	    TLV toAdd = new TLV(nextTag);
-	    toAdd.next = null; // delete reference to next
-	    result.add(toAdd);
-
+	    result.add(detachedCopy(nextTag));
 	    nextTag = nextTag.next;
 	}
 
@@ -180,18 +181,28 @@ public class TLV {
     }
 
     public List<TLV> findNextTags(long num) {
-	List<TLV> all = asList();
 	LinkedList<TLV> result = new LinkedList<>();
 
-	for (TLV nextTLV : all) {
-	    if (nextTLV.getTagNumWithClass() == num) {
-		result.add(nextTLV);
+	TLV nextTag = this;
+	while (nextTag != null) {
+	    if (nextTag.getTagNumWithClass() == num) {
+		result.add(detachedCopy(nextTag));
 	    }
+	    nextTag = nextTag.next;
 	}
 
 	return result;
     }
 
+    /**
+     * Copies the node and its children, but not its successors.
+     */
+    private static TLV detachedCopy(TLV node) {
+	TLV copy = new TLV(node.tag);
+	copy.child = (node.child != null) ? new TLV(node.child) : null;
+	return copy;
+    }
+
     public List<TLV> findChildTags(long num) {
 	if (hasChild()) {
 	    return getChild().findNextTags(num);
@@ -206,44 +217,13 @@ public class TLV {
     ///
 
     public static TLV fromBER(byte[] input) throws TLVException {
-	byte[] rest = input;
-
-	TLV first = new TLV();
-	boolean isFirst = true;
-	TLV last = first;
-	// build as long as there is input left
-	while (rest.length > 0) {
-	    TLV next;
-	    if (isFirst) {
-		next = first;
-	    } else {
-		next = new TLV();
-	    }
-
-	    // break execution when 0 tag encountered
-	    if (rest[0] == (byte) 0) {
-		return first;
-	    }
-	    // convert bytes to flat TLV data
-	    next.tag = TagLengthValue.fromBER(rest);
-	    // if constructed build child structure
-	    if (!next.tag.isPrimitive() && next.tag.getValueLength() > 0) {
-		next.child = fromBER(next.tag.getValue());
-	    }
-
-	    // set next as sibling in last
-	    if (isFirst) {
-		isFirst = false;
-	    } else {
-		last.next = next;
-	    }
-	    last = next;
-
-	    // get rest of the bytes for next iteration
-	    rest = last.tag.extractRest(rest);
+	// the input is read once, the values are copied so they do not depend on the input array
+	TLVView view = TLVView.fromBER(input);
+	if (view == null) {
+	    return new TLV();
+	} else {
+	    return view.toTLV();
 	}
-
-	return first;
     }
 
 
@@ -251,32 +231,65 @@ public class TLV {
 	return toBER(false);
     }
 
+    /**
+     * Encodes this TLV object.
+     * Objects with a child are encoded as constructed objects, all others as primitive objects. The lengths are
+     * computed first, so the encoding is written once into an array of the exact size. This object is not modified.
+     *
+     * @param withSuccessors {@code true} if the successors of this object are encoded as well.
+     * @return The BER encoding.
+     */
     public byte[] toBER(boolean withSuccessors) {
-	try {
-	    ByteArrayOutputStream out = new ByteArrayOutputStream();
-	    // value calculated from child if any
-	    toBER(out, withSuccessors);
-	    return out.toByteArray();
-	} catch (IOException ex) {
-	    // IOException depends solely on the stream. The only thing that can happen here is OOM.
-	    throw new RuntimeException(ex);
-	}
+	return new TLVEncoder(this, withSuccessors).encode();
     }
 
-    private void toBER(ByteArrayOutputStream out, boolean withSuccessors) throws IOException {
-	if (child != null) {
-	    byte[] childBytes = child.toBER(true);
-	    tag.setPrimitive(false);
-	    tag.setValue(childBytes);
+    /**
+     * Encodes this TLV object into the given array.
+     *
+     * @param out Array receiving the encoding.
+     * @param offset Offset of the first byte to write.
+     * @param withSuccessors {@code true} if the successors of this object are encoded as well.
+     * @return The offset after the last written byte.
+     * @throws IndexOutOfBoundsException Thrown in case the encoding does not fit into the array.
+     * @see #getEncodedLength(boolean)
+     */
+    public int toBER(byte[] out, int offset, boolean withSuccessors) {
+	return new TLVEncoder(this, withSuccessors).encode(out, offset);
+    }
+
+    /**
+     * Encodes this TLV object into the given buffer.
+     *
+     * @param out Buffer receiving the encoding at its current position.
+     * @param withSuccessors {@code true} if the successors of this object are encoded as well.
+     * @throws java.nio.BufferOverflowException Thrown in case the encoding does not fit into the buffer.
+     */
+    public void toBER(ByteBuffer out, boolean withSuccessors) {
+	TLVEncoder enc = new TLVEncoder(this, withSuccessors);
+	if (out.remaining() < enc.getLength()) {
+	    throw new BufferOverflowException();
+	}
+	if (out.hasArray()) {
+	    int pos = out.arrayOffset() + out.position();
+	    enc.encode(out.array(), pos);
+	    out.position(out.position() + enc.getLength());
 	} else {
-	    tag.setPrimitive(true);
+	    out.put(enc.encode());
 	}
-	// write child to output stream
-	out.write(tag.toBER());
+    }
 
-	if (withSuccessors && next != null) {
-	    next.toBER(out, withSuccessors);
-	}
+    /**
+     * Computes the length of the BER encoding of this object.
+     *
+     * @param withSuccessors {@code true} if the successors of this object are included.
+     * @return The number of bytes produced by {@link #toBER(boolean)}.
+     */
+    public int getEncodedLength(boolean withSuccessors) {
+	return new TLVEncoder(this, withSuccessors).getLength();
+    }
+
+    int writeValue(byte[] out, int offset) {
+	return tag.writeValue(out, offset);
     }
 
 
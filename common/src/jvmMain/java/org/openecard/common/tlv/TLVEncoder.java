@@ -0,0 +1,160 @@
+/****************************************************************************
+ * Copyright (C) 2026 ecsec GmbH.
+ * All rights reserved.
+ * Contact: ecsec GmbH (info@ecsec.de)
+ *
+ * This file is part of the Open eCard App.
+ *
+ * GNU General Public License Usage
+ * This file may be used under the terms of the GNU General Public
+ * License version 3.0 as published by the Free Software Foundation
+ * and appearing in the file LICENSE.GPL included in the packaging of
+ * this file. Please review the following information to ensure the
+ * GNU General Public License version 3.0 requirements will be met:
+ * http://www.gnu.org/copyleft/gpl.html.
+ *
+ * Other Usage
+ * Alternatively, this file may be used in accordance with the terms
+ * and conditions contained in a signed written agreement between
+ * you and ecsec GmbH.
+ *
+ ***************************************************************************/
+
+package org.openecard.common.tlv;
+
+
+/**
+ * Two pass BER encoder for {@link TLV} structures.
+ * <p>The first pass computes the length of every node, the second pass writes the encoding into a single array
+ * without intermediate copies. Nodes with a child are encoded as constructed, all other nodes as primitive objects.
+ * The encoded structure is not modified.</p>
+ * <p>An instance encodes exactly one structure and is not thread safe.</p>
+ */
+final class TLVEncoder {
+
+    // value lengths of the nodes in the order they are visited
+    private int[] valueLengths = new int[16];
+    private int numNodes = 0;
+    private int cursor = 0;
+
+    private final TLV root;
+    private final boolean withSuccessors;
+    private final int length;
+
+    TLVEncoder(TLV root, boolean withSuccessors) {
+	this.root = root;
+	this.withSuccessors = withSuccessors;
+	this.length = withSuccessors ? measureChain(root) : measure(root);
+    }
+
+    /**
+     * @return Number of bytes of the complete encoding.
+     */
+    int getLength() {
+	return length;
+    }
+
+    byte[] encode() {
+	byte[] out = new byte[length];
+	encode(out, 0);
+	return out;
+    }
+
+    /**
+     * Writes the encoding into the given array.
+     *
+     * @param out Array receiving the encoding, must have room for {@link #getLength()} bytes after the offset.
+     * @param offset Offset of the first byte to write.
+     * @return The offset after the last written byte.
+     */
+    int encode(byte[] out, int offset) {
+	if (offset < 0 || out.length - offset < length) {
+	    throw new IndexOutOfBoundsException("Output array is too small for the encoded TLV.");
+	}
+	cursor = 0;
+	return withSuccessors ? writeChain(root, out, offset) : write(root, out, offset);
+    }
+
+
+    private int measureChain(TLV first) {
+	int total = 0;
+	for (TLV next = first; next != null; next = next.next) {
+	    total += measure(next);
+	}
+	return total;
+    }
+
+    private int measure(TLV node) {
+	int slot = numNodes++;
+	if (slot == valueLengths.length) {
+	    int[] tmp = new int[valueLengths.length * 2];
+	    System.arraycopy(valueLengths, 0, tmp, 0, valueLengths.length);
+	    valueLengths = tmp;
+	}
+
+	int valueLength = node.child != null ? measureChain(node.child) : node.getValueLength();
+	valueLengths[slot] = valueLength;
+	return tagLength(node.getTagNumWithClass()) + lengthLength(valueLength) + valueLength;
+    }
+
+    private int writeChain(TLV first, byte[] out, int offset) {
+	int pos = offset;
+	for (TLV next = first; next != null; next = next.next) {
+	    pos = write(next, out, pos);
+	}
+	return pos;
+    }
+
+    private int write(TLV node, byte[] out, int offset) {
+	int valueLength = valueLengths[cursor++];
+	int pos = writeTag(node.getTagNumWithClass(), node.child == null, out, offset);
+	pos = writeLength(valueLength, out, pos);
+	if (node.child != null) {
+	    return writeChain(node.child, out, pos);
+	} else {
+	    return node.writeValue(out, pos);
+	}
+    }
+
+
+    private static int tagLength(long tagNumWithClass) {
+	return Math.max(1, (64 - Long.numberOfLeadingZeros(tagNumWithClass) + 7) / 8);
+    }
+
+    private static int lengthLength(int valueLength) {
+	if (valueLength <= 127) {
+	    // short form
+	    return 1;
+	} else {
+	    return 1 + (32 - Integer.numberOfLeadingZeros(valueLength) + 7) / 8;
+	}
+    }
+
+    private static int writeTag(long tagNumWithClass, boolean primitive, byte[] out, int offset) {
+	int numBytes = tagLength(tagNumWithClass);
+	for (int i = 0; i < numBytes; i++) {
+	    out[offset + i] = (byte) (tagNumWithClass >>> (8 * (numBytes - 1 - i)));
+	}
+	// the constructed flag is determined by the presence of children
+	if (primitive) {
+	    out[offset] &= (byte) ~0x20;
+	} else {
+	    out[offset] |= 0x20;
+	}
+	return offset + numBytes;
+    }
+
+    private static int writeLength(int valueLength, byte[] out, int offset) {
+	int numBytes = lengthLength(valueLength);
+	if (numBytes == 1) {
+	    out[offset] = (byte) valueLength;
+	} else {
+	    out[offset] = (byte) (0x80 | (numBytes - 1));
+	    for (int i = 1; i < numBytes; i++) {
+		out[offset + i] = (byte) (valueLength >>> (8 * (numBytes - 1 - i)));
+	    }
+	}
+	return offset + numBytes;
+    }
+
+}
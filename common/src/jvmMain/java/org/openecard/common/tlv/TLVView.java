@@ -0,0 +1,369 @@
+/****************************************************************************
+ * Copyright (C) 2026 ecsec GmbH.
+ * All rights reserved.
+ * Contact: ecsec GmbH (info@ecsec.de)
+ *
+ * This file is part of the Open eCard App.
+ *
+ * GNU General Public License Usage
+ * This file may be used under the terms of the GNU General Public
+ * License version 3.0 as published by the Free Software Foundation
+ * and appearing in the file LICENSE.GPL included in the packaging of
+ * this file. Please review the following information to ensure the
+ * GNU General Public License version 3.0 requirements will be met:
+ * http://www.gnu.org/copyleft/gpl.html.
+ *
+ * Other Usage
+ * Alternatively, this file may be used in accordance with the terms
+ * and conditions contained in a signed written agreement between
+ * you and ecsec GmbH.
+ *
+ ***************************************************************************/
+
+package org.openecard.common.tlv;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import javax.annotation.Nullable;
+
+
+/**
+ * Read only view of a BER encoded TLV structure.
+ * <p>The nodes do not copy the input, they reference the TLV by its offset and length in the original array. The
+ * input is walked once per nesting level: the siblings of a level are read when the level is accessed, children are
+ * only decoded when {@link #getChild()} is called. The caller must not modify the input array while views on it are
+ * in use.</p>
+ * <p>Parsing stops at a zero octet in place of a tag, the same way as {@link TLV#fromBER(byte[])} does.</p>
+ */
+public final class TLVView implements Iterable<TLVView> {
+
+    private final byte[] data;
+    private final int offset;
+    private final int end;
+    private final Tag tag;
+    private final int valueOffset;
+    private final int valueLength;
+
+    private TLVView next;
+    private TLVView child;
+    private boolean childDecoded;
+
+    private TLVView(byte[] data, int offset, int limit) throws TLVException {
+	this.data = data;
+	this.offset = offset;
+	this.tag = Tag.fromBER(data, offset, limit);
+
+	int pos = offset + tag.numOctets;
+	if (pos >= limit) {
+	    throw new TLVException("Not enough bytes in input to read TLV length.");
+	}
+
+	int len;
+	boolean endOfContent = false;
+	int lenByte = data[pos] & 0xFF;
+	pos++;
+	if (lenByte < 0x80) {
+	    // short form
+	    len = lenByte;
+	} else if (lenByte == 0x80) {
+	    // has end-of-content octets, loop through content to find termination point
+	    endOfContent = true;
+	    int i = pos;
+	    while (true) {
+		if (i + 1 >= limit) {
+		    throw new TLVException("Not enough bytes in input to read TLV length.");
+		}
+		if (data[i] == 0x00 && data[i + 1] == 0x00) {
+		    break;
+		}
+		i++;
+	    }
+	    len = i - pos;
+	} else {
+	    // long form, first byte indicates number of length bytes
+	    int numLengthBytes = lenByte & 0x7F;
+	    if (numLengthBytes > 4) {
+		throw new TLVException("Length doesn't fit into a 32 bit word.");
+	    } else if (pos + numLengthBytes > limit) {
+		throw new TLVException("Not enough bytes in input to read TLV length.");
+	    }
+	    long longLen = 0;
+	    for (int i = 0; i < numLengthBytes; i++) {
+		longLen = (longLen << 8) | (data[pos + i] & 0xFF);
+	    }
+	    if (longLen > Integer.MAX_VALUE) {
+		throw new TLVException("Length doesn't fit into a 32 bit word.");
+	    }
+	    len = (int) longLen;
+	    pos += numLengthBytes;
+	}
+
+	this.valueOffset = pos;
+	this.valueLength = len;
+	this.end = pos + len + (endOfContent ? 2 : 0);
+	if (len > limit - pos || end > limit) {
+	    throw new TLVException("Data length and claimed length do not match.");
+	}
+    }
+
+    /**
+     * Reads a single TLV object, regardless of whether its tag is zero.
+     */
+    static TLVView read(byte[] input, int offset, int limit) throws TLVException {
+	return new TLVView(input, offset, limit);
+    }
+
+    /**
+     * Reads the TLV objects contained in the input.
+     *
+     * @param input BER encoded TLV objects.
+     * @return The first TLV object, or {@code null} if the input contains no TLV object.
+     * @throws TLVException Thrown in case the input is not a valid BER encoding.
+     */
+    @Nullable
+    public static TLVView fromBER(byte[] input) throws TLVException {
+	return fromBER(input, 0, input.length);
+    }
+
+    /**
+     * Reads the TLV objects contained in a region of the input.
+     *
+     * @param input Array containing BER encoded TLV objects.
+     * @param offset Offset of the first TLV object.
+     * @param length Number of bytes containing the TLV objects.
+     * @return The first TLV object, or {@code null} if the region contains no TLV object.
+     * @throws TLVException Thrown in case the region is not a valid BER encoding.
+     */
+    @Nullable
+    public static TLVView fromBER(byte[] input, int offset, int length) throws TLVException {
+	if (offset < 0 || length < 0 || offset + length > input.length) {
+	    throw new IndexOutOfBoundsException("Region is not contained in the input.");
+	}
+	int limit = offset + length;
+	TLVView first = null;
+	TLVView last = null;
+	int pos = offset;
+	// read as long as there is input left, break execution when 0 tag encountered
+	while (pos < limit && input[pos] != 0) {
+	    TLVView next = new TLVView(input, pos, limit);
+	    if (last == null) {
+		first = next;
+	    } else {
+		last.next = next;
+	    }
+	    last = next;
+	    pos = next.end;
+	}
+	return first;
+    }
+
+
+    public Tag getTag() {
+	return new Tag(tag);
+    }
+
+    public long getTagNumWithClass() {
+	return tag.getTagNumWithClass();
+    }
+
+    public boolean isPrimitive() {
+	return tag.isPrimitive();
+    }
+
+    /**
+     * @return The array this view refers to.
+     */
+    public byte[] getData() {
+	return data;
+    }
+
+    /**
+     * @return Offset of the first tag octet in {@link #getData()}.
+     */
+    public int getOffset() {
+	return offset;
+    }
+
+    /**
+     * @return Number of octets of the complete encoding including tag and length.
+     */
+    public int getRawLength() {
+	return end - offset;
+    }
+
+    /**
+     * @return Offset of the first value octet in {@link #getData()}.
+     */
+    public int getValueOffset() {
+	return valueOffset;
+    }
+
+    public int getValueLength() {
+	return valueLength;
+    }
+
+    /**
+     * @return Copy of the value octets.
+     */
+    public byte[] getValue() {
+	return Arrays.copyOfRange(data, valueOffset, valueOffset + valueLength);
+    }
+
+    /**
+     * @return Copy of the complete encoding of this TLV object.
+     */
+    public byte[] toBER() {
+	return Arrays.copyOfRange(data, offset, end);
+    }
+
+    @Nullable
+    public TLVView getNext() {
+	return next;
+    }
+
+    public boolean hasNext() {
+	return next != null;
+    }
+
+    /**
+     * Gets the first child of a constructed TLV object.
+     * The children are decoded on the first invocation.
+     *
+     * @return The first child, or {@code null} if this is a primitive or empty TLV object.
+     * @throws TLVException Thrown in case the value is not a valid BER encoding.
+     */
+    @Nullable
+    public TLVView getChild() throws TLVException {
+	if (! childDecoded) {
+	    if (! isPrimitive() && valueLength > 0) {
+		child = fromBER(data, valueOffset, valueLength);
+	    }
+	    childDecoded = true;
+	}
+	return child;
+    }
+
+    /**
+     * Iterates over this TLV object and all its successors.
+     *
+     * @return Iterator starting with this object.
+     */
+    @Override
+    public Iterator<TLVView> iterator() {
+	return new TagIterator(this, null);
+    }
+
+    /**
+     * Iterates over this TLV object and its successors having the given tag.
+     * No intermediate list is created, the siblings are visited while iterating.
+     *
+     * @param num Tag number including the class bits.
+     * @return Iterable over the matching TLV objects.
+     */
+    public Iterable<TLVView> findNextTags(long num) {
+	return () -> new TagIterator(this, num);
+    }
+
+    /**
+     * Iterates over the children of this TLV object having the given tag.
+     *
+     * @param num Tag number including the class bits.
+     * @return Iterable over the matching children.
+     * @throws TLVException Thrown in case the value is not a valid BER encoding.
+     */
+    public Iterable<TLVView> findChildTags(long num) throws TLVException {
+	TLVView first = getChild();
+	if (first == null) {
+	    return () -> new TagIterator(null, num);
+	} else {
+	    return first.findNextTags(num);
+	}
+    }
+
+    /**
+     * Finds the first TLV object with the given tag, starting with this object.
+     *
+     * @param num Tag number including the class bits.
+     * @return The first matching object, or {@code null} if there is none.
+     */
+    @Nullable
+    public TLVView findNextTag(long num) {
+	for (TLVView next = this; next != null; next = next.next) {
+	    if (next.getTagNumWithClass() == num) {
+		return next;
+	    }
+	}
+	return null;
+    }
+
+    /**
+     * Converts this object, its children and its successors to a mutable {@link TLV} structure.
+     * The values are copied, so the structure does not change when the input array is modified afterwards.
+     *
+     * @return The TLV structure.
+     * @throws TLVException Thrown in case a value is not a valid BER encoding.
+     */
+    public TLV toTLV() throws TLVException {
+	TLV first = null;
+	TLV last = null;
+	for (TLVView next = this; next != null; next = next.next) {
+	    TLV converted = new TLV(new TagLengthValue(next.getRawLength(), next.getTag(), data, next.valueOffset,
+		    next.valueLength));
+	    // if constructed build child structure
+	    if (! next.isPrimitive() && next.valueLength > 0) {
+		TLVView nextChild = next.getChild();
+		converted.child = nextChild != null ? nextChild.toTLV() : new TLV();
+	    }
+
+	    if (last == null) {
+		first = converted;
+	    } else {
+		last.next = converted;
+	    }
+	    last = converted;
+	}
+	return first;
+    }
+
+    @Override
+    public String toString() {
+	return tag.toString() + " " + valueLength + " bytes at offset " + offset;
+    }
+
+
+    private static final class TagIterator implements Iterator<TLVView> {
+
+	private final Long num;
+	private TLVView nextMatch;
+
+	TagIterator(@Nullable TLVView start, @Nullable Long num) {
+	    this.num = num;
+	    this.nextMatch = seek(start);
+	}
+
+	private TLVView seek(@Nullable TLVView start) {
+	    TLVView candidate = start;
+	    while (candidate != null && num != null && candidate.getTagNumWithClass() != num) {
+		candidate = candidate.next;
+	    }
+	    return candidate;
+	}
+
+	@Override
+	public boolean hasNext() {
+	    return nextMatch != null;
+	}
+
+	@Override
+	public TLVView next() {
+	    if (nextMatch == null) {
+		throw new NoSuchElementException();
+	    }
+	    TLVView result = nextMatch;
+	    nextMatch = seek(result.next);
+	    return result;
+	}
+    }
+
+}
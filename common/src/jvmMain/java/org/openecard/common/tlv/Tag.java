@@ -149,15 +149,32 @@ public class Tag {
 
 
     public static Tag fromBER(byte[] data) throws TLVException {
+	return fromBER(data, 0, data.length);
+    }
+
+    /**
+     * Reads the tag starting at the given offset.
+     *
+     * @param data Array containing the tag.
+     * @param offset Offset of the first tag octet.
+     * @param limit Offset after the last octet which may be read.
+     * @return The tag with the number of octets it is made of.
+     * @throws TLVException Thrown in case the tag is not complete or the tag number is too large.
+     */
+    static Tag fromBER(byte[] data, int offset, int limit) throws TLVException {
+	if (offset >= limit) {
+	    throw new TLVException("Not enough bytes in input bytes to build TLV tag.");
+	}
 	// how many octets made up this tag?
 	int numOctets = 1;
 	// get common values independed from encoding type
-	TagClass tagClass = TagClass.getTagClass(data[0]);
-	boolean primitive = ((data[0] >> 5) & 0x01) == 0x00;
+	byte first = data[offset];
+	TagClass tagClass = TagClass.getTagClass(first);
+	boolean primitive = ((first >> 5) & 0x01) == 0x00;
 
 	// get value so it can be seen if short or long form is present
 	long tagNum = 0;
-	byte tmpTagNum = (byte) (data[0] & 0x1F);
+	byte tmpTagNum = (byte) (first & 0x1F);
 	if (tmpTagNum <= 30) {
 	    // short form
 	    tagNum = tmpTagNum;
@@ -169,11 +186,11 @@ public class Tag {
 		// terminate if there are no bytes left or the number is larger than 64 bits
 		if (numOctets*7 > 64) {
 		    throw new TLVException("Tag number doesn't fit into a 64 bit word.");
-		} else if (data.length < numOctets) {
+		} else if (offset + numOctets >= limit) {
 		    throw new TLVException("Not enough bytes in input bytes to build TLV tag.");
 		}
 		// get next number
-		next = data[numOctets];
+		next = data[offset + numOctets];
 		numOctets++;
 		// get next bytes and merge them into result
 		byte nextValue = (byte) (next & 0x7F);
@@ -47,6 +47,11 @@ class TagLengthValue {
 	this.value = value;
     }
 
+    TagLengthValue(int numOctets, Tag tag, byte[] source, int valueOffset, int valueLength) {
+	// copy, so the value does not change when the caller reuses the source array
+	this(numOctets, tag, Arrays.copyOfRange(source, valueOffset, valueOffset + valueLength));
+    }
+
     private TagLengthValue(int numOctets, TagClass tagClass, boolean primitive, long tagNum, byte[] value) {
 	this(numOctets, new Tag(tagClass, primitive, tagNum), value);
     }
@@ -114,6 +119,16 @@ class TagLengthValue {
     }
 
 
+    /**
+     * Writes the value into the given array.
+     *
+     * @return The offset after the last written byte.
+     */
+    int writeValue(byte[] out, int offset) {
+	System.arraycopy(value, 0, out, offset, value.length);
+	return offset + value.length;
+    }
+
     /**
      * Get number of the bytes from which this TLV was created.<br>
      * Only makes sense if created from bytes.
@@ -122,98 +137,9 @@ class TagLengthValue {
     int getRawLength() {
 	return this.numOctets;
     }
-    /**
-     * When fed with a large input stream, cut off the portion which makes up this TLV.
-     * @param inputWithThisTag
-     * @return
-     */
-    byte[] extractRest(byte[] inputWithThisTag) throws TLVException {
-	try {
-	    int from = getRawLength();
-	    int to = inputWithThisTag.length;
-	    return Arrays.copyOfRange(inputWithThisTag, from, to);
-	} catch (ArrayIndexOutOfBoundsException | IllegalArgumentException ex) {
-	    throw new TLVException("Data length and claimed length do not match.", ex);
-	}
-    }
-
-
     static TagLengthValue fromBER(byte[] data) throws TLVException {
-	Tag tag = Tag.fromBER(data);
-	// how many octets made up this tag?
-	int numOctets = tag.numOctets;
-
-	// get length
-	int dataLength = 0;
-	boolean endOfLine = false;
-	if (((data[numOctets] >> 7) & 0x01) == 0) {
-	    // short form
-	    dataLength = data[numOctets];
-	    numOctets++;
-	} else {
-	    // has end-of-line octets
-	    if ((data[numOctets] & 0x7F) == 0x00) {
-		endOfLine = true;
-		numOctets++;
-		// loop through content to find termination point
-		int i = 0;
-		boolean endFound = false;
-		boolean zeroFound = false;
-		do {
-		    if (data.length <= numOctets+i) {
-			throw new TLVException("Not enough bytes in input to read TLV length.");
-		    }
-		    byte next = data[numOctets+i];
-		    if (next == 0x00) {
-			if (zeroFound) {
-			    endFound = true;
-			} else {
-			    zeroFound = true;
-			}
-		    } else {
-			zeroFound = false;
-		    }
-		    i++;
-		} while (! endFound);
-		// calculate data length
-		dataLength = i-2;
-	    } else {
-		// long form
-		// first byte indicates number of length bytes
-		int numLengthBytes = data[numOctets] & 0x7F;
-		numOctets++;
-
-		int i = 0;
-		while (i < numLengthBytes) {
-		    if (i*8 > 32) {
-			throw new TLVException("Length doesn't fit into a 32 bit word.");
-		    } else if (data.length < numOctets+i+1) {
-			throw new TLVException("Not enough bytes in input to read TLV length.");
-		    }
-		    if (data[numOctets+i] < 0) {
-			// correct bytes wich are interpreted as negative numbers by java
-			dataLength = (dataLength << 8) | (256+data[numOctets+i]);
-		    } else {
-			dataLength = (dataLength << 8) | data[numOctets+i];
-		    }
-		    i++;
-		}
-		numOctets += i;
-	    }
-	}
-
-	// extract data based on calculated length
-	byte[] dataField = Arrays.copyOfRange(data, numOctets, numOctets+dataLength);
-
-	// recalculate total length of datablock
-	numOctets = numOctets + dataLength;
-	if (endOfLine) {
-	    numOctets += 2;
-	}
-
-	// we have all values, build Tag object and return
-	TagLengthValue result = new TagLengthValue(numOctets, tag, dataField);
-	return result;
+	TLVView view = TLVView.read(data, 0, data.length);
+	return new TagLengthValue(view.getRawLength(), view.getTag(), data, view.getValueOffset(), view.getValueLength());
     }
 
 
@@ -77,4 +77,13 @@ public class TLVList {
 	return new LinkedList<>();
     }
 
+    /**
+     * Gets the BER encoding of the underlying TLV structure.
+     *
+     * @return The encoded bytes.
+     */
+    public byte[] toBER() {
+	return tlv.toBER();
+    }
+
 }
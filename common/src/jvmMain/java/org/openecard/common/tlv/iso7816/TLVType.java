@@ -38,4 +38,13 @@ public abstract class TLVType {
 	this.tlv = tlv;
     }
 
+    /**
+     * Gets the BER encoding of the underlying TLV structure.
+     *
+     * @return The encoded bytes.
+     */
+    public byte[] toBER() {
+	return tlv.toBER();
+    }
+
 }
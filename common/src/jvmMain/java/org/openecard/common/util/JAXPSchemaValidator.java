@@ -1,5 +1,5 @@
 /****************************************************************************
- * Copyright (C) 2014-2018 ecsec GmbH.
+ * Copyright (C) 2014-2026 ecsec GmbH.
  * All rights reserved.
  * Contact: ecsec GmbH (info@ecsec.de)
  *
@@ -26,6 +26,11 @@ import org.openecard.common.interfaces.DocumentValidatorException;
 import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.Nonnull;
 import javax.xml.XMLConstants;
 import javax.xml.transform.Source;
@@ -34,6 +39,7 @@ import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
 import javax.xml.validation.Validator;
+import javax.xml.validation.ValidatorHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
@@ -47,6 +53,8 @@ import org.w3c.dom.Node;
 
 /**
  * Utility class which allows to validate documents against the eCard schemas.
+ * Instances are cached per set of schema names, so the schemas are compiled only once per process. Each instance
+ * keeps a bounded pool of validators which are reused across validations and threads.
  *
  * @author Hans-Martin Haase
  * @author Tobias Wich
@@ -56,11 +64,19 @@ public class JAXPSchemaValidator implements DocumentSchemaValidator {
     private static final Logger LOG = LoggerFactory.getLogger(JAXPSchemaValidator.class);
 
     private static final String XERCES_FACTORY = "org.apache.xerces.jaxp.validation.XMLSchemaFactory";
+    private static final int POOL_SIZE = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static final Map<String, JAXPSchemaValidator> INSTANCES = new ConcurrentHashMap<>();
 
     private final Schema schema;
+    private final BlockingQueue<Validator> validatorPool;
+
+    private final AtomicLong numValidations = new AtomicLong();
+    private final AtomicLong numFailures = new AtomicLong();
+    private final AtomicLong validationTimeNanos = new AtomicLong();
 
     /**
      * Loads a ECardSchemaValidator instance based on the given schemas.
+     * The instance is created only once for a set of schema names and shared afterwards.
      *
      * @param schemaNames Resource names of the schemas which shall be used in the validation process.
      * @return Instance if the schema validator capable of verificating the given schema.
@@ -72,8 +88,19 @@ public class JAXPSchemaValidator implements DocumentSchemaValidator {
 	    if (schemaNames == null || schemaNames.length == 0) {
 		throw new IOException("No schemas given to validate the object.");
 	    } else {
-		StreamSource[] schemaDocuments = convertSchemaStrings2StreamSources(schemaNames);
-		return new JAXPSchemaValidator(schemaDocuments);
+		String key = String.join("\n", schemaNames);
+		JAXPSchemaValidator validator = INSTANCES.get(key);
+		if (validator == null) {
+		    synchronized (INSTANCES) {
+			validator = INSTANCES.get(key);
+			if (validator == null) {
+			    StreamSource[] schemaDocuments = convertSchemaStrings2StreamSources(schemaNames);
+			    validator = new JAXPSchemaValidator(schemaDocuments);
+			    INSTANCES.put(key, validator);
+			}
+		    }
+		}
+		return validator;
 	    }
 	} catch (IOException ex) {
 	    LOG.error("Not all schemas could not be found or loaded.", ex);
@@ -82,13 +109,45 @@ public class JAXPSchemaValidator implements DocumentSchemaValidator {
     }
 
     private JAXPSchemaValidator(URL schemaURL) throws SAXException {
-	schema = getSchemaFactory().newSchema(schemaURL);
+	this(getSchemaFactory().newSchema(schemaURL));
     }
 
     private JAXPSchemaValidator(StreamSource[] schemaDocuments) throws SAXException {
-	schema = getSchemaFactory().newSchema(schemaDocuments);
+	this(getSchemaFactory().newSchema(schemaDocuments));
+    }
+
+    private JAXPSchemaValidator(Schema schema) {
+	this.schema = schema;
+	this.validatorPool = new ArrayBlockingQueue<>(POOL_SIZE);
+    }
+
+
+    /**
+     * Gets the number of documents validated by this instance.
+     *
+     * @return Number of validations, including the failed ones.
+     */
+    public long getValidationCount() {
+	return numValidations.get();
+    }
+
+    /**
+     * Gets the number of documents which failed to validate.
+     *
+     * @return Number of failed validations.
+     */
+    public long getFailureCount() {
+	return numFailures.get();
     }
 
+    /**
+     * Gets the accumulated time spent in the validation of documents.
+     *
+     * @return Validation time in nanoseconds.
+     */
+    public long getValidationTimeNanos() {
+	return validationTimeNanos.get();
+    }
 
     @Override
     public void validate(@Nonnull Document doc) throws DocumentValidatorException {
@@ -100,20 +159,52 @@ public class JAXPSchemaValidator implements DocumentSchemaValidator {
 	validateNode(doc);
     }
 
+    @Override
+    public ValidatorHandler newValidatorHandler(@Nonnull ErrorHandler errorHandler) {
+	ValidatorHandler handler = schema.newValidatorHandler();
+	handler.setErrorHandler(errorHandler);
+	return handler;
+    }
+
     private void validateNode(@Nonnull Node doc) throws DocumentValidatorException {
+	long start = System.nanoTime();
+	Validator validator = borrowValidator();
 	try {
 	    Source source = new DOMSource(doc);
-	    Validator validator= schema.newValidator();
-	    validator.setErrorHandler(new CustomErrorHandler());
 	    validator.validate(source);
 	} catch (SAXException ex) {
+	    numFailures.incrementAndGet();
 	    LOG.error("Validation of the input object failed.", ex);
 	    throw new DocumentValidatorException("Failed to validate eCard message.", ex);
 	} catch (IOException ex) {
+	    numFailures.incrementAndGet();
 	    throw new IllegalArgumentException("Given object contains errors.", ex);
+	} finally {
+	    returnValidator(validator);
+	    numValidations.incrementAndGet();
+	    long duration = System.nanoTime() - start;
+	    validationTimeNanos.addAndGet(duration);
+	    LOG.debug("Schema validation took {} us.", duration / 1000);
 	}
     }
 
+    private Validator borrowValidator() {
+	Validator validator = validatorPool.poll();
+	if (validator == null) {
+	    validator = schema.newValidator();
+	    validator.setErrorHandler(new CustomErrorHandler());
+	}
+	return validator;
+    }
+
+    private void returnValidator(Validator validator) {
+	// reset restores the initial state, so the error handler has to be set again
+	validator.reset();
+	validator.setErrorHandler(new CustomErrorHandler());
+	// drop the validator if the pool is full
+	validatorPool.offer(validator);
+    }
+
 
     /**
      * Converts an array of schema name strings to an array of StreamSource objects.
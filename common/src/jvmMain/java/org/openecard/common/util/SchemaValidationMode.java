@@ -0,0 +1,122 @@
+/****************************************************************************
+ * Copyright (C) 2026 ecsec GmbH.
+ * All rights reserved.
+ * Contact: ecsec GmbH (info@ecsec.de)
+ *
+ * This file is part of the Open eCard App.
+ *
+ * GNU General Public License Usage
+ * This file may be used under the terms of the GNU General Public
+ * License version 3.0 as published by the Free Software Foundation
+ * and appearing in the file LICENSE.GPL included in the packaging of
+ * this file. Please review the following information to ensure the
+ * GNU General Public License version 3.0 requirements will be met:
+ * http://www.gnu.org/copyleft/gpl.html.
+ *
+ * Other Usage
+ * Alternatively, this file may be used in accordance with the terms
+ * and conditions contained in a signed written agreement between
+ * you and ecsec GmbH.
+ *
+ ***************************************************************************/
+
+package org.openecard.common.util;
+
+import java.util.concurrent.ThreadLocalRandom;
+import org.openecard.common.OpenecardProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Modes controlling which eCard messages are validated against the schema.
+ * The mode is configured with the property {@code schema_validation.mode}. In {@link #SAMPLING} mode, the fraction of
+ * validated messages is taken from {@code schema_validation.sampling_rate}.
+ */
+public enum SchemaValidationMode {
+
+    /** Validate incoming and outgoing messages. */
+    ALL,
+    /** Validate only incoming messages. */
+    INBOUND,
+    /** Validate a random fraction of the incoming and outgoing messages. */
+    SAMPLING,
+    /** Do not validate at all. */
+    OFF;
+
+    private static final Logger LOG = LoggerFactory.getLogger(SchemaValidationMode.class);
+
+    private static final String MODE_KEY = "schema_validation.mode";
+    private static final String RATE_KEY = "schema_validation.sampling_rate";
+    private static final double DEFAULT_RATE = 0.1;
+    private static final double SAMPLING_RATE = readSamplingRate();
+
+    /**
+     * Gets the mode configured in the Open eCard properties.
+     * {@link #ALL} is returned when no or an invalid mode is configured.
+     *
+     * @return The configured validation mode.
+     */
+    public static SchemaValidationMode fromProperties() {
+	String mode = OpenecardProperties.getProperty(MODE_KEY);
+	if (mode == null || mode.trim().isEmpty()) {
+	    return ALL;
+	}
+	try {
+	    return valueOf(mode.trim().toUpperCase());
+	} catch (IllegalArgumentException ex) {
+	    LOG.warn("Invalid schema validation mode '{}' configured, validating all messages.", mode);
+	    return ALL;
+	}
+    }
+
+    /**
+     * Determines whether the next incoming message shall be validated.
+     *
+     * @return {@code true} if the message shall be validated, {@code false} otherwise.
+     */
+    public boolean validateInbound() {
+	switch (this) {
+	    case ALL:
+	    case INBOUND:
+		return true;
+	    case SAMPLING:
+		return isSampled();
+	    default:
+		return false;
+	}
+    }
+
+    /**
+     * Determines whether the next outgoing message shall be validated.
+     *
+     * @return {@code true} if the message shall be validated, {@code false} otherwise.
+     */
+    public boolean validateOutbound() {
+	switch (this) {
+	    case ALL:
+		return true;
+	    case SAMPLING:
+		return isSampled();
+	    default:
+		return false;
+	}
+    }
+
+    private static boolean isSampled() {
+	return ThreadLocalRandom.current().nextDouble() < SAMPLING_RATE;
+    }
+
+    private static double readSamplingRate() {
+	String rate = OpenecardProperties.getProperty(RATE_KEY);
+	if (rate != null) {
+	    try {
+		return Double.parseDouble(rate.trim());
+	    } catch (NumberFormatException ex) {
+		LOG.warn("Invalid schema validation sampling rate '{}' configured.", rate);
+	    }
+	}
+	return DEFAULT_RATE;
+    }
+
+}
@@ -50,4 +50,17 @@ interface CardRecognition {
 
     @Throws(RecognitionException::class)
     fun recognizeCard(ctx: ByteArray, ifdName: String, slot: BigInteger): ConnectionHandleType.RecognitionInfo?
+
+    /**
+     * Recognizes the card in the given slot.
+     * The ATR as reported in the status of the slot lets the recognition confirm card types it has seen before for this
+     * ATR, instead of evaluating the whole recognition tree.
+     */
+    @Throws(RecognitionException::class)
+    fun recognizeCard(
+        ctx: ByteArray,
+        ifdName: String,
+        slot: BigInteger,
+        atr: ByteArray?,
+    ): ConnectionHandleType.RecognitionInfo?
 }
@@ -22,6 +22,7 @@
 package org.openecard.common.interfaces
 
 import java.lang.reflect.InvocationTargetException
+import java.util.concurrent.CompletableFuture
 
 /**
  * Interface for a webservice method dispatcher.
@@ -55,6 +56,29 @@ interface Dispatcher {
     @Throws(DispatcherExceptionUnchecked::class, InvocationTargetExceptionUnchecked::class)
     fun safeDeliver(request: Any): Any
 
+    /**
+     * Invokes the service which is responsible for messages of the type of the given request object without blocking
+     * the calling thread.
+     * The returned future is completed exceptionally with the same exceptions as thrown by [deliver].
+     *
+     * @param request Object to dispatch to related service.
+     * @return Future yielding the result of the method invocation.
+     */
+    fun deliverAsync(request: Any): CompletableFuture<Any>
+
+    /**
+     * Invokes the service which is responsible for messages of the type of the given request object and suspends the
+     * calling coroutine until the result is available.
+     * This is the coroutine variant of [deliverAsync].
+     *
+     * @param request Object to dispatch to related service.
+     * @return The result of the method invocation.
+     * @throws DispatcherException In case an error happens in the reflections part of the dispatcher.
+     * @throws InvocationTargetException In case the dispatched method throws en exception.
+     */
+    @Throws(DispatcherException::class, InvocationTargetException::class)
+    suspend fun deliverSuspending(request: Any): Any
+
     /**
      * Get a list of String with the available services.
      * The format of the name depends on the name space of the service so the service name has either the prefix
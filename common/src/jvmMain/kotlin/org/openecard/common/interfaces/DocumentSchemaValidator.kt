@@ -23,7 +23,9 @@ package org.openecard.common.interfaces
 
 import org.w3c.dom.Document
 import org.w3c.dom.Element
+import org.xml.sax.ErrorHandler
 import javax.annotation.Nonnull
+import javax.xml.validation.ValidatorHandler
 
 /**
  * Interface for schema based document validations.
@@ -48,4 +50,14 @@ interface DocumentSchemaValidator {
      */
     @Throws(DocumentValidatorException::class)
     fun validate(doc: Element)
+
+    /**
+     * Creates a SAX handler which validates the events passed through it against the schema definition of the instance.
+     * The events are forwarded to the content handler set in the returned handler, so that the document can be
+     * validated in the same pass as it is processed.
+     *
+     * @param errorHandler Handler receiving the validation warnings and errors.
+     * @return The validating handler, or `null` if this instance does not perform any validation.
+     */
+    fun newValidatorHandler(errorHandler: ErrorHandler): ValidatorHandler?
 }
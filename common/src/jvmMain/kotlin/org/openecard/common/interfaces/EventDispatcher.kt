@@ -42,4 +42,14 @@ interface EventDispatcher {
     fun del(cb: EventCallback): EventCallback
 
     fun notify(t: EventType, o: EventObject)
+
+    /**
+     * Checks whether any listener could receive events of the given type.
+     * Emitters of frequent events can use this method to skip creating the event object when nobody listens. A
+     * result of `true` does not guarantee that a filter of the listener accepts the event.
+     *
+     * @param t Type of the event.
+     * @return `true` if events of the given type may be delivered to a listener, `false` otherwise.
+     */
+    fun hasListeners(t: EventType): Boolean
 }
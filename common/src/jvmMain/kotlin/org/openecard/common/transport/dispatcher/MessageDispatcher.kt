@@ -22,8 +22,10 @@
 package org.openecard.transport.dispatcher
 
 import io.github.oshai.kotlinlogging.KotlinLogging
+import iso.std.iso_iec._24727.tech.schema.ConnectionHandleType
 import iso.std.iso_iec._24727.tech.schema.RequestType
 import iso.std.iso_iec._24727.tech.schema.ResponseType
+import org.openecard.common.DynamicContext
 import org.openecard.common.event.ApiCallEventObject
 import org.openecard.common.event.EventType
 import org.openecard.common.interfaces.*
@@ -32,6 +34,15 @@ import java.lang.reflect.InvocationTargetException
 import java.lang.reflect.Method
 import java.lang.reflect.Modifier
 import java.util.*
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.Executor
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.coroutines.resume
+import kotlin.coroutines.resumeWithException
+import kotlin.coroutines.suspendCoroutine
 
 private val LOG = KotlinLogging.logger {  }
 
@@ -39,73 +50,74 @@ private val LOG = KotlinLogging.logger {  }
  * Implementation of the `Dispatcher` interface.
  * This implementation defers its actual reflection work to the [Service] class.
  *
+ * All reflective analysis is performed once when the dispatcher is created. The result is a dispatch table which maps
+ * the request class to the accessor of the service in the environment and the method to invoke on that service.
+ *
+ * Asynchronous deliveries are executed on the executor given to the constructor. When no executor is given, a shared
+ * pool of daemon threads is used. On runtimes supporting virtual threads, a virtual thread per task executor can be
+ * passed instead. The handlers run in the [DynamicContext] scope of the thread calling [deliverAsync].
+ *
  * @author Tobias Wich
  * @author Hans-Martin Haase
  */
-class MessageDispatcher : Dispatcher {
-
-    private val environment: Environment
-
-    /** Key is parameter classname  */
-    private val serviceMap: TreeMap<String, Service>
-
-    /** Key is service interface classname  */
-    private val serviceInstMap: TreeMap<String, Method>
-
-    private val availableServiceNames: MutableList<String>
-
-    private val isFilter: Boolean
-
-    /**
-     * Creates a new MessageDispatcher instance and loads all definitions from the webservice interfaces in the
-     * environment.
-     *
-     * @param environment The environment with the webservice interface getters.
-     */
-    constructor(environment: Environment) {
-        this.environment = environment
-        isFilter = false
-        serviceMap = TreeMap()
-        serviceInstMap = TreeMap()
-        initDefinitions()
-        availableServiceNames = ArrayList()
-        createServiceList()
-    }
-
-    private constructor(environment: Environment, isFilter: Boolean) {
-        this.environment = environment
-        this.isFilter = isFilter
-        serviceMap = TreeMap()
-        serviceInstMap = TreeMap()
-        initDefinitions()
-        availableServiceNames = ArrayList()
-        createServiceList()
-    }
+class MessageDispatcher private constructor(
+	private val environment: Environment,
+	private val isFilter: Boolean,
+	private val executor: Executor,
+) : Dispatcher {
+
+	/** Key is the request class, compared by identity. */
+	private val dispatchTable: Map<Class<*>, DispatchTarget>
+
+	private val availableServiceNames: List<String>
+
+	/**
+	 * Creates a new MessageDispatcher instance and loads all definitions from the webservice interfaces in the
+	 * environment.
+	 *
+	 * @param environment The environment with the webservice interface getters.
+	 */
+	constructor(environment: Environment) : this(environment, false, DEFAULT_EXECUTOR)
+
+	/**
+	 * Creates a new MessageDispatcher instance and loads all definitions from the webservice interfaces in the
+	 * environment.
+	 *
+	 * @param environment The environment with the webservice interface getters.
+	 * @param executor The executor running the handlers of asynchronous deliveries.
+	 */
+	constructor(environment: Environment, executor: Executor) : this(environment, false, executor)
+
+	init {
+		dispatchTable = initDefinitions()
+		availableServiceNames = createServiceList()
+	}
 
 
     @Throws(DispatcherException::class, InvocationTargetException::class)
     override fun deliver(req: Any): Any {
         val disp = environment.eventDispatcher
         // send API CALL STARTED event
-        val handle = HandlerUtils.extractHandle(req)
-        if (disp != null && req is RequestType) {
+        // the handle is only needed for the events, so skip the reflective lookup when nobody listens
+        var handle: ConnectionHandleType? = null
+        if (disp != null && req is RequestType && disp.hasListeners(EventType.API_CALL_STARTED)) {
+            handle = HandlerUtils.extractHandle(req)
             val startEvt = ApiCallEventObject<RequestType, ResponseType>(handle, req)
 			LOG.debug { "Sending API_CALL_STARTED event." }
             disp.notify(EventType.API_CALL_STARTED, startEvt)
         }
 
         try {
-            val reqClass: Class<*> = req.javaClass
-            val s = getService(reqClass)
-            val serviceImpl = getServiceImpl(s)
+            val target = getDispatchTarget(req.javaClass)
+            val serviceImpl = target.getServiceImpl(environment)
 
 			LOG.debug { "Delivering message of type: ${req.javaClass.getName()}" }
 
-            val result = s.invoke(serviceImpl, req)
+            val result = target.invoke(serviceImpl, req)
 
             // send API CALL FINISHED event
-            if (disp != null && req is RequestType && result is ResponseType) {
-                val finEvt = ApiCallEventObject<RequestType, ResponseType>(handle, req)
+            if (disp != null && req is RequestType && result is ResponseType && disp.hasListeners(EventType.API_CALL_FINISHED)) {
+                val finEvt = ApiCallEventObject<RequestType, ResponseType>(handle ?: HandlerUtils.extractHandle(req), req)
 				finEvt.response = result
 				LOG.debug { "Sending API_CALL_FINISHED event." }
                 disp.notify(EventType.API_CALL_FINISHED, finEvt)
@@ -130,28 +142,50 @@ class MessageDispatcher : Dispatcher {
         }
     }
 
+    override fun deliverAsync(request: Any): CompletableFuture<Any> {
+		val future = CompletableFuture<Any>()
+		try {
+			// the handler must see the dynamic context of the caller, not the one of the pool thread
+			val task = Runnable {
+				try {
+					future.complete(deliver(request))
+				} catch (ex: Throwable) {
+					future.completeExceptionally(ex)
+				}
+			}
+			executor.execute(DynamicContext.currentScope().wrap(task))
+		} catch (ex: RejectedExecutionException) {
+			future.completeExceptionally(DispatcherException("Failed to schedule delivery of the request.", ex))
+		}
+		return future
+	}
+
+	override suspend fun deliverSuspending(request: Any): Any {
+		return suspendCoroutine { cont ->
+			deliverAsync(request).whenComplete { result, ex ->
+				if (ex != null) {
+					cont.resumeWithException(ex)
+				} else {
+					cont.resume(result)
+				}
+			}
+		}
+	}
+
     @Throws(IllegalAccessException::class)
-    private fun getService(reqClass: Class<*>): Service {
-        if (!serviceMap.containsKey(reqClass.getName())) {
+    private fun getDispatchTarget(reqClass: Class<*>): DispatchTarget {
+        return dispatchTable[reqClass] ?: run {
             val msg = "No service with a method containing parameter type " + reqClass.getName() + " present."
             throw IllegalAccessException(msg)
         }
-        return serviceMap.get(reqClass.getName())!!
     }
 
-    @Throws(IllegalAccessException::class, InvocationTargetException::class)
-    private fun getServiceImpl(s: Service): Any {
-        val m = serviceInstMap.get(s.serviceInterface.getName())
-        if (m == null) {
-            val msg = "The environment does not contain a service for class " + s.serviceInterface.getName()
-            throw IllegalAccessException(msg)
-        }
-        val impl = m.invoke(environment)
-        return impl
-    }
 
+    private fun initDefinitions(): Map<Class<*>, DispatchTarget> {
+        val table = HashMap<Class<*>, DispatchTarget>()
+        /** Key is service interface classname  */
+        val serviceInstMap = TreeMap<String, Method>()
 
-    private fun initDefinitions() {
         // load all annotated service methods from environment
         val envClass: Class<*> = this.environment.javaClass
         val envMethods = envClass.getMethods()
@@ -175,14 +209,14 @@ class MessageDispatcher : Dispatcher {
                 val returnType = methodAnnotation.interfaceClass.java
 
                 // check if the service is already defined
-                if (this.serviceInstMap.containsKey(returnType.name)) {
+                if (serviceInstMap.containsKey(returnType.name)) {
                     val msg = "Omitting service type ${returnType.getName()}, because its type already associated with another service."
 					LOG.warn { msg }
                     continue
                 }
 
                 // add env method mapping
-                this.serviceInstMap.put(returnType.getName(), nextAccessor)
+                serviceInstMap.put(returnType.getName(), nextAccessor)
 
                 // update type mentioned in Dispatchable annotation to the actual type returned by the function
                 var returnTypeImpl = returnType
@@ -206,16 +240,18 @@ class MessageDispatcher : Dispatcher {
                 val service = Service(returnType, returnTypeImpl, isFilter)
 
                 for (reqClass in service.getRequestClasses()) {
-                    if (serviceMap.containsKey(reqClass.getName())) {
+                    if (table.containsKey(reqClass)) {
                         var msg = "Omitting method with parameter type ${reqClass.getName()} in service interface ${returnType.getName()} because its "
                         msg += "type already associated with another service."
 						LOG.warn { msg }
                     } else {
-                        serviceMap.put(reqClass.getName(), service)
+                        table.put(reqClass, DispatchTarget(service, nextAccessor, service.getMethod(reqClass)))
                     }
                 }
             }
         }
+
+        return table
     }
 
     override val serviceList: List<String>
@@ -228,14 +264,55 @@ class MessageDispatcher : Dispatcher {
 			if (isFilter) {
 				return this
 			}
-			return MessageDispatcher(this.environment, true)
+			return MessageDispatcher(this.environment, true, executor)
 		}
 
-    private fun createServiceList() {
+    private fun createServiceList(): List<String> {
         val services = TreeSet<Service>()
-        services.addAll(serviceMap.values)
+        dispatchTable.values.mapTo(services) { it.service }
+        val names = ArrayList<String>()
         for (service in services) {
-            availableServiceNames.addAll(service.actionList)
+            names.addAll(service.actionList)
         }
+        return names
     }
+
+	companion object {
+		private val THREAD_NUM = AtomicInteger(1)
+
+		private val DEFAULT_EXECUTOR: ExecutorService by lazy {
+			Executors.newCachedThreadPool { r ->
+				val t = Thread(r, "Dispatcher-Async-${THREAD_NUM.getAndIncrement()}")
+				t.isDaemon = true
+				t
+			}
+		}
+	}
+}
+
+/**
+ * Precomputed entry of the dispatch table for one request type.
+ * The environment accessor and the service method are resolved when the dispatcher is created, so that delivering a
+ * message only needs to obtain the service instance and invoke the method.
+ */
+internal class DispatchTarget(
+	val service: Service,
+	private val accessor: Method,
+	private val method: Method,
+) {
+	@Throws(IllegalAccessException::class, InvocationTargetException::class)
+	fun getServiceImpl(environment: Environment): Any {
+		// the environment may be reconfigured at any time, so always ask for the current instance
+		val impl = accessor.invoke(environment)
+		if (impl == null) {
+			val msg = "The environment does not contain a service for class " + service.serviceInterface.getName()
+			throw IllegalAccessException(msg)
+		}
+		return impl
+	}
+
+	@Throws(DispatcherException::class, InvocationTargetException::class)
+	fun invoke(serviceImpl: Any, req: Any): Any {
+		return service.invoke(serviceImpl, method, req)
+	}
 }
@@ -31,6 +31,7 @@ import org.openecard.ws.marshal.WSMarshallerFactory.Companion.createInstance
 import java.lang.reflect.InvocationTargetException
 import java.lang.reflect.Method
 import java.util.*
+import java.util.concurrent.ConcurrentHashMap
 import javax.xml.transform.TransformerException
 
 private val LOG = KotlinLogging.logger {  }
@@ -51,7 +52,7 @@ internal class Service @JvmOverloads constructor(
 ) : Comparable<Service?> {
     private val requestClasses: ArrayList<Class<*>> = ArrayList()
 	private val requestMethods: TreeMap<String, Method> = TreeMap()
-	private val objectLoggers: HashMap<Class<*>, MessageLogger> = HashMap()
+	private val objectLoggers: ConcurrentHashMap<Class<*>, MessageLogger> = ConcurrentHashMap()
 	private val actions: MutableList<String> = ArrayList()
 
 	/**
@@ -101,15 +102,7 @@ internal class Service @JvmOverloads constructor(
      */
     private fun getLogger(ifaceImpl: Any): MessageLogger {
         val implClass: Class<*> = ifaceImpl.javaClass
-        if (objectLoggers.containsKey(implClass)) {
-            return objectLoggers.get(implClass)!!
-        } else {
-            synchronized(this) {
-                val implLogger = MessageLogger(ifaceImpl.javaClass)
-                objectLoggers.put(implClass, implLogger)
-                return implLogger
-            }
-        }
+        return objectLoggers.getOrPut(implClass) { MessageLogger(implClass) }
     }
 
     /**
@@ -123,10 +116,30 @@ internal class Service @JvmOverloads constructor(
      */
     @Throws(DispatcherException::class, InvocationTargetException::class)
     fun invoke(ifaceImpl: Any, req: Any): Any {
+        try {
+            val m = getMethod(req.javaClass)
+            return invoke(ifaceImpl, m, req)
+        } catch (ex: NoSuchMethodException) {
+            throw DispatcherException(ex.message, ex)
+        }
+    }
+
+
+    /**
+     * Invokes the given webservice method in the given webservice class instance.
+     * This variant is used by the dispatch table of the [MessageDispatcher] which resolves the method only once.
+     *
+     * @param ifaceImpl The instance implementing the webservice interface this instance is responsible for.
+     * @param m The method of the webservice interface belonging to the type of the request.
+     * @param req The request object to dispatch.
+     * @return The result of the method invocation.
+     * @throws DispatcherException In case an error happens in the reflections part of the dispatcher.
+     * @throws InvocationTargetException In case the dispatched method throws en exception.
+     */
+    @Throws(DispatcherException::class, InvocationTargetException::class)
+    fun invoke(ifaceImpl: Any, m: Method, req: Any): Any {
         try {
             val l = getLogger(ifaceImpl)
-            val reqClass: Class<*> = req.javaClass
-            val m = getMethod(reqClass.getName())
             // invoke method
             l.logRequest(req)
             val res = m.invoke(ifaceImpl, req)
@@ -134,8 +147,6 @@ internal class Service @JvmOverloads constructor(
             return res
         } catch (ex: IllegalAccessException) {
             throw DispatcherException(ex.message, ex)
-        } catch (ex: NoSuchMethodException) {
-            throw DispatcherException(ex.message, ex)
         } catch (ex: IllegalArgumentException) {
             throw DispatcherException(ex.message, ex)
         }
@@ -162,6 +173,18 @@ internal class Service @JvmOverloads constructor(
         return requestClasses.toList()
     }
 
+    /**
+     * Gets the webservice method accepting the given request class.
+     *
+     * @param reqClass The request class.
+     * @return The method of the webservice implementation accepting the request class.
+     * @throws NoSuchMethodException In case no method for the request class exists.
+     */
+    @Throws(NoSuchMethodException::class)
+    fun getMethod(reqClass: Class<*>): Method {
+        return getMethod(reqClass.getName())
+    }
+
     @Throws(NoSuchMethodException::class)
     private fun getMethod(paramClass: String?): Method {
         val m = requestMethods.get(paramClass)
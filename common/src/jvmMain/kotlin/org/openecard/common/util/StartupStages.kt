@@ -0,0 +1,85 @@
+/****************************************************************************
+ * Copyright (C) 2026 ecsec GmbH.
+ * All rights reserved.
+ * Contact: ecsec GmbH (info@ecsec.de)
+ *
+ * This file is part of the Open eCard App.
+ *
+ * GNU General Public License Usage
+ * This file may be used under the terms of the GNU General Public
+ * License version 3.0 as published by the Free Software Foundation
+ * and appearing in the file LICENSE.GPL included in the packaging of
+ * this file. Please review the following information to ensure the
+ * GNU General Public License version 3.0 requirements will be met:
+ * http://www.gnu.org/copyleft/gpl.html.
+ *
+ * Other Usage
+ * Alternatively, this file may be used in accordance with the terms
+ * and conditions contained in a signed written agreement between
+ * you and ecsec GmbH.
+ *
+ ***************************************************************************/
+
+package org.openecard.common.util
+
+import io.github.oshai.kotlinlogging.KotlinLogging
+import java.util.Collections
+import java.util.concurrent.Callable
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.atomic.AtomicInteger
+
+private val LOG = KotlinLogging.logger { }
+
+/**
+ * Shared executor for the initialization stages of the application.
+ *
+ * Stages which do not depend on each other, such as creating the JAXB context, compiling the recognition tree and
+ * indexing the CIF repository, run in parallel on a small pool of daemon threads instead of one dedicated thread per
+ * component. The duration of each stage is logged and can be queried with [timings].
+ */
+object StartupStages {
+	private val threadNum = AtomicInteger(1)
+	private val executor: ExecutorService =
+		Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors().coerceIn(2, 4)) { r ->
+			Thread(r, "Startup-${threadNum.getAndIncrement()}").apply { isDaemon = true }
+		}
+	private val stageTimings = ConcurrentHashMap<String, Long>()
+
+	/**
+	 * Durations of the finished stages in milliseconds, keyed by stage name.
+	 */
+	@JvmStatic
+	val timings: Map<String, Long>
+		get() = Collections.unmodifiableMap(HashMap(stageTimings))
+
+	/**
+	 * Runs a stage in the background.
+	 * Failures are logged and reported by the returned future.
+	 *
+	 * @param name Name of the stage used in the log and in [timings].
+	 * @param stage The work performed by the stage.
+	 * @return Future yielding the result of the stage.
+	 */
+	@JvmStatic
+	fun <T> submit(name: String, stage: Callable<T>): Future<T> {
+		return executor.submit(Callable { measure(name, stage) })
+	}
+
+	private fun <T> measure(name: String, stage: Callable<T>): T {
+		val start = System.nanoTime()
+		try {
+			return stage.call()
+		} catch (ex: Exception) {
+			LOG.warn(ex) { "Startup stage '$name' failed." }
+			throw ex
+		} finally {
+			val millis = (System.nanoTime() - start) / 1_000_000
+			stageTimings[name] = millis
+			LOG.info { "Startup stage '$name' took $millis ms." }
+		}
+	}
+}
+
@@ -0,0 +1,102 @@
+/****************************************************************************
+ * Copyright (C) 2026 ecsec GmbH.
+ * All rights reserved.
+ * Contact: ecsec GmbH (info@ecsec.de)
+ *
+ * This file is part of the Open eCard App.
+ *
+ * GNU General Public License Usage
+ * This file may be used under the terms of the GNU General Public
+ * License version 3.0 as published by the Free Software Foundation
+ * and appearing in the file LICENSE.GPL included in the packaging of
+ * this file. Please review the following information to ensure the
+ * GNU General Public License version 3.0 requirements will be met:
+ * http://www.gnu.org/copyleft/gpl.html.
+ *
+ * Other Usage
+ * Alternatively, this file may be used in accordance with the terms
+ * and conditions contained in a signed written agreement between
+ * you and ecsec GmbH.
+ *
+ ***************************************************************************/
+
+
+package org.openecard.common;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+
+public class DynamicContextTest {
+
+    private static final String KEY = "test-instance";
+
+    @Test
+    public void testScopeOnPooledThread() throws Exception {
+	ExecutorService pool = Executors.newSingleThreadExecutor();
+	try {
+	    // start the pool thread before any value exists, so nothing can be inherited
+	    pool.submit(() -> DynamicContext.getInstance(KEY)).get();
+
+	    DynamicContext.Scope flow = DynamicContext.newScope();
+	    flow.run(() -> DynamicContext.getInstance(KEY).put("value", "flow"));
+
+	    Future<Object> plain = pool.submit(() -> DynamicContext.getInstance(KEY).get("value"));
+	    assertNull(plain.get());
+
+	    Future<Object> scoped = pool.submit(flow.wrap(() -> DynamicContext.getInstance(KEY).get("value")));
+	    assertEquals(scoped.get(), "flow");
+
+	    // the pool thread is back in its own scope afterwards
+	    assertNull(pool.submit(() -> DynamicContext.getInstance(KEY).get("value")).get());
+	} finally {
+	    pool.shutdownNow();
+	}
+    }
+
+    @Test
+    public void testPropagatingExecutor() throws Exception {
+	ExecutorService pool = Executors.newFixedThreadPool(2);
+	try {
+	    Executor executor = DynamicContext.propagating(pool);
+	    DynamicContext.Scope a = DynamicContext.newScope();
+	    DynamicContext.Scope b = DynamicContext.newScope();
+	    a.run(() -> DynamicContext.getInstance(KEY).put("value", "a"));
+	    b.run(() -> DynamicContext.getInstance(KEY).put("value", "b"));
+
+	    Object[] results = new Object[2];
+	    CountDownLatch done = new CountDownLatch(2);
+	    a.run(() -> executor.execute(() -> {
+		results[0] = DynamicContext.getInstance(KEY).get("value");
+		done.countDown();
+	    }));
+	    b.run(() -> executor.execute(() -> {
+		results[1] = DynamicContext.getInstance(KEY).get("value");
+		done.countDown();
+	    }));
+	    done.await();
+	    assertEquals(results[0], "a");
+	    assertEquals(results[1], "b");
+	} finally {
+	    pool.shutdownNow();
+	}
+    }
+
+    @Test
+    public void testNestedScopes() {
+	DynamicContext.Scope outer = DynamicContext.newScope();
+	DynamicContext.Scope inner = DynamicContext.newScope();
+	outer.run(() -> {
+	    DynamicContext.getInstance(KEY).put("value", "outer");
+	    inner.run(() -> assertNull(DynamicContext.getInstance(KEY).get("value")));
+	    assertSame(DynamicContext.currentScope(), outer);
+	    assertEquals(DynamicContext.getInstance(KEY).get("value"), "outer");
+	});
+    }
+
+}
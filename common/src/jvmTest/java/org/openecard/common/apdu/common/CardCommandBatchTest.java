@@ -0,0 +1,161 @@
+/****************************************************************************
+ * Copyright (C) 2026 ecsec GmbH.
+ * All rights reserved.
+ * Contact: ecsec GmbH (info@ecsec.de)
+ *
+ * This file is part of the Open eCard App.
+ *
+ * GNU General Public License Usage
+ * This file may be used under the terms of the GNU General Public
+ * License version 3.0 as published by the Free Software Foundation
+ * and appearing in the file LICENSE.GPL included in the packaging of
+ * this file. Please review the following information to ensure the
+ * GNU General Public License version 3.0 requirements will be met:
+ * http://www.gnu.org/copyleft/gpl.html.
+ *
+ * Other Usage
+ * Alternatively, this file may be used in accordance with the terms
+ * and conditions contained in a signed written agreement between
+ * you and ecsec GmbH.
+ *
+ ***************************************************************************/
+
+package org.openecard.common.apdu.common;
+
+import iso.std.iso_iec._24727.tech.schema.InputAPDUInfoType;
+import iso.std.iso_iec._24727.tech.schema.Transmit;
+import iso.std.iso_iec._24727.tech.schema.TransmitResponse;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import kotlin.coroutines.Continuation;
+import org.openecard.common.WSHelper;
+import org.openecard.common.apdu.Select;
+import org.openecard.common.apdu.exception.APDUException;
+import org.openecard.common.interfaces.Dispatcher;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+
+public class CardCommandBatchTest {
+
+    @Test
+    public void testMakeTransmit() {
+	byte[] slotHandle = new byte[] { 1, 2, 3 };
+	byte[] readBinary = new byte[] { 0x00, (byte) 0xB0, 0x00, 0x00, 0x00 };
+
+	CardCommandBatch batch = new CardCommandBatch()
+		.add(new Select.File(new byte[] { 0x2F, 0x00 }))
+		.add(readBinary, CardCommandStatus.response(0x9000, 0x6282))
+		.add(readBinary, null);
+	assertEquals(batch.size(), 3);
+
+	Transmit t = batch.makeTransmit(slotHandle);
+	assertEquals(t.getSlotHandle(), slotHandle);
+	List<InputAPDUInfoType> infos = t.getInputAPDUInfo();
+	assertEquals(infos.size(), 3);
+
+	// default is 9000, which aborts the sequence on any other status
+	assertEquals(infos.get(0).getAcceptableStatusCode().size(), 1);
+	assertEquals(infos.get(0).getAcceptableStatusCode().get(0), CardCommandStatus.ok());
+
+	assertEquals(infos.get(1).getInputAPDU(), readBinary);
+	assertEquals(infos.get(1).getAcceptableStatusCode().size(), 2);
+
+	// no status codes means any response is accepted
+	assertTrue(infos.get(2).getAcceptableStatusCode().isEmpty());
+    }
+
+    @Test
+    public void testEmptyBatch() throws Exception {
+	CardCommandBatch batch = new CardCommandBatch();
+	assertTrue(batch.isEmpty());
+	// nothing is sent, so no dispatcher is needed
+	assertTrue(batch.transmit(null, new byte[] { 1 }).isEmpty());
+    }
+
+    @Test
+    public void testAbortOnUnacceptableStatus() {
+	byte[] readBinary = new byte[] { 0x00, (byte) 0xB0, 0x00, 0x00, 0x00 };
+	byte[] ok = new byte[] { 0x01, 0x02, (byte) 0x90, 0x00 };
+	byte[] notFound = new byte[] { 0x6A, (byte) 0x82 };
+	SimulatedCard card = new SimulatedCard(ok, ok, notFound, ok);
+
+	CardCommandBatch batch = new CardCommandBatch()
+		.add(readBinary, CardCommandStatus.responseOk())
+		.add(readBinary, CardCommandStatus.responseOk())
+		.add(readBinary, CardCommandStatus.responseOk())
+		.add(readBinary, CardCommandStatus.responseOk());
+	try {
+	    batch.transmit(card, new byte[] { 1 });
+	    fail("Batch with unacceptable status code must fail.");
+	} catch (APDUException ex) {
+	    // the command after the failed one is not sent
+	    assertEquals(card.numCommands, 3);
+
+	    TransmitResponse tr = ex.getTransmitResponse();
+	    assertNotNull(tr);
+	    assertEquals(tr.getOutputAPDU().size(), 3);
+	    assertEquals(tr.getOutputAPDU().get(0), ok);
+	    assertEquals(tr.getOutputAPDU().get(1), ok);
+	    assertNotNull(ex.getResponseAPDU());
+	    assertEquals(ex.getResponseAPDU().getTrailer(), notFound);
+	}
+    }
+
+    /**
+     * Card answering with fixed responses the way the IFD would, including the abort on unexpected status codes.
+     */
+    private static class SimulatedCard implements Dispatcher {
+
+	private final byte[][] responses;
+	private int numCommands = 0;
+
+	SimulatedCard(byte[]... responses) {
+	    this.responses = responses;
+	}
+
+	@Override
+	public Object deliver(Object request) {
+	    Transmit transmit = (Transmit) request;
+	    TransmitResponse response = WSHelper.makeResponse(TransmitResponse.class, WSHelper.makeResultOK());
+	    for (InputAPDUInfoType info : transmit.getInputAPDUInfo()) {
+		byte[] rapdu = responses[numCommands++];
+		response.getOutputAPDU().add(rapdu);
+		List<byte[]> codes = info.getAcceptableStatusCode();
+		if (! codes.isEmpty() && ! new CardResponseAPDU(rapdu).isPositiveResponse(codes)) {
+		    response.setResult(WSHelper.makeResultUnknownError("Unexpected status."));
+		    break;
+		}
+	    }
+	    return response;
+	}
+
+	@Override
+	public Object safeDeliver(Object request) {
+	    return deliver(request);
+	}
+
+	@Override
+	public CompletableFuture<Object> deliverAsync(Object request) {
+	    return CompletableFuture.completedFuture(deliver(request));
+	}
+
+	@Override
+	public Object deliverSuspending(Object request, Continuation<? super Object> cont) {
+	    return deliver(request);
+	}
+
+	@Override
+	public List<String> getServiceList() {
+	    return Collections.emptyList();
+	}
+
+	@Override
+	public Dispatcher getFilter() {
+	    return this;
+	}
+
+    }
+
+}
@@ -0,0 +1,198 @@
+/****************************************************************************
+ * Copyright (C) 2026 ecsec GmbH.
+ * All rights reserved.
+ * Contact: ecsec GmbH (info@ecsec.de)
+ *
+ * This file is part of the Open eCard App.
+ *
+ * GNU General Public License Usage
+ * This file may be used under the terms of the GNU General Public
+ * License version 3.0 as published by the Free Software Foundation
+ * and appearing in the file LICENSE.GPL included in the packaging of
+ * this file. Please review the following information to ensure the
+ * GNU General Public License version 3.0 requirements will be met:
+ * http://www.gnu.org/copyleft/gpl.html.
+ *
+ * Other Usage
+ * Alternatively, this file may be used in accordance with the terms
+ * and conditions contained in a signed written agreement between
+ * you and ecsec GmbH.
+ *
+ ***************************************************************************/
+package org.openecard.common.apdu.utils
+
+import iso.std.iso_iec._24727.tech.schema.Transmit
+import iso.std.iso_iec._24727.tech.schema.TransmitResponse
+import org.openecard.common.WSHelper
+import org.openecard.common.apdu.common.CardCommandAPDU
+import org.openecard.common.interfaces.Dispatcher
+import org.openecard.common.tlv.TLV
+import org.openecard.common.tlv.TLVView
+import org.openecard.common.util.ByteUtils
+import org.testng.Assert
+import org.testng.annotations.Test
+import java.util.concurrent.CompletableFuture
+import kotlin.random.Random
+
+class BinaryFileReaderTest {
+
+	@Test
+	fun testSmallFile() {
+		val content = Random(1).nextBytes(1000)
+		val card = SimulatedCard(content)
+
+		val unknownSize = read(card, null, false)
+		Assert.assertEquals(unknownSize.first, content)
+
+		val knownSize = read(card, content.size.toLong(), false)
+		Assert.assertEquals(knownSize.first, content)
+		Assert.assertEquals(knownSize.second.numRoundTrips, 1)
+	}
+
+	@Test
+	fun testLargeFile() {
+		// beyond the 15 bit offsets of READ BINARY with even instruction byte
+		val content = Random(2).nextBytes(70000)
+		val card = SimulatedCard(content)
+
+		for (extended in listOf(false, true)) {
+			val unknownSize = read(card, null, extended)
+			Assert.assertEquals(unknownSize.first, content)
+			val knownSize = read(card, content.size.toLong(), extended)
+			Assert.assertEquals(knownSize.first, content)
+			Assert.assertEquals(knownSize.second.numRoundTrips, 1)
+		}
+		Assert.assertTrue(card.oddInsCommands > 0)
+	}
+
+	@Test
+	fun testShortEf() {
+		val content = Random(3).nextBytes(600)
+		val card = SimulatedCard(content)
+		val reader = BinaryFileReader(card, SLOT, 0x1D.toByte(), false)
+		Assert.assertEquals(reader.read(content.size.toLong()), content)
+		Assert.assertTrue(card.oddInsCommands > 0)
+	}
+
+	@Test
+	fun testFcpSizeTooLarge() {
+		// some cards report the allocated size instead of the size of the content
+		val content = Random(4).nextBytes(700)
+		val card = SimulatedCard(content)
+		val result = read(card, 2000, false)
+		Assert.assertEquals(result.first, content)
+	}
+
+	@Test
+	fun testCardReturnsLessThanRequested() {
+		val content = Random(5).nextBytes(3000)
+		val card = SimulatedCard(content, maxResponse = 100)
+		val result = read(card, content.size.toLong(), false)
+		Assert.assertEquals(result.first, content)
+	}
+
+	@Test
+	fun testRoundTrips() {
+		val content = Random(6).nextBytes(8 * 1024)
+		val card = SimulatedCard(content)
+		val unknownSize = read(card, null, false)
+		val knownSize = read(card, content.size.toLong(), false)
+		Assert.assertEquals(knownSize.first, content)
+		Assert.assertEquals(knownSize.second.numRoundTrips, 1)
+		Assert.assertTrue(knownSize.second.numRoundTrips < unknownSize.second.numRoundTrips)
+	}
+
+	@Test
+	fun testOddInsWithoutDiscretionaryData() {
+		// some cards return the data of READ BINARY with odd instruction byte without the '53' wrapper
+		val content = Random(7).nextBytes(40000)
+		val card = SimulatedCard(content, wrapOddIns = false)
+		for (size in listOf(null, content.size.toLong())) {
+			val result = read(card, size, false)
+			Assert.assertEquals(result.first, content)
+		}
+		Assert.assertTrue(card.oddInsCommands > 0)
+	}
+
+	private fun read(card: SimulatedCard, size: Long?, extended: Boolean): Pair<ByteArray, BinaryFileReader> {
+		val reader = BinaryFileReader(card, SLOT, null, extended)
+		val result = reader.read(size)
+		return Pair(result, reader)
+	}
+
+}
+
+private val SLOT = byteArrayOf(1, 2, 3, 4)
+
+/**
+ * Transparent EF answering READ BINARY commands the way the IFD would, including the abort on unexpected status codes.
+ */
+private class SimulatedCard(
+	private val content: ByteArray,
+	private val maxResponse: Int = Int.MAX_VALUE,
+	private val wrapOddIns: Boolean = true,
+) : Dispatcher {
+	var oddInsCommands = 0
+
+	override fun deliver(request: Any): Any {
+		val transmit = request as Transmit
+		val response = WSHelper.makeResponse(TransmitResponse::class.java, WSHelper.makeResultOK())
+		for (info in transmit.inputAPDUInfo) {
+			val rapdu = process(CardCommandAPDU(info.inputAPDU))
+			response.outputAPDU.add(rapdu)
+			val sw = rapdu.copyOfRange(rapdu.size - 2, rapdu.size)
+			val codes = info.acceptableStatusCode
+			if (codes.isNotEmpty() && codes.none { ByteUtils.isPrefix(it, sw) }) {
+				response.result = WSHelper.makeResultUnknownError("Unexpected status.")
+				break
+			}
+		}
+		return response
+	}
+
+	private fun process(cmd: CardCommandAPDU): ByteArray {
+		val oddIns = cmd.ins == 0xB1.toByte()
+		val offset = if (oddIns) {
+			oddInsCommands++
+			val ddo = TLVView.fromBER(cmd.data)!!
+			Assert.assertEquals(ddo.tagNumWithClass, 0x53L)
+			val offsetDo = ddo.child!!
+			Assert.assertEquals(offsetDo.tagNumWithClass, 0x54L)
+			offsetDo.value.fold(0) { acc, b -> (acc shl 8) or (b.toInt() and 0xFF) }
+		} else if (cmd.p1.toInt() and 0x80 != 0) {
+			cmd.p2.toInt() and 0xFF
+		} else {
+			((cmd.p1.toInt() and 0x7F) shl 8) or (cmd.p2.toInt() and 0xFF)
+		}
+		if (offset >= content.size) {
+			return byteArrayOf(0x6B, 0x00)
+		}
+
+		// the discretionary data object of odd instruction responses is part of Le
+		var le = minOf(cmd.le, maxResponse)
+		if (oddIns && wrapOddIns) {
+			le -= if (le - 4 > 0xFF) 4 else if (le - 3 >= 0x80) 3 else 2
+		}
+		val end = minOf(offset + le, content.size)
+		var data = content.copyOfRange(offset, end)
+		if (oddIns && wrapOddIns) {
+			val ddo = TLV()
+			ddo.setTagNumWithClass(0x53.toByte())
+			ddo.value = data
+			data = ddo.toBER()
+		}
+		val sw = if (end == content.size && end - offset < le) byteArrayOf(0x62, 0x82.toByte()) else byteArrayOf(0x90.toByte(), 0x00)
+		return data + sw
+	}
+
+	override fun safeDeliver(request: Any): Any = deliver(request)
+
+	override fun deliverAsync(request: Any): CompletableFuture<Any> = CompletableFuture.completedFuture(deliver(request))
+
+	override suspend fun deliverSuspending(request: Any): Any = deliver(request)
+
+	override val serviceList: List<String> = emptyList()
+
+	override val filter: Dispatcher
+		get() = this
+}
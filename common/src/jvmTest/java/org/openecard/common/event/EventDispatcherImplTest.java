@@ -0,0 +1,167 @@
+/****************************************************************************
+ * Copyright (C) 2026 ecsec GmbH.
+ * All rights reserved.
+ * Contact: ecsec GmbH (info@ecsec.de)
+ *
+ * This file is part of the Open eCard App.
+ *
+ * GNU General Public License Usage
+ * This file may be used under the terms of the GNU General Public
+ * License version 3.0 as published by the Free Software Foundation
+ * and appearing in the file LICENSE.GPL included in the packaging of
+ * this file. Please review the following information to ensure the
+ * GNU General Public License version 3.0 requirements will be met:
+ * http://www.gnu.org/copyleft/gpl.html.
+ *
+ * Other Usage
+ * Alternatively, this file may be used in accordance with the terms
+ * and conditions contained in a signed written agreement between
+ * you and ecsec GmbH.
+ *
+ ***************************************************************************/
+
+
+package org.openecard.common.event;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.openecard.common.interfaces.EventCallback;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+
+public class EventDispatcherImplTest {
+
+    private static final int NUM_EVENTS = 20000;
+
+    @Test
+    public void testOrderedDelivery() throws InterruptedException {
+	EventDispatcherImpl disp = new EventDispatcherImpl();
+	disp.start();
+	try {
+	    RecordingCallback apiCalls = new RecordingCallback(NUM_EVENTS);
+	    RecordingCallback cards = new RecordingCallback(1);
+	    disp.add(apiCalls, EventType.API_CALL_STARTED, EventType.API_CALL_FINISHED);
+	    disp.add(cards, (t, o) -> t == EventType.CARD_INSERTED);
+
+	    for (int i = 0; i < NUM_EVENTS; i++) {
+		EventType t = i % 2 == 0 ? EventType.API_CALL_STARTED : EventType.API_CALL_FINISHED;
+		disp.notify(t, new NumberedEvent(i));
+	    }
+	    disp.notify(EventType.CARD_INSERTED, new NumberedEvent(-1));
+
+	    assertTrue(apiCalls.done.await(10, TimeUnit.SECONDS));
+	    assertTrue(cards.done.await(10, TimeUnit.SECONDS));
+	    for (int i = 0; i < NUM_EVENTS; i++) {
+		assertEquals(apiCalls.numbers.get(i).intValue(), i);
+	    }
+	    assertEquals(cards.numbers, Collections.singletonList(-1));
+	} finally {
+	    disp.terminate();
+	}
+    }
+
+    @Test
+    public void testBatchedDelivery() throws InterruptedException {
+	EventDispatcherImpl disp = new EventDispatcherImpl();
+	disp.start();
+	try {
+	    CountDownLatch release = new CountDownLatch(1);
+	    BatchingCallback cb = new BatchingCallback(release, 100);
+	    disp.add(cb, EventType.API_CALL_STARTED);
+
+	    for (int i = 0; i < 100; i++) {
+		disp.notify(EventType.API_CALL_STARTED, new NumberedEvent(i));
+	    }
+	    // the first delivery blocks until all events are queued
+	    release.countDown();
+
+	    assertTrue(cb.done.await(10, TimeUnit.SECONDS));
+	    assertTrue(cb.batchSizes.size() < 100, "Events have not been coalesced.");
+	    for (int i = 0; i < 100; i++) {
+		assertEquals(cb.numbers.get(i).intValue(), i);
+	    }
+	} finally {
+	    disp.terminate();
+	}
+    }
+
+    @Test
+    public void testRemovedCallback() throws InterruptedException {
+	EventDispatcherImpl disp = new EventDispatcherImpl();
+	disp.start();
+	try {
+	    RecordingCallback cb = new RecordingCallback(1);
+	    disp.add(cb, EventType.CARD_REMOVED);
+	    disp.notify(EventType.CARD_REMOVED, new NumberedEvent(1));
+	    assertTrue(cb.done.await(10, TimeUnit.SECONDS));
+
+	    disp.del(cb);
+	    disp.notify(EventType.CARD_REMOVED, new NumberedEvent(2));
+	    Thread.sleep(50);
+	    assertEquals(cb.numbers, Collections.singletonList(1));
+	} finally {
+	    disp.terminate();
+	}
+    }
+
+
+    private static class NumberedEvent extends EventObject {
+	private final int number;
+
+	NumberedEvent(int number) {
+	    super(null);
+	    this.number = number;
+	}
+    }
+
+    private static class RecordingCallback implements EventCallback {
+	final List<Integer> numbers = Collections.synchronizedList(new ArrayList<>());
+	final CountDownLatch done;
+
+	RecordingCallback(int expected) {
+	    done = new CountDownLatch(expected);
+	}
+
+	@Override
+	public void signalEvent(EventType eventType, EventObject eventData) {
+	    numbers.add(((NumberedEvent) eventData).number);
+	    done.countDown();
+	}
+    }
+
+    private static class BatchingCallback implements BatchEventCallback {
+	final List<Integer> numbers = Collections.synchronizedList(new ArrayList<>());
+	final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+	final CountDownLatch release;
+	final CountDownLatch done;
+
+	BatchingCallback(CountDownLatch release, int expected) {
+	    this.release = release;
+	    this.done = new CountDownLatch(expected);
+	}
+
+	@Override
+	public void signalEvents(List<EventNotification> events) {
+	    try {
+		release.await();
+	    } catch (InterruptedException ex) {
+		Thread.currentThread().interrupt();
+	    }
+	    batchSizes.add(events.size());
+	    for (EventNotification next : events) {
+		signalEvent(next.getType(), next.getEvent());
+	    }
+	}
+
+	@Override
+	public void signalEvent(EventType eventType, EventObject eventData) {
+	    numbers.add(((NumberedEvent) eventData).number);
+	    done.countDown();
+	}
+    }
+
+}
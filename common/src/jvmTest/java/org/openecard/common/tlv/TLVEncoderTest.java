@@ -0,0 +1,114 @@
+/****************************************************************************
+ * Copyright (C) 2026 ecsec GmbH.
+ * All rights reserved.
+ * Contact: ecsec GmbH (info@ecsec.de)
+ *
+ * This file is part of the Open eCard App.
+ *
+ * GNU General Public License Usage
+ * This file may be used under the terms of the GNU General Public
+ * License version 3.0 as published by the Free Software Foundation
+ * and appearing in the file LICENSE.GPL included in the packaging of
+ * this file. Please review the following information to ensure the
+ * GNU General Public License version 3.0 requirements will be met:
+ * http://www.gnu.org/copyleft/gpl.html.
+ *
+ * Other Usage
+ * Alternatively, this file may be used in accordance with the terms
+ * and conditions contained in a signed written agreement between
+ * you and ecsec GmbH.
+ *
+ ***************************************************************************/
+
+
+package org.openecard.common.tlv;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.openecard.common.util.StringUtils;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+
+public class TLVEncoderTest {
+
+    @Test
+    public void testParsedRoundTrip() throws TLVException {
+	byte[] input = StringUtils.toByteArray("62 0C 82 01 78 83 02 3F 00 A5 03 80 01 FF", true);
+	TLV tlv = TLV.fromBER(input);
+
+	assertEquals(tlv.getEncodedLength(false), input.length);
+	assertEquals(tlv.toBER(), input);
+    }
+
+    @Test
+    public void testEmptyConstructedBecomesPrimitive() throws TLVException {
+	TLV tlv = TLV.fromBER(StringUtils.toByteArray("A0 00", true));
+	assertEquals(tlv.toBER(), StringUtils.toByteArray("80 00", true));
+    }
+
+    @Test
+    public void testBuiltStructure() throws TLVException {
+	byte[] longValue = new byte[300];
+	Arrays.fill(longValue, (byte) 0x42);
+
+	TLV first = new TLV();
+	first.setTagNumWithClass(0x5F20);
+	first.setValue(longValue);
+	TLV second = new TLV();
+	second.setTagNumWithClass((byte) 0x80);
+	second.setValue(new byte[] { 1, 2 });
+	first.addToEnd(second);
+
+	TLV root = new TLV();
+	root.setTagNumWithClass((byte) 0x30);
+	root.setChild(first);
+
+	byte[] expected = new byte[4 + 3 + 3 + 300 + 4];
+	int i = 0;
+	for (byte b : StringUtils.toByteArray("30 82 01 35 5F 20 82 01 2C", true)) {
+	    expected[i++] = b;
+	}
+	System.arraycopy(longValue, 0, expected, i, longValue.length);
+	i += longValue.length;
+	for (byte b : StringUtils.toByteArray("80 02 01 02", true)) {
+	    expected[i++] = b;
+	}
+	expected = Arrays.copyOf(expected, i);
+
+	assertEquals(root.getEncodedLength(false), expected.length);
+	assertEquals(root.toBER(), expected);
+
+	// encoding must not touch the tree
+	assertEquals(root.getValueLength(), 0);
+	assertEquals(second.toBER(false), StringUtils.toByteArray("80 02 01 02", true));
+	assertEquals(first.getEncodedLength(true), expected.length - 4);
+    }
+
+    @Test
+    public void testEncodeIntoArrayAndBuffer() throws TLVException {
+	TLV tlv = TLV.fromBER(StringUtils.toByteArray("82 01 78 83 02 3F 00", true));
+	byte[] expected = StringUtils.toByteArray("82 01 78 83 02 3F 00", true);
+	assertEquals(tlv.getEncodedLength(true), expected.length);
+	assertEquals(tlv.toBER(true), expected);
+	assertEquals(tlv.toBER(false), Arrays.copyOf(expected, 3));
+
+	byte[] out = new byte[expected.length + 2];
+	int end = tlv.toBER(out, 1, true);
+	assertEquals(end, expected.length + 1);
+	assertEquals(Arrays.copyOfRange(out, 1, end), expected);
+
+	ByteBuffer buf = ByteBuffer.allocate(expected.length + 1);
+	buf.put((byte) 0);
+	tlv.toBER(buf, true);
+	assertEquals(buf.position(), expected.length + 1);
+	assertEquals(Arrays.copyOfRange(buf.array(), 1, buf.position()), expected);
+    }
+
+    @Test(expectedExceptions = IndexOutOfBoundsException.class)
+    public void testArrayTooSmall() throws TLVException {
+	TLV tlv = TLV.fromBER(StringUtils.toByteArray("82 01 78", true));
+	tlv.toBER(new byte[3], 1, false);
+    }
+
+}
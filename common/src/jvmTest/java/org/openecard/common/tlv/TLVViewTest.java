@@ -0,0 +1,195 @@
+/****************************************************************************
+ * Copyright (C) 2026 ecsec GmbH.
+ * All rights reserved.
+ * Contact: ecsec GmbH (info@ecsec.de)
+ *
+ * This file is part of the Open eCard App.
+ *
+ * GNU General Public License Usage
+ * This file may be used under the terms of the GNU General Public
+ * License version 3.0 as published by the Free Software Foundation
+ * and appearing in the file LICENSE.GPL included in the packaging of
+ * this file. Please review the following information to ensure the
+ * GNU General Public License version 3.0 requirements will be met:
+ * http://www.gnu.org/copyleft/gpl.html.
+ *
+ * Other Usage
+ * Alternatively, this file may be used in accordance with the terms
+ * and conditions contained in a signed written agreement between
+ * you and ecsec GmbH.
+ *
+ ***************************************************************************/
+
+package org.openecard.common.tlv;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.openecard.common.util.StringUtils;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+
+public class TLVViewTest {
+
+    private static final String FCP =
+	    "62 25" +
+	      "82 01 78" +
+	      "83 02 3F 00" +
+	      "84 07 D2 76 00 01 44 80 00" +
+	      "85 02 B1 26" +
+	      "8A 01 05" +
+	      "8B 0A 00 0A 01 08 02 08 03 00 04 00" +
+	      "A0 00";
+
+    @Test
+    public void testViewOffsets() throws TLVException {
+	byte[] input = StringUtils.toByteArray(FCP, true);
+
+	TLVView v = TLVView.fromBER(input);
+	assertNotNull(v);
+	assertNull(v.getNext());
+	assertEquals(v.getTagNumWithClass(), 0x62);
+	assertFalse(v.isPrimitive());
+	assertEquals(v.getRawLength(), input.length);
+	assertSame(v.getData(), input);
+
+	TLVView dfName = v.getChild().findNextTag(0x84);
+	assertNotNull(dfName);
+	assertEquals(dfName.getValueOffset(), 11);
+	assertEquals(dfName.getValue(), StringUtils.toByteArray("D2 76 00 01 44 80 00", true));
+
+	int count = 0;
+	for (TLVView next : v.findChildTags(0x8B)) {
+	    assertEquals(next.getValueLength(), 10);
+	    count++;
+	}
+	assertEquals(count, 1);
+	assertFalse(v.findChildTags(0).iterator().hasNext());
+
+	// empty constructed object has no children
+	TLVView empty = v.getChild().findNextTag(0xA0);
+	assertNull(empty.getChild());
+    }
+
+    @Test
+    public void testSameResultAsTLV() throws TLVException {
+	byte[] input = StringUtils.toByteArray(FCP, true);
+
+	TLV t = TLV.fromBER(input);
+	assertEquals(t.findChildTags(0x83).get(0).getValue(), new byte[] { 0x3F, 0x00 });
+	assertEquals(t.getChild().asList().size(), 7);
+	assertEquals(TLVView.fromBER(input).toTLV().toString(), t.toString());
+    }
+
+    @Test
+    public void testEndOfContent() throws TLVException {
+	byte[] input = new byte[] { 0x30, (byte) 0x80, 0x04, 0x01, 0x05, 0x00, 0x00, 0x02, 0x01, 0x07 };
+
+	TLVView v = TLVView.fromBER(input);
+	assertEquals(v.getRawLength(), 7);
+	assertEquals(v.getValueLength(), 3);
+	assertEquals(v.getChild().getValue(), new byte[] { 0x05 });
+	assertEquals(v.getNext().getValue(), new byte[] { 0x07 });
+    }
+
+    @Test
+    public void testStopAtZeroTag() throws TLVException {
+	assertNull(TLVView.fromBER(new byte[0]));
+	assertNull(TLVView.fromBER(new byte[] { 0x00, 0x00 }));
+
+	TLVView v = TLVView.fromBER(new byte[] { 0x04, 0x01, 0x05, 0x00, 0x00 });
+	assertNull(v.getNext());
+    }
+
+    @Test
+    public void testTruncatedInput() {
+	byte[][] inputs = new byte[][] {
+	    { 0x04 },
+	    { 0x04, 0x02, 0x01 },
+	    { 0x04, (byte) 0x82, 0x01 },
+	    { 0x1F },
+	    { 0x1F, (byte) 0x81 },
+	    { 0x30, (byte) 0x80, 0x01, 0x00 },
+	};
+	for (byte[] input : inputs) {
+	    try {
+		TLVView.fromBER(input);
+		fail("Truncated input must be rejected.");
+	    } catch (TLVException ex) {
+		// expected
+	    }
+	    try {
+		TLV.fromBER(input);
+		fail("Truncated input must be rejected.");
+	    } catch (TLVException ex) {
+		// expected
+	    }
+	}
+    }
+
+    @Test
+    public void testManySiblings() throws TLVException {
+	// sequence of many constructed objects, comparable to a CIA file or a list of CVCs
+	ByteArrayOutputStream siblings = new ByteArrayOutputStream();
+	for (int i = 0; i < 5000; i++) {
+	    TLV inner = new TLV();
+	    inner.setTagNumWithClass(0x04);
+	    inner.setValue(new byte[] { (byte) i, (byte) (i >> 8), 0x01, 0x02, 0x03, 0x04, 0x05, 0x06 });
+	    TLV outer = new TLV();
+	    outer.setTagNumWithClass(0x30);
+	    outer.setChild(inner);
+	    siblings.writeBytes(outer.toBER());
+	}
+	byte[] input = new TagLengthValue(TagClass.UNIVERSAL, false, 16, siblings.toByteArray()).toBER();
+
+	List<TLV> legacy = legacyFromBER(input).get(0).getChild().asList();
+	List<TLV> facade = TLV.fromBER(input).getChild().asList();
+	assertEquals(facade.size(), legacy.size());
+
+	int i = 0;
+	for (TLVView next : TLVView.fromBER(input).getChild()) {
+	    byte[] expected = legacy.get(i).getChild().getValue();
+	    assertEquals(facade.get(i).getChild().getValue(), expected);
+	    assertEquals(next.getChild().getValue(), expected);
+	    i++;
+	}
+	assertEquals(i, legacy.size());
+    }
+
+    @Test
+    public void testValuesIndependentOfInput() throws TLVException {
+	byte[] input = StringUtils.toByteArray("30 06 04 01 AA 04 01 BB", true);
+	TLV tlv = TLV.fromBER(input);
+	Arrays.fill(input, (byte) 0);
+
+	assertEquals(tlv.getChild().getValue(), new byte[] { (byte) 0xAA });
+	assertEquals(tlv.getChild().getNext().getValue(), new byte[] { (byte) 0xBB });
+	assertEquals(tlv.toBER(), StringUtils.toByteArray("30 06 04 01 AA 04 01 BB", true));
+    }
+
+    /**
+     * Parser copying the remaining input for every sibling, as TLV.fromBER used to work.
+     */
+    private static List<TLV> legacyFromBER(byte[] input) throws TLVException {
+	List<TLV> result = new ArrayList<>();
+	byte[] rest = input;
+	TLV last = null;
+	while (rest.length > 0 && rest[0] != 0) {
+	    TagLengthValue tlv = TagLengthValue.fromBER(rest);
+	    TLV next = new TLV(tlv);
+	    if (! tlv.isPrimitive() && tlv.getValueLength() > 0) {
+		next.child = legacyFromBER(tlv.getValue()).get(0);
+	    }
+	    if (last != null) {
+		last.next = next;
+	    }
+	    last = next;
+	    result.add(next);
+	    rest = Arrays.copyOfRange(rest, tlv.getRawLength(), rest.length);
+	}
+	return result;
+    }
+
+}
@@ -36,6 +36,7 @@ import javax.xml.parsers.ParserConfigurationException;
 import org.openecard.common.interfaces.DocumentValidatorException;
 import org.openecard.ws.marshal.WSMarshallerException;
 import org.testng.annotations.Test;
+import static org.testng.Assert.*;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.xml.sax.SAXException;
@@ -114,4 +115,27 @@ public class SchemaValidationTest {
 	validator.validate(initFrame);
     }
 
+    @Test
+    public void testSharedInstanceAndPooledValidators() throws Exception {
+	// the compiled schema is shared
+	assertSame(JAXPSchemaValidator.load("Management.xsd"), validator);
+
+	JAXPSchemaValidator v = (JAXPSchemaValidator) validator;
+	long before = v.getValidationCount();
+	// validate more documents than there are pooled validators, including an invalid one in between
+	for (int i = 0; i < 10; i++) {
+	    InputStream dataStream = FileUtils.resolveResourceAsStream(SchemaValidationTest.class, "InitializeFramework.xml");
+	    validator.validate(builder.parse(dataStream));
+	    try {
+		dataStream = FileUtils.resolveResourceAsStream(SchemaValidationTest.class, "DIDAuthenticate_EACInput1_nocert.xml");
+		validator.validate(builder.parse(dataStream));
+		fail("Invalid document passed the validation.");
+	    } catch (DocumentValidatorException ex) {
+		// expected
+	    }
+	}
+	assertTrue(v.getValidationCount() - before >= 20);
+	assertTrue(v.getValidationTimeNanos() > 0);
+    }
+
 }
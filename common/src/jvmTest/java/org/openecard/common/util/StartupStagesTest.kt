@@ -0,0 +1,58 @@
+/****************************************************************************
+ * Copyright (C) 2026 ecsec GmbH.
+ * All rights reserved.
+ * Contact: ecsec GmbH (info@ecsec.de)
+ *
+ * This file is part of the Open eCard App.
+ *
+ * GNU General Public License Usage
+ * This file may be used under the terms of the GNU General Public
+ * License version 3.0 as published by the Free Software Foundation
+ * and appearing in the file LICENSE.GPL included in the packaging of
+ * this file. Please review the following information to ensure the
+ * GNU General Public License version 3.0 requirements will be met:
+ * http://www.gnu.org/copyleft/gpl.html.
+ *
+ * Other Usage
+ * Alternatively, this file may be used in accordance with the terms
+ * and conditions contained in a signed written agreement between
+ * you and ecsec GmbH.
+ *
+ ***************************************************************************/
+package org.openecard.common.util
+
+import org.testng.Assert
+import org.testng.annotations.Test
+import java.util.concurrent.CyclicBarrier
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeUnit
+
+class StartupStagesTest {
+
+	@Test(timeOut = 10000)
+	fun testStagesRunInParallel() {
+		// both stages only complete if they run at the same time
+		val barrier = CyclicBarrier(2)
+		val first = StartupStages.submit("test-first") { barrier.await(5, TimeUnit.SECONDS); 1 }
+		val second = StartupStages.submit("test-second") { barrier.await(5, TimeUnit.SECONDS); 2 }
+		Assert.assertEquals(first.get(), 1)
+		Assert.assertEquals(second.get(), 2)
+
+		val timings = StartupStages.timings
+		Assert.assertTrue(timings.containsKey("test-first"))
+		Assert.assertTrue(timings.containsKey("test-second"))
+	}
+
+	@Test(timeOut = 10000)
+	fun testFailedStage() {
+		val stage = StartupStages.submit<Unit>("test-failure") { throw IllegalStateException("broken") }
+		try {
+			stage.get()
+			Assert.fail("Failure of the stage not reported.")
+		} catch (ex: ExecutionException) {
+			Assert.assertTrue(ex.cause is IllegalStateException)
+		}
+		Assert.assertTrue(StartupStages.timings.containsKey("test-failure"))
+	}
+
+}
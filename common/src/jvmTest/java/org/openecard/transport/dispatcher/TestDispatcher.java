@@ -24,7 +24,16 @@ package org.openecard.transport.dispatcher;
 
 import iso.std.iso_iec._24727.tech.schema.EstablishContext;
 import iso.std.iso_iec._24727.tech.schema.EstablishContextResponse;
+import iso.std.iso_iec._24727.tech.schema.Transmit;
+import iso.std.iso_iec._24727.tech.schema.TransmitResponse;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openecard.common.event.EventDispatcherImpl;
+import org.openecard.common.event.EventType;
+import org.openecard.common.interfaces.DispatcherException;
 import org.openecard.common.interfaces.Environment;
+import org.openecard.common.interfaces.EventDispatcher;
 import org.openecard.ws.IFD;
 import org.testng.annotations.Test;
 import static org.testng.Assert.*;
@@ -78,4 +87,105 @@ public class TestDispatcher {
 	assertTrue(res instanceof EstablishContextResponse);
     }
 
+    /**
+     * Test that replacing the service in the environment is picked up by an existing dispatcher.
+     *
+     * @throws Exception If the test is a failure.
+     */
+    @Test
+    public void testReplacedService() throws Exception {
+	Environment env = new TestEnv1();
+	MessageDispatcher disp = new MessageDispatcher(env);
+
+	env.setIfd(new TestIFD());
+	EstablishContextResponse res = (EstablishContextResponse) disp.deliver(new EstablishContext());
+	assertNull(res.getContextHandle());
+
+	final byte[] ctxHandle = new byte[] { 1, 2, 3 };
+	env.setIfd(new TestIFD() {
+	    @Override
+	    public EstablishContextResponse establishContext(EstablishContext parameters) {
+		EstablishContextResponse res = super.establishContext(parameters);
+		res.setContextHandle(ctxHandle);
+		return res;
+	    }
+	});
+	res = (EstablishContextResponse) disp.deliver(new EstablishContext());
+	assertEquals(res.getContextHandle(), ctxHandle);
+    }
+
+    /**
+     * Test asynchronous delivery of a request and of an unknown request type.
+     *
+     * @throws Exception If the test is a failure.
+     */
+    @Test
+    public void testDeliverAsync() throws Exception {
+	Environment env = new TestEnv1();
+	MessageDispatcher disp = new MessageDispatcher(env);
+	env.setIfd(new TestIFD());
+
+	Object res = disp.deliverAsync(new EstablishContext()).get(10, TimeUnit.SECONDS);
+	assertTrue(res instanceof EstablishContextResponse);
+
+	try {
+	    disp.deliverAsync(new Object()).get(10, TimeUnit.SECONDS);
+	    fail("Delivery of an unknown request type succeeded.");
+	} catch (ExecutionException ex) {
+	    assertTrue(ex.getCause() instanceof DispatcherException);
+	}
+    }
+
+    /**
+     * Test that API call events are only emitted while someone listens for them.
+     *
+     * @throws Exception If the test is a failure.
+     */
+    @Test
+    public void testApiCallEvents() throws Exception {
+	final int numCalls = 10;
+	final EventDispatcherImpl events = new EventDispatcherImpl();
+	events.start();
+	try {
+	    Environment env = new TestEnv1() {
+		@Override
+		public EventDispatcher getEventDispatcher() {
+		    return events;
+		}
+	    };
+	    env.setIfd(new TestIFD() {
+		@Override
+		public TransmitResponse transmit(Transmit parameters) {
+		    return new TransmitResponse();
+		}
+	    });
+	    MessageDispatcher disp = new MessageDispatcher(env);
+	    Transmit req = new Transmit();
+	    req.setSlotHandle(new byte[] { 1, 2, 3, 4 });
+
+	    assertFalse(events.hasListeners(EventType.API_CALL_STARTED));
+	    deliverAll(disp, req, numCalls);
+
+	    AtomicInteger received = new AtomicInteger();
+	    events.add((t, o) -> received.incrementAndGet(), EventType.API_CALL_STARTED, EventType.API_CALL_FINISHED);
+	    assertTrue(events.hasListeners(EventType.API_CALL_FINISHED));
+	    deliverAll(disp, req, numCalls);
+
+	    long deadline = System.currentTimeMillis() + 10000;
+	    while (received.get() < 2 * numCalls && System.currentTimeMillis() < deadline) {
+		Thread.sleep(10);
+	    }
+	    // only the deliveries after adding the listener produce events
+	    assertEquals(received.get(), 2 * numCalls);
+	} finally {
+	    events.terminate();
+	}
+    }
+
+    private static void deliverAll(MessageDispatcher disp, Transmit req, int num) throws Exception {
+	for (int i = 0; i < num; i++) {
+	    assertTrue(disp.deliver(req) instanceof TransmitResponse);
+	}
+    }
+
 }
@@ -109,6 +109,11 @@ public class TestEnv1 implements Environment {
 	    @Override
 	    public void notify(EventType t, EventObject o) {
 	    }
+
+	    @Override
+	    public boolean hasListeners(EventType t) {
+		return false;
+	    }
 	};
     }
 
@@ -1192,10 +1192,7 @@ class IFD : IFD {
 				var result: Result?
 				val rapdus = response.getOutputAPDU()
 				try {
-					for (capdu in apdus) {
-						val rapdu = ch.transmit(capdu.getInputAPDU(), capdu.getAcceptableStatusCode())
-						rapdus.add(rapdu)
-					}
+					ch.transmit(apdus, rapdus)
 					result = makeResultOK()
 				} catch (ex: TransmitException) {
 					rapdus.add(ex.responseAPDU)
@@ -0,0 +1,302 @@
+/****************************************************************************
+ * Copyright (C) 2026 ecsec GmbH.
+ * All rights reserved.
+ * Contact: ecsec GmbH (info@ecsec.de)
+ *
+ * This file is part of the Open eCard App.
+ *
+ * GNU General Public License Usage
+ * This file may be used under the terms of the GNU General Public
+ * License version 3.0 as published by the Free Software Foundation
+ * and appearing in the file LICENSE.GPL included in the packaging of
+ * this file. Please review the following information to ensure the
+ * GNU General Public License version 3.0 requirements will be met:
+ * http://www.gnu.org/copyleft/gpl.html.
+ *
+ * Other Usage
+ * Alternatively, this file may be used in accordance with the terms
+ * and conditions contained in a signed written agreement between
+ * you and ecsec GmbH.
+ *
+ ***************************************************************************/
+package org.openecard.ifd.scio.wrapper
+
+import io.github.oshai.kotlinlogging.KotlinLogging
+import org.openecard.ifd.scio.IFDProperties
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executor
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.FutureTask
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.locks.ReentrantLock
+
+
+private val LOG = KotlinLogging.logger { }
+
+private const val EXECUTOR_KEY = "org.openecard.ifd.scio.channel.executor"
+
+/**
+ * Strategy determining in which thread the commands of a [SingleThreadChannel] are executed.
+ * The strategy is configured with the key `org.openecard.ifd.scio.channel.executor` in ifd.properties.
+ */
+enum class ChannelExecutionMode {
+	/**
+	 * Each channel owns a dedicated thread.
+	 * This is the most conservative mode and used when no valid mode is configured.
+	 */
+	DEDICATED,
+
+	/**
+	 * Commands are executed in the threads of a pool shared by all channels, serialized per channel.
+	 * While the channel has exclusive access to the card, it keeps the thread which started the exclusive access, so
+	 * backends binding transactions to a thread are supported. The pool grows when channels are waiting for exclusive
+	 * access, so a waiting channel never delays another one.
+	 */
+	POOLED,
+
+	/**
+	 * Commands are executed in the calling thread, serialized per channel.
+	 * This avoids both thread hops per APDU, but must only be used with backends that do not bind transactions to a
+	 * thread.
+	 */
+	CALLER;
+
+	companion object {
+		/**
+		 * Reads the configured mode from the IFD properties.
+		 * Missing or invalid values result in [DEDICATED].
+		 */
+		@JvmStatic
+		fun fromProperties(): ChannelExecutionMode {
+			val value = IFDProperties.getProperty(EXECUTOR_KEY)?.trim()
+			if (value.isNullOrEmpty()) {
+				return DEDICATED
+			}
+			return try {
+				valueOf(value.uppercase())
+			} catch (ex: IllegalArgumentException) {
+				LOG.warn { "Invalid value '$value' for $EXECUTOR_KEY, using dedicated channel threads." }
+				DEDICATED
+			}
+		}
+	}
+}
+
+/**
+ * Executor running the commands of one channel.
+ * All implementations execute the commands of a channel strictly one after the other.
+ */
+internal interface ChannelExecutor {
+
+	/**
+	 * Executes the task and waits for its result.
+	 *
+	 * @param task Task to execute.
+	 * @return The result of the task.
+	 * @throws ExecutionException Thrown if the task threw an exception, which is available as the cause.
+	 * @throws InterruptedException Thrown if the calling thread was interrupted while waiting for the result.
+	 */
+	@Throws(ExecutionException::class, InterruptedException::class)
+	fun <T> execute(task: Callable<T>): T
+
+	/**
+	 * Executes a task starting or ending exclusive access to the card and waits for its result.
+	 * All tasks executed after a successful start run in the same thread until the end.
+	 *
+	 * @param start `true` if the task starts exclusive access, `false` if it ends exclusive access.
+	 * @param task Task to execute.
+	 * @return The result of the task.
+	 * @throws ExecutionException Thrown if the task threw an exception, which is available as the cause.
+	 * @throws InterruptedException Thrown if the calling thread was interrupted while waiting for the result.
+	 */
+	@Throws(ExecutionException::class, InterruptedException::class)
+	fun <T> executeExclusive(start: Boolean, task: Callable<T>): T {
+		// executors with a single thread per channel or without thread affinity need no special treatment
+		return execute(task)
+	}
+
+	/**
+	 * Releases the resources of this executor.
+	 * Tasks submitted after this call are rejected.
+	 */
+	fun shutdown()
+
+	companion object {
+		/**
+		 * Creates the executor for a channel.
+		 *
+		 * @param mode Execution mode defining the kind of executor.
+		 * @param channelName Name of the channel used for thread names.
+		 */
+		fun create(mode: ChannelExecutionMode, channelName: String): ChannelExecutor {
+			return when (mode) {
+				ChannelExecutionMode.DEDICATED -> ThreadChannelExecutor(newChannelThread(channelName))
+				ChannelExecutionMode.POOLED -> PooledChannelExecutor(CHANNEL_POOL)
+				ChannelExecutionMode.CALLER -> CallerChannelExecutor()
+			}
+		}
+	}
+}
+
+/**
+ * Executor handing the tasks to a single threaded executor service.
+ */
+internal class ThreadChannelExecutor(
+	private val exec: ExecutorService,
+) : ChannelExecutor {
+
+	@Throws(ExecutionException::class, InterruptedException::class)
+	override fun <T> execute(task: Callable<T>): T {
+		val result = exec.submit(task)
+		try {
+			return result.get()
+		} catch (ex: InterruptedException) {
+			result.cancel(true)
+			throw ex
+		}
+	}
+
+	override fun shutdown() {
+		exec.shutdown()
+	}
+}
+
+/**
+ * Executor running the tasks in the calling thread.
+ * A fair lock keeps the tasks of the channel in order, as the single thread of the other executors does.
+ */
+internal class CallerChannelExecutor : ChannelExecutor {
+	private val lock = ReentrantLock(true)
+
+	@Throws(ExecutionException::class, InterruptedException::class)
+	override fun <T> execute(task: Callable<T>): T {
+		lock.lockInterruptibly()
+		try {
+			return task.call()
+		} catch (ex: Exception) {
+			throw ExecutionException(ex)
+		} finally {
+			lock.unlock()
+		}
+	}
+
+	override fun shutdown() {
+		// nothing to release
+	}
+}
+
+/**
+ * Executor running the tasks of one channel one after the other in the threads of a shared pool.
+ * Outside of exclusive access, every batch of queued tasks may run in another thread of the pool. After exclusive
+ * access has been started, the thread which started it keeps processing the tasks of the channel until the exclusive
+ * access ends or the executor is shut down.
+ */
+internal class PooledChannelExecutor(
+	private val pool: Executor,
+) : ChannelExecutor {
+	private val queue = LinkedBlockingQueue<Runnable>()
+	// a drain loop is submitted to the pool or running
+	private val scheduled = AtomicBoolean()
+	@Volatile
+	private var exclusive = false
+	@Volatile
+	private var closed = false
+
+	@Throws(ExecutionException::class, InterruptedException::class)
+	override fun <T> execute(task: Callable<T>): T {
+		if (closed) {
+			throw RejectedExecutionException("Channel executor has been shut down.")
+		}
+		val result = FutureTask(task)
+		schedule(result)
+		try {
+			return result.get()
+		} catch (ex: InterruptedException) {
+			result.cancel(true)
+			throw ex
+		}
+	}
+
+	@Throws(ExecutionException::class, InterruptedException::class)
+	override fun <T> executeExclusive(start: Boolean, task: Callable<T>): T {
+		return execute(Callable {
+			if (start) {
+				// only pin the thread when the exclusive access has really been established
+				val result = task.call()
+				exclusive = true
+				result
+			} else {
+				try {
+					task.call()
+				} finally {
+					exclusive = false
+				}
+			}
+		})
+	}
+
+	override fun shutdown() {
+		closed = true
+		// release a thread waiting for tasks during exclusive access
+		schedule(Runnable { exclusive = false })
+	}
+
+	private fun schedule(task: Runnable) {
+		queue.add(task)
+		if (scheduled.compareAndSet(false, true)) {
+			pool.execute { drain() }
+		}
+	}
+
+	private fun drain() {
+		while (true) {
+			val next = try {
+				// a thread with exclusive access must wait for the next task instead of returning to the pool
+				if (exclusive) queue.take() else queue.poll()
+			} catch (ex: InterruptedException) {
+				// interruption of a cancelled task, keep serving the channel
+				continue
+			}
+
+			if (next == null) {
+				scheduled.set(false)
+				// a task may have been queued after the poll but before the flag was reset
+				if (queue.isEmpty() || !scheduled.compareAndSet(false, true)) {
+					return
+				}
+			} else {
+				// do not let a cancellation of the previous task leak into this one
+				Thread.interrupted()
+				next.run()
+			}
+		}
+	}
+}
+
+private val THREAD_NUM = AtomicInteger(1)
+
+/**
+ * Pool shared by all channels in [ChannelExecutionMode.POOLED] mode.
+ * Idle threads are reused and terminate after a minute without work.
+ */
+private val CHANNEL_POOL: ExecutorService by lazy {
+	Executors.newCachedThreadPool(ThreadFactory { r: Runnable? ->
+		val t = Thread(r, "Channel-Pool-${THREAD_NUM.getAndIncrement()}")
+		t.setDaemon(true)
+		t
+	})
+}
+
+private fun newChannelThread(name: String): ExecutorService {
+	return Executors.newSingleThreadExecutor(ThreadFactory { r: Runnable? ->
+		val t = Thread(r, "Channel-${THREAD_NUM.getAndIncrement()} $name")
+		t.setDaemon(true)
+		t
+	})
+}
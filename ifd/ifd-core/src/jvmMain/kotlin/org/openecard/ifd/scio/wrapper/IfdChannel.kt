@@ -21,6 +21,7 @@
  ***************************************************************************/
 package org.openecard.ifd.scio.wrapper
 
+import iso.std.iso_iec._24727.tech.schema.InputAPDUInfoType
 import org.openecard.common.ifd.Protocol
 import org.openecard.common.ifd.scio.SCIOChannel
 import org.openecard.common.ifd.scio.SCIOException
@@ -79,6 +80,30 @@ interface IfdChannel {
     @Throws(TransmitException::class, SCIOException::class, IllegalStateException::class, InterruptedException::class)
     fun transmit(input: ByteArray, responses: List<ByteArray>): ByteArray
 
+    /**
+     * Transmits a sequence of command APDUs to the card and evaluates each response against its acceptable status
+     * codes.
+     *
+     * The commands are processed in order as if [transmit] was called for each of them, but implementations may
+     * execute the whole sequence at once. Processing stops at the first response with an unexpected status code.
+     * The responses of all successfully processed commands are added to `outputs` before any exception is thrown.
+     *
+     * @param inputs Command APDUs with their acceptable status codes.
+     * @param outputs List receiving the response APDUs of the successfully processed commands.
+     * @throws TransmitException Thrown in case a result contained unexpected response codes. The exception contains
+     * the offending response.
+     * @throws SCIOException Thrown if the operation failed.
+     * @throws IllegalStateException Thrown if the card is not connected anymore or the channel has been closed.
+     * @throws IllegalArgumentException Thrown if an APDU encodes a `MANAGE CHANNEL`.
+     * @throws InterruptedException if the user cancels the process
+     */
+    @Throws(TransmitException::class, SCIOException::class, IllegalStateException::class, InterruptedException::class)
+    fun transmit(inputs: List<InputAPDUInfoType>, outputs: MutableList<ByteArray>) {
+        for (input in inputs) {
+            outputs.add(transmit(input.inputAPDU, input.acceptableStatusCode))
+        }
+    }
+
     /**
      * Sends a control command to the terminal.
      *
@@ -22,7 +22,7 @@
 package org.openecard.ifd.scio.wrapper
 
 import io.github.oshai.kotlinlogging.KotlinLogging
-import org.openecard.common.apdu.common.CardCommandAPDU
+import iso.std.iso_iec._24727.tech.schema.InputAPDUInfoType
 import org.openecard.common.apdu.common.CardCommandStatus
 import org.openecard.common.apdu.common.CardResponseAPDU
 import org.openecard.common.ifd.Protocol
@@ -30,8 +30,8 @@ import org.openecard.common.ifd.RecoverableSecureMessagingException
 import org.openecard.common.ifd.scio.*
 import org.openecard.common.util.ByteUtils
 import org.openecard.ifd.scio.TransmitException
-import java.util.concurrent.*
-import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
 
 
 private val LOG = KotlinLogging.logger { }
@@ -40,11 +40,13 @@ private val LOG = KotlinLogging.logger { }
  * Implementation of a channel executing all commands in the same thread.
  * Executing commands in the same thread has the effect, that transactions are not broken when the IFD is called from
  * different threads which is the case almost every time.
+ * Which thread that is, is defined by the [ChannelExecutionMode] configured in ifd.properties. In pooled mode the thread
+ * only stays the same while the channel has exclusive access, which is all transactions need.
  *
  * @author Tobias Wich
  */
 class SingleThreadChannel : IfdChannel {
-	private val exec: ExecutorService
+	private val exec: ChannelExecutor
 	override var channel: SCIOChannel
 
 	/**
@@ -57,13 +59,14 @@ class SingleThreadChannel : IfdChannel {
 	 * This function connects the terminal with whatever protocol that works.
 	 *
 	 * @param term Terminal whose channel is to be bound to the thread.
+	 * @param mode Strategy defining the thread in which the commands are executed.
 	 * @throws SCIOException Thrown in case the channel could not be established.
 	 */
-	constructor(term: SCIOTerminal) {
-		this.exec = createExecutor()
-
+	@JvmOverloads
+	constructor(term: SCIOTerminal, mode: ChannelExecutionMode = DEFAULT_MODE) {
 		val card: SCIOCard = connectCard(term)
 		this.channel = card.basicChannel
+		this.exec = createExecutor(mode)
 	}
 
 	/**
@@ -71,11 +74,11 @@ class SingleThreadChannel : IfdChannel {
 	 *
 	 * @param master Master (basic) channel from which the other channel instance is to be derived.
 	 * @param isBasic `true` if a basic channel shall be opened, `false` if a logical channel shall be opened.
+	 * @param mode Strategy defining the thread in which the commands are executed.
 	 * @throws SCIOException Thrown in case the channel could not be established.
 	 */
-	constructor(master: SingleThreadChannel, isBasic: Boolean) {
-		this.exec = createExecutor()
-
+	@JvmOverloads
+	constructor(master: SingleThreadChannel, isBasic: Boolean, mode: ChannelExecutionMode = DEFAULT_MODE) {
 		val baseCard = master.channel.card
 		// connect with protocol that worked for the base card
 		val card = baseCard.terminal.connect(baseCard.protocol)
@@ -84,17 +87,12 @@ class SingleThreadChannel : IfdChannel {
 		} else {
 			this.channel = card.openLogicalChannel()
 		}
+		this.exec = createExecutor(mode)
 	}
 
-	private fun createExecutor(): ExecutorService {
-		return Executors.newSingleThreadExecutor(ThreadFactory { r: Runnable? ->
-			val num = channel.channelNumber
-			val termName = channel.card.terminal.name
-			val name = "Channel-${THREAD_NUM.getAndIncrement()} $num '${termName}'"
-			val t = Thread(r, name)
-			t.setDaemon(true)
-			t
-		})
+	private fun createExecutor(mode: ChannelExecutionMode): ChannelExecutor {
+		val channelName = "${channel.channelNumber} '${channel.card.terminal.name}'"
+		return ChannelExecutor.create(mode, channelName)
 	}
 
 	@Throws(SCIOException::class)
@@ -146,11 +144,19 @@ class SingleThreadChannel : IfdChannel {
 	 */
 	@Throws(SCIOException::class, IllegalStateException::class, InterruptedException::class)
 	private fun transmit(command: ByteArray): CardResponseAPDU {
-		// send command
-		val result = exec.submit(Callable { channel.transmit(command) })
-		// return result or evaluate errors
+		val submitted = System.nanoTime()
+		var started = 0L
+		// send command and return result or evaluate errors
 		try {
-			return result.get()
+			val result = exec.execute(Callable {
+				started = System.nanoTime()
+				channel.transmit(command)
+			})
+			LOG.debug {
+				val finished = System.nanoTime()
+				"APDU processed in ${(finished - submitted) / 1000} us, ${(started - submitted) / 1000} us waiting for execution."
+			}
+			return result
 		} catch (ex: ExecutionException) {
 			// check out the real cause of the error
 			val cause = ex.cause
@@ -167,42 +173,62 @@ class SingleThreadChannel : IfdChannel {
 				throw SCIOException(msg, SCIOErrorCode.SCARD_F_UNKNOWN_ERROR, cause)
 			}
 		} catch (ex: InterruptedException) {
-			result.cancel(true)
 			throw InterruptedException("Interruption during transmit.")
 		}
 	}
 
+	@Throws(TransmitException::class, SCIOException::class, IllegalStateException::class, InterruptedException::class)
+	override fun transmit(input: ByteArray, responses: List<ByteArray>): ByteArray {
+		return transmitChecked(input, responses) { transmit(it) }
+	}
+
 	/**
-	 * Transmits the given command APDU to the card.
-	 *
-	 * The CLA byte of the command APDU is automatically adjusted to match the channel number of this channel.
-	 *
-	 * Note that this method cannot be used to transmit `MANAGE CHANNEL` APDUs. Logical channels should be
-	 * managed using the [SCIOCard.openLogicalChannel] and [.close] methods.
-	 *
-	 * Implementations must transparently handle artifacts of the transmission protocol. For example, when using the
-	 * T=0 protocol, the following processing should occur as described in ISO/IEC 7816-4:
-	 *
-	 *  * if the response APDU has an SW1 of 61, the implementation should issue a `GET RESPONSE` command using
-	 * SW2 as the Lefield. This process is repeated as long as an SW1 of 61 is received. The response body of these
-	 * exchanges is concatenated to form the final response body.
-	 *  * if the response APDU is 6C XX, the implementation should reissue the command using XX as the Le field.
-	 *
-	 *
-	 * @param command Command APDU, which should be sent to the card.
-	 * @return The response APDU after the given command APDU is processed.
-	 * @throws SCIOException Thrown if the operation failed.
-	 * @throws IllegalStateException Thrown if the card is not connected anymore or the channel has been closed.
-	 * @throws IllegalArgumentException Thrown if the APDU encodes a `MANAGE CHANNEL`..
-	 * @throws NullPointerException Thrown in case the argument is `null`.
+	 * Transmits all commands within a single task of the channel executor, so that the sequence costs only one thread
+	 * hop instead of one per APDU.
 	 */
-	@Throws(SCIOException::class, IllegalStateException::class, InterruptedException::class)
-	private fun transmit(command: CardCommandAPDU): CardResponseAPDU {
-		return transmit(command.toByteArray())
+	@Throws(TransmitException::class, SCIOException::class, IllegalStateException::class, InterruptedException::class)
+	override fun transmit(inputs: List<InputAPDUInfoType>, outputs: MutableList<ByteArray>) {
+		val submitted = System.nanoTime()
+		try {
+			exec.execute(Callable {
+				for (input in inputs) {
+					outputs.add(transmitChecked(input.inputAPDU, input.acceptableStatusCode) { channel.transmit(it) })
+				}
+			})
+			LOG.debug {
+				"${inputs.size} APDUs processed in ${(System.nanoTime() - submitted) / 1000} us."
+			}
+		} catch (ex: ExecutionException) {
+			// check out the real cause of the error
+			val cause = ex.cause
+			if (cause is TransmitException) {
+				throw cause
+			} else if (cause is SCIOException) {
+				throw cause
+			} else if (cause is IllegalStateException) {
+				throw cause
+			} else if (cause is IllegalArgumentException) {
+				throw cause
+			} else if (cause is NullPointerException) {
+				throw cause
+			} else {
+				val msg = "Unknown error during APDU submission."
+				throw SCIOException(msg, SCIOErrorCode.SCARD_F_UNKNOWN_ERROR, cause)
+			}
+		} catch (ex: InterruptedException) {
+			throw InterruptedException("Interruption during transmit.")
+		}
 	}
 
+	/**
+	 * Applies secure messaging, sends the command with the given function and checks the status code of the response.
+	 */
 	@Throws(TransmitException::class, SCIOException::class, IllegalStateException::class, InterruptedException::class)
-	override fun transmit(input: ByteArray, responses: List<ByteArray>): ByteArray {
+	private inline fun transmitChecked(
+		input: ByteArray,
+		responses: List<ByteArray>,
+		send: (ByteArray) -> CardResponseAPDU,
+	): ByteArray {
 		var inputAPDU = input
 		var result: ByteArray
 
@@ -212,7 +238,7 @@ class SingleThreadChannel : IfdChannel {
 				inputAPDU = smProtocol!!.applySM(inputAPDU)
 			}
 			LOG.debug { "Send APDU: ${ByteUtils.toHexString(inputAPDU, false)}" }
-			val rapdu = transmit(inputAPDU)
+			val rapdu = send(inputAPDU)
 			result = rapdu.toByteArray()
 			LOG.debug { "Receive APDU: ${ByteUtils.toHexString(result, false)}" }
 			if (isSM) {
@@ -253,11 +279,9 @@ class SingleThreadChannel : IfdChannel {
 		InterruptedException::class
 	)
 	override fun transmitControlCommand(controlCode: Int, command: ByteArray): ByteArray {
-		// send command
-		val result = exec.submit(Callable { channel.card.transmitControlCommand(controlCode, command) })
-		// return result or evaluate errors
+		// send command and return result or evaluate errors
 		try {
-			return result.get()
+			return exec.execute(Callable { channel.card.transmitControlCommand(controlCode, command) })
 		} catch (ex: ExecutionException) {
 			// check out the real cause of the error
 			val cause = ex.cause
@@ -272,7 +296,6 @@ class SingleThreadChannel : IfdChannel {
 				throw SCIOException(msg, SCIOErrorCode.SCARD_F_UNKNOWN_ERROR, cause)
 			}
 		} catch (ex: InterruptedException) {
-			result.cancel(true)
 			throw InterruptedException("Interruption during transmit control command.")
 		}
 	}
@@ -289,19 +312,17 @@ class SingleThreadChannel : IfdChannel {
 
 	@Throws(SCIOException::class, IllegalStateException::class, InterruptedException::class)
 	private fun submitTransaction(start: Boolean) {
-		// send command
-		val result = exec.submit(Callable {
-			val card = channel.card
-			if (start) {
-				card.beginExclusive()
-			} else {
-				card.endExclusive()
-			}
-			null
-		})
-		// return result or evaluate errors
+		// send command and return result or evaluate errors
 		try {
-			result.get()
+			exec.executeExclusive(start, Callable {
+				val card = channel.card
+				if (start) {
+					card.beginExclusive()
+				} else {
+					card.endExclusive()
+				}
+				null
+			})
 		} catch (ex: ExecutionException) {
 			// check out the real cause of the error
 			val cause = ex.cause
@@ -314,7 +335,6 @@ class SingleThreadChannel : IfdChannel {
 				throw SCIOException(msg, SCIOErrorCode.SCARD_F_UNKNOWN_ERROR, cause)
 			}
 		} catch (ex: InterruptedException) {
-			result.cancel(true)
 			throw InterruptedException("Interruption during transaction submit.")
 		}
 	}
@@ -335,7 +355,7 @@ class SingleThreadChannel : IfdChannel {
 
 }
 
-private val THREAD_NUM = AtomicInteger(1)
+private val DEFAULT_MODE: ChannelExecutionMode by lazy { ChannelExecutionMode.fromProperties() }
 
 @Throws(SCIOException::class)
 private fun connectCard(term: SCIOTerminal): SCIOCard {
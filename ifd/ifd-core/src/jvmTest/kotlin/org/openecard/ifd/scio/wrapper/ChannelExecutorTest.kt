@@ -0,0 +1,135 @@
+/****************************************************************************
+ * Copyright (C) 2026 ecsec GmbH.
+ * All rights reserved.
+ * Contact: ecsec GmbH (info@ecsec.de)
+ *
+ * This file is part of the Open eCard App.
+ *
+ * GNU General Public License Usage
+ * This file may be used under the terms of the GNU General Public
+ * License version 3.0 as published by the Free Software Foundation
+ * and appearing in the file LICENSE.GPL included in the packaging of
+ * this file. Please review the following information to ensure the
+ * GNU General Public License version 3.0 requirements will be met:
+ * http://www.gnu.org/copyleft/gpl.html.
+ *
+ * Other Usage
+ * Alternatively, this file may be used in accordance with the terms
+ * and conditions contained in a signed written agreement between
+ * you and ecsec GmbH.
+ *
+ ***************************************************************************/
+package org.openecard.ifd.scio.wrapper
+
+import org.openecard.common.ifd.scio.SCIOErrorCode
+import org.openecard.common.ifd.scio.SCIOException
+import org.testng.Assert
+import org.testng.annotations.Test
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.TimeUnit
+
+class ChannelExecutorTest {
+
+	@Test
+	fun testCallerExecutesInCallingThread() {
+		val exec = ChannelExecutor.create(ChannelExecutionMode.CALLER, "0 'term'")
+		Assert.assertSame(exec.execute(Callable { Thread.currentThread() }), Thread.currentThread())
+
+		try {
+			exec.execute(Callable { throw SCIOException("fail", SCIOErrorCode.SCARD_E_NO_SMARTCARD) })
+			Assert.fail("Exception of the task not propagated.")
+		} catch (ex: ExecutionException) {
+			Assert.assertTrue(ex.cause is SCIOException)
+		}
+		exec.shutdown()
+	}
+
+	@Test
+	fun testDedicatedThreadPerChannel() {
+		val exec1 = ChannelExecutor.create(ChannelExecutionMode.DEDICATED, "0 'term'")
+		val exec2 = ChannelExecutor.create(ChannelExecutionMode.DEDICATED, "1 'term'")
+		val t1 = exec1.execute(Callable { Thread.currentThread() })
+		Assert.assertNotSame(t1, Thread.currentThread())
+		Assert.assertSame(exec1.execute(Callable { Thread.currentThread() }), t1)
+		Assert.assertNotSame(exec2.execute(Callable { Thread.currentThread() }), t1)
+		exec1.shutdown()
+		exec2.shutdown()
+	}
+
+	@Test
+	fun testPooledKeepsThreadDuringExclusiveAccess() {
+		val exec = ChannelExecutor.create(ChannelExecutionMode.POOLED, "0 'term'")
+		val other = ChannelExecutor.create(ChannelExecutionMode.POOLED, "1 'term'")
+		try {
+			val pinned = exec.executeExclusive(true, Callable { Thread.currentThread() })
+			Assert.assertNotSame(pinned, Thread.currentThread())
+			repeat(10) {
+				// the other channel is served by the pool in the meantime
+				Assert.assertNotSame(other.execute(Callable { Thread.currentThread() }), pinned)
+				Assert.assertSame(exec.execute(Callable { Thread.currentThread() }), pinned)
+			}
+			Assert.assertSame(exec.executeExclusive(false, Callable { Thread.currentThread() }), pinned)
+
+			// tasks of concurrent callers are executed one after the other
+			var running = 0
+			var maxRunning = 0
+			val pool = Executors.newFixedThreadPool(4)
+			try {
+				val results = (0..<100).map {
+					pool.submit(Callable {
+						exec.execute(Callable {
+							maxRunning = maxOf(maxRunning, ++running)
+							Thread.sleep(1)
+							running--
+						})
+					})
+				}
+				results.forEach { it.get() }
+			} finally {
+				pool.shutdown()
+			}
+			Assert.assertEquals(running, 0)
+			Assert.assertEquals(maxRunning, 1)
+		} finally {
+			exec.shutdown()
+			other.shutdown()
+		}
+	}
+
+	@Test
+	fun testPooledWaitingChannelDoesNotBlockOthers() {
+		val exec = ChannelExecutor.create(ChannelExecutionMode.POOLED, "0 'term'")
+		val other = ChannelExecutor.create(ChannelExecutionMode.POOLED, "1 'term'")
+		val started = CountDownLatch(1)
+		val granted = CountDownLatch(1)
+		val waiting = Thread {
+			// exclusive access blocks until another process releases the card
+			exec.executeExclusive(true, Callable {
+				started.countDown()
+				granted.await()
+			})
+		}
+		try {
+			waiting.start()
+			Assert.assertTrue(started.await(10, TimeUnit.SECONDS))
+			Assert.assertEquals(other.execute(Callable { 42 }), 42)
+		} finally {
+			granted.countDown()
+			waiting.join(10000)
+			exec.shutdown()
+			other.shutdown()
+		}
+
+		try {
+			exec.execute(Callable { null })
+			Assert.fail("Task accepted after shutdown.")
+		} catch (ex: RejectedExecutionException) {
+			// expected
+		}
+	}
+
+}
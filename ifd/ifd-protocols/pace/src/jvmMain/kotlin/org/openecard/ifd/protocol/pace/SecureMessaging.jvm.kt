@@ -27,11 +27,9 @@ import org.openecard.bouncycastle.crypto.macs.CMac
 import org.openecard.bouncycastle.crypto.params.KeyParameter
 import org.openecard.common.apdu.common.*
 import org.openecard.common.ifd.*
-import org.openecard.common.tlv.TLV
 import org.openecard.common.util.ByteUtils
-import java.io.ByteArrayOutputStream
 import java.math.BigInteger
-import java.security.Key
+import java.security.GeneralSecurityException
 import javax.crypto.Cipher
 import javax.crypto.spec.IvParameterSpec
 import javax.crypto.spec.SecretKeySpec
@@ -39,6 +37,11 @@ import javax.crypto.spec.SecretKeySpec
 
 // ISO/IEC 7816-4 padding tag
 private const val PAD = 0x80.toByte()
+private const val BLOCK_SIZE = 16
+private const val MAC_SIZE = 8
+
+// padding block used for the MAC calculation, only a prefix of it is used
+private val PAD_BLOCK = ByteArray(BLOCK_SIZE).also { it[0] = PAD }
 
 fun BigInteger.toSSCBytes(): ByteArray {
 	val ssc = this.toByteArray()
@@ -95,15 +98,33 @@ enum class ReadState {
 /**
  * Implements Secure Messaging according to ISO/IEC 7816-4.
  *
+ * The cipher and MAC instances are created once for the session and only re-initialized where the algorithm requires
+ * it. The Send Sequence Counter is kept in a 16 byte array and the SM data objects are encoded into a buffer which is
+ * reused for all APDUs. Instances are not meant to be used concurrently, the methods are synchronized nonetheless as
+ * the APDUs of one channel must be processed in order anyway.
+ *
  * @author Moritz Horsch
  */
 class SecureMessaging(
 	// Keys for encryption and message authentication.
-	private val keyMAC: ByteArray,
-	private val keyENC: ByteArray,
+	keyMAC: ByteArray,
+	keyENC: ByteArray,
 ) {
 	// Send Sequence Counter. See BSI-TR-03110 section F.3.
-	private var secureMessagingSSC = BigInteger.ZERO
+	private val ssc = ByteArray(BLOCK_SIZE)
+	// SSC used for the command being encrypted, only committed when encryption succeeds
+	private val encSSC = ByteArray(BLOCK_SIZE)
+
+	private val encKey = SecretKeySpec(keyENC, "AES")
+	private val cbcCipher: Cipher = createCipher("AES/CBC/NoPadding")
+	private val ivCipher: Cipher = createCipher("AES/ECB/NoPadding", encKey)
+	private val cmac: CMac = createCMAC(keyMAC)
+	private val iv = ByteArray(BLOCK_SIZE)
+	private val mac = ByteArray(BLOCK_SIZE)
+
+	// reusable buffers for the plain data and the SM data objects
+	private var buf = ByteArray(512)
+	private var dataBuf = ByteArray(512)
 
 	/**
 	 * Encrypt the APDU.
@@ -111,12 +132,15 @@ class SecureMessaging(
 	 * @param apdu APDU
 	 * @return Encrypted APDU
 	 */
+	@Synchronized
 	@Throws(InvalidInputApduInSecureMessaging::class, SecureMessagingCryptoException::class)
 	fun encrypt(apdu: ByteArray): ByteArray {
-		val encSSC = secureMessagingSSC.plus(BigInteger.ONE)
+		ssc.copyInto(encSSC)
+		increment(encSSC)
 		val commandAPDU = encrypt(apdu, encSSC)
 		// update if the command is successful
-		secureMessagingSSC = encSSC.plus(BigInteger.ONE)
+		encSSC.copyInto(ssc)
+		increment(ssc)
 
 		return commandAPDU
 	}
@@ -129,13 +153,12 @@ class SecureMessaging(
 	 * @return Encrypted APDU
 	 */
 	@OptIn(ExperimentalStdlibApi::class)
-	private fun encrypt(apdu: ByteArray, secureMessagingSSC: BigInteger): ByteArray {
-		val baos = ByteArrayOutputStream()
+	private fun encrypt(apdu: ByteArray, secureMessagingSSC: ByteArray): ByteArray {
 		val cAPDU = CardCommandAPDU(apdu)
 
 		if (cAPDU.isSecureMessaging) { throw InvalidInputApduInSecureMessaging("Input APDU already contains a SM CLA byte.", "6882".hexToByteArray()) }
 
-		var data = cAPDU.data
+		val data = cAPDU.data
 		val header = cAPDU.header
 		val leEncoded = cutLePrefix(cAPDU.encodeLeField())
 
@@ -157,53 +180,47 @@ class SecureMessaging(
 			}
 		}
 
+		// worst case size of DO87, DO97 and DO8E
+		val encSize = paddedSize(data.size)
+		ensureCapacity(encSize + leEncoded.size + 2 * 6 + 2 + MAC_SIZE, encSize)
+		var pos = 0
+
 		if (data.isNotEmpty()) {
 			// Encrypt data
-			val c = getCipher(secureMessagingSSC, Cipher.ENCRYPT_MODE)
-			val paddedData = pad(data, 16)
-			val dataEncrypted = c.doFinal(paddedData)
-
+			data.copyInto(dataBuf)
+			val padEnd = pad(dataBuf, data.size)
+			pos = writeHeader(buf, pos, 0x87, encSize + 1)
 			// Add padding indicator 0x01
-			val paddedEncryptedData = ByteUtils.concatenate(0x01.toByte(), dataEncrypted)
-
-			val dataObject = TLV()
-			dataObject.setTagNumWithClass(0x87.toByte())
-			dataObject.value = paddedEncryptedData
-			baos.write(dataObject.toBER())
+			buf[pos++] = 0x01
+			initCipher(secureMessagingSSC, Cipher.ENCRYPT_MODE)
+			pos += doFinal(dataBuf, 0, padEnd, buf, pos)
 		}
 
 		// Write protected LE
 		if (leEncoded.isNotEmpty()) {
-			val leObject = TLV()
-			leObject.setTagNumWithClass(0x97.toByte())
-			leObject.value = leEncoded
-			baos.write(leObject.toBER())
+			pos = writeHeader(buf, pos, 0x97, leEncoded.size)
+			leEncoded.copyInto(buf, pos)
+			pos += leEncoded.size
 		}
 
 		//
 		// Calculate MAC
 		//
-		val cmac = getCMAC(secureMessagingSSC)
-		var mac = ByteArray(cmac.macSize)
-
-		val paddedHeader = pad(header, 16)
-		cmac.update(paddedHeader, 0, paddedHeader.size)
-
-		if (baos.size() > 0) {
-			val paddedData = pad(baos.toByteArray(), 16)
-			cmac.update(paddedData, 0, paddedData.size)
+		cmac.update(secureMessagingSSC, 0, BLOCK_SIZE)
+		cmac.update(header, 0, header.size)
+		cmac.update(PAD_BLOCK, 0, BLOCK_SIZE - header.size % BLOCK_SIZE)
+		if (pos > 0) {
+			cmac.update(buf, 0, pos)
+			cmac.update(PAD_BLOCK, 0, BLOCK_SIZE - pos % BLOCK_SIZE)
 		}
-
 		cmac.doFinal(mac, 0)
-		mac = ByteUtils.copy(mac, 0, 8)
 
 		//
 		// Build APDU
-		val macStructure = TLV()
-		macStructure.setTagNumWithClass(0x8E.toByte())
-		macStructure.value = mac
-		baos.write(macStructure.toBER())
-		val secureData = baos.toByteArray()
+		pos = writeHeader(buf, pos, 0x8E, MAC_SIZE)
+		mac.copyInto(buf, pos, 0, MAC_SIZE)
+		pos += MAC_SIZE
+		val secureData = buf.copyOf(pos)
 
 		val secureCommand = CardCommandAPDU(header[0], header[1], header[2], header[3], secureData)
 		// set LE explicitly to 0x00 or in case of extended length 0x00 0x00
@@ -235,34 +252,37 @@ class SecureMessaging(
 	 * @param response the response
 	 * @return the byte[]
 	 */
+	@Synchronized
 	@Throws(SecureMessagingParseException::class, SecureMessagingCryptoException::class, SecureMessagingRejectedByIcc::class, UnsupportedSecureMessagingFeature::class)
 	fun decrypt(response: ByteArray): ByteArray {
 		parseRequire(response.size >= 2) { "Secure Messaging Response APDU does not have a trailer." }
-		val trailer = response.sliceArray(response.size - 2 until response.size)
-
-		return when (ByteUtils.toHexString(trailer)) {
-			"6987" -> throw SecureMessagingRejectedByIcc("Secure Messaging of ICC reports missing SM DOs (6987).")
-			"6988" -> throw SecureMessagingRejectedByIcc("Secure Messaging of ICC reports invalid SM DOs (6988).")
-			else -> {
-				val responseNoTrailer = response.sliceArray(0 until response.size - 2)
-				decrypt(responseNoTrailer, secureMessagingSSC)
-			}
+		val sw1 = response[response.size - 2]
+		val sw2 = response[response.size - 1]
+
+		if (sw1 == 0x69.toByte() && sw2 == 0x87.toByte()) {
+			throw SecureMessagingRejectedByIcc("Secure Messaging of ICC reports missing SM DOs (6987).")
+		} else if (sw1 == 0x69.toByte() && sw2 == 0x88.toByte()) {
+			throw SecureMessagingRejectedByIcc("Secure Messaging of ICC reports invalid SM DOs (6988).")
+		} else {
+			return decrypt(response, response.size - 2, ssc)
 		}
 	}
 
 
-	private fun decrypt(responseNoTrailer: ByteArray, secureMessagingSSC: BigInteger): ByteArray {
-		// Status bytes of the response APDU. MUST be 2 bytes.
-		val statusBytes = ByteArray(2)
+	private fun decrypt(response: ByteArray, end: Int, secureMessagingSSC: ByteArray): ByteArray {
+		// offset of the status bytes of the response APDU. MUST be 2 bytes.
+		var statusOffset = -1
 		// plain data 0x81
-		var plainDataObject: ByteArray? = null
+		var plainOffset = -1
+		var plainLength = 0
 		// Padding-content indicator followed by cryptogram 0x87.
 		var withPadding = false
-		var encDataObject: ByteArray? = null
+		var encOffset = -1
+		var encLength = 0
 		// Cryptographic checksum 0x8E. MUST be 8 bytes.
-		val macObject = ByteArray(8)
-
-		val tlv = TLV.fromBER(responseNoTrailer)
+		var macOffset = -1
+		// all data objects before DO8E are covered by the MAC
+		var macDataEnd = 0
 
 		//
 		// Read APDU structure
@@ -273,84 +293,104 @@ class SecureMessaging(
 		//
 
 		var state = ReadState.INIT
-		for (nextTlv in tlv.asList()) {
-			state = state.selectNext(nextTlv.tag.tagNumWithClass)
+		var pos = 0
+		while (pos < end) {
+			val tagOffset = pos
+			val tag = response[pos++].toLong() and 0xFFL
+			state = state.selectNext(tag)
+
+			// read length
+			parseRequire(pos < end) { "Malformed Secure Messaging APDU" }
+			var length = response[pos++].toInt() and 0xFF
+			if (length > 0x80) {
+				val numBytes = length and 0x7F
+				parseRequire(numBytes <= 3 && pos + numBytes <= end) { "Malformed Secure Messaging APDU" }
+				length = 0
+				repeat(numBytes) {
+					length = (length shl 8) or (response[pos++].toInt() and 0xFF)
+				}
+			} else if (length == 0x80) {
+				throw SecureMessagingParseException("Malformed Secure Messaging APDU")
+			}
+			parseRequire(length <= end - pos) { "Malformed Secure Messaging APDU" }
+
 			when (state) {
 				ReadState.INIT -> {
 					throw SecureMessagingParseException("Malformed Secure Messaging APDU")
 				}
 
 				ReadState.DATA -> {
-					if (nextTlv.tag.tagNumWithClass == 0x81L) {
-						plainDataObject = nextTlv.value
-					} else if (nextTlv.tag.tagNumWithClass == 0x87L) {
-						when (nextTlv.value.first()) {
+					if (tag == 0x81L) {
+						plainOffset = pos
+						plainLength = length
+					} else if (tag == 0x87L) {
+						parseRequire(length >= 1) { "Malformed Secure Messaging APDU" }
+						when (response[pos]) {
 							0x00.toByte(), 0x01.toByte() -> withPadding = true
 							0x02.toByte() -> withPadding = false
 							else -> throw UnsupportedSecureMessagingFeature(
 								"Unsupported padding indicator byte 0x${
-									nextTlv.value.first().toString(16)
+									response[pos].toString(16)
 								}"
 							)
 						}
-						encDataObject = nextTlv.value.sliceArray(1 until nextTlv.value.size)
+						encOffset = pos + 1
+						encLength = length - 1
 					}
 				}
 
 				ReadState.TRAILER -> {
-					parseRequire(nextTlv.value.size == 2) { "Malformed Secure Messaging APDU" }
-					nextTlv.value.copyInto(statusBytes)
+					parseRequire(length == 2) { "Malformed Secure Messaging APDU" }
+					statusOffset = pos
 				}
 
 				ReadState.MAC -> {
-					parseRequire(nextTlv.value.size == 8) { "Malformed Secure Messaging APDU" }
-					nextTlv.value.copyInto(macObject)
+					parseRequire(length == MAC_SIZE) { "Malformed Secure Messaging APDU" }
+					macOffset = pos
+					macDataEnd = tagOffset
 				}
 			}
+			pos += length
 		}
 
 		// after reading everything, the state must be MAC
 		parseRequire(state == ReadState.MAC) { "Malformed Secure Messaging APDU (parser state=$state)" }
 
 		// Calculate MAC for verification
-		val cmac = getCMAC(secureMessagingSSC)
-		var mac = ByteArray(cmac.macSize)
-
-		synchronized(cmac) {
-			val macData = ByteArrayOutputStream()
-
-			tlv.asList().dropLast(1).forEach { macData.write(it.toBER()) }
-
-			val paddedData = pad(macData.toByteArray(), 16)
-			cmac.update(paddedData, 0, paddedData.size)
-
-			cmac.doFinal(mac, 0)
-			mac = ByteUtils.copy(mac, 0, 8)
-		}
+		cmac.update(secureMessagingSSC, 0, BLOCK_SIZE)
+		cmac.update(response, 0, macDataEnd)
+		cmac.update(PAD_BLOCK, 0, BLOCK_SIZE - macDataEnd % BLOCK_SIZE)
+		cmac.doFinal(mac, 0)
 
 		// Verify MAC
-		if (!ByteUtils.compare(mac, macObject)) {
+		var macDiff = 0
+		for (i in 0 until MAC_SIZE) {
+			macDiff = macDiff or (mac[i].toInt() xor response[macOffset + i].toInt())
+		}
+		if (macDiff != 0) {
 			throw SecureMessagingCryptoException("Secure Messaging MAC verification failed")
 		}
 
-		val baos = ByteArrayOutputStream(responseNoTrailer.size)
 		// Decrypt data
-		if (encDataObject != null) {
-			val c = getCipher(secureMessagingSSC, Cipher.DECRYPT_MODE)
-			val dataDecrypted = c.doFinal(encDataObject)
-			if (withPadding) {
-				baos.write(unpad(dataDecrypted))
-			} else {
-				baos.write(dataDecrypted)
-			}
-		} else if (plainDataObject != null) {
-			baos.write(plainDataObject)
+		val result: ByteArray
+		if (encOffset >= 0) {
+			ensureCapacity(0, encLength)
+			initCipher(secureMessagingSSC, Cipher.DECRYPT_MODE)
+			val decLength = doFinal(response, encOffset, encLength, dataBuf, 0)
+			val dataLength = if (withPadding) unpaddedSize(dataBuf, decLength) else decLength
+			result = ByteArray(dataLength + 2)
+			dataBuf.copyInto(result, 0, 0, dataLength)
+		} else if (plainOffset >= 0) {
+			result = ByteArray(plainLength + 2)
+			response.copyInto(result, 0, plainOffset, plainOffset + plainLength)
+		} else {
+			result = ByteArray(2)
 		}
 
 		// Add status code
-		baos.write(statusBytes)
+		response.copyInto(result, result.size - 2, statusOffset, statusOffset + 2)
 
-		return baos.toByteArray()
+		return result
 	}
 
 
@@ -358,67 +398,99 @@ class SecureMessaging(
 	// Cipher functions
 	//
 
-	/**
-	 * Gets the cipher for de/encryption.
-	 *
-	 * @param smssc the Secure Messaging Send Sequence Counter
-	 * @param mode the mode indicating de/encryption
-	 * @return the cipher
-	 * @throws Exception the exception
-	 */
-	@Throws(Exception::class)
-	private fun getCipher(smssc: BigInteger, mode: Int): Cipher {
+	private fun createCipher(transformation: String, encryptionKey: SecretKeySpec? = null): Cipher {
 		try {
-			val c = Cipher.getInstance("AES/CBC/NoPadding")
-			val key: Key = SecretKeySpec(keyENC, "AES")
-			val iv = getCipherIV(smssc)
-			val algoPara = IvParameterSpec(iv)
-
-			c.init(mode, key, algoPara)
-
+			val c = Cipher.getInstance(transformation)
+			if (encryptionKey != null) {
+				c.init(Cipher.ENCRYPT_MODE, encryptionKey)
+			}
 			return c
+		} catch (ex: GeneralSecurityException) {
+			throw SecureMessagingCryptoException(ex.message ?: "Failed to get cipher.", ex)
+		}
+	}
+
+	private fun createCMAC(keyMAC: ByteArray): CMac {
+		try {
+			val cmac = CMac(AESEngine())
+			cmac.init(KeyParameter(keyMAC))
+			return cmac
 		} catch (ex: Exception) {
-			throw SecureMessagingCryptoException(ex.message ?: "Failed to get and initialize cipher.", ex)
+			throw SecureMessagingCryptoException(ex.message ?: "Failed to initialize CMAC.", ex)
 		}
 	}
 
 	/**
-	 * Gets the Initialization Vector (IV) for the cipher.
+	 * Initializes the cipher for de/encryption with the IV derived from the Send Sequence Counter.
 	 *
-	 * @param smssc Secure Messaging Send Sequence Counter
-	 * @return Initialization Vector
-	 * @throws Exception
+	 * @param smssc the Secure Messaging Send Sequence Counter
+	 * @param mode the mode indicating de/encryption
 	 */
-	@Throws(Exception::class)
-	private fun getCipherIV(smssc: BigInteger): ByteArray {
+	private fun initCipher(smssc: ByteArray, mode: Int) {
 		try {
-			val c = Cipher.getInstance("AES/ECB/NoPadding")
-			val key: Key = SecretKeySpec(keyENC, "AES")
+			// Initialization Vector (IV) is the encrypted SSC
+			ivCipher.doFinal(smssc, 0, BLOCK_SIZE, iv, 0)
+			cbcCipher.init(mode, encKey, IvParameterSpec(iv))
+		} catch (ex: GeneralSecurityException) {
+			throw SecureMessagingCryptoException(ex.message ?: "Failed to initialize cipher.", ex)
+		}
+	}
 
-			c.init(Cipher.ENCRYPT_MODE, key)
+	private fun doFinal(input: ByteArray, inOffset: Int, inLength: Int, output: ByteArray, outOffset: Int): Int {
+		try {
+			return cbcCipher.doFinal(input, inOffset, inLength, output, outOffset)
+		} catch (ex: GeneralSecurityException) {
+			throw SecureMessagingCryptoException(ex.message ?: "Failed to process data.", ex)
+		}
+	}
 
-			return c.doFinal(smssc.toSSCBytes())
-		} catch (ex: Exception) {
-			throw SecureMessagingCryptoException(ex.message ?: "Failed to get IV.", ex)
+	private fun ensureCapacity(bufSize: Int, dataSize: Int) {
+		if (buf.size < bufSize) {
+			buf = ByteArray(bufSize)
+		}
+		if (dataBuf.size < dataSize) {
+			dataBuf = ByteArray(dataSize)
 		}
 	}
 
 	/**
-	 * Gets the CMAC.
+	 * Writes tag and length of a data object with a single byte tag.
 	 *
-	 * @param smssc Secure Messaging Send Sequence Counter
-	 * @return CMAC
+	 * @return The offset of the value.
 	 */
-	private fun getCMAC(smssc: BigInteger): CMac {
-		try {
-			val cmac = CMac(AESEngine())
-			cmac.init(KeyParameter(keyMAC))
-			val smsscBytes = smssc.toSSCBytes()
-			cmac.update(smsscBytes, 0, smsscBytes.size)
+	private fun writeHeader(out: ByteArray, offset: Int, tag: Int, length: Int): Int {
+		var pos = offset
+		out[pos++] = tag.toByte()
+		if (length < 0x80) {
+			out[pos++] = length.toByte()
+		} else if (length <= 0xFF) {
+			out[pos++] = 0x81.toByte()
+			out[pos++] = length.toByte()
+		} else if (length <= 0xFFFF) {
+			out[pos++] = 0x82.toByte()
+			out[pos++] = (length shr 8).toByte()
+			out[pos++] = length.toByte()
+		} else {
+			out[pos++] = 0x83.toByte()
+			out[pos++] = (length shr 16).toByte()
+			out[pos++] = (length shr 8).toByte()
+			out[pos++] = length.toByte()
+		}
+		return pos
+	}
 
-			return cmac
-		} catch (ex: Exception) {
-			throw SecureMessagingCryptoException(ex.message ?: "Failed to calculate CMAC.", ex)
+	/**
+	 * Increments the Send Sequence Counter in place.
+	 */
+	private fun increment(counter: ByteArray) {
+		for (i in counter.indices.reversed()) {
+			counter[i]++
+			if (counter[i] != 0.toByte()) {
+				break
+			}
+		}
+		if (counter[0] < 0) {
+			throw IllegalArgumentException("Send Sequence Counter overflow.")
 		}
 	}
 
@@ -427,36 +499,40 @@ class SecureMessaging(
 	// ISO/IEC 7816-4 padding functions
 	//
 
+	private fun paddedSize(size: Int): Int {
+		// as padding is mandatory, the result will contain an extra empty block in case the data is already a multiple of the block size
+		return size + (BLOCK_SIZE - size % BLOCK_SIZE)
+	}
+
 	/**
-	 * Padding the data.
+	 * Pads the data in place, the array must have room for the padding.
 	 *
-	 * @param data Unpadded data
-	 * @param blockSize Block size
-	 * @return Padded data
+	 * @param data Array with the unpadded data at its start
+	 * @param size Size of the unpadded data
+	 * @return Size of the padded data
 	 */
-	private fun pad(data: ByteArray, blockSize: Int): ByteArray {
-		// as padding is mandatory, the result will contain an extra empty block in case the data is already a multiple of the block size
-		val result = ByteArray(data.size + (blockSize - data.size % blockSize))
-		System.arraycopy(data, 0, result, 0, data.size)
-		result[data.size] = PAD
-
-		return result
+	private fun pad(data: ByteArray, size: Int): Int {
+		val end = paddedSize(size)
+		data[size] = PAD
+		data.fill(0, size + 1, end)
+		return end
 	}
 
 	/**
-	 * Unpadding the data.
+	 * Determines the size of the data without padding.
 	 *
 	 * @param data Padded data
-	 * @return Unpadded data
+	 * @param size Size of the padded data
+	 * @return Size of the unpadded data
 	 */
-	private fun unpad(data: ByteArray): ByteArray {
-		for (i in data.indices.reversed()) {
+	private fun unpaddedSize(data: ByteArray, size: Int): Int {
+		for (i in (0 until size).reversed()) {
 			if (data[i] == PAD) {
-				return ByteUtils.copy(data, 0, i)
+				return i
 			}
 		}
 
-		return data
+		return size
 	}
 
 	private fun parseRequire(cond: Boolean, lazyMessage: () -> String) {
@@ -22,9 +22,17 @@
 
 package org.openecard.ifd.protocol.pace
 
+import org.openecard.bouncycastle.crypto.engines.AESEngine
+import org.openecard.bouncycastle.crypto.macs.CMac
+import org.openecard.bouncycastle.crypto.params.KeyParameter
+import org.openecard.common.tlv.TLV
 import org.openecard.common.util.StringUtils
 import org.testng.Assert
 import org.testng.annotations.Test
+import java.math.BigInteger
+import javax.crypto.Cipher
+import javax.crypto.spec.IvParameterSpec
+import javax.crypto.spec.SecretKeySpec
 
 /**
  *
@@ -219,4 +227,64 @@ class SecureMessagingTest {
             // expected
         }
     }
+
+    @Test
+    fun testRoundTrip() {
+        val sm = SecureMessaging(KEY_MAC, KEY_ENC)
+        var ssc = BigInteger.ZERO
+        for (size in listOf(0, 1, 15, 16, 17, 127, 128, 255, 256, 4096, 65536)) {
+            val data = ByteArray(size) { it.toByte() }
+            sm.encrypt(StringUtils.toByteArray("00B0000000"))
+            ssc = ssc.add(BigInteger.TWO)
+
+            val decrypted = sm.decrypt(protectResponse(ssc, data))
+            Assert.assertEquals(decrypted, data + byteArrayOf(0x90.toByte(), 0x00))
+        }
+    }
+
+    /**
+     * Creates a response protected as the card would do it: DO87|DO99|DO8E|SW1SW2.
+     */
+    private fun protectResponse(ssc: BigInteger, data: ByteArray): ByteArray {
+        val sscBytes = ssc.toSSCBytes()
+        val key = SecretKeySpec(KEY_ENC, "AES")
+        val ecb = Cipher.getInstance("AES/ECB/NoPadding")
+        ecb.init(Cipher.ENCRYPT_MODE, key)
+        val cbc = Cipher.getInstance("AES/CBC/NoPadding")
+        cbc.init(Cipher.ENCRYPT_MODE, key, IvParameterSpec(ecb.doFinal(sscBytes)))
+
+        var macInput = ByteArray(0)
+        if (data.isNotEmpty()) {
+            val do87 = TLV()
+            do87.setTagNumWithClass(0x87.toByte())
+            do87.value = byteArrayOf(0x01) + cbc.doFinal(pad(data))
+            macInput += do87.toBER()
+        }
+        val do99 = TLV()
+        do99.setTagNumWithClass(0x99.toByte())
+        do99.value = byteArrayOf(0x90.toByte(), 0x00)
+        macInput += do99.toBER()
+
+        val cmac = CMac(AESEngine())
+        cmac.init(KeyParameter(KEY_MAC))
+        cmac.update(sscBytes, 0, sscBytes.size)
+        val paddedMacInput = pad(macInput)
+        cmac.update(paddedMacInput, 0, paddedMacInput.size)
+        val mac = ByteArray(cmac.macSize)
+        cmac.doFinal(mac, 0)
+
+        return macInput + byteArrayOf(0x8E.toByte(), 0x08) + mac.copyOf(8) + byteArrayOf(0x90.toByte(), 0x00)
+    }
+
+    private fun pad(data: ByteArray): ByteArray {
+        val result = ByteArray(data.size + (16 - data.size % 16))
+        data.copyInto(result)
+        result[data.size] = 0x80.toByte()
+        return result
+    }
+
+    companion object {
+        private val KEY_ENC = StringUtils.toByteArray("68 40 6B 41 62 10 05 63 D9 C9 01 A6 15 4D 29 01", true)
+        private val KEY_MAC = StringUtils.toByteArray("73 FF 26 87 84 F7 2A F8 33 FD C9 46 40 49 AF C9", true)
+    }
 }
@@ -24,18 +24,19 @@ package org.openecard.mdlw.sal;
 
 import iso.std.iso_iec._24727.tech.schema.CardInfo;
 import iso.std.iso_iec._24727.tech.schema.CardInfoType;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.nio.charset.StandardCharsets;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import javax.xml.transform.TransformerException;
 import org.openecard.common.OpenecardProperties;
 import org.openecard.common.util.FileUtils;
 import org.openecard.ws.marshal.MarshallingTypeException;
@@ -44,8 +45,6 @@ import org.openecard.ws.marshal.WSMarshallerException;
 import org.openecard.ws.marshal.WSMarshallerFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.xml.sax.SAXException;
 
 
 /**
@@ -111,9 +110,9 @@ public class CIFCache {
 	    // try reading from disk
 	    File cifFile = getCifFile(identifier);
 	    if (cifFile.isFile()) {
-		try {
-		    Document cifDoc = marshaller.str2doc(new FileInputStream(cifFile));
-		    Object o = marshaller.unmarshal(cifDoc);
+		try (InputStream in = new BufferedInputStream(new FileInputStream(cifFile))) {
+		    // unmarshal directly from the stream, without building a DOM tree first
+		    Object o = marshaller.unmarshal(in);
 		    if (o instanceof CardInfo) {
 			CardInfo cif = (CardInfo) o;
 			// save in memory for faster lookup next time
@@ -122,7 +121,7 @@ public class CIFCache {
 		    } else {
 			throw new WSMarshallerException("Cache file did not contain a CardInfo file.");
 		    }
-		} catch (IOException | SAXException | WSMarshallerException ex) {
+		} catch (IOException | WSMarshallerException ex) {
 		    LOG.warn("Failed to read CIF from cache, trying to delete the corrputed file.", ex);
 		    try {
 			cifFile.delete();
@@ -158,21 +157,22 @@ public class CIFCache {
 	    cifTarget.setId(cif.getId());
 	    cifTarget.setSchemaVersion(cif.getSchemaVersion());
 
+	    File cifFile = getCifFile(identifier);
+	    File tmpFile = new File(cacheDir, cifFile.getName() + ".tmp");
 	    try {
-		Document cifDoc = marshaller.marshal(cifTarget);
-		String cifXml = marshaller.doc2str(cifDoc);
-
-		File cifFile = getCifFile(identifier);
-		FileOutputStream out = new FileOutputStream(cifFile, false);
-		OutputStreamWriter ow = new OutputStreamWriter(out, StandardCharsets.UTF_8);
-		ow.write(cifXml);
-		ow.flush();
+		// write compact XML directly to the file and replace the old entry only when it is complete
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tmpFile, false))) {
+		    marshaller.marshal(cifTarget, out);
+		}
+		if (! tmpFile.renameTo(cifFile) && ! (cifFile.delete() && tmpFile.renameTo(cifFile))) {
+		    throw new IOException("Failed to move " + tmpFile + " to " + cifFile + ".");
+		}
 	    } catch (MarshallingTypeException ex) {
-		LOG.error("Failed to marshal CIF to DOM.", ex);
-	    } catch (TransformerException ex) {
-		LOG.error("Failed to serialize DOM.", ex);
+		LOG.error("Failed to marshal CIF.", ex);
+		tmpFile.delete();
 	    } catch (IOException ex) {
 		LOG.warn("Failed to write CIF to disk.", ex);
+		tmpFile.delete();
 	    }
 	}
     }
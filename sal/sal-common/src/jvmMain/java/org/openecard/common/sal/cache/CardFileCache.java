@@ -0,0 +1,362 @@
+/****************************************************************************
+ * Copyright (C) 2026 ecsec GmbH.
+ * All rights reserved.
+ * Contact: ecsec GmbH (info@ecsec.de)
+ *
+ * This file is part of the Open eCard App.
+ *
+ * GNU General Public License Usage
+ * This file may be used under the terms of the GNU General Public
+ * License version 3.0 as published by the Free Software Foundation
+ * and appearing in the file LICENSE.GPL included in the packaging of
+ * this file. Please review the following information to ensure the
+ * GNU General Public License version 3.0 requirements will be met:
+ * http://www.gnu.org/copyleft/gpl.html.
+ *
+ * Other Usage
+ * Alternatively, this file may be used in accordance with the terms
+ * and conditions contained in a signed written agreement between
+ * you and ecsec GmbH.
+ *
+ ***************************************************************************/
+
+package org.openecard.common.sal.cache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.annotation.Nullable;
+import org.openecard.common.OpenecardProperties;
+import org.openecard.common.util.ByteUtils;
+import org.openecard.common.util.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Size bounded on-disk cache for the content of immutable card files.
+ * Entries are keyed by card type, card identity, card application and data set name; the key is only stored as a
+ * digest, so the card identity does not appear in the file system. Each entry carries a SHA-256 digest of its content
+ * which is verified on every read, corrupt entries are removed. When the size limit is exceeded, the least recently
+ * used entries are removed.
+ *
+ * Which data sets may be cached is defined by the {@link CardFileCacheRules}. The cache is disabled unless
+ * {@code sal.file_cache.enabled} is set in the Open eCard properties.
+ */
+public final class CardFileCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CardFileCache.class);
+
+    private static final String ENABLED_KEY = "sal.file_cache.enabled";
+    private static final String DIR_KEY = "sal.file_cache.dir";
+    private static final String MAX_SIZE_KEY = "sal.file_cache.max_size";
+    private static final String RULES_KEY = "sal.file_cache.rules";
+    private static final long DEFAULT_MAX_SIZE = 10 * 1024 * 1024;
+
+    private static final String SUFFIX = ".bin";
+    private static final byte[] MAGIC = { 'O', 'E', 'C', 'F', 1 };
+    private static final int DIGEST_LENGTH = 32;
+    private static final int HEADER_LENGTH = MAGIC.length + DIGEST_LENGTH;
+
+    private final File dir;
+    private final long maxSize;
+    private final CardFileCacheRules rules;
+    // file name -> size of the file, in access order
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+
+    /**
+     * Creates a cache in the given directory.
+     * Existing entries in the directory are taken over.
+     *
+     * @param dir Directory containing the cache entries. It is created if it does not exist.
+     * @param maxSize Maximum number of bytes stored in the directory.
+     * @param rules Rules defining the cacheable data sets.
+     * @throws IOException Thrown in case the directory could not be created or read.
+     */
+    public CardFileCache(File dir, long maxSize, CardFileCacheRules rules) throws IOException {
+	if (maxSize <= 0) {
+	    throw new IllegalArgumentException("The maximum cache size must be positive.");
+	}
+	this.dir = dir;
+	this.maxSize = maxSize;
+	this.rules = rules;
+
+	if (! dir.isDirectory() && ! dir.mkdirs()) {
+	    throw new IOException("Failed to create card file cache directory " + dir + ".");
+	}
+	loadEntries();
+	evict();
+    }
+
+    /**
+     * Creates the cache configured in the Open eCard properties.
+     *
+     * @return The cache, or {@code null} if the cache is disabled, has no rules or could not be created.
+     */
+    @Nullable
+    public static CardFileCache fromProperties() {
+	if (! Boolean.parseBoolean(OpenecardProperties.getProperty(ENABLED_KEY))) {
+	    return null;
+	}
+	CardFileCacheRules rules = CardFileCacheRules.parse(OpenecardProperties.getProperty(RULES_KEY));
+	if (rules.isEmpty()) {
+	    LOG.info("Card file cache is enabled, but no cacheable data sets are configured.");
+	    return null;
+	}
+
+	long maxSize = DEFAULT_MAX_SIZE;
+	String maxSizeValue = OpenecardProperties.getProperty(MAX_SIZE_KEY);
+	if (maxSizeValue != null && ! maxSizeValue.trim().isEmpty()) {
+	    try {
+		maxSize = Long.parseLong(maxSizeValue.trim());
+	    } catch (NumberFormatException ex) {
+		LOG.warn("Invalid value '{}' configured for {}, using {} instead.", maxSizeValue, MAX_SIZE_KEY, maxSize);
+	    }
+	}
+
+	try {
+	    String dirValue = OpenecardProperties.getProperty(DIR_KEY);
+	    File dir;
+	    if (dirValue != null && ! dirValue.trim().isEmpty()) {
+		dir = new File(dirValue.trim());
+	    } else {
+		dir = new File(FileUtils.getHomeConfigDir(), "card-cache");
+	    }
+	    return new CardFileCache(dir, maxSize, rules);
+	} catch (IOException | SecurityException | IllegalArgumentException ex) {
+	    LOG.warn("Failed to initialize card file cache, continuing without it.", ex);
+	    return null;
+	}
+    }
+
+    /**
+     * Derives a card identity from the content of the identity data set.
+     *
+     * @param identityContent Content of the identity data set of the card.
+     * @return The identity of the card.
+     */
+    public static byte[] identity(byte[] identityContent) {
+	return sha256().digest(identityContent);
+    }
+
+    public CardFileCacheRules getRules() {
+	return rules;
+    }
+
+    /**
+     * @return Number of bytes currently stored in the cache.
+     */
+    public synchronized long getSize() {
+	return size;
+    }
+
+    /**
+     * Gets the cached content of a data set.
+     *
+     * @param key Key of the data set.
+     * @return The content, or {@code null} if it is not in the cache.
+     */
+    @Nullable
+    public synchronized byte[] get(Key key) {
+	String name = key.fileName();
+	if (! entries.containsKey(name)) {
+	    return null;
+	}
+
+	File file = new File(dir, name);
+	try {
+	    byte[] data = FileUtils.toByteArray(file);
+	    byte[] content = verify(data);
+	    if (content == null) {
+		LOG.warn("Removing corrupt card file cache entry {}.", name);
+		remove(name);
+		return null;
+	    }
+	    // keep the access order across restarts
+	    file.setLastModified(System.currentTimeMillis());
+	    entries.get(name);
+	    return content;
+	} catch (IOException ex) {
+	    LOG.warn("Failed to read card file cache entry {}.", name, ex);
+	    remove(name);
+	    return null;
+	}
+    }
+
+    /**
+     * Stores the content of a data set.
+     * Content larger than the cache is not stored.
+     *
+     * @param key Key of the data set.
+     * @param content Content of the data set.
+     */
+    public synchronized void put(Key key, byte[] content) {
+	long entrySize = HEADER_LENGTH + (long) content.length;
+	if (entrySize > maxSize) {
+	    return;
+	}
+
+	String name = key.fileName();
+	File file = new File(dir, name);
+	File tmp = new File(dir, name + ".tmp");
+	try {
+	    // write to a temporary file first, so that readers never see partial entries
+	    try (FileOutputStream out = new FileOutputStream(tmp)) {
+		out.write(MAGIC);
+		out.write(sha256().digest(content));
+		out.write(content);
+	    }
+	    if (! tmp.renameTo(file) && ! (file.delete() && tmp.renameTo(file))) {
+		throw new IOException("Failed to move " + tmp + " to " + file + ".");
+	    }
+
+	    Long oldSize = entries.put(name, entrySize);
+	    size += entrySize - (oldSize != null ? oldSize : 0);
+	    evict();
+	} catch (IOException ex) {
+	    LOG.warn("Failed to write card file cache entry {}.", name, ex);
+	    tmp.delete();
+	}
+    }
+
+    /**
+     * Removes all entries from the cache.
+     */
+    public synchronized void clear() {
+	for (String name : new ArrayList<>(entries.keySet())) {
+	    remove(name);
+	}
+    }
+
+    private void loadEntries() throws IOException {
+	File[] tmpFiles = dir.listFiles((d, name) -> name.endsWith(SUFFIX + ".tmp"));
+	if (tmpFiles != null) {
+	    // left over from interrupted writes
+	    for (File next : tmpFiles) {
+		next.delete();
+	    }
+	}
+	File[] files = dir.listFiles((d, name) -> name.endsWith(SUFFIX));
+	if (files == null) {
+	    throw new IOException("Failed to list card file cache directory " + dir + ".");
+	}
+	// oldest first, so that the access order matches the modification times
+	Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+	for (File next : files) {
+	    entries.put(next.getName(), next.length());
+	    size += next.length();
+	}
+    }
+
+    private void evict() {
+	Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+	while (size > maxSize && it.hasNext()) {
+	    Map.Entry<String, Long> eldest = it.next();
+	    it.remove();
+	    size -= eldest.getValue();
+	    delete(eldest.getKey());
+	}
+    }
+
+    private void remove(String name) {
+	Long entrySize = entries.remove(name);
+	if (entrySize != null) {
+	    size -= entrySize;
+	}
+	delete(name);
+    }
+
+    private void delete(String name) {
+	File file = new File(dir, name);
+	if (file.exists() && ! file.delete()) {
+	    LOG.warn("Failed to delete card file cache entry {}.", name);
+	}
+    }
+
+    @Nullable
+    private static byte[] verify(byte[] data) {
+	if (data.length < HEADER_LENGTH || ! Arrays.equals(Arrays.copyOf(data, MAGIC.length), MAGIC)) {
+	    return null;
+	}
+	byte[] digest = Arrays.copyOfRange(data, MAGIC.length, HEADER_LENGTH);
+	byte[] content = Arrays.copyOfRange(data, HEADER_LENGTH, data.length);
+	if (! MessageDigest.isEqual(digest, sha256().digest(content))) {
+	    return null;
+	}
+	return content;
+    }
+
+    private static MessageDigest sha256() {
+	try {
+	    return MessageDigest.getInstance("SHA-256");
+	} catch (NoSuchAlgorithmException ex) {
+	    throw new IllegalStateException("SHA-256 is not available.", ex);
+	}
+    }
+
+
+    /**
+     * Key of a cached data set.
+     */
+    public static final class Key {
+
+	private final String cardType;
+	private final byte[] cardIdentity;
+	private final byte[] cardApplication;
+	private final String dataSetName;
+	@Nullable
+	private final Long fileSize;
+
+	/**
+	 * Creates a key.
+	 * The file size reported by the card is part of the key, so a file whose size changed is never served from an
+	 * entry written before the change.
+	 *
+	 * @param cardType Card type URI of the CIF.
+	 * @param cardIdentity Identity of the card as returned by {@link CardFileCache#identity(byte[])}.
+	 * @param cardApplication Identifier of the card application containing the data set.
+	 * @param dataSetName Name of the data set.
+	 * @param fileSize Size of the file according to its FCP, may be null if unknown.
+	 */
+	public Key(String cardType, byte[] cardIdentity, byte[] cardApplication, String dataSetName,
+		@Nullable Long fileSize) {
+	    this.cardType = cardType;
+	    this.cardIdentity = ByteUtils.clone(cardIdentity);
+	    this.cardApplication = ByteUtils.clone(cardApplication);
+	    this.dataSetName = dataSetName;
+	    this.fileSize = fileSize;
+	}
+
+	String fileName() {
+	    MessageDigest md = sha256();
+	    update(md, cardType.getBytes(StandardCharsets.UTF_8));
+	    update(md, cardIdentity);
+	    update(md, cardApplication);
+	    update(md, dataSetName.getBytes(StandardCharsets.UTF_8));
+	    update(md, fileSize != null ? ByteBuffer.allocate(8).putLong(fileSize).array() : null);
+	    return ByteUtils.toHexString(md.digest()) + SUFFIX;
+	}
+
+	private static void update(MessageDigest md, @Nullable byte[] value) {
+	    int length = value != null ? value.length : 0;
+	    // length prefix keeps the components apart
+	    md.update(ByteBuffer.allocate(4).putInt(length).array());
+	    if (value != null) {
+		md.update(value);
+	    }
+	}
+
+    }
+
+}
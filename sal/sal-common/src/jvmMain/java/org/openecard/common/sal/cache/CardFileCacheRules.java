@@ -0,0 +1,143 @@
+/****************************************************************************
+ * Copyright (C) 2026 ecsec GmbH.
+ * All rights reserved.
+ * Contact: ecsec GmbH (info@ecsec.de)
+ *
+ * This file is part of the Open eCard App.
+ *
+ * GNU General Public License Usage
+ * This file may be used under the terms of the GNU General Public
+ * License version 3.0 as published by the Free Software Foundation
+ * and appearing in the file LICENSE.GPL included in the packaging of
+ * this file. Please review the following information to ensure the
+ * GNU General Public License version 3.0 requirements will be met:
+ * http://www.gnu.org/copyleft/gpl.html.
+ *
+ * Other Usage
+ * Alternatively, this file may be used in accordance with the terms
+ * and conditions contained in a signed written agreement between
+ * you and ecsec GmbH.
+ *
+ ***************************************************************************/
+
+package org.openecard.common.sal.cache;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Rules defining which data sets of a card type may be served from the {@link CardFileCache}.
+ * Only data sets which never change during the lifetime of a card must be listed here.
+ *
+ * For each card type, one data set identifies the card, e.g. EF.GDO containing the ICCSN. It is always read from the
+ * card and its digest becomes the identity under which the cacheable data sets of this card are stored. Without reading
+ * the identity first, no cached data is used.
+ *
+ * The textual form consists of entries separated by {@code ;}. Each entry lists the card type, the identity data set
+ * and the cacheable data sets, separated by whitespace:
+ * <pre>
+ * http://example.com/cif/card EF.GDO EF.DIR EF.C.CH.AUT; http://example.com/cif/other EF.ID EF.CERT
+ * </pre>
+ */
+public final class CardFileCacheRules {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CardFileCacheRules.class);
+
+    /** Rules without any cacheable data set. */
+    public static final CardFileCacheRules NONE = new CardFileCacheRules(Collections.emptyMap(),
+	    Collections.emptyMap());
+
+    private final Map<String, String> identityDataSets;
+    private final Map<String, Set<String>> cacheableDataSets;
+
+    private CardFileCacheRules(Map<String, String> identityDataSets, Map<String, Set<String>> cacheableDataSets) {
+	this.identityDataSets = identityDataSets;
+	this.cacheableDataSets = cacheableDataSets;
+    }
+
+    /**
+     * Parses the textual form of the rules.
+     * Malformed entries are logged and skipped.
+     *
+     * @param rules Rules in textual form, may be null.
+     * @return The parsed rules.
+     */
+    public static CardFileCacheRules parse(@Nullable String rules) {
+	if (rules == null || rules.trim().isEmpty()) {
+	    return NONE;
+	}
+
+	Map<String, String> identities = new HashMap<>();
+	Map<String, Set<String>> cacheable = new HashMap<>();
+	for (String entry : rules.split(";")) {
+	    String[] parts = entry.trim().split("\\s+");
+	    if (parts.length < 3) {
+		if (! entry.trim().isEmpty()) {
+		    LOG.warn("Ignoring card file cache rule '{}' without identity and cacheable data sets.", entry.trim());
+		}
+		continue;
+	    }
+	    String cardType = parts[0];
+	    if (identities.containsKey(cardType)) {
+		LOG.warn("Ignoring duplicate card file cache rule for card type '{}'.", cardType);
+		continue;
+	    }
+	    Set<String> dataSets = new HashSet<>(Arrays.asList(parts).subList(2, parts.length));
+	    // the identity must always be read from the card
+	    dataSets.remove(parts[1]);
+	    identities.put(cardType, parts[1]);
+	    cacheable.put(cardType, Collections.unmodifiableSet(dataSets));
+	}
+	return new CardFileCacheRules(identities, cacheable);
+    }
+
+    /**
+     * Gets the name of the data set identifying cards of the given type.
+     *
+     * @param cardType Card type URI of the CIF.
+     * @return The name of the identity data set, or {@code null} if the card type has no rule.
+     */
+    @Nullable
+    public String getIdentityDataSet(String cardType) {
+	return identityDataSets.get(cardType);
+    }
+
+    /**
+     * Checks whether the given data set is the identity data set of the card type.
+     *
+     * @param cardType Card type URI of the CIF.
+     * @param dataSetName Name of the data set.
+     * @return {@code true} if the data set identifies the card, {@code false} otherwise.
+     */
+    public boolean isIdentity(String cardType, String dataSetName) {
+	return dataSetName.equals(identityDataSets.get(cardType));
+    }
+
+    /**
+     * Checks whether the given data set may be served from the cache.
+     *
+     * @param cardType Card type URI of the CIF.
+     * @param dataSetName Name of the data set.
+     * @return {@code true} if the data set is cacheable, {@code false} otherwise.
+     */
+    public boolean isCacheable(String cardType, String dataSetName) {
+	Set<String> dataSets = cacheableDataSets.get(cardType);
+	return dataSets != null && dataSets.contains(dataSetName);
+    }
+
+    /**
+     * @return {@code true} if no card type has a rule, {@code false} otherwise.
+     */
+    public boolean isEmpty() {
+	return identityDataSets.isEmpty();
+    }
+
+}
@@ -32,7 +32,7 @@ public class CardEntry implements Comparable<CardEntry> {
 	this.ctxHandle = ByteUtils.clone(ctxHandle);
 	this.ifdName = ifdName;
 	this.slotIdx = slotIdx;
-	this.cif = new CardInfoWrapper(cif);
+	this.cif = cif;
     }
 
     public boolean matches(byte[] ctxHandle, String ifdName, BigInteger slotIdx) {
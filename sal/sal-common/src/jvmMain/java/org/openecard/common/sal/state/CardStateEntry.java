@@ -78,12 +78,12 @@ public class CardStateEntry implements Comparable<CardStateEntry> {
     private FCP lastSelectedEfFCP;
 
     public CardStateEntry(ConnectionHandleType handle, CardInfoType cif, @Nullable String interfaceProtocol) {
-	this(handle, new CardInfoWrapper(cif, interfaceProtocol));
+	this(handle, CardInfoWrapper.forCardInfo(cif, interfaceProtocol));
     }
 
     private CardStateEntry(ConnectionHandleType handle, CardInfoWrapper cifWrapper) {
 	serialNumber = nextNumber();
-	infoObject = new CardInfoWrapper(cifWrapper);
+	infoObject = cifWrapper;
 	this.handle = handle;
 	this.handle.setCardApplication(getImplicitlySelectedApplicationIdentifier());
     }
@@ -31,19 +31,23 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 import org.openecard.addon.AddonSelector;
 import org.openecard.addon.sal.SALProtocol;
-import org.openecard.common.util.ByteComparator;
+import org.openecard.common.util.ByteArrayWrapper;
 import org.openecard.common.util.ByteUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 
 /**
+ * Multi-index store for the CardStateEntries of the SAL.
+ * Entries are indexed by session identifier, context handle, slot handle, IFD name and card type. Lookups do not take
+ * any locks and iterate the smallest matching index set directly instead of copying it. Modifications are serialized,
+ * so that all indexes are updated consistently.
  *
  * @author Tobias Wich
  */
@@ -51,10 +55,16 @@ public class CardStateMap {
 
     private static final Logger LOG = LoggerFactory.getLogger(CardStateMap.class);
 
-    private final TreeSet<CardStateEntry> allEntries = new TreeSet<>();
-    private final ConcurrentSkipListMap<String,Set<CardStateEntry>> sessionMap = new ConcurrentSkipListMap<>();
-    private final ConcurrentSkipListMap<byte[],Set<CardStateEntry>> contextMap = new ConcurrentSkipListMap<>(new ByteComparator());
-    private final ConcurrentSkipListMap<byte[],Set<CardStateEntry>> slothandleMap = new ConcurrentSkipListMap<>(new ByteComparator());
+    private final Set<CardStateEntry> allEntries = new ConcurrentSkipListSet<>();
+    private final ConcurrentHashMap<String, Set<CardStateEntry>> sessionMap = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<ByteArrayWrapper, Set<CardStateEntry>> contextMap = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<ByteArrayWrapper, Set<CardStateEntry>> slothandleMap = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<CardStateEntry>> ifdNameMap = new ConcurrentHashMap<>();
+    // entries without an IFD name match any name, so the IFD name index can only be used when there are none
+    private final Set<CardStateEntry> noIfdNameEntries = new ConcurrentSkipListSet<>();
+    private final ConcurrentHashMap<String, Set<CardStateEntry>> cardTypeMap = new ConcurrentHashMap<>();
+    // reverse index, so that all slot handle references of an entry can be removed without scanning the index
+    private final ConcurrentHashMap<CardStateEntry, Set<ByteArrayWrapper>> entrySlothandles = new ConcurrentHashMap<>();
 
     private AddonSelector protocolSelector;
 
@@ -63,10 +73,10 @@ public class CardStateMap {
     }
 
 
-    public synchronized CardStateEntry getEntry(ConnectionHandleType handle) {
+    public CardStateEntry getEntry(ConnectionHandleType handle) {
 	return getEntry(handle, true);
     }
-    public synchronized CardStateEntry getEntry(ConnectionHandleType handle, boolean filterAppId) {
+    public CardStateEntry getEntry(ConnectionHandleType handle, boolean filterAppId) {
 	if (LOG.isDebugEnabled()) {
 	    LOG.debug("Requesting entry (filterAppId={}) for handle:{}{}",
 		    filterAppId, System.lineSeparator(), HandlePrinter.printHandle(handle));
@@ -95,12 +105,24 @@ public class CardStateMap {
 	ConnectionHandleType handle = entry.handleCopy();
 	ChannelHandleType channel = handle.getChannelHandle();
 
+	// add to allEntries first, so that readers never see an indexed entry which is missing in the full set
+	allEntries.add(entry);
 	if (channel != null) {
 	    addMapEntry(channel.getSessionIdentifier(), sessionMap, entry);
 	}
-	addMapEntry(handle.getContextHandle(), contextMap, entry);
-	addMapEntry(handle.getSlotHandle(), slothandleMap, entry);
-	allEntries.add(entry);
+	addMapEntry(wrap(handle.getContextHandle()), contextMap, entry);
+	ByteArrayWrapper slotHandle = wrap(handle.getSlotHandle());
+	if (slotHandle != null) {
+	    addMapEntry(slotHandle, slothandleMap, entry);
+	    entrySlothandles.computeIfAbsent(entry, k -> ConcurrentHashMap.newKeySet()).add(slotHandle);
+	}
+	String ifdName = handle.getIFDName();
+	if (ifdName != null) {
+	    addMapEntry(ifdName, ifdNameMap, entry);
+	} else {
+	    noIfdNameEntries.add(entry);
+	}
+	addMapEntry(entry.getCardType(), cardTypeMap, entry);
     }
 
 
@@ -115,11 +137,9 @@ public class CardStateMap {
 		    System.lineSeparator(), HandlePrinter.printHandle(handle));
 	}
 	Set<CardStateEntry> entries = getMatchingEntries(handle);
-	Iterator<CardStateEntry> it = entries.iterator();
 	boolean removeSlotHandles = handle.getSlotHandle() == null;
 
-	while (it.hasNext()) {
-	    CardStateEntry entry = it.next();
+	for (CardStateEntry entry : entries) {
 	    removeEntry(entry, removeSlotHandles);
 	}
     }
@@ -161,57 +181,69 @@ public class CardStateMap {
 	ConnectionHandleType handle = entry.handleCopy();
 	ChannelHandleType channel = handle.getChannelHandle();
 
+	// remove from allEntries first, so that readers never see an entry which is only partially indexed
+	LOG.debug("Removing entry from allEntries set.");
+	allEntries.remove(entry);
+
 	if (channel != null) {
 	    LOG.debug("Removing entry from session map for channel session={}.", channel.getSessionIdentifier());
 	    removeMapEntry(channel.getSessionIdentifier(), sessionMap, entry);
 	}
 	LOG.debug("Removing entry from context map for ctx={}.", ByteUtils.toHexString(handle.getContextHandle()));
-	removeMapEntry(handle.getContextHandle(), contextMap, entry);
+	removeMapEntry(wrap(handle.getContextHandle()), contextMap, entry);
+	String ifdName = handle.getIFDName();
+	if (ifdName != null) {
+	    removeMapEntry(ifdName, ifdNameMap, entry);
+	} else {
+	    noIfdNameEntries.remove(entry);
+	}
+	removeMapEntry(entry.getCardType(), cardTypeMap, entry);
 	// remove all or just the one a key is given for
 	if (removeSlotHandles) {
 	    LOG.debug("Removing all entries for SlotHandles.");
-	    Iterator<byte[]> it = slothandleMap.keySet().iterator();
-	    while (it.hasNext()) {
-		byte[] key = it.next();
-		LOG.debug("Removing entry for slot={}.", ByteUtils.toHexString(key));
-		removeMapEntry(key, slothandleMap, entry);
+	    Set<ByteArrayWrapper> keys = entrySlothandles.remove(entry);
+	    if (keys != null) {
+		for (ByteArrayWrapper key : keys) {
+		    removeMapEntry(key, slothandleMap, entry);
+		}
 	    }
 	} else {
 	    LOG.debug("Removing entry for slot={}.", ByteUtils.toHexString(handle.getSlotHandle()));
-	    removeMapEntry(handle.getSlotHandle(), slothandleMap, entry);
+	    ByteArrayWrapper key = wrap(handle.getSlotHandle());
+	    removeMapEntry(key, slothandleMap, entry);
+	    Set<ByteArrayWrapper> keys = entrySlothandles.get(entry);
+	    if (key != null && keys != null) {
+		keys.remove(key);
+		if (keys.isEmpty()) {
+		    entrySlothandles.remove(entry);
+		}
+	    }
 	}
 
 	LOG.debug("Removing all protocol instances.");
 	clearProtocolsForEntry(entry);
-
-	LOG.debug("Removing entry from allEntries set.");
-	allEntries.remove(entry);
     }
 
 
-    private <K> void addMapEntry(K key, ConcurrentSkipListMap<K,Set<CardStateEntry>> map, CardStateEntry entry) {
+    private static <K> void addMapEntry(K key, ConcurrentHashMap<K, Set<CardStateEntry>> map, CardStateEntry entry) {
 	if (key != null) {
-	    Set<CardStateEntry> entrySet = setFromMap(map, key);
-	    boolean empty = entrySet.isEmpty();
-	    entrySet.add(entry);
-	    if (empty) {
-		map.put(key, entrySet);
-	    }
+	    map.computeIfAbsent(key, k -> new ConcurrentSkipListSet<>()).add(entry);
 	}
     }
 
-    private <K> void removeMapEntry(K key, ConcurrentSkipListMap<K,Set<CardStateEntry>> map, CardStateEntry entry) {
+    private static <K> void removeMapEntry(K key, ConcurrentHashMap<K, Set<CardStateEntry>> map, CardStateEntry entry) {
 	if (key != null) {
-	    if (map.containsKey(key)) {
-		Set<CardStateEntry> entrySet = map.get(key);
+	    map.computeIfPresent(key, (k, entrySet) -> {
 		entrySet.remove(entry);
-		if (entrySet.isEmpty()) {
-		    map.remove(key);
-		}
-	    }
+		return entrySet.isEmpty() ? null : entrySet;
+	    });
 	}
     }
 
+    private static ByteArrayWrapper wrap(byte[] data) {
+	return (data != null) ? new ByteArrayWrapper(data) : null;
+    }
+
 
     public Set<CardStateEntry> getMatchingEntries(ConnectionHandleType cHandle) {
 	return getMatchingEntries(cHandle, true);
@@ -227,7 +259,7 @@ public class CardStateMap {
 	return getMatchingEntries(cHandle, null, null, filterAppId);
     }
 
-    private synchronized Set<CardStateEntry> getMatchingEntries(CardApplicationPathType cHandle, byte[] slotHandle,
+    private Set<CardStateEntry> getMatchingEntries(CardApplicationPathType cHandle, byte[] slotHandle,
 	    RecognitionInfo recInfo, boolean filterAppId) {
 	// extract values from map
 	ChannelHandleType channel = cHandle.getChannelHandle();
@@ -235,167 +267,112 @@ public class CardStateMap {
 	byte[] ctx = cHandle.getContextHandle();
 	String ifdname = cHandle.getIFDName();
 	BigInteger slotIdx = cHandle.getSlotIndex();
-	byte[] cardApplication = cHandle.getCardApplication();
-
-	// when nothing has been specified, return all elements
-	Set<CardStateEntry> mergedSets;
-	if (session == null && ctx == null && slotHandle == null) {
-	    mergedSets = new TreeSet<>(allEntries);
-	} else {
-	    // fetch applicable lists from maps
-	    Set<CardStateEntry> sessionEntries = setFromMap(sessionMap, session);
-	    Set<CardStateEntry> ctxEntries = setFromMap(contextMap, ctx);
-	    Set<CardStateEntry> slothandleEntries = setFromMap(slothandleMap, slotHandle);
-
-	    // merge entries
-	    ArrayList<Set<CardStateEntry>> setsToMerge = new ArrayList<>(3);
-	    if (session != null) {
-		setsToMerge.add(sessionEntries);
-	    }
-	    if (ctx != null) {
-		setsToMerge.add(ctxEntries);
-	    }
-	    if (slotHandle != null) {
-		setsToMerge.add(slothandleEntries);
-	    }
-
-	    mergedSets = mergeSets(setsToMerge);
+	// [TR-03112-4] If no card application is specified, paths to all
+	// available cards (alpha-card applications) and unused card
+	// terminal slots are returned.
+	byte[] cardApplication = filterAppId ? cHandle.getCardApplication() : null;
+	String cardType = (recInfo != null) ? recInfo.getCardType() : null;
+
+	// fetch applicable sets from the indexes
+	ArrayList<Set<CardStateEntry>> restrictions = new ArrayList<>(5);
+	if (session != null) {
+	    restrictions.add(setFromMap(sessionMap, session));
 	}
-
-	// filter maps for slotIndex if any is given
-	if (slotIdx != null) {
-	    filterIdx(mergedSets, slotIdx);
+	if (ctx != null) {
+	    restrictions.add(setFromMap(contextMap, wrap(ctx)));
+	}
+	if (slotHandle != null) {
+	    restrictions.add(setFromMap(slothandleMap, wrap(slotHandle)));
 	}
-	if (ifdname != null) {
-	    filterIfdname(mergedSets, ifdname);
+	if (ifdname != null && noIfdNameEntries.isEmpty()) {
+	    restrictions.add(setFromMap(ifdNameMap, ifdname));
+	}
+	if (cardType != null) {
+	    restrictions.add(setFromMap(cardTypeMap, cardType));
 	}
 
-	if (filterAppId && cardApplication != null) {
-	    filterCardApplication(mergedSets, cardApplication);
-	} else {
-	    // [TR-03112-4] If no card application is specified, paths to all
-	    // available cards (alpha-card applications) and unused card
-	    // terminal slots are returned.
+	// when nothing has been specified, start with all elements, otherwise with the smallest index set
+	Set<CardStateEntry> candidates = allEntries;
+	for (Set<CardStateEntry> next : restrictions) {
+	    if (candidates == allEntries || next.size() < candidates.size()) {
+		candidates = next;
+	    }
 	}
 
-	if (recInfo != null && recInfo.getCardType() != null) {
-	    filterCardType(mergedSets, recInfo.getCardType());
+	TreeSet<CardStateEntry> result = new TreeSet<>();
+	for (CardStateEntry next : candidates) {
+	    if (containedInAll(next, restrictions)
+		    && matchIdx(next, slotIdx)
+		    && matchIfdname(next, ifdname)
+		    && matchCardApplication(next, cardApplication)) {
+		result.add(next);
+	    }
 	}
 
-	return mergedSets;
+	return result;
     }
 
 
     /**
      * Simplify returning a result from the map.<br>
-     * If key is null or no key is present, the empty list is returned.
+     * If no key is present, the empty set is returned.
      *
      * @param <K>
      * @param map
      * @param key
      * @return
      */
-    private static <K> Set<CardStateEntry> setFromMap(ConcurrentSkipListMap<K, Set<CardStateEntry>> map, K key) {
-	Set<CardStateEntry> result = null;
-	if (key != null) {
-	    result = map.get(key);
-	}
-
-	return (result != null) ? result : new TreeSet<>();
+    private static <K> Set<CardStateEntry> setFromMap(ConcurrentHashMap<K, Set<CardStateEntry>> map, K key) {
+	Set<CardStateEntry> result = map.get(key);
+	return (result != null) ? result : Collections.emptySet();
     }
 
-    /**
-     * Remove non matching entries (slotIndex) from given list.
-     *
-     * @param entries
-     * @param idx
-     */
-    private static void filterIdx(Set<CardStateEntry> entries, BigInteger idx) {
-	Iterator<CardStateEntry> it = entries.iterator();
-	while (it.hasNext()) {
-	    CardStateEntry next = it.next();
-	    // other index is not equal to this one
-	    if (next.hasSlotIdx() && ! next.matchSlotIdx(idx)) {
-		it.remove();
+    private static boolean containedInAll(CardStateEntry entry, ArrayList<Set<CardStateEntry>> sets) {
+	for (Set<CardStateEntry> next : sets) {
+	    if (! next.contains(entry)) {
+		return false;
 	    }
 	}
+	return true;
     }
 
     /**
-     * Remove non matching entries (cardApplication) from given list.
+     * Check the entry for a matching slotIndex.
+     * Entries without a slot index match any index.
      *
-     * @param entries
-     * @param cardApplication
+     * @param entry
+     * @param idx
      */
-    private static void filterCardApplication(Set<CardStateEntry> entries, byte[] cardApplication) {
-	Iterator<CardStateEntry> it = entries.iterator();
-	while (it.hasNext()) {
-	    CardStateEntry next = it.next();
-	    if (! Arrays.equals(next.getCurrentCardApplication().getApplicationIdentifier(), cardApplication)) {
-		it.remove();
-	    }
-	}
+    private static boolean matchIdx(CardStateEntry entry, BigInteger idx) {
+	// other index is not equal to this one
+	return idx == null || ! entry.hasSlotIdx() || entry.matchSlotIdx(idx);
     }
 
     /**
-     * Remove non matching entries (ifdName) from given list.
+     * Check the entry for a matching cardApplication.
      *
-     * @param entries
-     * @param ifdname
+     * @param entry
+     * @param cardApplication
      */
-    private static void filterIfdname(Set<CardStateEntry> entries, String ifdName) {
-	Iterator<CardStateEntry> it = entries.iterator();
-	while (it.hasNext()) {
-	    CardStateEntry next = it.next();
-	    String otherName = next.getIfdName();
-	    // other ifdName is not equal to this one
-	    if (otherName != null && ! otherName.equals(ifdName)) {
-		it.remove();
-	    }
-	}
+    private static boolean matchCardApplication(CardStateEntry entry, byte[] cardApplication) {
+	return cardApplication == null
+		|| Arrays.equals(entry.getCurrentCardApplication().getApplicationIdentifier(), cardApplication);
     }
 
     /**
-     * Remove non matching entries (cardType) from given list.
+     * Check the entry for a matching ifdName.
+     * Entries without an ifdName match any name.
      *
-     * @param entries
-     * @param cardType
+     * @param entry
+     * @param ifdName
      */
-    private static void filterCardType(Set<CardStateEntry> entries, String cardType) {
-	Iterator<CardStateEntry> it = entries.iterator();
-	while (it.hasNext()) {
-	    CardStateEntry next = it.next();
-	    String otherType = next.getCardType();
-	    // other ifdName is not equal to this one
-	    if (! otherType.equals(cardType)) {
-		it.remove();
-	    }
-	}
-    }
-
-    private static Set<CardStateEntry> mergeSets(ArrayList<Set<CardStateEntry>> setsToMerge) {
-	TreeSet<CardStateEntry> result = new TreeSet<>();
-
-	if (setsToMerge.isEmpty()) {
-	    return Collections.emptySet();
-	} else {
-	    // add first then try to merge the others
-	    result.addAll(setsToMerge.get(0));
-	    if (setsToMerge.size() >= 2) {
-		for (Set<CardStateEntry> nextSet : setsToMerge.subList(1, setsToMerge.size())) {
-		    Iterator<CardStateEntry> it = result.iterator();
-		    while (it.hasNext()) {
-			CardStateEntry nextEntry = it.next();
-			// remove entry from results if it is not present in the next set
-			if (! nextSet.contains(nextEntry)) {
-			    it.remove();
-			}
-		    }
-		}
-	    }
-	    // done
-	    return result;
+    private static boolean matchIfdname(CardStateEntry entry, String ifdName) {
+	if (ifdName == null) {
+	    return true;
 	}
+	String otherName = entry.getIfdName();
+	// other ifdName is not equal to this one
+	return otherName == null || otherName.equals(ifdName);
     }
 
 }
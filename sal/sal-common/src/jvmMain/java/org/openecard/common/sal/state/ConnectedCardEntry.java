@@ -34,6 +34,7 @@ public class ConnectedCardEntry extends CardEntry {
     private final Set<DIDInfoType> authenticatedDIDs = new HashSet<>();
     private FCP lastSelectedEfFCP;
 	private DataSetInfoType currentFile;
+    private volatile byte[] cardIdentity;
 
     public ConnectedCardEntry(byte[] slotHandle, byte[] cardApplication, CardEntry base) {
 	super(base.ctxHandle, base.ifdName, base.slotIdx, base.cif);
@@ -64,6 +65,19 @@ public class ConnectedCardEntry extends CardEntry {
 	return lastSelectedEfFCP;
     }
 
+    /**
+     * Gets the identity of the card used as key in the card file cache.
+     *
+     * @return The identity, or {@code null} if the identity data set has not been read yet.
+     */
+    public byte[] getCardIdentity() {
+	return cardIdentity;
+    }
+
+    public void setCardIdentity(byte[] cardIdentity) {
+	this.cardIdentity = cardIdentity;
+    }
+
     public byte[] getSlotHandle() {
 	return slotHandle;
     }
@@ -13,14 +13,18 @@ package org.openecard.common.sal.state;
 import iso.std.iso_iec._24727.tech.schema.ConnectionHandleType;
 import java.math.BigInteger;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
 import org.openecard.common.sal.state.cif.CardInfoWrapper;
+import org.openecard.common.util.ByteArrayWrapper;
 import org.openecard.common.util.ByteUtils;
 import org.openecard.common.util.ValueGenerators;
 import org.slf4j.Logger;
@@ -30,6 +34,13 @@ import org.openecard.common.sal.util.HexShim;
 
 
 /**
+ * Thread safe store of the card and session states of the SAL.
+ * Cards are indexed by (context handle, IFD name, slot index) and by context handle, sessions by session identifier,
+ * context handle and slot handle of the connected card. Lookups do not take any locks. Modifications are serialized,
+ * so that all indexes are updated consistently.
+ * <p>The number and lifetime of the sessions is limited by a {@link SessionPolicy}. Expired sessions are evicted
+ * when they are looked up and in a sweep when new sessions are created, so no background thread is needed. Evicted
+ * sessions are handed to the {@link SessionEvictionListener} to release their resources.</p>
  *
  * @author Tobias Wich
  */
@@ -37,53 +48,103 @@ public class SalStateManager implements SalStateView {
 
     private static final Logger LOG = LoggerFactory.getLogger(SalStateManager.class);
 
-    private final Set<CardEntry> cards;
-    private final Map<String, StateEntry> sessions;
+    private final ConcurrentHashMap<CardKey, CardEntry> cards;
+    // sorted, so that the lookup by context handle always yields the same entry
+    private final ConcurrentHashMap<ByteArrayWrapper, Set<CardEntry>> cardsByContext;
+    private final ConcurrentHashMap<ConnectionKey, ConnectedCardEntry> connectedCards;
+
+    private final ConcurrentHashMap<String, StateEntry> sessions;
+    private final ConcurrentHashMap<ByteArrayWrapper, Set<StateEntry>> sessionsByContext;
+    private final ConcurrentHashMap<ByteArrayWrapper, StateEntry> sessionsBySlotHandle;
+
+    private final SessionPolicy policy;
+    private volatile SessionEvictionListener evictionListener;
+    private long nextIdleSweep;
+    private final AtomicLong idleEvictions = new AtomicLong();
+    private final AtomicLong capacityEvictions = new AtomicLong();
 
     public SalStateManager() {
-	this.cards = new TreeSet<>();
-	this.sessions = new HashMap<>();
+	this(SessionPolicy.UNLIMITED);
+    }
+
+    public SalStateManager(SessionPolicy policy) {
+	this.policy = policy;
+	this.cards = new ConcurrentHashMap<>();
+	this.cardsByContext = new ConcurrentHashMap<>();
+	this.connectedCards = new ConcurrentHashMap<>();
+	this.sessions = new ConcurrentHashMap<>();
+	this.sessionsByContext = new ConcurrentHashMap<>();
+	this.sessionsBySlotHandle = new ConcurrentHashMap<>();
+	this.nextIdleSweep = System.nanoTime();
+    }
+
+    public void setEvictionListener(SessionEvictionListener evictionListener) {
+	this.evictionListener = evictionListener;
+    }
+
+    public SessionPolicy getPolicy() {
+	return policy;
+    }
+
+    /**
+     * @return The number of sessions currently kept by this instance.
+     */
+    public int getSessionCount() {
+	return sessions.size();
+    }
+
+    /**
+     * @return The number of sessions evicted because they were idle longer than the configured timeout.
+     */
+    public long getIdleEvictionCount() {
+	return idleEvictions.get();
+    }
+
+    /**
+     * @return The number of sessions evicted because the maximum number of sessions was reached.
+     */
+    public long getCapacityEvictionCount() {
+	return capacityEvictions.get();
     }
 
     // card handling
-    public CardEntry addCard(byte[] ctx, String ifdName, BigInteger slotIdx, CardInfoWrapper cif) throws DuplicateCardEntry {
+    public synchronized CardEntry addCard(byte[] ctx, String ifdName, BigInteger slotIdx, CardInfoWrapper cif) throws DuplicateCardEntry {
 	CardEntry ce = new CardEntry(ctx, ifdName, slotIdx, cif);
-	if (cards.contains(ce)) {
+	CardKey key = new CardKey(ce);
+	if (cards.containsKey(key)) {
 	    LOG.error("Failed to add duplicate card entry.");
 	    throw new DuplicateCardEntry(String.format("Failed to add duplicate card entry for device=%s.", ifdName));
 	} else {
-	    cards.add(ce);
+	    putCard(key, ce);
 	    return ce;
 	}
     }
 
-    public void addCard(ConnectedCardEntry connectedCardEntry) {
-	if (!this.cards.add(connectedCardEntry)) {
-	    this.cards.remove(connectedCardEntry);
-	    this.cards.add(connectedCardEntry);
+    public synchronized void addCard(ConnectedCardEntry connectedCardEntry) {
+	CardKey key = new CardKey(connectedCardEntry);
+	CardEntry old = cards.get(key);
+	if (old != null) {
+	    unindexCard(key, old);
 	    LOG.debug("Added card: {}", connectedCardEntry);
 	}
+	putCard(key, connectedCardEntry);
     }
 
-    public boolean removeCard(byte[] ctx, String ifdName, BigInteger idx) {
+    public synchronized boolean removeCard(byte[] ctx, String ifdName, BigInteger idx) {
 	LOG.debug("Request remove card: {}", new HexShim(ctx), ifdName, idx);
-	Iterator<CardEntry> it = cards.iterator();
 	boolean removed = false;
-	while (it.hasNext()) {
-	    CardEntry next = it.next();
-	    if (next.matches(ctx, ifdName, idx)) {
+	if (ctx != null && ifdName != null && idx != null) {
+	    CardKey key = new CardKey(ctx, ifdName, idx);
+	    CardEntry next = cards.get(key);
+	    if (next != null) {
 		LOG.debug("Removing known matching card [{}, {}, {}]", new HexShim(ctx), ifdName, idx);
-		it.remove();
-
+		unindexCard(key, next);
 		removed = true;
-	    } else {
-		LOG.debug("Did not match for removal: [{}, {}, {}]", new HexShim(next.ctxHandle), next.ifdName, next.slotIdx);
 	    }
 	}
-	Map.Entry<String, StateEntry> matchingState = this.getStateEntry(ctx);
-	if (matchingState != null) {
+	StateEntry stateEntry = this.getStateEntry(ctx);
+	if (stateEntry != null) {
 	    LOG.debug("Removing known matching state {}", new HexShim(ctx));
-	    final StateEntry stateEntry = matchingState.getValue();
 	    final ConnectedCardEntry connectedCard = stateEntry.getCardEntry();
 	    if (connectedCard != null) {
 		stateEntry.removeCard();
@@ -98,7 +159,9 @@ public class SalStateManager implements SalStateView {
     }
 
     public List<CardEntry> listCardEntries() {
-	return new ArrayList<>(cards);
+	List<CardEntry> result = new ArrayList<>(cards.values());
+	Collections.sort(result);
+	return result;
     }
 
     @Override
@@ -106,48 +169,30 @@ public class SalStateManager implements SalStateView {
 	if (contextHandle == null || givenSlotIndex == null || givenIfdName == null) {
 	    return true;
 	}
-
-	for (ConnectionHandleType cardHandle : this.listCardHandles()) {
-	    if (ByteUtils.compare(contextHandle, cardHandle.getContextHandle())
-		    &&  givenIfdName.equals(cardHandle.getIFDName())
-		    && ByteUtils.compare(givenSlotIndex, cardHandle.getSlotHandle())) {
-		return false;
-	    }
-	}
-	return true;
+	return ! connectedCards.containsKey(new ConnectionKey(contextHandle, givenIfdName, givenSlotIndex));
     }
 
     public CardEntry getCardEntry(byte[] ctx, String ifdName, BigInteger slotIdx) {
-	for (CardEntry next : cards) {
-	    if (next.matches(ctx, ifdName, slotIdx)) {
-		return next;
-	    }
+	if (ctx == null || ifdName == null || slotIdx == null) {
+	    return null;
 	}
-	// no match
-	return null;
+	return cards.get(new CardKey(ctx, ifdName, slotIdx));
     }
 
     public CardEntry getCardEntry(byte[] ctx) {
-	for (CardEntry next : cards) {
-	    if (next.matchesContextHandle(ctx)) {
-		return next;
-	    }
+	if (ctx == null) {
+	    return null;
 	}
-	// no match
-	return null;
+	Set<CardEntry> entries = cardsByContext.get(new ByteArrayWrapper(ctx));
+	return entries != null ? first(entries) : null;
     }
 
-    private Map.Entry<String, StateEntry> getStateEntry(byte[] contextHandle) {
+    private StateEntry getStateEntry(byte[] contextHandle) {
 	if (contextHandle == null) {
 	    return null;
 	}
-	for (Map.Entry<String, StateEntry> entry : sessions.entrySet()) {
-	    StateEntry stateEntry = entry.getValue();
-	    if (Arrays.equals(stateEntry.getContextHandle(), contextHandle)) {
-		return entry;
-	    }
-	}
-	return null;
+	Set<StateEntry> entries = sessionsByContext.get(new ByteArrayWrapper(contextHandle));
+	return entries != null ? first(entries) : null;
     }
 
     // Session handling
@@ -163,28 +208,41 @@ public class SalStateManager implements SalStateView {
 
 
     public StateEntry createSession(String session, byte[] contextHandle) throws SessionAlreadyExists {
-	if (sessions.containsKey(session)) {
-	    throw new SessionAlreadyExists(String.format("The requested session=%s already exists.", session));
-	} else {
-	    StateEntry newEntry = new StateEntry(session, contextHandle);
-	    sessions.put(session, newEntry);
-	    return newEntry;
+	List<StateEntry> evicted = new ArrayList<>();
+	StateEntry newEntry = null;
+	try {
+	    synchronized (this) {
+		long now = System.nanoTime();
+		evictIdleSessions(now, evicted);
+		if (sessions.containsKey(session)) {
+		    throw new SessionAlreadyExists(String.format("The requested session=%s already exists.", session));
+		}
+		evictForCapacity(evicted);
+		newEntry = new StateEntry(this, session, contextHandle);
+		newEntry.touch(now);
+		sessions.put(session, newEntry);
+		indexSession(newEntry, newEntry.getContextHandle(), newEntry.getCardEntry());
+	    }
+	} finally {
+	    notifyEvicted(evicted);
 	}
+	return newEntry;
     }
 
     public StateEntry getSessionBySlotHandle(byte[] slotHandle) throws NoSuchSession {
-	StateEntry found = null;
-	for (StateEntry currentSession : this.sessions.values()) {
-	    ConnectedCardEntry currentEntry = currentSession.getCardEntry();
-	    if (currentEntry != null && ByteUtils.compare(slotHandle, currentEntry.getSlotHandle())) {
-		return currentSession;
-	    }
+	StateEntry found = slotHandle != null ? sessionsBySlotHandle.get(new ByteArrayWrapper(slotHandle)) : null;
+	found = access(found);
+	if (found != null) {
+	    return found;
+	} else {
+	    String msg = String.format("The requested session=%s does not exist.", ByteUtils.toHexString(slotHandle));
+	    throw new NoSuchSession(msg);
 	}
-	throw new NoSuchSession(String.format("The requested session=%s does not exist.", slotHandle));
     }
 
     public StateEntry getSession(String session) throws NoSuchSession {
-	StateEntry se = sessions.get(session);
+	StateEntry se = session != null ? sessions.get(session) : null;
+	se = access(se);
 	if (se != null) {
 	    return se;
 	} else {
@@ -192,24 +250,70 @@ public class SalStateManager implements SalStateView {
 	}
     }
 
-    public boolean destroySessionByContextHandle(byte[] contextHandle) {
-	Map.Entry<String, StateEntry> stateEntry = this.getStateEntry(contextHandle);
+    /**
+     * Evicts all sessions which have been idle for longer than the configured timeout.
+     * Expired sessions are also evicted when they are looked up or when a new session is created, so calling this
+     * method is only needed to release resources earlier.
+     *
+     * @return The number of evicted sessions.
+     */
+    public int evictIdleSessions() {
+	return evictIdleSessions(System.nanoTime());
+    }
+
+    int evictIdleSessions(long now) {
+	List<StateEntry> evicted = new ArrayList<>();
+	try {
+	    synchronized (this) {
+		nextIdleSweep = now;
+		evictIdleSessions(now, evicted);
+	    }
+	} finally {
+	    notifyEvicted(evicted);
+	}
+	return evicted.size();
+    }
+
+    public synchronized boolean destroySessionByContextHandle(byte[] contextHandle) {
+	StateEntry stateEntry = this.getStateEntry(contextHandle);
 	if (stateEntry == null) {
 	    return false;
 	} else {
-	    return destroySession(stateEntry.getKey());
+	    return destroySession(stateEntry.getSession());
 	}
     }
 
-    private boolean destroySession(String session) {
-	return sessions.remove(session) != null;
+    private synchronized boolean destroySession(String session) {
+	StateEntry removed = sessions.get(session);
+	if (removed != null) {
+	    removeSession(removed);
+	    return true;
+	} else {
+	    return false;
+	}
+    }
+
+    /**
+     * Updates the session indexes after the connection of a session has changed.
+     * This method is called by the {@link StateEntry} itself.
+     *
+     * @param entry Session whose connection changed.
+     * @param oldCtx Context handle of the session before the change.
+     * @param oldCard Card the session was connected to before the change, or {@code null}.
+     */
+    synchronized void connectionChanged(StateEntry entry, byte[] oldCtx, ConnectedCardEntry oldCard) {
+	if (sessions.get(entry.getSession()) == entry) {
+	    unindexSession(entry, oldCtx, oldCard);
+	    indexSession(entry, entry.getContextHandle(), entry.getCardEntry());
+	}
     }
 
     @Override
     public List<ConnectionHandleType> listCardHandles() {
-	List<ConnectionHandleType> results = new ArrayList<>(this.cards.size());
+	List<CardEntry> entries = listCardEntries();
+	List<ConnectionHandleType> results = new ArrayList<>(entries.size());
 
-	for (CardEntry card : this.cards) {
+	for (CardEntry card : entries) {
 	    results.add(card.copyHandle());
 	}
 	return results;
@@ -229,4 +333,232 @@ public class SalStateManager implements SalStateView {
 		}
 	}
 
+
+    ///
+    /// session lifecycle
+    ///
+
+    private boolean isExpired(StateEntry entry, long now) {
+	return policy.hasIdleTimeout() && now - entry.getLastAccess() > policy.getIdleTimeoutNanos();
+    }
+
+    /**
+     * Marks the session as used, or evicts it if it has expired in the meantime.
+     *
+     * @return The session, or {@code null} if it was evicted.
+     */
+    private StateEntry access(StateEntry entry) {
+	if (entry == null) {
+	    return null;
+	}
+	long now = System.nanoTime();
+	if (isExpired(entry, now)) {
+	    boolean evicted;
+	    synchronized (this) {
+		evicted = sessions.get(entry.getSession()) == entry && isExpired(entry, now);
+		if (evicted) {
+		    removeSession(entry);
+		    idleEvictions.incrementAndGet();
+		}
+	    }
+	    if (evicted) {
+		notifyEvicted(Collections.singletonList(entry));
+		return null;
+	    }
+	}
+	entry.touch(now);
+	return entry;
+    }
+
+    private void evictIdleSessions(long now, List<StateEntry> evicted) {
+	// the complete scan is performed at most four times per timeout period
+	if (! policy.hasIdleTimeout() || now - nextIdleSweep < 0) {
+	    return;
+	}
+	nextIdleSweep = now + policy.getIdleTimeoutNanos() / 4;
+	for (StateEntry next : sessions.values()) {
+	    if (isExpired(next, now)) {
+		removeSession(next);
+		idleEvictions.incrementAndGet();
+		evicted.add(next);
+	    }
+	}
+    }
+
+    private void evictForCapacity(List<StateEntry> evicted) {
+	if (! policy.hasMaxSessions()) {
+	    return;
+	}
+	int excess = sessions.size() - policy.getMaxSessions() + 1;
+	if (excess <= 0) {
+	    return;
+	}
+	// keep the least recently used entries, the most recent one is on top of the heap
+	Comparator<StateEntry> newestFirst = Comparator.comparingLong((StateEntry e) -> e.getLastAccess()).reversed();
+	PriorityQueue<StateEntry> oldest = new PriorityQueue<>(excess + 1, newestFirst);
+	for (StateEntry next : sessions.values()) {
+	    oldest.add(next);
+	    if (oldest.size() > excess) {
+		oldest.poll();
+	    }
+	}
+	for (StateEntry next : oldest) {
+	    LOG.debug("Maximum number of {} sessions reached, evicting session {}.", policy.getMaxSessions(), next.getSession());
+	    removeSession(next);
+	    capacityEvictions.incrementAndGet();
+	    evicted.add(next);
+	}
+    }
+
+    private void notifyEvicted(List<StateEntry> evicted) {
+	SessionEvictionListener listener = this.evictionListener;
+	for (StateEntry next : evicted) {
+	    LOG.debug("Evicted session {}.", next.getSession());
+	    if (listener != null) {
+		try {
+		    listener.sessionEvicted(next);
+		} catch (RuntimeException ex) {
+		    LOG.warn("Failed to release resources of evicted session {}.", next.getSession(), ex);
+		}
+	    }
+	}
+    }
+
+
+    ///
+    /// index maintenance, only called with the lock held
+    ///
+
+    private void removeSession(StateEntry entry) {
+	if (sessions.remove(entry.getSession(), entry)) {
+	    unindexSession(entry, entry.getContextHandle(), entry.getCardEntry());
+	}
+    }
+
+    private void putCard(CardKey key, CardEntry entry) {
+	cards.put(key, entry);
+	cardsByContext.computeIfAbsent(key.ctx, k -> new ConcurrentSkipListSet<>()).add(entry);
+	if (entry instanceof ConnectedCardEntry) {
+	    ConnectedCardEntry connected = (ConnectedCardEntry) entry;
+	    if (connected.slotHandle != null) {
+		connectedCards.put(new ConnectionKey(connected), connected);
+	    }
+	}
+    }
+
+    private void unindexCard(CardKey key, CardEntry entry) {
+	cards.remove(key, entry);
+	removeFromIndex(cardsByContext, key.ctx, entry);
+	if (entry instanceof ConnectedCardEntry) {
+	    ConnectedCardEntry connected = (ConnectedCardEntry) entry;
+	    if (connected.slotHandle != null) {
+		connectedCards.remove(new ConnectionKey(connected), connected);
+	    }
+	}
+    }
+
+    private void indexSession(StateEntry entry, byte[] ctx, ConnectedCardEntry card) {
+	if (ctx != null) {
+	    sessionsByContext.computeIfAbsent(new ByteArrayWrapper(ctx), k -> ConcurrentHashMap.newKeySet()).add(entry);
+	}
+	if (card != null && card.slotHandle != null) {
+	    sessionsBySlotHandle.put(new ByteArrayWrapper(card.slotHandle), entry);
+	}
+    }
+
+    private void unindexSession(StateEntry entry, byte[] ctx, ConnectedCardEntry card) {
+	if (ctx != null) {
+	    removeFromIndex(sessionsByContext, new ByteArrayWrapper(ctx), entry);
+	}
+	if (card != null && card.slotHandle != null) {
+	    sessionsBySlotHandle.remove(new ByteArrayWrapper(card.slotHandle), entry);
+	}
+    }
+
+    private static <K, V> void removeFromIndex(ConcurrentHashMap<K, Set<V>> index, K key, V value) {
+	Set<V> values = index.get(key);
+	if (values != null) {
+	    values.remove(value);
+	    if (values.isEmpty()) {
+		index.remove(key, values);
+	    }
+	}
+    }
+
+    private static <T> T first(Set<T> entries) {
+	Iterator<T> it = entries.iterator();
+	return it.hasNext() ? it.next() : null;
+    }
+
+
+    private static final class CardKey {
+
+	private final ByteArrayWrapper ctx;
+	private final String ifdName;
+	private final BigInteger slotIdx;
+
+	CardKey(byte[] ctx, String ifdName, BigInteger slotIdx) {
+	    this.ctx = new ByteArrayWrapper(ctx);
+	    this.ifdName = ifdName;
+	    this.slotIdx = slotIdx;
+	}
+
+	CardKey(CardEntry entry) {
+	    this(entry.ctxHandle, entry.ifdName, entry.slotIdx);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+	    if (this == obj) {
+		return true;
+	    } else if (obj instanceof CardKey) {
+		CardKey other = (CardKey) obj;
+		return ctx.equals(other.ctx) && ifdName.equals(other.ifdName) && slotIdx.equals(other.slotIdx);
+	    } else {
+		return false;
+	    }
+	}
+
+	@Override
+	public int hashCode() {
+	    return Objects.hash(ctx, ifdName, slotIdx);
+	}
+
+    }
+
+    private static final class ConnectionKey {
+
+	private final ByteArrayWrapper ctx;
+	private final String ifdName;
+	private final ByteArrayWrapper slotHandle;
+
+	ConnectionKey(byte[] ctx, String ifdName, byte[] slotHandle) {
+	    this.ctx = new ByteArrayWrapper(ctx);
+	    this.ifdName = ifdName;
+	    this.slotHandle = new ByteArrayWrapper(slotHandle);
+	}
+
+	ConnectionKey(ConnectedCardEntry entry) {
+	    this(entry.ctxHandle, entry.ifdName, entry.slotHandle);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+	    if (this == obj) {
+		return true;
+	    } else if (obj instanceof ConnectionKey) {
+		ConnectionKey other = (ConnectionKey) obj;
+		return ctx.equals(other.ctx) && ifdName.equals(other.ifdName) && slotHandle.equals(other.slotHandle);
+	    } else {
+		return false;
+	    }
+	}
+
+	@Override
+	public int hashCode() {
+	    return Objects.hash(ctx, ifdName, slotHandle);
+	}
+
+    }
+
 }
@@ -0,0 +1,36 @@
+/****************************************************************************
+ * Copyright (C) 2026 ecsec GmbH.
+ * All rights reserved.
+ * Contact: ecsec GmbH (info@ecsec.de)
+ *
+ * This file is part of the Open eCard App.
+ *
+ * GNU General Public License Usage
+ * This file may be used under the terms of the GNU General Public
+ * License version 3.0 as published by the Free Software Foundation
+ * and appearing in the file LICENSE.GPL included in the packaging of
+ * this file. Please review the following information to ensure the
+ * GNU General Public License version 3.0 requirements will be met:
+ * http://www.gnu.org/copyleft/gpl.html.
+ *
+ * Other Usage
+ * Alternatively, this file may be used in accordance with the terms
+ * and conditions contained in a signed written agreement between
+ * you and ecsec GmbH.
+ *
+ ***************************************************************************/
+
+
+package org.openecard.common.sal.state;
+
+
+/**
+ * Listener notified when the {@link SalStateManager} evicts a session because of its {@link SessionPolicy}.
+ * The listener is responsible for releasing the resources attached to the session, such as its protocol instance and
+ * card connection. It is called after the session has been removed from the manager, without holding its lock.
+ */
+public interface SessionEvictionListener {
+
+    void sessionEvicted(StateEntry session);
+
+}
@@ -0,0 +1,111 @@
+/****************************************************************************
+ * Copyright (C) 2026 ecsec GmbH.
+ * All rights reserved.
+ * Contact: ecsec GmbH (info@ecsec.de)
+ *
+ * This file is part of the Open eCard App.
+ *
+ * GNU General Public License Usage
+ * This file may be used under the terms of the GNU General Public
+ * License version 3.0 as published by the Free Software Foundation
+ * and appearing in the file LICENSE.GPL included in the packaging of
+ * this file. Please review the following information to ensure the
+ * GNU General Public License version 3.0 requirements will be met:
+ * http://www.gnu.org/copyleft/gpl.html.
+ *
+ * Other Usage
+ * Alternatively, this file may be used in accordance with the terms
+ * and conditions contained in a signed written agreement between
+ * you and ecsec GmbH.
+ *
+ ***************************************************************************/
+
+
+package org.openecard.common.sal.state;
+
+import java.util.concurrent.TimeUnit;
+import org.openecard.common.OpenecardProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Limits for the sessions kept by the {@link SalStateManager}.
+ * Sessions which have not been accessed for longer than the idle timeout are evicted, and when the maximum number of
+ * sessions is reached, the least recently used session is evicted. A value of {@code 0} disables the respective limit.
+ */
+public final class SessionPolicy {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SessionPolicy.class);
+
+    private static final String IDLE_TIMEOUT_KEY = "sal.session.idle_timeout";
+    private static final String MAX_COUNT_KEY = "sal.session.max_count";
+    private static final long DEFAULT_IDLE_TIMEOUT = 1800;
+    private static final int DEFAULT_MAX_COUNT = 1024;
+
+    /** Policy without any limits. */
+    public static final SessionPolicy UNLIMITED = new SessionPolicy(0, TimeUnit.SECONDS, 0);
+
+    private final long idleTimeoutNanos;
+    private final int maxSessions;
+
+    public SessionPolicy(long idleTimeout, TimeUnit unit, int maxSessions) {
+	if (idleTimeout < 0 || maxSessions < 0) {
+	    throw new IllegalArgumentException("Session limits must not be negative.");
+	}
+	this.idleTimeoutNanos = unit.toNanos(idleTimeout);
+	this.maxSessions = maxSessions;
+    }
+
+    /**
+     * Creates the policy configured in the Open eCard properties.
+     * The idle timeout is read in seconds from {@code sal.session.idle_timeout}, the maximum number of sessions from
+     * {@code sal.session.max_count}.
+     *
+     * @return The configured policy.
+     */
+    public static SessionPolicy fromProperties() {
+	long idleTimeout = readNumber(IDLE_TIMEOUT_KEY, DEFAULT_IDLE_TIMEOUT);
+	long maxCount = readNumber(MAX_COUNT_KEY, DEFAULT_MAX_COUNT);
+	return new SessionPolicy(idleTimeout, TimeUnit.SECONDS, (int) Math.min(maxCount, Integer.MAX_VALUE));
+    }
+
+    private static long readNumber(String key, long defaultValue) {
+	String value = OpenecardProperties.getProperty(key);
+	if (value != null && ! value.trim().isEmpty()) {
+	    try {
+		long result = Long.parseLong(value.trim());
+		if (result >= 0) {
+		    return result;
+		}
+	    } catch (NumberFormatException ex) {
+		// handled below
+	    }
+	    LOG.warn("Invalid value '{}' configured for {}, using {} instead.", value, key, defaultValue);
+	}
+	return defaultValue;
+    }
+
+    /**
+     * @return The idle timeout in nanoseconds, or {@code 0} if sessions do not time out.
+     */
+    public long getIdleTimeoutNanos() {
+	return idleTimeoutNanos;
+    }
+
+    /**
+     * @return The maximum number of sessions, or {@code 0} if the number is not limited.
+     */
+    public int getMaxSessions() {
+	return maxSessions;
+    }
+
+    boolean hasIdleTimeout() {
+	return idleTimeoutNanos > 0;
+    }
+
+    boolean hasMaxSessions() {
+	return maxSessions > 0;
+    }
+
+}
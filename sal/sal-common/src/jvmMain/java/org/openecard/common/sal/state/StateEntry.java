@@ -28,33 +28,71 @@ public class StateEntry {
     private final String session;
     private SALProtocol protocol;
     private String protocolName;
-    private ConnectedCardEntry cardEntry;
-    private byte[] ctxHandle;
+    private volatile ConnectedCardEntry cardEntry;
+    private volatile byte[] ctxHandle;
+    // manager whose indexes must follow the connection of this session
+    private final SalStateManager owner;
+    // System.nanoTime of the last lookup through the manager
+    private volatile long lastAccess;
 
     public StateEntry(String session, byte[] ctxHandle) {
+	this(null, session, ctxHandle);
+    }
+
+    StateEntry(SalStateManager owner, String session, byte[] ctxHandle) {
+	this.owner = owner;
 	this.session = session;
 	this.ctxHandle = ctxHandle;
+	this.lastAccess = System.nanoTime();
     }
 
     public String getSession() {
 	return session;
     }
 
+    long getLastAccess() {
+	return lastAccess;
+    }
+
+    void touch(long now) {
+	this.lastAccess = now;
+    }
+
     public ConnectedCardEntry setConnectedCard(byte[] slotHandle, byte[] cardApplication, CardEntry card) {
-	if (this.cardEntry != null) {
-	    LOG.warn("Session {} already connected to a card {}. Replacing with card {}.", this.cardEntry, card);
+	// the owner lock keeps the entry and the indexes of the manager consistent
+	synchronized (lock()) {
+	    ConnectedCardEntry oldCard = this.cardEntry;
+	    byte[] oldCtx = this.ctxHandle;
+	    if (oldCard != null) {
+		LOG.warn("Session {} already connected to a card {}. Replacing with card {}.", session, oldCard, card);
+	    }
+	    ConnectedCardEntry newCard = new ConnectedCardEntry(slotHandle, cardApplication, card);
+	    this.cardEntry = newCard;
+	    this.ctxHandle = card.ctxHandle;
+	    if (owner != null) {
+		owner.connectionChanged(this, oldCtx, oldCard);
+	    }
+	    return newCard;
 	}
-	this.cardEntry = new ConnectedCardEntry(slotHandle, cardApplication, card);
-	this.ctxHandle = card.ctxHandle;
-	return this.cardEntry;
     }
 
     public void removeCard() {
-	cardEntry = null;
+	synchronized (lock()) {
+	    ConnectedCardEntry oldCard = this.cardEntry;
+	    cardEntry = null;
+	    if (owner != null && oldCard != null) {
+		owner.connectionChanged(this, ctxHandle, oldCard);
+	    }
+	}
+    }
+
+    private Object lock() {
+	return owner != null ? owner : this;
     }
 
     public void setProtocol(SALProtocol protocol, String protocolName) {
 	this.protocol = protocol;
+	this.protocolName = protocolName;
     }
 
     public void removeProtocol(String protocolName) {
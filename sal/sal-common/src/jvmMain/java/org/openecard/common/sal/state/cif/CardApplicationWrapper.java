@@ -24,30 +24,35 @@ package org.openecard.common.sal.state.cif;
 
 import iso.std.iso_iec._24727.tech.schema.AccessControlListType;
 import iso.std.iso_iec._24727.tech.schema.AccessRuleType;
+import iso.std.iso_iec._24727.tech.schema.ActionNameType;
 import iso.std.iso_iec._24727.tech.schema.CardApplicationType;
 import iso.std.iso_iec._24727.tech.schema.DIDInfoType;
 import iso.std.iso_iec._24727.tech.schema.DataSetInfoType;
 import iso.std.iso_iec._24727.tech.schema.DataSetNameListType;
 import iso.std.iso_iec._24727.tech.schema.SecurityConditionType;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import javax.annotation.Nullable;
 
 
 /**
  * This class wraps a single card application of a card info in order to make the access to attributes more efficient
  * and more user friendly.
+ * All lookup structures are built when the wrapper is created. Instances are immutable and may be shared between
+ * connections.
  *
  * @author Dirk Petrautzki
  */
 public class CardApplicationWrapper {
 
-    private final Map<Enum<?>, SecurityConditionType> securityConditions = new HashMap<>();
-    private final HashMap<String, DIDInfoWrapper> didInfos = new HashMap<>();
+    private final Map<Enum<?>, SecurityConditionType> securityConditions;
+    private final Map<String, DIDInfoWrapper> didInfos;
     private final CardApplicationType cardApplication;
-    private final DataSetNameListType dataSetNameList = new DataSetNameListType();
-    private final HashMap<String, DataSetInfoWrapper> dataSetInfos = new HashMap<>();
+    private final List<String> dataSetNames;
+    private final Map<String, DataSetInfoWrapper> dataSetInfos;
 
     /**
      *
@@ -55,38 +60,61 @@ public class CardApplicationWrapper {
      */
     public CardApplicationWrapper(CardApplicationType cardApplication) {
 	this.cardApplication = cardApplication;
+	this.securityConditions = mapSecurityConditions(cardApplication.getCardApplicationACL());
+
+	HashMap<String, DIDInfoWrapper> dids = new HashMap<>();
+	for (DIDInfoType didInfo : cardApplication.getDIDInfo()) {
+	    dids.put(didInfo.getDifferentialIdentity().getDIDName(), new DIDInfoWrapper(didInfo));
+	}
+	this.didInfos = Collections.unmodifiableMap(dids);
+
+	ArrayList<String> names = new ArrayList<>();
+	HashMap<String, DataSetInfoWrapper> dataSets = new HashMap<>();
+	for (DataSetInfoType dataSetInfo : cardApplication.getDataSetInfo()) {
+	    names.add(dataSetInfo.getDataSetName());
+	    dataSets.put(dataSetInfo.getDataSetName(), new DataSetInfoWrapper(dataSetInfo));
+	}
+	this.dataSetNames = Collections.unmodifiableList(names);
+	this.dataSetInfos = Collections.unmodifiableMap(dataSets);
     }
 
     /**
+     * Maps the service actions of an access control list to their security conditions.
      *
-     * @param serviceAction the ServiceAction to which the SecurityCondition should be returned
-     * @return the SecurityCondition for the specified ServiceAction
+     * @param acl The access control list, may be null.
+     * @return Unmodifiable map of the security conditions.
      */
-    public SecurityConditionType getSecurityCondition(Enum<?> serviceAction) {
-	if (securityConditions.isEmpty()) {
-	    for (AccessRuleType accessRule : this.cardApplication.getCardApplicationACL().getAccessRule()) {
-		if (accessRule.getAction().getConnectionServiceAction() != null) {
-		    securityConditions.put(accessRule.getAction().getConnectionServiceAction(),
-			    accessRule.getSecurityCondition());
-		} else if (accessRule.getAction().getAuthorizationServiceAction() != null) {
-		    securityConditions.put(accessRule.getAction().getAuthorizationServiceAction(),
-			    accessRule.getSecurityCondition());
-		} else if (accessRule.getAction().getDifferentialIdentityServiceAction() != null) {
-		    securityConditions.put(accessRule.getAction().getDifferentialIdentityServiceAction(),
-			    accessRule.getSecurityCondition());
-		} else if (accessRule.getAction().getNamedDataServiceAction() != null) {
-		    securityConditions.put(accessRule.getAction().getNamedDataServiceAction(),
-			    accessRule.getSecurityCondition());
-		} else if (accessRule.getAction().getCryptographicServiceAction() != null) {
-		    securityConditions.put(accessRule.getAction().getCryptographicServiceAction(),
-			    accessRule.getSecurityCondition());
-		} else if (accessRule.getAction().getCardApplicationServiceAction() != null) {
-		    securityConditions.put(accessRule.getAction().getCardApplicationServiceAction(),
-			    accessRule.getSecurityCondition());
-		}
+    static Map<Enum<?>, SecurityConditionType> mapSecurityConditions(@Nullable AccessControlListType acl) {
+	if (acl == null) {
+	    return Collections.emptyMap();
+	}
+	HashMap<Enum<?>, SecurityConditionType> securityConditions = new HashMap<>();
+	for (AccessRuleType accessRule : acl.getAccessRule()) {
+	    ActionNameType action = accessRule.getAction();
+	    if (action.getConnectionServiceAction() != null) {
+		securityConditions.put(action.getConnectionServiceAction(), accessRule.getSecurityCondition());
+	    } else if (action.getAuthorizationServiceAction() != null) {
+		securityConditions.put(action.getAuthorizationServiceAction(), accessRule.getSecurityCondition());
+	    } else if (action.getDifferentialIdentityServiceAction() != null) {
+		securityConditions.put(action.getDifferentialIdentityServiceAction(),
+			accessRule.getSecurityCondition());
+	    } else if (action.getNamedDataServiceAction() != null) {
+		securityConditions.put(action.getNamedDataServiceAction(), accessRule.getSecurityCondition());
+	    } else if (action.getCryptographicServiceAction() != null) {
+		securityConditions.put(action.getCryptographicServiceAction(), accessRule.getSecurityCondition());
+	    } else if (action.getCardApplicationServiceAction() != null) {
+		securityConditions.put(action.getCardApplicationServiceAction(), accessRule.getSecurityCondition());
 	    }
 	}
+	return Collections.unmodifiableMap(securityConditions);
+    }
 
+    /**
+     *
+     * @param serviceAction the ServiceAction to which the SecurityCondition should be returned
+     * @return the SecurityCondition for the specified ServiceAction
+     */
+    public SecurityConditionType getSecurityCondition(Enum<?> serviceAction) {
 	return securityConditions.get(serviceAction);
     }
 
@@ -104,11 +132,6 @@ public class CardApplicationWrapper {
      * @return a DIDInfoWrapper wrapping the specified DID or null if no such DID exists in the card appication
      */
     public DIDInfoWrapper getDIDInfo(String didName) {
-	if (didInfos.isEmpty()) {
-	    for (DIDInfoType didInfo : cardApplication.getDIDInfo()) {
-		didInfos.put(didInfo.getDifferentialIdentity().getDIDName(), new DIDInfoWrapper(didInfo));
-	    }
-	}
 	return this.didInfos.get(didName);
     }
 
@@ -133,7 +156,7 @@ public class CardApplicationWrapper {
      * @return list of DataSetInfos in this card application
      */
     public List<DataSetInfoType> getDataSetInfoList() {
-	return cardApplication.getDataSetInfo();
+	return Collections.unmodifiableList(cardApplication.getDataSetInfo());
     }
 
     /**
@@ -141,12 +164,10 @@ public class CardApplicationWrapper {
      * @return list of data set names in this card application
      */
     public DataSetNameListType getDataSetNameList() {
-	if (dataSetNameList.getDataSetName().isEmpty()) {
-	    for (DataSetInfoType dataSetInfo : cardApplication.getDataSetInfo()) {
-		dataSetNameList.getDataSetName().add(dataSetInfo.getDataSetName());
-	    }
-	}
-	return this.dataSetNameList;
+	// the result ends up in responses, so do not hand out a shared instance
+	DataSetNameListType dataSetNameList = new DataSetNameListType();
+	dataSetNameList.getDataSetName().addAll(dataSetNames);
+	return dataSetNameList;
     }
 
     /**
@@ -156,11 +177,6 @@ public class CardApplicationWrapper {
      * appication
      */
     public DataSetInfoWrapper getDataSetInfo(String dataSetName) {
-	if (dataSetInfos.isEmpty()) {
-	    for (DataSetInfoType dataSetInfo : cardApplication.getDataSetInfo()) {
-		dataSetInfos.put(dataSetInfo.getDataSetName(), new DataSetInfoWrapper(dataSetInfo));
-	    }
-	}
 	return this.dataSetInfos.get(dataSetName);
     }
 
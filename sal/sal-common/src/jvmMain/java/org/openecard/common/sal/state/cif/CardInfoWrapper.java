@@ -24,6 +24,7 @@ package org.openecard.common.sal.state.cif;
 
 import iso.std.iso_iec._24727.tech.schema.ApplicationCapabilitiesType;
 import iso.std.iso_iec._24727.tech.schema.CardApplicationType;
+import iso.std.iso_iec._24727.tech.schema.CardInfo;
 import iso.std.iso_iec._24727.tech.schema.CardInfoType;
 import iso.std.iso_iec._24727.tech.schema.DIDInfoType;
 import iso.std.iso_iec._24727.tech.schema.DIDMarkerType;
@@ -33,10 +34,13 @@ import iso.std.iso_iec._24727.tech.schema.DSIType;
 import iso.std.iso_iec._24727.tech.schema.DataSetInfoType;
 import iso.std.iso_iec._24727.tech.schema.DataSetNameListType;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.annotation.Nullable;
 import org.openecard.common.util.ByteArrayWrapper;
 import org.slf4j.Logger;
@@ -46,6 +50,9 @@ import org.slf4j.LoggerFactory;
 /**
  * This class wraps a single card info in order to make the access to attributes more efficient
  * and more user friendly.
+ * The lookup structures for card applications, DIDs, data sets and DSIs are built once when the wrapper is created.
+ * Instances are immutable, so all connections to cards of the same type and interface protocol share one wrapper
+ * obtained with {@link #forCardInfo(CardInfoType, String)}.
  *
  * @author Tobias Wich
  * @author Dirk Petrautzki
@@ -55,10 +62,18 @@ public class CardInfoWrapper {
 
     private static final Logger LOG = LoggerFactory.getLogger(CardInfoWrapper.class);
 
+    // card type and interface protocol -> wrapper
+    private static final Map<String, CardInfoWrapper> SHARED = new ConcurrentHashMap<>();
+
+    private final CardInfoType source;
     private final CardInfoType cif;
-    private final Map<ByteArrayWrapper, CardApplicationWrapper> cardApplications = new HashMap<>();
-    private final List<byte[]> cardApplicationNames = new ArrayList<>();
-    private final String interfaceProtocol;
+    private final Map<ByteArrayWrapper, CardApplicationWrapper> cardApplications;
+    private final List<byte[]> cardApplicationNames;
+    private final Map<String, List<DIDEntry>> didsByName;
+    private final Map<String, DSIType> dsisByName;
+    private final Map<String, DataSetInfoType> dataSetsByDsiName;
+    private final Map<String, DataSetInfoType> dataSetsByName;
+    private final Map<ByteArrayWrapper, DataSetInfoType> dataSetsByFid;
 
     /**
      *
@@ -66,14 +81,89 @@ public class CardInfoWrapper {
      * @param interfaceProtocol Protocol with which the card is connected.
      */
     public CardInfoWrapper(CardInfoType cif, String interfaceProtocol) {
-	this.cif = cif;
-	this.interfaceProtocol = interfaceProtocol;
+	this.source = cif;
+	this.cif = filterForProtocol(cif, interfaceProtocol);
+
+	LinkedHashMap<ByteArrayWrapper, CardApplicationWrapper> apps = new LinkedHashMap<>();
+	ArrayList<byte[]> appNames = new ArrayList<>();
+	HashMap<String, List<DIDEntry>> dids = new HashMap<>();
+	for (CardApplicationType cardApplication : getApplicationCapabilities().getCardApplication()) {
+	    apps.put(new ByteArrayWrapper(cardApplication.getApplicationIdentifier()),
+		    new CardApplicationWrapper(cardApplication));
+	    appNames.add(cardApplication.getApplicationIdentifier());
+	    for (DIDInfoType did : cardApplication.getDIDInfo()) {
+		String didName = did.getDifferentialIdentity().getDIDName();
+		List<DIDEntry> entries = dids.get(didName);
+		if (entries == null) {
+		    entries = new ArrayList<>(1);
+		    dids.put(didName, entries);
+		}
+		entries.add(new DIDEntry(cardApplication.getApplicationIdentifier(), did));
+	    }
+	}
+	this.cardApplications = Collections.unmodifiableMap(apps);
+	this.cardApplicationNames = Collections.unmodifiableList(appNames);
+	this.didsByName = dids;
+
+	// the first definition wins, as in a search through the applications
+	HashMap<String, DSIType> dsis = new HashMap<>();
+	HashMap<String, DataSetInfoType> dataSetsDsi = new HashMap<>();
+	HashMap<String, DataSetInfoType> dataSets = new HashMap<>();
+	HashMap<ByteArrayWrapper, DataSetInfoType> dataSetsFid = new HashMap<>();
+	for (CardApplicationWrapper cardAppWrapper : apps.values()) {
+	    for (DataSetInfoType dataSet : cardAppWrapper.getDataSetInfoList()) {
+		putFirst(dataSets, dataSet.getDataSetName(), dataSet);
+		for (DSIType dsi : dataSet.getDSI()) {
+		    putFirst(dsis, dsi.getDSIName(), dsi);
+		    putFirst(dataSetsDsi, dsi.getDSIName(), dataSet);
+		}
+		byte[] fid = getFid(dataSet);
+		if (fid != null) {
+		    putFirst(dataSetsFid, new ByteArrayWrapper(fid), dataSet);
+		}
+	    }
+	}
+	this.dsisByName = dsis;
+	this.dataSetsByDsiName = dataSetsDsi;
+	this.dataSetsByName = dataSets;
+	this.dataSetsByFid = dataSetsFid;
+    }
 
-	filterForProtocol();
+    /**
+     * Gets the wrapper for the given CIF and interface protocol.
+     * The wrapper is shared with all other callers passing the same CIF instance and interface protocol.
+     *
+     * @param cif the CardInfo that should be wrapped
+     * @param interfaceProtocol Protocol with which the card is connected.
+     * @return The shared wrapper.
+     */
+    public static CardInfoWrapper forCardInfo(CardInfoType cif, @Nullable String interfaceProtocol) {
+	String key = cif.getCardType().getObjectIdentifier() + "|" + interfaceProtocol;
+	CardInfoWrapper wrapper = SHARED.get(key);
+	// a different instance may contain a different definition of the card type, e.g. from a middleware
+	if (wrapper == null || wrapper.source != cif) {
+	    wrapper = new CardInfoWrapper(cif, interfaceProtocol);
+	    SHARED.put(key, wrapper);
+	}
+	return wrapper;
     }
 
-    public CardInfoWrapper(CardInfoWrapper other) {
-	this(other.cif, other.interfaceProtocol);
+    private static <K, V> void putFirst(Map<K, V> map, K key, V value) {
+	if (! map.containsKey(key)) {
+	    map.put(key, value);
+	}
+    }
+
+    @Nullable
+    private static byte[] getFid(DataSetInfoType dataSet) {
+	if (dataSet.getDataSetPath() == null) {
+	    return null;
+	}
+	byte[] path = dataSet.getDataSetPath().getEfIdOrPath();
+	if (path == null || path.length < 2) {
+	    return null;
+	}
+	return Arrays.copyOfRange(path, path.length - 2, path.length);
     }
 
     /**
@@ -106,12 +196,6 @@ public class CardInfoWrapper {
      *   applications)
      */
     public Map<ByteArrayWrapper, CardApplicationWrapper> getCardApplications() {
-	if (cardApplications.isEmpty()) {
-	    for (CardApplicationType cardApplication : getApplicationCapabilities().getCardApplication()) {
-		cardApplications.put(new ByteArrayWrapper(cardApplication.getApplicationIdentifier()),
-			new CardApplicationWrapper(cardApplication));
-	    }
-	}
 	return cardApplications;
     }
 
@@ -141,19 +225,18 @@ public class CardInfoWrapper {
      * @return the DIDInfo of the specified DID or null, if either the card application or the DID do not exist
      */
     public DIDInfoType getDIDInfo(String didName, DIDScopeType didScope) {
-	List<CardApplicationType> cardApps = getApplicationCapabilities().getCardApplication();
-	for (CardApplicationType cardApp : cardApps) {
-	    for (DIDInfoType did : cardApp.getDIDInfo()) {
-		if (did.getDifferentialIdentity().getDIDName().equals(didName)) {
-		    if (did.getDifferentialIdentity().getDIDScope() != null) {
-			if (didScope != null) {
-			    if (didScope.value().equals(did.getDifferentialIdentity().getDIDScope().value())) {
-				return did;
-			    }
+	List<DIDEntry> entries = didsByName.get(didName);
+	if (entries != null) {
+	    for (DIDEntry entry : entries) {
+		DIDScopeType scope = entry.did.getDifferentialIdentity().getDIDScope();
+		if (scope != null) {
+		    if (didScope != null) {
+			if (didScope.value().equals(scope.value())) {
+			    return entry.did;
 			}
-		    } else {
-			return did;
 		    }
+		} else {
+		    return entry.did;
 		}
 	    }
 	}
@@ -296,11 +379,6 @@ public class CardInfoWrapper {
      * @return list of application identifiers in this cardinfo
      */
     public List<byte[]> getCardApplicationNameList() {
-	if (cardApplicationNames.isEmpty()) {
-	    for (CardApplicationType cardApplication : getApplicationCapabilities().getCardApplication()) {
-		cardApplicationNames.add(cardApplication.getApplicationIdentifier());
-	    }
-	}
 	return cardApplicationNames;
     }
 
@@ -311,19 +389,7 @@ public class CardInfoWrapper {
      * @return A DSIType object which contains the given DSI name or null if no DSI with such a name was found.
      */
     public DSIType getDSIbyName(String dsiName) {
-	for (CardApplicationWrapper cardAppWrapper : cardApplications.values()) {
-	    for (DataSetInfoType dSetInfoWrapper : cardAppWrapper.getDataSetInfoList()) {
-		if (dSetInfoWrapper.getDSI() != null) {
-		    for (DSIType dsi : dSetInfoWrapper.getDSI()) {
-			if (dsi.getDSIName().equals(dsiName)) {
-			    return dsi;
-			}
-		    }
-		}
-	    }
-	}
-
-	return null;
+	return dsisByName.get(dsiName);
     }
 
 	public static DSIType resolveDSI(DataSetInfoType dataSetInfo, String dsiName) {
@@ -343,17 +409,10 @@ public class CardInfoWrapper {
      * method returns NULL if no data set was found.
      */
     public DataSetInfoType getDataSetByFid(byte[] fileIdentifier) {
-	for (CardApplicationWrapper cardAppWrapper : cardApplications.values()) {
-	    for (DataSetInfoType dSetInfoWrapper : cardAppWrapper.getDataSetInfoList()) {
-		byte[] dataSetPath = dSetInfoWrapper.getDataSetPath().getEfIdOrPath();
-		int pathLength = dataSetPath.length;
-		if (dataSetPath[pathLength - 2] == fileIdentifier[0] && dataSetPath[pathLength - 1] == fileIdentifier[1]) {
-		    return dSetInfoWrapper;
-		}
-	    }
+	if (fileIdentifier == null || fileIdentifier.length < 2) {
+	    return null;
 	}
-
-	return null;
+	return dataSetsByFid.get(new ByteArrayWrapper(Arrays.copyOf(fileIdentifier, 2)));
     }
 
     /**
@@ -366,21 +425,12 @@ public class CardInfoWrapper {
      * with the first occurrence of didName is returned.
      */
     public byte[] getApplicationIdByDidName(String didName, DIDScopeType didScope) {
-	List<CardApplicationType> cardApps = getApplicationCapabilities().getCardApplication();
-	for (CardApplicationType cardApp : cardApps) {
-	    for (DIDInfoType did : cardApp.getDIDInfo()) {
-		if (did.getDifferentialIdentity().getDIDName().equals(didName)) {
-		    if (did.getDifferentialIdentity().getDIDScope() != null) {
-			if (didScope != null) {
-			    if (didScope.value().equals(did.getDifferentialIdentity().getDIDScope().value())) {
-				return cardApp.getApplicationIdentifier();
-			    }
-			} else {
-			    return cardApp.getApplicationIdentifier();
-			}
-		    } else {
-			return cardApp.getApplicationIdentifier();
-		    }
+	List<DIDEntry> entries = didsByName.get(didName);
+	if (entries != null) {
+	    for (DIDEntry entry : entries) {
+		DIDScopeType scope = entry.did.getDifferentialIdentity().getDIDScope();
+		if (scope == null || didScope == null || didScope.value().equals(scope.value())) {
+		    return entry.applicationIdentifier;
 		}
 	    }
 	}
@@ -389,38 +439,23 @@ public class CardInfoWrapper {
     }
 
     public DataSetInfoType getDataSetByDsiName(String dsiName) {
-	for (CardApplicationWrapper cardAppWrapper : cardApplications.values()) {
-	    for (DataSetInfoType dSetInfoWrapper : cardAppWrapper.getDataSetInfoList()) {
-		if (dSetInfoWrapper.getDSI() != null) {
-		    for (DSIType dsi : dSetInfoWrapper.getDSI()) {
-			if (dsi.getDSIName().equals(dsiName)) {
-			    return dSetInfoWrapper;
-			}
-		    }
-		}
-	    }
-	}
-
-	return null;
+	return dataSetsByDsiName.get(dsiName);
     }
 
     public DataSetInfoType getDataSetByName(String dataSetName) {
-	for (CardApplicationWrapper cardAppWrapper : cardApplications.values()) {
-	    for (DataSetInfoType dSetInfoWrapper : cardAppWrapper.getDataSetInfoList()) {
-		if (dSetInfoWrapper.getDataSetName().equals(dataSetName)) {
-		    return dSetInfoWrapper;
-		}
-	    }
-	}
-
-	return null;
+	return dataSetsByName.get(dataSetName);
     }
 
-    private void filterForProtocol() {
-	List<CardApplicationType> apps = getApplicationCapabilities().getCardApplication();
-	Iterator<CardApplicationType> it = apps.iterator();
-	while (it.hasNext()) {
-	    CardApplicationType app = it.next();
+    /**
+     * Removes the card applications which are not available with the given interface protocol.
+     * The CIF may be shared with other connections, so it is not modified. Instead a shallow copy with the filtered
+     * application list is returned, if any application has been removed.
+     */
+    private static CardInfoType filterForProtocol(CardInfoType cif, @Nullable String interfaceProtocol) {
+	ApplicationCapabilitiesType appCaps = cif.getApplicationCapabilities();
+	List<CardApplicationType> apps = appCaps.getCardApplication();
+	List<CardApplicationType> filteredApps = new ArrayList<>(apps.size());
+	for (CardApplicationType app : apps) {
 	    List<String> interfaceProtos = app.getInterfaceProtocol();
 	    // remove when there is a protocol list not containing the current protocol
 	    if (! interfaceProtos.isEmpty()) {
@@ -431,10 +466,44 @@ public class CardInfoWrapper {
 		}
 
 		if (! interfaceProtos.contains(interfaceProtocol)) {
-		    it.remove();
+		    continue;
 		}
 	    }
+	    filteredApps.add(app);
+	}
+
+	if (filteredApps.size() == apps.size()) {
+	    return cif;
 	}
+
+	ApplicationCapabilitiesType filteredAppCaps = new ApplicationCapabilitiesType();
+	filteredAppCaps.setId(appCaps.getId());
+	filteredAppCaps.setImplicitlySelectedApplication(appCaps.getImplicitlySelectedApplication());
+	filteredAppCaps.setOther(appCaps.getOther());
+	filteredAppCaps.getCardApplication().addAll(filteredApps);
+
+	CardInfo filteredCif = new CardInfo();
+	filteredCif.getSignature().addAll(cif.getSignature());
+	filteredCif.setApplicationCapabilities(filteredAppCaps);
+	filteredCif.setCardCapabilities(cif.getCardCapabilities());
+	filteredCif.setCardIdentification(cif.getCardIdentification());
+	filteredCif.setCardType(cif.getCardType());
+	filteredCif.setId(cif.getId());
+	filteredCif.setSchemaVersion(cif.getSchemaVersion());
+	return filteredCif;
+    }
+
+
+    private static final class DIDEntry {
+
+	private final byte[] applicationIdentifier;
+	private final DIDInfoType did;
+
+	DIDEntry(byte[] applicationIdentifier, DIDInfoType did) {
+	    this.applicationIdentifier = applicationIdentifier;
+	    this.did = did;
+	}
+
     }
 
 }
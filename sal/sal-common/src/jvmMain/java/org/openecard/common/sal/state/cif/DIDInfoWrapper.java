@@ -22,23 +22,22 @@
 
 package org.openecard.common.sal.state.cif;
 
-import iso.std.iso_iec._24727.tech.schema.AccessRuleType;
 import iso.std.iso_iec._24727.tech.schema.DIDInfoType;
 import iso.std.iso_iec._24727.tech.schema.SecurityConditionType;
-import java.util.HashMap;
 import java.util.Map;
 
 
 /**
  * This class wraps a single DID of a card application in order to make the access to attributes more efficient
  * and more user friendly.
+ * Instances are immutable and may be shared between connections.
  *
  * @author Dirk Petrautzki
  */
 public class DIDInfoWrapper {
 
-    private DIDInfoType didInfo;
-    private Map<Enum<?>, SecurityConditionType> securityConditions = new HashMap<Enum<?>, SecurityConditionType>();
+    private final DIDInfoType didInfo;
+    private final Map<Enum<?>, SecurityConditionType> securityConditions;
 
     /**
      *
@@ -47,6 +46,7 @@ public class DIDInfoWrapper {
      */
     public DIDInfoWrapper(DIDInfoType didInfo) {
 	this.didInfo = didInfo;
+	this.securityConditions = CardApplicationWrapper.mapSecurityConditions(didInfo.getDIDACL());
     }
 
     /**
@@ -64,29 +64,6 @@ public class DIDInfoWrapper {
      * @return the SecurityCondition for the specified ServiceAction
      */
     public SecurityConditionType getSecurityCondition(Enum<?> serviceAction) {
-	if (securityConditions.isEmpty()) {
-	    for (AccessRuleType accessRule : this.didInfo.getDIDACL().getAccessRule()) {
-		if (accessRule.getAction().getConnectionServiceAction() != null) {
-		    securityConditions.put(accessRule.getAction().getConnectionServiceAction(),
-			    accessRule.getSecurityCondition());
-		} else if (accessRule.getAction().getAuthorizationServiceAction() != null) {
-		    securityConditions.put(accessRule.getAction().getAuthorizationServiceAction(),
-			    accessRule.getSecurityCondition());
-		} else if (accessRule.getAction().getDifferentialIdentityServiceAction() != null) {
-		    securityConditions.put(accessRule.getAction().getDifferentialIdentityServiceAction(),
-			    accessRule.getSecurityCondition());
-		} else if (accessRule.getAction().getNamedDataServiceAction() != null) {
-		    securityConditions.put(accessRule.getAction().getNamedDataServiceAction(),
-			    accessRule.getSecurityCondition());
-		} else if (accessRule.getAction().getCryptographicServiceAction() != null) {
-		    securityConditions.put(accessRule.getAction().getCryptographicServiceAction(),
-			    accessRule.getSecurityCondition());
-		} else if (accessRule.getAction().getCardApplicationServiceAction() != null) {
-		    securityConditions.put(accessRule.getAction().getCardApplicationServiceAction(),
-			    accessRule.getSecurityCondition());
-		}
-	    }
-	}
 	return securityConditions.get(serviceAction);
     }
 
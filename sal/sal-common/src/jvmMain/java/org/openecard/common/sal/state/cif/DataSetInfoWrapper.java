@@ -22,23 +22,22 @@
 
 package org.openecard.common.sal.state.cif;
 
-import iso.std.iso_iec._24727.tech.schema.AccessRuleType;
 import iso.std.iso_iec._24727.tech.schema.DataSetInfoType;
 import iso.std.iso_iec._24727.tech.schema.SecurityConditionType;
-import java.util.HashMap;
 import java.util.Map;
 
 
 /**
  * This class wraps a single data set of a card application in order to make the access to attributes more efficient
  * and more user friendly.
+ * Instances are immutable and may be shared between connections.
  *
  * @author Dirk Petrautzki
  */
 public class DataSetInfoWrapper {
 
-    private DataSetInfoType dataSetInfo;
-    private Map<Enum<?>, SecurityConditionType> securityConditions = new HashMap<Enum<?>, SecurityConditionType>();
+    private final DataSetInfoType dataSetInfo;
+    private final Map<Enum<?>, SecurityConditionType> securityConditions;
 
     /**
      *
@@ -46,6 +45,7 @@ public class DataSetInfoWrapper {
      */
     public DataSetInfoWrapper(DataSetInfoType dataSetInfo) {
 	this.dataSetInfo = dataSetInfo;
+	this.securityConditions = CardApplicationWrapper.mapSecurityConditions(dataSetInfo.getDataSetACL());
     }
 
     /**
@@ -62,29 +62,6 @@ public class DataSetInfoWrapper {
      * @return the SecurityCondition for the specified ServiceAction
      */
     public SecurityConditionType getSecurityCondition(Enum<?> serviceAction) {
-	if (securityConditions.isEmpty()) {
-	    for (AccessRuleType accessRule : this.dataSetInfo.getDataSetACL().getAccessRule()) {
-		if (accessRule.getAction().getConnectionServiceAction() != null) {
-		    securityConditions.put(accessRule.getAction().getConnectionServiceAction(),
-			    accessRule.getSecurityCondition());
-		} else if (accessRule.getAction().getAuthorizationServiceAction() != null) {
-		    securityConditions.put(accessRule.getAction().getAuthorizationServiceAction(),
-			    accessRule.getSecurityCondition());
-		} else if (accessRule.getAction().getDifferentialIdentityServiceAction() != null) {
-		    securityConditions.put(accessRule.getAction().getDifferentialIdentityServiceAction(),
-			    accessRule.getSecurityCondition());
-		} else if (accessRule.getAction().getNamedDataServiceAction() != null) {
-		    securityConditions.put(accessRule.getAction().getNamedDataServiceAction(),
-			    accessRule.getSecurityCondition());
-		} else if (accessRule.getAction().getCryptographicServiceAction() != null) {
-		    securityConditions.put(accessRule.getAction().getCryptographicServiceAction(),
-			    accessRule.getSecurityCondition());
-		} else if (accessRule.getAction().getCardApplicationServiceAction() != null) {
-		    securityConditions.put(accessRule.getAction().getCardApplicationServiceAction(),
-			    accessRule.getSecurityCondition());
-		}
-	    }
-	}
 	return securityConditions.get(serviceAction);
     }
 
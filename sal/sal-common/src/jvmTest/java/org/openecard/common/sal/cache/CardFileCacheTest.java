@@ -0,0 +1,153 @@
+/****************************************************************************
+ * Copyright (C) 2026 ecsec GmbH.
+ * All rights reserved.
+ * Contact: ecsec GmbH (info@ecsec.de)
+ *
+ * This file is part of the Open eCard App.
+ *
+ * GNU General Public License Usage
+ * This file may be used under the terms of the GNU General Public
+ * License version 3.0 as published by the Free Software Foundation
+ * and appearing in the file LICENSE.GPL included in the packaging of
+ * this file. Please review the following information to ensure the
+ * GNU General Public License version 3.0 requirements will be met:
+ * http://www.gnu.org/copyleft/gpl.html.
+ *
+ * Other Usage
+ * Alternatively, this file may be used in accordance with the terms
+ * and conditions contained in a signed written agreement between
+ * you and ecsec GmbH.
+ *
+ ***************************************************************************/
+
+package org.openecard.common.sal.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Random;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+
+/**
+ * Test of the on-disk card file cache and its rules.
+ */
+public class CardFileCacheTest {
+
+    private static final String CARD_TYPE = "http://example.com/cif/card";
+    private static final byte[] APP = new byte[] { (byte) 0xA0, 0x00, 0x00, 0x01 };
+
+    private File dir;
+
+    @BeforeMethod
+    public void createDir() throws IOException {
+	dir = Files.createTempDirectory("card-cache").toFile();
+    }
+
+    @AfterMethod
+    public void deleteDir() {
+	File[] files = dir.listFiles();
+	if (files != null) {
+	    for (File next : files) {
+		next.delete();
+	    }
+	}
+	dir.delete();
+    }
+
+    @Test
+    public void testRules() {
+	CardFileCacheRules rules = CardFileCacheRules.parse(
+		CARD_TYPE + " EF.GDO EF.DIR EF.CERT; http://example.com/cif/other EF.ID EF.ID EF.X ; broken");
+	assertEquals(rules.getIdentityDataSet(CARD_TYPE), "EF.GDO");
+	assertTrue(rules.isIdentity(CARD_TYPE, "EF.GDO"));
+	assertTrue(rules.isCacheable(CARD_TYPE, "EF.CERT"));
+	assertFalse(rules.isCacheable(CARD_TYPE, "EF.GDO"));
+	assertFalse(rules.isCacheable(CARD_TYPE, "EF.X"));
+	// the identity is never cacheable, even when listed
+	assertFalse(rules.isCacheable("http://example.com/cif/other", "EF.ID"));
+	assertTrue(rules.isCacheable("http://example.com/cif/other", "EF.X"));
+	assertNull(rules.getIdentityDataSet("broken"));
+
+	assertTrue(CardFileCacheRules.parse(null).isEmpty());
+	assertTrue(CardFileCacheRules.parse("  ").isEmpty());
+    }
+
+    @Test
+    public void testPutGet() throws IOException {
+	CardFileCache cache = new CardFileCache(dir, 1024 * 1024, CardFileCacheRules.NONE);
+	byte[] identity = CardFileCache.identity(new byte[] { 1, 2, 3 });
+	byte[] content = content(1, 500);
+
+	CardFileCache.Key key = key(identity, "EF.CERT", 500L);
+	assertNull(cache.get(key));
+	cache.put(key, content);
+	assertEquals(cache.get(key), content);
+
+	// other card, other file size or other data set do not match
+	assertNull(cache.get(key(CardFileCache.identity(new byte[] { 1, 2, 4 }), "EF.CERT", 500L)));
+	assertNull(cache.get(key(identity, "EF.CERT", 501L)));
+	assertNull(cache.get(key(identity, "EF.DIR", 500L)));
+
+	// entries survive a restart
+	CardFileCache reopened = new CardFileCache(dir, 1024 * 1024, CardFileCacheRules.NONE);
+	assertEquals(reopened.get(key), content);
+	assertEquals(reopened.getSize(), cache.getSize());
+    }
+
+    @Test
+    public void testCorruptEntryIsRemoved() throws IOException {
+	CardFileCache cache = new CardFileCache(dir, 1024 * 1024, CardFileCacheRules.NONE);
+	CardFileCache.Key key = key(CardFileCache.identity(new byte[] { 1 }), "EF.CERT", null);
+	cache.put(key, content(2, 300));
+
+	File[] files = dir.listFiles();
+	assertEquals(files.length, 1);
+	try (RandomAccessFile f = new RandomAccessFile(files[0], "rw")) {
+	    f.seek(f.length() - 1);
+	    int last = f.read();
+	    f.seek(f.length() - 1);
+	    f.write(last ^ 0xFF);
+	}
+
+	assertNull(cache.get(key));
+	assertEquals(dir.listFiles().length, 0);
+	assertEquals(cache.getSize(), 0);
+    }
+
+    @Test
+    public void testSizeBound() throws IOException {
+	CardFileCache cache = new CardFileCache(dir, 3000, CardFileCacheRules.NONE);
+	byte[] identity = CardFileCache.identity(new byte[] { 1 });
+	for (int i = 0; i < 3; i++) {
+	    cache.put(key(identity, "EF." + i, null), content(i, 900));
+	}
+	// access the first entry, so that the second one is the least recently used
+	assertNotNull(cache.get(key(identity, "EF.0", null)));
+	cache.put(key(identity, "EF.3", null), content(3, 900));
+
+	assertTrue(cache.getSize() <= 3000);
+	assertNotNull(cache.get(key(identity, "EF.0", null)));
+	assertNull(cache.get(key(identity, "EF.1", null)));
+	assertNotNull(cache.get(key(identity, "EF.3", null)));
+
+	// larger than the whole cache
+	cache.put(key(identity, "EF.BIG", null), content(4, 4000));
+	assertNull(cache.get(key(identity, "EF.BIG", null)));
+    }
+
+    private static CardFileCache.Key key(byte[] identity, String dataSet, Long fileSize) {
+	return new CardFileCache.Key(CARD_TYPE, identity, APP, dataSet, fileSize);
+    }
+
+    private static byte[] content(int seed, int length) {
+	byte[] result = new byte[length];
+	new Random(seed).nextBytes(result);
+	return result;
+    }
+
+}
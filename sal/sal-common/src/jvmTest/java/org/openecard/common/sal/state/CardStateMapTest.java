@@ -0,0 +1,129 @@
+/****************************************************************************
+ * Copyright (C) 2026 ecsec GmbH.
+ * All rights reserved.
+ * Contact: ecsec GmbH (info@ecsec.de)
+ *
+ * This file is part of the Open eCard App.
+ *
+ * GNU General Public License Usage
+ * This file may be used under the terms of the GNU General Public
+ * License version 3.0 as published by the Free Software Foundation
+ * and appearing in the file LICENSE.GPL included in the packaging of
+ * this file. Please review the following information to ensure the
+ * GNU General Public License version 3.0 requirements will be met:
+ * http://www.gnu.org/copyleft/gpl.html.
+ *
+ * Other Usage
+ * Alternatively, this file may be used in accordance with the terms
+ * and conditions contained in a signed written agreement between
+ * you and ecsec GmbH.
+ *
+ ***************************************************************************/
+
+package org.openecard.common.sal.state;
+
+import iso.std.iso_iec._24727.tech.schema.CardInfoType;
+import iso.std.iso_iec._24727.tech.schema.ChannelHandleType;
+import iso.std.iso_iec._24727.tech.schema.ConnectionHandleType;
+import java.math.BigInteger;
+import java.util.Set;
+import org.openecard.common.sal.state.cif.CifLoader;
+import org.testng.annotations.Test;
+import static org.openecard.common.sal.state.TestHandles.ctxHandle;
+import static org.openecard.common.sal.state.TestHandles.slotHandle;
+import static org.testng.Assert.*;
+
+
+/**
+ * Test of the CardStateMap indexes with many entries.
+ */
+public class CardStateMapTest {
+
+    private static final int NUM_ENTRIES = 5000;
+    private static final int ENTRIES_PER_CTX = 10;
+
+    @Test
+    public void testIndexedLookup() {
+	CardInfoType cif = new CifLoader().getNpaCif();
+	CardStateMap states = new CardStateMap();
+	for (int i = 0; i < NUM_ENTRIES; i++) {
+	    states.addEntry(new CardStateEntry(createHandle(i), cif, null));
+	}
+
+	// lookup by slot handle
+	for (int i = 0; i < NUM_ENTRIES; i++) {
+	    ConnectionHandleType query = new ConnectionHandleType();
+	    query.setSlotHandle(slotHandle(i));
+	    Set<CardStateEntry> entries = states.getMatchingEntries(query, false);
+	    assertEquals(entries.size(), 1);
+	    assertEquals(entries.iterator().next().handleCopy().getSlotHandle(), slotHandle(i));
+	}
+
+	// lookup by context and session with slot index filter
+	ConnectionHandleType query = new ConnectionHandleType();
+	query.setContextHandle(ctxHandle(42));
+	assertEquals(states.getMatchingEntries(query, false).size(), ENTRIES_PER_CTX);
+	query.setSlotIndex(BigInteger.valueOf(3));
+	assertEquals(states.getMatchingEntries(query, false).size(), 1);
+	ChannelHandleType channel = new ChannelHandleType();
+	channel.setSessionIdentifier("session-" + 43);
+	query.setChannelHandle(channel);
+	assertTrue(states.getMatchingEntries(query, false).isEmpty());
+
+	// lookup by IFD name
+	ConnectionHandleType ifdQuery = new ConnectionHandleType();
+	ifdQuery.setIFDName("Reader 7");
+	assertEquals(states.getMatchingEntries(ifdQuery, false).size(), ENTRIES_PER_CTX);
+	ifdQuery.setSlotIndex(BigInteger.valueOf(3));
+	assertEquals(states.getMatchingEntries(ifdQuery, false).size(), 1);
+
+	// unrestricted lookup returns everything
+	assertEquals(states.getMatchingEntries(new ConnectionHandleType(), false).size(), NUM_ENTRIES);
+
+	// remove all entries of one context
+	ConnectionHandleType removeQuery = new ConnectionHandleType();
+	removeQuery.setContextHandle(ctxHandle(42));
+	states.removeEntry(removeQuery);
+	assertTrue(states.getMatchingEntries(removeQuery, false).isEmpty());
+	ConnectionHandleType slotQuery = new ConnectionHandleType();
+	slotQuery.setSlotHandle(slotHandle(42 * ENTRIES_PER_CTX));
+	assertTrue(states.getMatchingEntries(slotQuery, false).isEmpty());
+	assertEquals(states.getMatchingEntries(new ConnectionHandleType(), false).size(), NUM_ENTRIES - ENTRIES_PER_CTX);
+    }
+
+    @Test
+    public void testEntryWithoutIfdName() {
+	CardInfoType cif = new CifLoader().getNpaCif();
+	CardStateMap states = new CardStateMap();
+	for (int i = 0; i < 2 * ENTRIES_PER_CTX; i++) {
+	    states.addEntry(new CardStateEntry(createHandle(i), cif, null));
+	}
+	ConnectionHandleType nameless = createHandle(NUM_ENTRIES);
+	nameless.setIFDName(null);
+	states.addEntry(new CardStateEntry(nameless, cif, null));
+
+	// entries without IFD name match any name
+	ConnectionHandleType ifdQuery = new ConnectionHandleType();
+	ifdQuery.setIFDName("Reader 1");
+	assertEquals(states.getMatchingEntries(ifdQuery, false).size(), ENTRIES_PER_CTX + 1);
+
+	ConnectionHandleType removeQuery = new ConnectionHandleType();
+	removeQuery.setSlotHandle(nameless.getSlotHandle());
+	states.removeEntry(removeQuery);
+	assertEquals(states.getMatchingEntries(ifdQuery, false).size(), ENTRIES_PER_CTX);
+    }
+
+    private static ConnectionHandleType createHandle(int i) {
+	ConnectionHandleType handle = new ConnectionHandleType();
+	int ctxNum = i / ENTRIES_PER_CTX;
+	handle.setContextHandle(ctxHandle(ctxNum));
+	handle.setIFDName("Reader " + ctxNum);
+	handle.setSlotIndex(BigInteger.valueOf(i % ENTRIES_PER_CTX));
+	handle.setSlotHandle(slotHandle(i));
+	ChannelHandleType channel = new ChannelHandleType();
+	channel.setSessionIdentifier("session-" + ctxNum);
+	handle.setChannelHandle(channel);
+	return handle;
+    }
+
+}
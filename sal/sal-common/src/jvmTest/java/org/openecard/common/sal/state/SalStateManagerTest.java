@@ -0,0 +1,210 @@
+/****************************************************************************
+ * Copyright (C) 2026 ecsec GmbH.
+ * All rights reserved.
+ * Contact: ecsec GmbH (info@ecsec.de)
+ *
+ * This file is part of the Open eCard App.
+ *
+ * GNU General Public License Usage
+ * This file may be used under the terms of the GNU General Public
+ * License version 3.0 as published by the Free Software Foundation
+ * and appearing in the file LICENSE.GPL included in the packaging of
+ * this file. Please review the following information to ensure the
+ * GNU General Public License version 3.0 requirements will be met:
+ * http://www.gnu.org/copyleft/gpl.html.
+ *
+ * Other Usage
+ * Alternatively, this file may be used in accordance with the terms
+ * and conditions contained in a signed written agreement between
+ * you and ecsec GmbH.
+ *
+ ***************************************************************************/
+
+package org.openecard.common.sal.state;
+
+import iso.std.iso_iec._24727.tech.schema.ApplicationCapabilitiesType;
+import iso.std.iso_iec._24727.tech.schema.CardInfoType;
+import iso.std.iso_iec._24727.tech.schema.CardTypeType;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.openecard.common.sal.state.cif.CardInfoWrapper;
+import org.testng.annotations.Test;
+import static org.openecard.common.sal.state.TestHandles.ctxHandle;
+import static org.openecard.common.sal.state.TestHandles.slotHandle;
+import static org.testng.Assert.*;
+
+
+/**
+ * Functional and concurrency test of the SalStateManager indexes and session eviction.
+ */
+public class SalStateManagerTest {
+
+    private static final int NUM_SESSIONS = 5000;
+    private static final int NUM_THREADS = 16;
+
+    @Test
+    public void testIndexedLookup() throws Exception {
+	SalStateManager states = new SalStateManager();
+	CardEntry card = states.addCard(ctxHandle(1), "Reader", BigInteger.ZERO, createCif());
+	assertSame(states.getCardEntry(ctxHandle(1), "Reader", BigInteger.ZERO), card);
+	assertSame(states.getCardEntry(ctxHandle(1)), card);
+	assertNull(states.getCardEntry(ctxHandle(2)));
+
+	StateEntry session = states.createSession("session", ctxHandle(1));
+	assertSame(states.getSession("session"), session);
+	assertTrue(states.isDisconnected(ctxHandle(1), "Reader", slotHandle(1)));
+
+	ConnectedCardEntry connected = session.setConnectedCard(slotHandle(1), new byte[] { 0x3F, 0x00 }, card);
+	states.addCard(connected);
+	assertSame(states.getSessionBySlotHandle(slotHandle(1)), session);
+	assertFalse(states.isDisconnected(ctxHandle(1), "Reader", slotHandle(1)));
+	assertEquals(states.listCardEntries().size(), 1);
+
+	session.removeCard();
+	try {
+	    states.getSessionBySlotHandle(slotHandle(1));
+	    fail("Disconnected session must not be found by its slot handle.");
+	} catch (NoSuchSession ex) {
+	    // expected
+	}
+
+	assertTrue(states.removeCard(ctxHandle(1), "Reader", BigInteger.ZERO));
+	assertTrue(states.isDisconnected(ctxHandle(1), "Reader", slotHandle(1)));
+	assertTrue(states.listCardEntries().isEmpty());
+
+	assertTrue(states.destroySessionByContextHandle(ctxHandle(1)));
+	assertFalse(states.destroySessionByContextHandle(ctxHandle(1)));
+    }
+
+    @Test
+    public void testConcurrentSessions() throws Exception {
+	final SalStateManager states = new SalStateManager();
+	final CardInfoWrapper cif = createCif();
+
+	ExecutorService exec = Executors.newFixedThreadPool(NUM_THREADS);
+	try {
+	    List<Future<?>> results = new ArrayList<>();
+	    for (int t = 0; t < NUM_THREADS; t++) {
+		final int thread = t;
+		results.add(exec.submit(() -> {
+		    for (int i = thread; i < NUM_SESSIONS; i += NUM_THREADS) {
+			runSession(states, cif, i);
+		    }
+		    return null;
+		}));
+	    }
+	    for (Future<?> f : results) {
+		f.get();
+	    }
+	} finally {
+	    exec.shutdownNow();
+	}
+
+	// every second session was kept connected, all others cleaned up
+	assertEquals(states.listCardEntries().size(), NUM_SESSIONS / 2);
+	for (int i = 0; i < NUM_SESSIONS; i++) {
+	    boolean kept = i % 2 == 0;
+	    assertEquals(states.isDisconnected(ctxHandle(i), "Reader " + i, slotHandle(i)), ! kept);
+	    if (kept) {
+		assertEquals(states.getSessionBySlotHandle(slotHandle(i)).getSession(), "session-" + i);
+	    } else {
+		try {
+		    states.getSession("session-" + i);
+		    fail("Destroyed session is still available.");
+		} catch (NoSuchSession ex) {
+		    // expected
+		}
+	    }
+	}
+    }
+
+    @Test
+    public void testIdleEviction() throws Exception {
+	SalStateManager states = new SalStateManager(new SessionPolicy(10, TimeUnit.MILLISECONDS, 0));
+	List<StateEntry> evicted = new ArrayList<>();
+	states.setEvictionListener(evicted::add);
+
+	CardEntry card = states.addCard(ctxHandle(1), "Reader", BigInteger.ZERO, createCif());
+	StateEntry connected = states.createSession("connected", ctxHandle(1));
+	connected.setConnectedCard(slotHandle(1), new byte[] { 0x3F, 0x00 }, card);
+	states.createSession("other", ctxHandle(2));
+	assertEquals(states.getSessionCount(), 2);
+
+	// a sweep in the future removes everything
+	assertEquals(states.evictIdleSessions(System.nanoTime() + TimeUnit.SECONDS.toNanos(1)), 2);
+	assertEquals(states.getSessionCount(), 0);
+	assertEquals(states.getIdleEvictionCount(), 2);
+	assertEquals(evicted.size(), 2);
+	try {
+	    states.getSessionBySlotHandle(slotHandle(1));
+	    fail("Evicted session must not be found by its slot handle.");
+	} catch (NoSuchSession ex) {
+	    // expected
+	}
+
+	// expired sessions are evicted on lookup
+	states.createSession("lookup", ctxHandle(3));
+	Thread.sleep(50);
+	try {
+	    states.getSession("lookup");
+	    fail("Expired session must not be returned.");
+	} catch (NoSuchSession ex) {
+	    // expected
+	}
+	assertEquals(states.getIdleEvictionCount(), 3);
+	assertEquals(evicted.get(2).getSession(), "lookup");
+    }
+
+    @Test
+    public void testCapacityEviction() throws Exception {
+	SalStateManager states = new SalStateManager(new SessionPolicy(0, TimeUnit.SECONDS, 3));
+	List<StateEntry> evicted = new ArrayList<>();
+	states.setEvictionListener(evicted::add);
+
+	states.createSession("s0", ctxHandle(0));
+	states.createSession("s1", ctxHandle(1));
+	states.createSession("s2", ctxHandle(2));
+	// use the oldest session, so that s1 becomes the least recently used one
+	states.getSession("s0");
+	states.createSession("s3", ctxHandle(3));
+
+	assertEquals(states.getSessionCount(), 3);
+	assertEquals(states.getCapacityEvictionCount(), 1);
+	assertEquals(evicted.size(), 1);
+	assertEquals(evicted.get(0).getSession(), "s1");
+	assertFalse(states.destroySessionByContextHandle(ctxHandle(1)));
+	assertNotNull(states.getSession("s0"));
+    }
+
+    private static void runSession(SalStateManager states, CardInfoWrapper cif, int i) throws Exception {
+	String ifdName = "Reader " + i;
+	CardEntry card = states.addCard(ctxHandle(i), ifdName, BigInteger.ZERO, cif);
+	StateEntry session = states.createSession("session-" + i, ctxHandle(i));
+	ConnectedCardEntry connected = session.setConnectedCard(slotHandle(i), new byte[] { 0x3F, 0x00 }, card);
+	states.addCard(connected);
+
+	assertSame(states.getSessionBySlotHandle(slotHandle(i)), session);
+	assertSame(states.getCardEntry(ctxHandle(i), ifdName, BigInteger.ZERO), connected);
+	assertFalse(states.isDisconnected(ctxHandle(i), ifdName, slotHandle(i)));
+
+	if (i % 2 != 0) {
+	    states.removeCard(ctxHandle(i), ifdName, BigInteger.ZERO);
+	    assertTrue(states.destroySessionByContextHandle(ctxHandle(i)));
+	}
+    }
+
+    private static CardInfoWrapper createCif() {
+	CardInfoType cif = new CardInfoType();
+	CardTypeType type = new CardTypeType();
+	type.setObjectIdentifier("http://example.org/test-card");
+	cif.setCardType(type);
+	cif.setApplicationCapabilities(new ApplicationCapabilitiesType());
+	return new CardInfoWrapper(cif, null);
+    }
+
+}
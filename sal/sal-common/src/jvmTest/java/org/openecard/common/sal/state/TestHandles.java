@@ -0,0 +1,44 @@
+/****************************************************************************
+ * Copyright (C) 2026 ecsec GmbH.
+ * All rights reserved.
+ * Contact: ecsec GmbH (info@ecsec.de)
+ *
+ * This file is part of the Open eCard App.
+ *
+ * GNU General Public License Usage
+ * This file may be used under the terms of the GNU General Public
+ * License version 3.0 as published by the Free Software Foundation
+ * and appearing in the file LICENSE.GPL included in the packaging of
+ * this file. Please review the following information to ensure the
+ * GNU General Public License version 3.0 requirements will be met:
+ * http://www.gnu.org/copyleft/gpl.html.
+ *
+ * Other Usage
+ * Alternatively, this file may be used in accordance with the terms
+ * and conditions contained in a signed written agreement between
+ * you and ecsec GmbH.
+ *
+ ***************************************************************************/
+
+package org.openecard.common.sal.state;
+
+import java.nio.ByteBuffer;
+
+
+/**
+ * Distinct context and slot handles for the state tests.
+ */
+final class TestHandles {
+
+    private TestHandles() {
+    }
+
+    static byte[] ctxHandle(int i) {
+	return ByteBuffer.allocate(8).putInt(0xC7C7C7C7).putInt(i).array();
+    }
+
+    static byte[] slotHandle(int i) {
+	return ByteBuffer.allocate(8).putInt(0x5A5A5A5A).putInt(i).array();
+    }
+
+}
@@ -22,7 +22,10 @@
 
 package org.openecard.common.sal.state.cif;
 
+import iso.std.iso_iec._24727.tech.schema.ApplicationCapabilitiesType;
+import iso.std.iso_iec._24727.tech.schema.CardApplicationType;
 import iso.std.iso_iec._24727.tech.schema.CardInfoType;
+import iso.std.iso_iec._24727.tech.schema.CardTypeType;
 import org.openecard.common.util.StringUtils;
 import org.testng.annotations.Test;
 
@@ -57,4 +60,64 @@ public class CardInfoWrapperTest {
 	// CardApplicationWrapper cardApplicationWrapper = cardInfoWrapper.getCardApplication(rootApplication);
     }
 
+    @Test
+    public void testIndexes() {
+	CardInfoType cardInfo = new CifLoader().getNpaCif();
+	CardInfoWrapper cardInfoWrapper = new CardInfoWrapper(cardInfo, null);
+	byte[] eidApplication = StringUtils.toByteArray("E80704007F00070302");
+
+	assertEquals(cardInfoWrapper.getDataSetByName("EF.CardAccess").getDataSetName(), "EF.CardAccess");
+	assertEquals(cardInfoWrapper.getDataSetByFid(StringUtils.toByteArray("0102")).getDataSetName(), "DG2");
+	assertNull(cardInfoWrapper.getDataSetByFid(StringUtils.toByteArray("0F0F")));
+	assertNull(cardInfoWrapper.getDataSetByName("EF.Unknown"));
+	assertNull(cardInfoWrapper.getDSIbyName("Unknown"));
+	assertEquals(cardInfoWrapper.getApplicationIdByDidName("PIN", null), rootApplication);
+	assertEquals(cardInfoWrapper.getDIDInfo("PIN", rootApplication).getDifferentialIdentity().getDIDName(), "PIN");
+	assertNull(cardInfoWrapper.getDIDInfo("PIN", eidApplication));
+	assertNotNull(cardInfoWrapper.getDataSet("DG1", eidApplication));
+	assertEquals(cardInfoWrapper.getDataSetNameList(eidApplication).getDataSetName().get(0), "DG1");
+
+	// wrappers are shared for the same CIF instance and protocol
+	CardInfoWrapper shared = CardInfoWrapper.forCardInfo(cardInfo, null);
+	assertSame(CardInfoWrapper.forCardInfo(cardInfo, null), shared);
+	assertNotSame(CardInfoWrapper.forCardInfo(new CifLoader().getNpaCif(), null), shared);
+    }
+
+    /**
+     * The CIF is shared between connections, so filtering the applications for one interface protocol must not
+     * affect wrappers for other protocols.
+     */
+    @Test
+    public void testFilterDoesNotModifyCif() {
+	CardInfoType cif = new CardInfoType();
+	cif.setCardType(new CardTypeType());
+	cif.getCardType().setObjectIdentifier("http://example.com/cif/card");
+	cif.setApplicationCapabilities(new ApplicationCapabilitiesType());
+	cif.getApplicationCapabilities().setImplicitlySelectedApplication(rootApplication);
+	cif.getApplicationCapabilities().getCardApplication().add(makeApp("3F00"));
+	cif.getApplicationCapabilities().getCardApplication().add(makeApp("A001", "urn:proto:contact"));
+	cif.getApplicationCapabilities().getCardApplication().add(makeApp("A002", "urn:proto:contactless"));
+
+	CardInfoWrapper contact = new CardInfoWrapper(cif, "urn:proto:contact");
+	CardInfoWrapper contactless = new CardInfoWrapper(cif, "urn:proto:contactless");
+
+	assertEquals(cif.getApplicationCapabilities().getCardApplication().size(), 3);
+	assertEquals(contact.getCardApplications().size(), 2);
+	assertNotNull(contact.getCardApplication(StringUtils.toByteArray("A001")));
+	assertNull(contact.getCardApplication(StringUtils.toByteArray("A002")));
+	assertEquals(contactless.getCardApplications().size(), 2);
+	assertNotNull(contactless.getCardApplication(StringUtils.toByteArray("A002")));
+	assertEquals(contactless.getCardType(), "http://example.com/cif/card");
+	assertEquals(contactless.getImplicitlySelectedApplication(), rootApplication);
+    }
+
+    private static CardApplicationType makeApp(String aid, String... protocols) {
+	CardApplicationType app = new CardApplicationType();
+	app.setApplicationIdentifier(StringUtils.toByteArray(aid));
+	for (String protocol : protocols) {
+	    app.getInterfaceProtocol().add(protocol);
+	}
+	return app;
+    }
+
 }
@@ -29,12 +29,14 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nullable;
 import javax.xml.namespace.NamespaceContext;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
@@ -56,32 +58,58 @@ import org.xml.sax.SAXException;
 /**
  * Classpath resource based CardInfo repository.
  *
+ * The card types contained in the repository are taken from the index {@code cif-repo/cif-index.properties}, which is
+ * generated when the cifs module is built. Each CIF is unmarshalled directly from its resource the first time its card
+ * type is requested. The resulting object is shared by all callers and must not be modified. When the index is
+ * missing, the card types are determined by parsing all CIF files.
+ *
  * @author Tobias Wich
  */
 public class LocalCifRepo implements GetCardInfoOrACD {
 
     private static final Logger LOG = LoggerFactory.getLogger(LocalCifRepo.class);
 
+    private static final String INDEX_FILE = "cif-index.properties";
+
     private final WSMarshaller m;
-    private final HashMap<String, Document> cifs = new HashMap<>();
+    // card type -> resource name
+    private final Map<String, String> cifFiles = new LinkedHashMap<>();
+    private final Map<String, CardInfoType> cifs = new ConcurrentHashMap<>();
 
     public LocalCifRepo(final WSMarshaller m) throws IOException, WSMarshallerException, SAXException {
 	this.m = m;
-	// load properties
-	InputStream propStream = getStream("repo-config.properties");
-	Properties conf = new Properties();
-	conf.load(propStream);
-
-	String fileNames = conf.getProperty("cifFiles");
-	String[] files = fileNames.split(",");
-
-	for (final String next : files) {
-	    // load and unmarshal
-	    InputStream cifStream = getStream(next.trim());
-	    Document cifDoc = m.str2doc(cifStream);
-            String cardType = getTypeFromCIF(cifDoc);
-            // add file
-            cifs.put(cardType, cifDoc);
+	Properties index = loadIndex();
+	if (index != null) {
+	    for (String next : index.stringPropertyNames()) {
+		cifFiles.put(index.getProperty(next).trim(), next);
+	    }
+	} else {
+	    LOG.info("No CIF index available, reading card types from the CIF files.");
+	    // load properties
+	    InputStream propStream = getStream("repo-config.properties");
+	    Properties conf = new Properties();
+	    conf.load(propStream);
+
+	    String fileNames = conf.getProperty("cifFiles");
+	    String[] files = fileNames.split(",");
+
+	    for (final String next : files) {
+		InputStream cifStream = getStream(next.trim());
+		Document cifDoc = m.str2doc(cifStream);
+		String cardType = getTypeFromCIF(cifDoc);
+		cifFiles.put(cardType, next.trim());
+	    }
+	}
+    }
+
+    @Nullable
+    private static Properties loadIndex() throws IOException {
+	try (InputStream in = getStream(INDEX_FILE)) {
+	    Properties index = new Properties();
+	    index.load(in);
+	    return index;
+	} catch (FileNotFoundException ex) {
+	    return null;
 	}
     }
 
@@ -123,7 +151,51 @@ public class LocalCifRepo implements GetCardInfoOrACD {
     }
 
     public Set<String> getSupportedCardTypes() {
-	return Collections.unmodifiableSet(cifs.keySet());
+	return Collections.unmodifiableSet(cifFiles.keySet());
+    }
+
+    /**
+     * Gets the CIF of the given card type, unmarshalling it on first use.
+     *
+     * @param cardType Card type URI of the CIF.
+     * @return The shared CIF instance, or {@code null} if the card type is not contained in the repository.
+     * @throws WSMarshallerException Thrown in case the CIF could not be read.
+     */
+    @Nullable
+    private CardInfoType getCif(String cardType) throws WSMarshallerException {
+	CardInfoType cif = cifs.get(cardType);
+	if (cif == null) {
+	    String file = cifFiles.get(cardType);
+	    if (file == null) {
+		return null;
+	    }
+	    synchronized (this) {
+		cif = cifs.get(cardType);
+		if (cif == null) {
+		    cif = loadCif(file);
+		    if (! cardType.equals(cif.getCardType().getObjectIdentifier())) {
+			LOG.warn("CIF index lists {} for card type {}, but the file contains {}.", file, cardType,
+				cif.getCardType().getObjectIdentifier());
+		    }
+		    cifs.put(cardType, cif);
+		}
+	    }
+	}
+	return cif;
+    }
+
+    private CardInfoType loadCif(String file) throws WSMarshallerException {
+	LOG.debug("Loading CIF {}.", file);
+	try (InputStream in = getStream(file)) {
+	    Object o = m.unmarshal(in);
+	    if (o instanceof CardInfoType) {
+		return (CardInfoType) o;
+	    } else {
+		throw new WSMarshallerException("File " + file + " does not contain a CardInfo document.");
+	    }
+	} catch (IOException ex) {
+	    throw new WSMarshallerException("Failed to read CIF file " + file + ".", ex);
+	}
     }
 
     @Override
@@ -137,12 +209,11 @@ public class LocalCifRepo implements GetCardInfoOrACD {
 	    if (ECardConstants.CIF.GET_SPECIFIED.equals(parameters.getAction())) {
 		ArrayList<String> missingTypes = new ArrayList<>();
 		for (String cardType : cardTypes) {
-		    Document cif = cifs.get(cardType);
+		    CardInfoType cif = getCif(cardType);
 		    if (cif == null) {
 			missingTypes.add(cardType);
 		    } else {
-			// marshal here to receive a copy of the CIF
-			cifsResult.add((CardInfoType) m.unmarshal(cif));
+			cifsResult.add(cif);
 		    }
 		}
 
@@ -154,14 +225,10 @@ public class LocalCifRepo implements GetCardInfoOrACD {
 		    result = WSHelper.makeResultError(ECardConstants.Minor.SAL.UNKNOWN_CARDTYPE, error.toString());
 		}
 	    } else if (ECardConstants.CIF.GET_OTHER.equals(parameters.getAction())) {
-		HashMap<String, Document> cifsTmp = new HashMap<>();
-		cifsTmp.putAll(cifs);
-		for (String cardType : cardTypes) {
-		    cifsTmp.remove(cardType);
-		}
-		for (Map.Entry<String, Document> e : cifsTmp.entrySet()) {
-		    Document next = e.getValue();
-		    cifsResult.add((CardInfoType) m.unmarshal(next));
+		for (String cardType : cifFiles.keySet()) {
+		    if (! cardTypes.contains(cardType)) {
+			cifsResult.add(getCif(cardType));
+		    }
 		}
 	    } else {
 		result = WSHelper.makeResultError(ECardConstants.Minor.App.INT_ERROR, "Given action is unsupported.");
@@ -304,7 +304,7 @@ public class SalEventManager {
 			ConnectionHandleType handle = makeUnknownCardHandle(ifdName, newSlot, slotCapabilities);
 
 			// perform recognition
-			RecognitionInfo recognitionInfo = recogniseCard(handle);
+			RecognitionInfo recognitionInfo = recogniseCard(handle, newSlot.getATRorATS());
 			if (recognitionInfo != null) {
 			    LOG.debug("Starting recognition for terminal {}.", ifdName);
 			    handle.setRecognitionInfo(recognitionInfo);
@@ -318,7 +318,7 @@ public class SalEventManager {
 				    // get protocol of the slot (fails if card is not connected)
 				    String slotProto = getSlotProto(slotCapabilities);
 				    // Register card before triggering events.
-				    salStates.addCard(ctx, ifdName, handle.getSlotIndex(), new CardInfoWrapper(cif, slotProto));
+				    salStates.addCard(ctx, ifdName, handle.getSlotIndex(), CardInfoWrapper.forCardInfo(cif, slotProto));
 				} catch (DuplicateCardEntry ex) {
 				    LOG.error("Duplicate card entry detected, ignoring new card.");
 				}
@@ -416,9 +416,9 @@ public class SalEventManager {
 	    return false;
 	}
 
-	private RecognitionInfo recogniseCard(ConnectionHandleType handle) {
+	private RecognitionInfo recogniseCard(ConnectionHandleType handle, byte[] atr) {
 	    try {
-		return env.getRecognition().recognizeCard(ctx, handle.getIFDName(), handle.getSlotIndex());
+		return env.getRecognition().recognizeCard(ctx, handle.getIFDName(), handle.getSlotIndex(), atr);
 	    } catch (RecognitionException ex) {
 		LOG.error("Error during card recognition.", ex);
 		return null;
@@ -194,11 +194,14 @@ import org.openecard.common.sal.exception.PrerequisitesNotSatisfiedException;
 import org.openecard.common.sal.exception.SecurityConditionNotSatisfiedException;
 import org.openecard.common.sal.exception.UnknownConnectionHandleException;
 import org.openecard.common.sal.exception.UnknownProtocolException;
+import org.openecard.common.sal.cache.CardFileCache;
+import org.openecard.common.sal.cache.CardFileCacheRules;
 import org.openecard.common.sal.state.CardEntry;
 import org.openecard.common.sal.state.ConnectedCardEntry;
 import org.openecard.common.sal.state.NoSuchSession;
 import org.openecard.common.sal.state.SalStateManager;
 import org.openecard.common.sal.state.SessionAlreadyExists;
+import org.openecard.common.sal.state.SessionPolicy;
 import org.openecard.common.sal.state.StateEntry;
 import org.openecard.common.sal.state.cif.CardApplicationWrapper;
 import org.openecard.common.sal.state.cif.CardInfoWrapper;
@@ -232,6 +235,8 @@ public class TinySAL implements SAL {
 
     private final Environment env;
     private final SalStateManager salStates;
+    @Nullable
+    private final CardFileCache fileCache;
     private byte[] ifdCtx;
     private AddonManager addonManager;
     private AddonSelector protocolSelector;
@@ -245,16 +250,15 @@ public class TinySAL implements SAL {
      */
     public TinySAL(Environment env) {
 	this.env = env;
-	this.salStates = new SalStateManager();
+	this.salStates = new SalStateManager(SessionPolicy.fromProperties());
+	this.salStates.setEvictionListener(this::releaseEvictedSession);
+	this.fileCache = CardFileCache.fromProperties();
     }
 
     public void setAddonManager(AddonManager manager) {
 	this.addonManager = manager;
 	protocolSelector = new AddonSelector(manager);
 	protocolSelector.setStrategy(new HighestVersionSelector());
-	// TODO: check if returnSALProtocol must be called when the entry is removed.
-	// states.setProtocolSelector(protocolSelector);
-
     }
 
     public SalStateView getSalStateView() {
@@ -1431,7 +1435,7 @@ public class TinySAL implements SAL {
 			shortEf = null;
 		}
 
-		byte[] fileContent = CardUtils.readFile(fcp, shortEf, env.getDispatcher(), slotHandle, true);
+		byte[] fileContent = readDataSet(cardStateEntry, dsiName, fcp, shortEf, slotHandle);
 		response.setDSIContent(fileContent);
 
 	    } else {
@@ -2319,6 +2323,65 @@ public class TinySAL implements SAL {
 	}
     }
 
+    /**
+     * Reads the content of the selected data set, using the card file cache for data sets marked as cacheable.
+     * The cache is only consulted once the identity data set of the card has been read in this connection.
+     */
+    private byte[] readDataSet(ConnectedCardEntry cardEntry, String dataSetName, FCP fcp, Byte shortEf,
+	    byte[] slotHandle) throws APDUException {
+	if (fileCache == null) {
+	    return CardUtils.readFile(fcp, shortEf, env.getDispatcher(), slotHandle, true);
+	}
+
+	String cardType = cardEntry.getCif().getCardType();
+	CardFileCacheRules rules = fileCache.getRules();
+	byte[] identity = cardEntry.getCardIdentity();
+	CardFileCache.Key key = null;
+	if (identity != null && rules.isCacheable(cardType, dataSetName)) {
+	    Long fileSize = fcp != null ? fcp.getNumBytes() : null;
+	    key = new CardFileCache.Key(cardType, identity, cardEntry.getCardApplication(), dataSetName, fileSize);
+	    byte[] cached = fileCache.get(key);
+	    if (cached != null) {
+		LOG.debug("Data set {} served from the card file cache.", dataSetName);
+		return cached;
+	    }
+	}
+
+	byte[] content = CardUtils.readFile(fcp, shortEf, env.getDispatcher(), slotHandle, true);
+	if (key != null) {
+	    fileCache.put(key, content);
+	} else if (rules.isIdentity(cardType, dataSetName)) {
+	    cardEntry.setCardIdentity(CardFileCache.identity(content));
+	}
+	return content;
+    }
+
+    /**
+     * Releases the protocol instance and card connection of a session evicted by the state manager.
+     *
+     * @param session The evicted session.
+     */
+    private void releaseEvictedSession(StateEntry session) {
+	SALProtocol protocol = session.getProtocol();
+	if (protocol != null) {
+	    session.removeProtocol(session.getProtocolName());
+	    if (protocolSelector != null) {
+		protocolSelector.returnSALProtocol(protocol, true);
+	    }
+	}
+
+	ConnectedCardEntry card = session.getCardEntry();
+	if (card != null) {
+	    session.removeCard();
+	    Disconnect disconnect = new Disconnect();
+	    disconnect.setSlotHandle(card.getSlotHandle());
+	    DisconnectResponse res = (DisconnectResponse) env.getDispatcher().safeDeliver(disconnect);
+	    if (! ECardConstants.Major.OK.equals(res.getResult().getResultMajor())) {
+		LOG.warn("Failed to disconnect card of evicted session {}.", session.getSession());
+	    }
+	}
+    }
+
     private SALProtocol getProtocol(@Nonnull ConnectionHandleType handle, @Nullable DIDScopeType scope,
 	    @Nonnull String protocolURI) throws UnknownProtocolException, UnknownConnectionHandleException,
 	    IncorrectParameterException, NoSuchSession {
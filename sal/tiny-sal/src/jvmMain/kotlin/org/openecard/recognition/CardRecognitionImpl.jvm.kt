@@ -31,16 +31,12 @@ import org.openecard.common.I18n
 import org.openecard.common.WSHelper
 import org.openecard.common.WSHelper.checkResult
 import org.openecard.common.WSHelper.minorIsOneOf
-import org.openecard.common.apdu.common.CardResponseAPDU
 import org.openecard.common.interfaces.CardRecognition
 import org.openecard.common.interfaces.Environment
 import org.openecard.common.interfaces.RecognitionException
-import org.openecard.common.tlv.TLV
-import org.openecard.common.tlv.TLVException
-import org.openecard.common.util.ByteUtils
 import org.openecard.common.util.FileUtils.readLinesFromConfig
 import org.openecard.common.util.FileUtils.resolveResourceAsStream
-import org.openecard.common.util.IntegerUtils
+import org.openecard.common.util.StartupStages
 import org.openecard.gui.message.DialogType
 import org.openecard.recognition.RecognitionProperties.action
 import org.openecard.recognition.staticrepo.LocalCifRepo
@@ -53,7 +49,7 @@ import java.io.InputStream
 import java.math.BigInteger
 import java.util.Locale
 import java.util.Properties
-import kotlin.concurrent.thread
+import java.util.concurrent.ThreadLocalRandom
 
 private val LOG = KotlinLogging.logger {  }
 
@@ -86,6 +82,17 @@ class CardRecognitionImpl @JvmOverloads constructor(
 		resp.getRecognitionTree()
 	}
 
+	private val automaton: RecognitionAutomaton by lazy {
+		RecognitionAutomaton.compile(tree)
+	}
+
+	/**
+	 * Cache mapping ATRs of already recognized cards to their card types.
+	 */
+	val recognitionCache: RecognitionCache by lazy {
+		RecognitionCache.fromProperties()
+	}
+
     private val cifRepo: GetCardInfoOrACD by lazy {
 		LOG.info { "Initializing CIF Repo." }
 		val cifMarshaller = createInstance()
@@ -139,14 +146,15 @@ class CardRecognitionImpl @JvmOverloads constructor(
     init {
         cardImagesMap.load(resolveResourceAsStream(CardRecognitionImpl::class.java, IMAGE_PROPERTIES))
 
-		thread {
-			tree
-			LOG.debug { "Done determining loading tree." }
-			// request all cifs to fill list of supported cards
+		// both stages are independent, whatever is not finished yet blocks the first caller of the lazy value
+		StartupStages.submit("recognition tree") {
+			automaton
+			LOG.debug { "Done loading and compiling tree." }
+		}
+		StartupStages.submit("CIF repository") {
+			// CIFs themselves are only unmarshalled when their card type is used
 			supportedCards
 			LOG.debug { "Done determining supported cards." }
-
-			LOG.info { "Finished initializing CIF Repo." }
 		}
     }
 
@@ -310,12 +318,34 @@ class CardRecognitionImpl @JvmOverloads constructor(
         ctx: ByteArray,
         ifdName: String,
         slot: BigInteger,
+    ): ConnectionHandleType.RecognitionInfo? {
+        return recognizeCard(ctx, ifdName, slot, null)
+    }
+
+    /**
+     * Recognizes the card in the defined reader.
+     *
+     * @param ctx Context handle of the IFD.
+     * @param ifdName Name of the card reader.
+     * @param slot Index of the slot in the reader.
+     * @param atr ATR of the card, or `null` if the recognition cache shall not be used.
+     * @return RecognitionInfo structure containing the card type of the detected card or `null` if no card could
+     * be detected.
+     * @throws RecognitionException Thrown in case there was an error in the recognition.
+     */
+    @Throws(RecognitionException::class)
+    override fun recognizeCard(
+        ctx: ByteArray,
+        ifdName: String,
+        slot: BigInteger,
+        atr: ByteArray?,
     ): ConnectionHandleType.RecognitionInfo? {
         // connect card
         val slotHandle = connect(ctx, ifdName, slot)
         try {
             // recognise card
-            val type = treeCalls(slotHandle, tree.getCardCall())
+            val transmitter = RecognitionTransmitter { cmd, trailers -> transmit(slotHandle, cmd, trailers) }
+            val type = recognizeCached(atr, automaton.start(transmitter))
             // build result or throw exception if it is null or unsupported
             if (type == null || !isSupportedCard(type)) {
                 return null
@@ -329,6 +359,35 @@ class CardRecognitionImpl @JvmOverloads constructor(
     }
 
 
+    /**
+     * Recognizes the card with the help of the recognition cache.
+     * If the ATR of the card is known, only the checks of the card types cached for it are executed. Otherwise, or if
+     * no check succeeds, the whole tree is evaluated in the same run, so responses of the checks are not requested
+     * again, and the result is added to the cache.
+     */
+    @Throws(RecognitionException::class)
+    private fun recognizeCached(atr: ByteArray?, run: RecognitionAutomaton.Run): String? {
+        if (atr == null) {
+            return run.recognize()?.cardType
+        }
+
+        for (entry in recognitionCache.lookup(atr)) {
+            if (run.confirm(entry.cardType, entry.check)) {
+                LOG.debug { "Card type ${entry.cardType} confirmed from recognition cache." }
+                recognitionCache.confirmed(atr, entry)
+                return entry.cardType
+            }
+        }
+        recognitionCache.missed()
+
+        val result = run.recognize() ?: return null
+        val check = result.check
+        if (check != null) {
+            recognitionCache.put(atr, RecognitionCache.Entry(result.cardType, check))
+        }
+        return result.cardType
+    }
+
     @Throws(RecognitionException::class)
     private fun checkResult(r: Result) {
         if (r.getResultMajor() == ECardConstants.Major.ERROR) {
@@ -360,20 +419,6 @@ class CardRecognitionImpl @JvmOverloads constructor(
         }
     }
 
-    /**
-     * Returns the fibonacci number for a given index.
-     *
-     * @param idx index
-     * @return the fibonacci number for the given index
-     */
-    private fun fibonacci(idx: Int): Long {
-        if (idx == 1 || idx == 2) {
-            return 1
-        } else {
-            return fibonacci(idx - 1) + fibonacci(idx - 2)
-        }
-    }
-
     @Throws(RecognitionException::class)
     private fun connect(ctx: ByteArray, ifdName: String, slot: BigInteger): ByteArray {
         val c = Connect()
@@ -391,44 +436,58 @@ class CardRecognitionImpl @JvmOverloads constructor(
 
     /**
      * This method tries to get exclusive card access until it is granted.
-     * The waiting delay between the attempts is determined by the fibonacci numbers.
+     * The attempts are repeated in short intervals which grow exponentially up to [MAX_EXCLUSIVE_WAIT_MS], so that
+     * the recognition continues within milliseconds after another process has released the card. A random jitter
+     * keeps several waiting recognitions from hitting the card at the same time. When a timeout is configured in
+     * [RecognitionProperties.exclusiveAccessTimeout], the recognition fails after it has passed.
      *
      * @param slotHandle slot handle specifying the card to get exclusive access for
      * @param ifdName Name of the IFD in which the card is inserted
      */
     @Throws(RecognitionException::class)
     private fun waitForExclusiveCardAccess(slotHandle: ByteArray, ifdName: String) {
-        var resultMajor: String
-        var i = 2
-        do {
+        val start = System.nanoTime()
+        val timeout = RecognitionProperties.exclusiveAccessTimeout
+        var delay = MIN_EXCLUSIVE_WAIT_MS
+        var dialogShown = false
+        while (true) {
             // try to get exclusive card access for the recognition run
             val trans = BeginTransaction()
             trans.setSlotHandle(slotHandle)
             val resp = env.dispatcher!!.safeDeliver(trans) as BeginTransactionResponse
-            resultMajor = resp.getResult().getResultMajor()
-
-            if (resultMajor != ECardConstants.Major.OK) {
-                val resultMinor = resp.getResult().getResultMinor()
-                if (ECardConstants.Minor.IFD.INVALID_SLOT_HANDLE == resultMinor) {
-                    throw RecognitionException("Card is not available anymore.")
-                }
-                // could not get exclusive card access, wait in increasingly longer intervals and retry
-                try {
-                    val waitInSeconds = fibonacci(i)
-                    i++
-					LOG.debug { "Could not get exclusive card access. Trying again in $waitInSeconds seconds." }
-                    if (i == 6 && env.gui != null) {
-                        val dialog = env.gui!!.obtainMessageDialog()
-                        val message: String? = LANG.translationForKey("message", name, ifdName)
-                        val title: String? = LANG.translationForKey("error", ifdName)
-                        dialog.showMessageDialog(message, title, DialogType.WARNING_MESSAGE)
-                    }
-                    Thread.sleep(1000 * waitInSeconds)
-                } catch (e: InterruptedException) {
-                    // ignore
-                }
+            if (resp.getResult().getResultMajor() == ECardConstants.Major.OK) {
+                return
+            }
+
+            val resultMinor = resp.getResult().getResultMinor()
+            if (ECardConstants.Minor.IFD.INVALID_SLOT_HANDLE == resultMinor) {
+                throw RecognitionException("Card is not available anymore.")
+            }
+
+            val elapsed = (System.nanoTime() - start) / 1_000_000
+            if (timeout > 0 && elapsed >= timeout) {
+                throw RecognitionException("Exclusive card access could not be obtained within $timeout ms.")
             }
-        } while (resultMajor != ECardConstants.Major.OK)
+            if (!dialogShown && elapsed >= EXCLUSIVE_WAIT_DIALOG_MS && env.gui != null) {
+                dialogShown = true
+                val dialog = env.gui!!.obtainMessageDialog()
+                val message: String? = LANG.translationForKey("message", name, ifdName)
+                val title: String? = LANG.translationForKey("error", ifdName)
+                dialog.showMessageDialog(message, title, DialogType.WARNING_MESSAGE)
+            }
+
+            // could not get exclusive card access, wait in increasingly longer intervals and retry
+            val jitter = ThreadLocalRandom.current().nextLong(delay / 2 + 1)
+            val wait = delay / 2 + jitter
+            LOG.debug { "Could not get exclusive card access. Trying again in $wait ms." }
+            try {
+                Thread.sleep(wait)
+            } catch (e: InterruptedException) {
+                Thread.currentThread().interrupt()
+                throw RecognitionException("Waiting for exclusive card access has been interrupted.")
+            }
+            delay = minOf(delay * 2, MAX_EXCLUSIVE_WAIT_MS)
+        }
     }
 
     @Throws(RecognitionException::class)
@@ -449,15 +508,13 @@ class CardRecognitionImpl @JvmOverloads constructor(
     private fun transmit(
         slotHandle: ByteArray,
         input: ByteArray,
-        results: List<ResponseAPDUType>
+        acceptableTrailers: List<ByteArray>
     ): ByteArray? {
         val t = Transmit()
         t.setSlotHandle(slotHandle)
         val apdu = InputAPDUInfoType()
         apdu.setInputAPDU(input)
-        for (result in results) {
-            apdu.getAcceptableStatusCode().add(result.getTrailer())
-        }
+        apdu.getAcceptableStatusCode().addAll(acceptableTrailers)
         t.getInputAPDUInfo().add(apdu)
 
         val r = env.dispatcher!!.safeDeliver(t) as TransmitResponse
@@ -469,157 +526,13 @@ class CardRecognitionImpl @JvmOverloads constructor(
     }
 
 
-    private fun branch2list(first: CardCall): List<CardCall> {
-        val calls = mutableListOf<CardCall>()
-        calls.add(first)
-
-        var next = first
-        // while next is a select call
-        while (next.getResponseAPDU()[0].getBody() == null) {
-            // a select only has one call in its conclusion
-            next = next.getResponseAPDU()[0].getConclusion().getCardCall()[0]
-            calls.add(next)
-        }
-
-        return calls
-    }
-
-
-    @Throws(RecognitionException::class)
-    private fun treeCalls(slotHandle: ByteArray, calls: List<CardCall>): String? {
-        for (c in calls) {
-            // make list of next feature (aka branch)
-            val branch = branch2list(c)
-            // execute selects and then matcher, matcher decides over success
-            for (next in branch) {
-                val matcher = if (next.getResponseAPDU()[0].getBody() != null) true else false
-                val resultBytes = transmit(slotHandle, next.getCommandAPDU(), next.getResponseAPDU())
-                // break when outcome is wrong
-                if (resultBytes == null) {
-                    break
-                }
-                // get command bytes and trailer
-                val result = CardResponseAPDU.getData(resultBytes)
-                val trailer = CardResponseAPDU.getTrailer(resultBytes)
-                // if select, only one response exists
-                if (!matcher && !next.getResponseAPDU()[0].getTrailer().contentEquals(trailer)) {
-                    // break when outcome is wrong
-                    break
-                } else if (!matcher) {
-                    // trailer matches expected response from select, continue
-                    continue
-                } else {
-                    // matcher command, loop through responses
-                    for (r in next.getResponseAPDU()) {
-                        // next response, when outcome is wrong
-                        if (!r.getTrailer().contentEquals(trailer)) {
-                            continue
-                        }
-                        // check internals for match
-                        if (checkDataObject(r.getBody(), result)) {
-                            if (r.getConclusion().getRecognizedCardType() != null) {
-                                // type recognised
-                                return r.getConclusion().getRecognizedCardType()
-                            } else {
-                                // type dependent on subtree
-                                return treeCalls(slotHandle, r.getConclusion().getCardCall())
-                            }
-                        }
-                    }
-                }
-            }
-        }
-
-        return null
-    }
-
-    private fun checkDataObject(matcher: DataMaskType, result: ByteArray): Boolean {
-        if (matcher.getTag() != null) {
-            try {
-                val tlv = TLV.fromBER(result)
-                val tagNum = ByteUtils.toLong(matcher.getTag())
-                val nextTlvs = tlv.findNextTags(tagNum)
-                for (next in nextTlvs) {
-                    if (matcher.getDataObject() != null) {
-                        val outcome = checkDataObject(matcher.getDataObject(), next.value)
-                        if (outcome) {
-                            return true
-                        }
-                    } else if (matcher.getMatchingData() != null) {
-                        val outcome = checkMatchingData(matcher.getMatchingData(), next.value)
-                        if (outcome) {
-                            return true
-                        }
-                    } else {
-						error { "No data object or matching data found in DataMaskType." }
-                        return false
-                    }
-                }
-            } catch (ex: TLVException) {
-                // no TLV, hence no tag to match
-                return false
-            }
-        }
-
-        if (matcher.getDataObject() != null) {
-            return checkDataObject(matcher.getDataObject(), result)
-        } else if (matcher.getMatchingData() != null) {
-            return checkMatchingData(matcher.getMatchingData(), result)
-        } else {
-			error { "No data object or matching data found in DataMaskType." }
-            return false
-        }
-    }
-
-
-    private fun checkMatchingData(matcher: MatchingDataType, result: ByteArray): Boolean {
-        // get values
-        var offsetBytes = matcher.getOffset()
-        var lengthBytes = matcher.getLength()
-        val valueBytes = matcher.getMatchingValue()
-        var maskBytes = matcher.getMask()
-
-        // convert values for convenience
-        if (offsetBytes == null) {
-            offsetBytes = byteArrayOf(0x00.toByte(), 0x00.toByte())
-        }
-        val offset = ByteUtils.toInteger(offsetBytes)
-        if (lengthBytes == null) {
-            lengthBytes = IntegerUtils.toByteArray(valueBytes.size)
-        }
-        val length = ByteUtils.toInteger(lengthBytes)
-        if (maskBytes == null) {
-            maskBytes = ByteArray(valueBytes.size)
-            for (i in maskBytes.indices) {
-                maskBytes[i] = 0xFF.toByte()
-            }
-        }
-
-        // some basic integrity checks
-        if (maskBytes.size != valueBytes.size) {
-            return false
-        }
-        if (valueBytes.size != length) {
-            return false
-        }
-        if (result.size < length + offset) {
-            return false
-        }
-
-        // check
-        for (i in offset..<length + offset) {
-            if ((maskBytes[i - offset].toInt() and result[i].toInt()) != valueBytes[i - offset].toInt()) {
-                return false
-            }
-        }
-
-        return true
-    }
-
 }
 
 private val LANG: I18n = I18n.getTranslation("recognition")
 private const val IMAGE_PROPERTIES = "/card-images/card-images.properties"
+private const val MIN_EXCLUSIVE_WAIT_MS = 10L
+private const val MAX_EXCLUSIVE_WAIT_MS = 500L
+private const val EXCLUSIVE_WAIT_DIALOG_MS = 7000L
 
 /**
  * Gets stream of the given image in the directory card-images.
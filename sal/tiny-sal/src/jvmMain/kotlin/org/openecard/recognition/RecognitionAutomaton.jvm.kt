@@ -0,0 +1,518 @@
+/****************************************************************************
+ * Copyright (C) 2026 ecsec GmbH.
+ * All rights reserved.
+ * Contact: ecsec GmbH (info@ecsec.de)
+ *
+ * This file is part of the Open eCard App.
+ *
+ * GNU General Public License Usage
+ * This file may be used under the terms of the GNU General Public
+ * License version 3.0 as published by the Free Software Foundation
+ * and appearing in the file LICENSE.GPL included in the packaging of
+ * this file. Please review the following information to ensure the
+ * GNU General Public License version 3.0 requirements will be met:
+ * http://www.gnu.org/copyleft/gpl.html.
+ *
+ * Other Usage
+ * Alternatively, this file may be used in accordance with the terms
+ * and conditions contained in a signed written agreement between
+ * you and ecsec GmbH.
+ *
+ ***************************************************************************/
+
+package org.openecard.recognition
+
+import io.github.oshai.kotlinlogging.KotlinLogging
+import iso.std.iso_iec._24727.tech.schema.CardCall
+import iso.std.iso_iec._24727.tech.schema.DataMaskType
+import iso.std.iso_iec._24727.tech.schema.MatchingDataType
+import iso.std.iso_iec._24727.tech.schema.RecognitionTree
+import iso.std.iso_iec._24727.tech.schema.ResponseAPDUType
+import org.openecard.common.apdu.common.CardResponseAPDU
+import org.openecard.common.interfaces.RecognitionException
+import org.openecard.common.tlv.TLV
+import org.openecard.common.tlv.TLVException
+import org.openecard.common.util.ByteUtils
+import java.nio.ByteBuffer
+
+private val LOG = KotlinLogging.logger { }
+
+/**
+ * Channel used by the automaton to send a command APDU to the card.
+ */
+internal fun interface RecognitionTransmitter {
+	/**
+	 * Sends the command to the card.
+	 *
+	 * @param command Command APDU to send.
+	 * @param acceptableTrailers Status words which are expected by the tree for this command.
+	 * @return The response APDU including its trailer, or `null` if the card returned no usable response.
+	 * @throws RecognitionException Thrown in case the card is not accessible anymore.
+	 */
+	@Throws(RecognitionException::class)
+	fun transmit(command: ByteArray, acceptableTrailers: List<ByteArray>): ByteArray?
+}
+
+/**
+ * Card type recognized by a [RecognitionAutomaton].
+ *
+ * @property cardType The recognized card type.
+ * @property check Number of the check which confirms this result with [RecognitionAutomaton.Run.confirm], or `null`
+ * if the result can not be confirmed by a single check.
+ */
+internal class Recognition(val cardType: String, val check: Int?)
+
+/**
+ * Recognition tree compiled into an immutable decision automaton.
+ *
+ * The JAXB tree is converted once into branches of select steps followed by a matcher step. All masks, offsets and tag
+ * numbers are evaluated during compilation and identical command APDUs share one byte array. Each recognition run
+ * memoizes the responses of the card, so that a command which is repeated in sibling branches of the tree is only sent
+ * once per card. Selections are only repeated when a branch needs a file which is not selected anymore.
+ *
+ * Every response concluding a card type in a branch starting with an absolute selection is also a check. A check sends
+ * only the commands of its branch and succeeds when the card gives this response, so a result known from earlier
+ * recognitions can be confirmed without walking the tree.
+ */
+internal class RecognitionAutomaton private constructor(
+	private val roots: List<Branch>,
+	private val checks: List<Check>,
+	/**
+	 * Number of distinct command APDUs contained in the tree.
+	 */
+	val numCommands: Int,
+) {
+
+	/**
+	 * Runs the automaton against a card.
+	 *
+	 * @param transmitter Channel to the card which is recognized.
+	 * @return The recognized card type, or `null` if the card could not be recognized.
+	 * @throws RecognitionException Thrown in case the card is not accessible anymore.
+	 */
+	@Throws(RecognitionException::class)
+	fun recognize(transmitter: RecognitionTransmitter): String? {
+		return start(transmitter).recognize()?.cardType
+	}
+
+	/**
+	 * Starts a recognition run against a card.
+	 * All checks and walks of the run share the responses of the card.
+	 *
+	 * @param transmitter Channel to the card which is recognized.
+	 * @return The new run.
+	 */
+	fun start(transmitter: RecognitionTransmitter): Run {
+		return Run(transmitter)
+	}
+
+	/**
+	 * State of one recognition run.
+	 * Responses are only reused for branches which start with an absolute selection, because only then the response of
+	 * a command is determined by the commands preceding it in the branch. Commands served from the memo are not sent to
+	 * the card. Before the next command which really needs to go to the card, the selections the tree expects at this
+	 * point are compared with the selections the card has really seen, and only the missing ones are sent.
+	 */
+	inner class Run(private val transmitter: RecognitionTransmitter) {
+		private val memo = HashMap<List<Int>, ByteArray?>()
+		// selecting commands the tree has walked since the last absolute selection, sent or served from the memo
+		private val expectedState = ArrayList<Step>()
+		// selecting commands the card has really seen since the last absolute selection which was sent
+		private val cardState = ArrayList<Step>()
+
+		/**
+		 * Walks the whole tree.
+		 *
+		 * @return The recognized card type, or `null` if the card could not be recognized.
+		 * @throws RecognitionException Thrown in case the card is not accessible anymore.
+		 */
+		@Throws(RecognitionException::class)
+		fun recognize(): Recognition? {
+			val outcome = evaluate(roots) ?: return null
+			return Recognition(outcome.cardType!!, outcome.check)
+		}
+
+		/**
+		 * Confirms a result of an earlier recognition by executing only its check.
+		 * Checks of a different tree or of another card type are rejected without talking to the card.
+		 *
+		 * @param cardType The expected card type.
+		 * @param check Number of the check as returned in [Recognition.check].
+		 * @return `true` if the card gave the response of the check, `false` otherwise.
+		 * @throws RecognitionException Thrown in case the card is not accessible anymore.
+		 */
+		@Throws(RecognitionException::class)
+		fun confirm(cardType: String, check: Int): Boolean {
+			val c = checks.getOrNull(check)
+			if (c == null || c.outcome.cardType != cardType) {
+				return false
+			}
+
+			// checks only exist for branches starting with an absolute selection
+			expectedState.clear()
+			for (step in c.steps) {
+				val resultBytes = send(step) ?: return false
+				val trailer = CardResponseAPDU.getTrailer(resultBytes)
+				val responses = step.responses
+				if (responses == null) {
+					if (!step.selectTrailer.contentEquals(trailer)) {
+						return false
+					}
+					continue
+				}
+				// the first matching response decides, as in the tree walk
+				val result = CardResponseAPDU.getData(resultBytes)
+				return responses.firstOrNull { it.matches(trailer, result) } === c.outcome
+			}
+			return false
+		}
+
+		/**
+		 * Walks the branches in tree order.
+		 *
+		 * @return The response concluding the card type, or `null` if no card type has been recognized.
+		 */
+		@Throws(RecognitionException::class)
+		private fun evaluate(branches: List<Branch>): Outcome? {
+			for (branch in branches) {
+				if (branch.anchored) {
+					// the branch selects its file from scratch, earlier selections are irrelevant for it
+					expectedState.clear()
+				}
+
+				for (step in branch.steps) {
+					val resultBytes = send(step) ?: break
+					val trailer = CardResponseAPDU.getTrailer(resultBytes)
+
+					val responses = step.responses
+					if (responses == null) {
+						if (!step.selectTrailer.contentEquals(trailer)) {
+							// break when outcome is wrong
+							break
+						}
+						// trailer matches expected response from select, continue
+						continue
+					}
+
+					// matcher command, loop through responses
+					val result = CardResponseAPDU.getData(resultBytes)
+					for (r in responses) {
+						if (r.matches(trailer, result)) {
+							// type recognised or dependent on subtree
+							return if (r.cardType != null) r else evaluate(r.subtree)
+						}
+					}
+				}
+			}
+
+			return null
+		}
+
+		@Throws(RecognitionException::class)
+		private fun send(step: Step): ByteArray? {
+			val key = step.memoKey
+			if (key != null && memo.containsKey(key)) {
+				if (step.selecting) {
+					expectedState.add(step)
+				}
+				return memo[key]
+			}
+
+			restoreState()
+			val result = transmitter.transmit(step.command, step.acceptableTrailers)
+			if (step.selecting) {
+				expectedState.add(step)
+				cardState.add(step)
+			}
+			if (key != null) {
+				memo[key] = result
+			}
+			return result
+		}
+
+		/**
+		 * Brings the card into the state expected by the tree.
+		 * If the selections of the card are a prefix of the expected selections, only the missing ones are sent.
+		 * Otherwise the expected selections are sent from the start, which is always an absolute selection.
+		 */
+		@Throws(RecognitionException::class)
+		private fun restoreState() {
+			val start = if (isPrefix(cardState, expectedState)) cardState.size else 0
+			if (start == expectedState.size && start == cardState.size) {
+				// the card is already in the expected state
+				return
+			}
+			for (i in start..<expectedState.size) {
+				val next = expectedState[i]
+				transmitter.transmit(next.command, next.acceptableTrailers)
+			}
+			cardState.clear()
+			cardState.addAll(expectedState)
+		}
+
+		private fun isPrefix(prefix: List<Step>, list: List<Step>): Boolean {
+			if (prefix.size > list.size) {
+				return false
+			}
+			for (i in prefix.indices) {
+				// commands are interned, so equal commands are the same array
+				if (prefix[i].command !== list[i].command) {
+					return false
+				}
+			}
+			return true
+		}
+	}
+
+	/**
+	 * Sequence of select steps terminated by a matcher step.
+	 */
+	private class Branch(val steps: List<Step>, val anchored: Boolean)
+
+	private class Step(
+		val command: ByteArray,
+		val acceptableTrailers: List<ByteArray>,
+		/**
+		 * Key of the response in the memo of a run, or `null` if the response must not be reused.
+		 */
+		val memoKey: List<Int>?,
+		/**
+		 * Possible responses of a matcher step, or `null` for a select step.
+		 */
+		val responses: List<Outcome>?,
+	) {
+		val selectTrailer: ByteArray = acceptableTrailers[0]
+
+		/**
+		 * Whether the command may change the selected file, so that it has to be repeated when the card state is
+		 * restored.
+		 */
+		val selecting: Boolean = !isReadOnly(command)
+	}
+
+	private class Outcome(
+		val trailer: ByteArray,
+		val mask: DataMask,
+		val cardType: String?,
+		val subtree: List<Branch>,
+	) {
+		/**
+		 * Number of the check concluding with this response, or `null` if there is none.
+		 */
+		var check: Int? = null
+
+		fun matches(trailer: ByteArray, data: ByteArray): Boolean {
+			return this.trailer.contentEquals(trailer) && mask.matches(data)
+		}
+	}
+
+	/**
+	 * Steps of a branch starting with an absolute selection, together with the response concluding a card type.
+	 */
+	private class Check(val steps: List<Step>, val outcome: Outcome)
+
+	private sealed interface DataMask {
+		fun matches(data: ByteArray): Boolean
+	}
+
+	private object NeverMatches : DataMask {
+		override fun matches(data: ByteArray): Boolean = false
+	}
+
+	private class TaggedMask(private val tagNum: Long, private val inner: DataMask) : DataMask {
+		override fun matches(data: ByteArray): Boolean {
+			try {
+				val tlv = TLV.fromBER(data)
+				for (next in tlv.findNextTags(tagNum)) {
+					if (inner.matches(next.value)) {
+						return true
+					}
+				}
+			} catch (ex: TLVException) {
+				// no TLV, hence no tag to match
+				return false
+			}
+			return inner.matches(data)
+		}
+	}
+
+	private class MatchingData(
+		private val offset: Int,
+		private val value: ByteArray,
+		private val mask: ByteArray?,
+	) : DataMask {
+		override fun matches(data: ByteArray): Boolean {
+			val length = value.size
+			if (data.size < length + offset) {
+				return false
+			}
+			for (i in 0..<length) {
+				val b = data[offset + i].toInt()
+				val masked = if (mask != null) mask[i].toInt() and b else b
+				if (masked != value[i].toInt()) {
+					return false
+				}
+			}
+			return true
+		}
+	}
+
+	/**
+	 * Converts the JAXB tree into the automaton.
+	 * Not thread safe, a compiler instance is only used once.
+	 */
+	private class Compiler {
+		private val commands = HashMap<ByteBuffer, Int>()
+		private val commandBytes = ArrayList<ByteArray>()
+		private val checks = ArrayList<Check>()
+
+		fun compileBranches(calls: List<CardCall>): List<Branch> {
+			return calls.map { compileBranch(it) }
+		}
+
+		private fun compileBranch(first: CardCall): Branch {
+			val calls = ArrayList<CardCall>()
+			calls.add(first)
+			var next = first
+			// while next is a select call
+			while (next.getResponseAPDU()[0].getBody() == null) {
+				// a select only has one call in its conclusion
+				next = next.getResponseAPDU()[0].getConclusion().getCardCall()[0]
+				calls.add(next)
+			}
+
+			val anchored = isAbsoluteSelect(first.getCommandAPDU())
+			val path = ArrayList<Int>()
+			val steps = calls.map { call ->
+				val id = intern(call.getCommandAPDU())
+				path.add(id)
+				val memoKey = if (anchored) path.toList() else null
+				val isMatcher = call.getResponseAPDU()[0].getBody() != null
+				val responses = if (isMatcher) call.getResponseAPDU().map { compileOutcome(it) } else null
+				Step(commandBytes[id], call.getResponseAPDU().map { it.getTrailer() }, memoKey, responses)
+			}
+			if (anchored) {
+				for (r in steps.last().responses.orEmpty()) {
+					if (r.cardType != null) {
+						r.check = checks.size
+						checks.add(Check(steps, r))
+					}
+				}
+			}
+			return Branch(steps, anchored)
+		}
+
+		private fun compileOutcome(r: ResponseAPDUType): Outcome {
+			val conclusion = r.getConclusion()
+			return Outcome(
+				r.getTrailer(),
+				compileMask(r.getBody()),
+				conclusion.getRecognizedCardType(),
+				if (conclusion.getRecognizedCardType() != null) listOf() else compileBranches(conclusion.getCardCall()),
+			)
+		}
+
+		private fun compileMask(matcher: DataMaskType): DataMask {
+			val inner = if (matcher.getDataObject() != null) {
+				compileMask(matcher.getDataObject())
+			} else if (matcher.getMatchingData() != null) {
+				compileMatchingData(matcher.getMatchingData())
+			} else {
+				LOG.error { "No data object or matching data found in DataMaskType." }
+				return NeverMatches
+			}
+
+			val tag = matcher.getTag()
+			return if (tag != null) {
+				TaggedMask(ByteUtils.toLong(tag), inner)
+			} else {
+				inner
+			}
+		}
+
+		private fun compileMatchingData(matcher: MatchingDataType): DataMask {
+			val valueBytes = matcher.getMatchingValue()
+			val offset = matcher.getOffset()?.let { ByteUtils.toInteger(it) } ?: 0
+			val length = matcher.getLength()?.let { ByteUtils.toInteger(it) } ?: valueBytes.size
+			val maskBytes = matcher.getMask()
+
+			// some basic integrity checks
+			if (maskBytes != null && maskBytes.size != valueBytes.size) {
+				return NeverMatches
+			}
+			if (valueBytes.size != length) {
+				return NeverMatches
+			}
+
+			// a missing mask is equivalent to a mask with all bits set
+			val effectiveMask = if (maskBytes == null || maskBytes.all { it == 0xFF.toByte() }) null else maskBytes
+			return MatchingData(offset, valueBytes, effectiveMask)
+		}
+
+		private fun intern(command: ByteArray): Int {
+			return commands.getOrPut(ByteBuffer.wrap(command)) {
+				commandBytes.add(command)
+				commandBytes.size - 1
+			}
+		}
+
+		fun build(tree: RecognitionTree): RecognitionAutomaton {
+			val roots = compileBranches(tree.getCardCall())
+			if (!roots.all { it.anchored }) {
+				// after a failed check the walk would start in a state the tree does not expect
+				checks.forEach { it.outcome.check = null }
+				checks.clear()
+			}
+			return RecognitionAutomaton(roots, checks, commandBytes.size)
+		}
+	}
+
+	companion object {
+		/**
+		 * Compiles the given recognition tree.
+		 *
+		 * @param tree Tree as delivered by the tree repository.
+		 * @return The automaton evaluating the tree.
+		 */
+		fun compile(tree: RecognitionTree): RecognitionAutomaton {
+			val automaton = Compiler().build(tree)
+			LOG.debug {
+				"Compiled recognition tree with ${automaton.numCommands} distinct command APDUs and ${automaton.checks.size} checks."
+			}
+			return automaton
+		}
+
+		/**
+		 * Checks whether the command is known to leave the selected file untouched.
+		 * These are READ BINARY and READ RECORD without short file identifier, GET DATA and GET CHALLENGE.
+		 */
+		private fun isReadOnly(command: ByteArray): Boolean {
+			if (command.size < 4) {
+				return false
+			}
+			return when (command[1].toInt() and 0xFF) {
+				0xB0 -> (command[2].toInt() and 0x80) == 0
+				0xB2 -> (command[3].toInt() and 0xF8) == 0
+				0xCA, 0xCB, 0x84 -> true
+				else -> false
+			}
+		}
+
+		/**
+		 * Checks whether the command is a SELECT whose outcome does not depend on the currently selected file.
+		 * These are the selection of the MF, by DF name and by path from the MF.
+		 */
+		private fun isAbsoluteSelect(command: ByteArray): Boolean {
+			if (command.size < 4 || command[1] != 0xA4.toByte()) {
+				return false
+			}
+			return when (command[2].toInt()) {
+				0x04, 0x08 -> true
+				0x00 -> command.size <= 5 || (command.size >= 7 && command[4].toInt() == 2 &&
+						command[5] == 0x3F.toByte() && command[6] == 0x00.toByte())
+				else -> false
+			}
+		}
+	}
+
+}
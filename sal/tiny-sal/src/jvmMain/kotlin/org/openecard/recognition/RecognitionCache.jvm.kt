@@ -0,0 +1,260 @@
+/****************************************************************************
+ * Copyright (C) 2026 ecsec GmbH.
+ * All rights reserved.
+ * Contact: ecsec GmbH (info@ecsec.de)
+ *
+ * This file is part of the Open eCard App.
+ *
+ * GNU General Public License Usage
+ * This file may be used under the terms of the GNU General Public
+ * License version 3.0 as published by the Free Software Foundation
+ * and appearing in the file LICENSE.GPL included in the packaging of
+ * this file. Please review the following information to ensure the
+ * GNU General Public License version 3.0 requirements will be met:
+ * http://www.gnu.org/copyleft/gpl.html.
+ *
+ * Other Usage
+ * Alternatively, this file may be used in accordance with the terms
+ * and conditions contained in a signed written agreement between
+ * you and ecsec GmbH.
+ *
+ ***************************************************************************/
+
+package org.openecard.recognition
+
+import io.github.oshai.kotlinlogging.KotlinLogging
+import org.openecard.common.util.ByteUtils
+import org.openecard.common.util.FileUtils
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.IOException
+import java.util.Properties
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
+
+private val LOG = KotlinLogging.logger { }
+
+/**
+ * Size bounded cache mapping the ATR of a card to the card types recognized for it.
+ *
+ * The cache is only a hint, a card type obtained from it must be confirmed with its check before it is used. As cards
+ * of different types may share an ATR, a few card types are kept per ATR, the most recently confirmed one first.
+ * When a file is given, the content of the cache is read from it on creation. Changes are written back in the
+ * background, so known card models are also recognized quickly after a restart.
+ *
+ * @param maxSize Maximum number of ATRs, the least recently used ATR is evicted when the limit is exceeded.
+ * @param file File used to persist the cache, or `null` to keep the cache in memory only.
+ */
+class RecognitionCache(
+	private val maxSize: Int,
+	private val file: File?,
+) {
+	/**
+	 * Card type recognized for an ATR.
+	 *
+	 * @property cardType The recognized card type.
+	 * @property check Number of the check of the recognition automaton confirming the card type.
+	 */
+	data class Entry(val cardType: String, val check: Int)
+
+	private val entries = object : LinkedHashMap<String, List<Entry>>(16, 0.75f, true) {
+		override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, List<Entry>>?): Boolean {
+			return size > maxSize
+		}
+	}
+	private val hits = AtomicLong()
+	private val misses = AtomicLong()
+	private val savePending = AtomicBoolean()
+
+	init {
+		load()
+	}
+
+	/**
+	 * Number of lookups which were answered from the cache and confirmed by the card.
+	 */
+	val hitCount: Long
+		get() = hits.get()
+
+	/**
+	 * Number of lookups which were not answered from the cache or where the card contradicted the cache.
+	 */
+	val missCount: Long
+		get() = misses.get()
+
+	/**
+	 * Returns the card types which have been recognized for the given ATR before.
+	 * The lookup itself is not counted, the outcome must be reported with [confirmed] or [missed].
+	 *
+	 * @param atr ATR of the card.
+	 * @return The cached card types, the most recently confirmed first. The list is empty if the ATR is unknown.
+	 */
+	fun lookup(atr: ByteArray): List<Entry> {
+		if (maxSize <= 0) {
+			return listOf()
+		}
+		return synchronized(entries) {
+			entries[key(atr)] ?: listOf()
+		}
+	}
+
+	/**
+	 * Records that a card type from the cache has been confirmed by the card.
+	 *
+	 * @param atr ATR of the card.
+	 * @param entry The confirmed entry.
+	 */
+	fun confirmed(atr: ByteArray, entry: Entry) {
+		hits.incrementAndGet()
+		update(atr, entry)
+	}
+
+	/**
+	 * Records that the cache could not provide the card type of a card.
+	 * The entries of the ATR are kept, as they are still valid for other cards with this ATR.
+	 */
+	fun missed() {
+		misses.incrementAndGet()
+	}
+
+	/**
+	 * Adds the result of a full recognition to the cache.
+	 *
+	 * @param atr ATR of the card.
+	 * @param entry Card type which has been recognized and the check confirming it.
+	 */
+	fun put(atr: ByteArray, entry: Entry) {
+		if (maxSize <= 0) {
+			return
+		}
+		update(atr, entry)
+	}
+
+	/**
+	 * Waits until all changes made so far are written to the file.
+	 */
+	fun flush() {
+		if (file != null) {
+			SAVE_EXECUTOR.submit { }.get()
+		}
+	}
+
+	private fun update(atr: ByteArray, entry: Entry) {
+		val changed = synchronized(entries) {
+			val key = key(atr)
+			val old = entries[key] ?: listOf()
+			if (old.firstOrNull() == entry) {
+				false
+			} else {
+				entries[key] = (listOf(entry) + old.filter { it != entry }).take(MAX_TYPES_PER_ATR)
+				true
+			}
+		}
+		if (changed) {
+			scheduleSave()
+		}
+	}
+
+	private fun key(atr: ByteArray): String {
+		return ByteUtils.toHexString(atr)
+	}
+
+	private fun load() {
+		if (file == null || !file.isFile) {
+			return
+		}
+		try {
+			val p = Properties()
+			FileInputStream(file).use { p.load(it) }
+			synchronized(entries) {
+				for (name in p.stringPropertyNames()) {
+					val parsed = parseEntries(p.getProperty(name))
+					if (parsed.isNotEmpty()) {
+						entries[name] = parsed
+					}
+				}
+			}
+			LOG.debug { "Loaded ${p.size} entries from recognition cache." }
+		} catch (ex: IOException) {
+			LOG.warn(ex) { "Failed to read recognition cache, starting with an empty cache." }
+		}
+	}
+
+	/**
+	 * Writes the cache in the background.
+	 * Changes made while a write is pending are contained in that write, so a burst of changes results in one write.
+	 */
+	private fun scheduleSave() {
+		if (file != null && savePending.compareAndSet(false, true)) {
+			SAVE_EXECUTOR.execute {
+				savePending.set(false)
+				save(file)
+			}
+		}
+	}
+
+	private fun save(file: File) {
+		val p = Properties()
+		synchronized(entries) {
+			for ((atr, types) in entries) {
+				p.setProperty(atr, types.joinToString(" ") { "${it.check}:${it.cardType}" })
+			}
+		}
+		try {
+			FileOutputStream(file).use { p.store(it, "Open eCard recognition cache") }
+		} catch (ex: IOException) {
+			LOG.warn(ex) { "Failed to write recognition cache." }
+		}
+	}
+
+	private fun parseEntries(value: String): List<Entry> {
+		return value.split(' ').mapNotNull {
+			val check = it.substringBefore(':').toIntOrNull()
+			val cardType = it.substringAfter(':', "")
+			if (check != null && cardType.isNotEmpty()) Entry(cardType, check) else null
+		}
+	}
+
+	companion object {
+		private const val SIZE_KEY = "org.openecard.recognition.cache.size"
+		private const val PERSISTENT_KEY = "org.openecard.recognition.cache.persistent"
+		private const val DEFAULT_SIZE = 64
+		private const val MAX_TYPES_PER_ATR = 4
+
+		/**
+		 * Thread writing the cache files, so recognitions never wait for the disk.
+		 */
+		private val SAVE_EXECUTOR: ExecutorService = Executors.newSingleThreadExecutor { r ->
+			Thread(r, "RecognitionCache-Writer").apply { isDaemon = true }
+		}
+
+		/**
+		 * Creates the cache as configured in the recognition properties.
+		 *
+		 * @return The configured cache.
+		 */
+		@JvmStatic
+		fun fromProperties(): RecognitionCache {
+			val size = RecognitionProperties.getProperty(SIZE_KEY)?.trim()?.toIntOrNull() ?: DEFAULT_SIZE
+			val persistent = RecognitionProperties.getProperty(PERSISTENT_KEY)?.trim()?.toBoolean() ?: true
+			val file = if (persistent && size > 0) {
+				try {
+					File(FileUtils.homeConfigDir, "recognition-cache.properties")
+				} catch (ex: IOException) {
+					LOG.error { "Failed to obtain config directory, disabling persistent recognition cache." }
+					null
+				} catch (ex: SecurityException) {
+					LOG.error { "Failed to obtain config directory, disabling persistent recognition cache." }
+					null
+				}
+			} else {
+				null
+			}
+			return RecognitionCache(size, file)
+		}
+	}
+
+}
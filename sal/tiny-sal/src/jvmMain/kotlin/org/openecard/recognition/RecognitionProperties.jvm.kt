@@ -78,4 +78,11 @@ object RecognitionProperties {
     val serviceAddr: String?
         get() = getProperty("org.openecard.recognition.serviceAddr")
 
+	/**
+	 * Time in milliseconds after which the recognition gives up waiting for exclusive card access.
+	 * A value of 0 waits until the access is granted.
+	 */
+	@JvmStatic
+	val exclusiveAccessTimeout: Long
+		get() = getProperty("org.openecard.recognition.exclusive_access_timeout")?.trim()?.toLongOrNull() ?: 0L
 }
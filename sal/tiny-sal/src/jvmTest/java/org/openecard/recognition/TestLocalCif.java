@@ -22,12 +22,22 @@
 
 package org.openecard.recognition;
 
+import iso.std.iso_iec._24727.tech.schema.AccessRuleType;
+import iso.std.iso_iec._24727.tech.schema.CardApplicationType;
+import iso.std.iso_iec._24727.tech.schema.CardInfoType;
+import iso.std.iso_iec._24727.tech.schema.DIDAuthenticationStateType;
+import iso.std.iso_iec._24727.tech.schema.DIDInfoType;
+import iso.std.iso_iec._24727.tech.schema.DataSetInfoType;
 import iso.std.iso_iec._24727.tech.schema.GetCardInfoOrACD;
 import iso.std.iso_iec._24727.tech.schema.GetCardInfoOrACDResponse;
+import iso.std.iso_iec._24727.tech.schema.SecurityConditionType;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import org.openecard.common.ECardConstants;
 import org.openecard.common.WSHelper;
 import org.openecard.common.WSHelper.WSException;
+import org.openecard.common.util.StringUtils;
 import org.openecard.recognition.staticrepo.LocalCifRepo;
 import org.openecard.ws.jaxb.JAXBMarshaller;
 import org.openecard.ws.marshal.WSMarshallerException;
@@ -56,6 +66,91 @@ public class TestLocalCif {
 	    Assert.fail("Local repo returned with error\n" + ex.getMessage());
 	}
 	Assert.assertEquals(1, res.getCardInfoOrCapabilityInfo().size());
+
+	// text spanning multiple lines in the XML file
+	CardInfoType cif = (CardInfoType) res.getCardInfoOrCapabilityInfo().get(0);
+	Assert.assertEquals(cif.getCardType().getSpecificationBodyOrIssuer(),
+		"Gesellschaft für Telematikanwendungen der Gesundheitskarte\n\t\t\tmbH");
+    }
+
+    @Test
+    public void testnPACif() throws WSMarshallerException, IOException, SAXException {
+	LocalCifRepo repo = new LocalCifRepo(new JAXBMarshaller());
+	CardInfoType cif = getCif(repo, "http://bsi.bund.de/cif/npa.xml");
+
+	// values are padded with whitespace in the XML file
+	Assert.assertEquals(cif.getApplicationCapabilities().getImplicitlySelectedApplication(),
+		StringUtils.toByteArray("3F00"));
+	List<String> didNames = new ArrayList<>();
+	for (CardApplicationType app : cif.getApplicationCapabilities().getCardApplication()) {
+	    for (DIDInfoType did : app.getDIDInfo()) {
+		Assert.assertEquals(did.getDifferentialIdentity().getDIDName(),
+			did.getDifferentialIdentity().getDIDName().trim());
+		Assert.assertEquals(did.getDifferentialIdentity().getDIDProtocol(),
+			did.getDifferentialIdentity().getDIDProtocol().trim());
+	    }
+	    for (DataSetInfoType dataSet : app.getDataSetInfo()) {
+		if ("EF.C.ICC.QES".equals(dataSet.getDataSetName())) {
+		    for (AccessRuleType rule : dataSet.getDataSetACL().getAccessRule()) {
+			collectDIDNames(rule.getSecurityCondition(), didNames);
+		    }
+		}
+	    }
+	}
+	Assert.assertTrue(didNames.contains("eSign-PIN"), "eSign-PIN missing in " + didNames);
+	for (String name : didNames) {
+	    Assert.assertEquals(name, name.trim());
+	}
+    }
+
+    @Test
+    public void testCifsAreShared() throws WSMarshallerException, IOException, SAXException {
+	LocalCifRepo repo = new LocalCifRepo(new JAXBMarshaller());
+	Assert.assertTrue(repo.getSupportedCardTypes().contains("http://ws.gematik.de/egk/1.0.0"));
+
+	GetCardInfoOrACD req = new GetCardInfoOrACD();
+	req.setAction(ECardConstants.CIF.GET_SPECIFIED);
+	req.getCardTypeIdentifier().add("http://ws.gematik.de/egk/1.0.0");
+	CardInfoType first = (CardInfoType) repo.getCardInfoOrACD(req).getCardInfoOrCapabilityInfo().get(0);
+	CardInfoType second = (CardInfoType) repo.getCardInfoOrACD(req).getCardInfoOrCapabilityInfo().get(0);
+	Assert.assertSame(first, second);
+	Assert.assertEquals(first.getCardType().getObjectIdentifier(), "http://ws.gematik.de/egk/1.0.0");
+
+	GetCardInfoOrACD otherReq = new GetCardInfoOrACD();
+	otherReq.setAction(ECardConstants.CIF.GET_OTHER);
+	GetCardInfoOrACDResponse all = repo.getCardInfoOrACD(otherReq);
+	Assert.assertEquals(all.getCardInfoOrCapabilityInfo().size(), repo.getSupportedCardTypes().size());
+	Assert.assertTrue(all.getCardInfoOrCapabilityInfo().contains(first));
+    }
+
+    private static CardInfoType getCif(LocalCifRepo repo, String cardType) {
+	GetCardInfoOrACD req = new GetCardInfoOrACD();
+	req.setAction(ECardConstants.CIF.GET_SPECIFIED);
+	req.getCardTypeIdentifier().add(cardType);
+	GetCardInfoOrACDResponse res = repo.getCardInfoOrACD(req);
+	Assert.assertEquals(res.getCardInfoOrCapabilityInfo().size(), 1);
+	return (CardInfoType) res.getCardInfoOrCapabilityInfo().get(0);
+    }
+
+    private static void collectDIDNames(SecurityConditionType cond, List<String> names) {
+	if (cond == null) {
+	    return;
+	}
+	DIDAuthenticationStateType didAuth = cond.getDIDAuthentication();
+	if (didAuth != null) {
+	    names.add(didAuth.getDIDName());
+	}
+	if (cond.getAnd() != null) {
+	    for (SecurityConditionType next : cond.getAnd().getSecurityCondition()) {
+		collectDIDNames(next, names);
+	    }
+	}
+	if (cond.getOr() != null) {
+	    for (SecurityConditionType next : cond.getOr().getSecurityCondition()) {
+		collectDIDNames(next, names);
+	    }
+	}
+	collectDIDNames(cond.getNot(), names);
     }
 
 }
@@ -0,0 +1,296 @@
+/****************************************************************************
+ * Copyright (C) 2026 ecsec GmbH.
+ * All rights reserved.
+ * Contact: ecsec GmbH (info@ecsec.de)
+ *
+ * This file is part of the Open eCard App.
+ *
+ * GNU General Public License Usage
+ * This file may be used under the terms of the GNU General Public
+ * License version 3.0 as published by the Free Software Foundation
+ * and appearing in the file LICENSE.GPL included in the packaging of
+ * this file. Please review the following information to ensure the
+ * GNU General Public License version 3.0 requirements will be met:
+ * http://www.gnu.org/copyleft/gpl.html.
+ *
+ * Other Usage
+ * Alternatively, this file may be used in accordance with the terms
+ * and conditions contained in a signed written agreement between
+ * you and ecsec GmbH.
+ *
+ ***************************************************************************/
+
+package org.openecard.recognition;
+
+import iso.std.iso_iec._24727.tech.schema.RecognitionTree;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import org.openecard.common.interfaces.RecognitionException;
+import org.openecard.common.util.ByteUtils;
+import org.openecard.recognition.statictree.LocalFileTree;
+import org.openecard.ws.jaxb.JAXBMarshaller;
+import org.openecard.ws.marshal.WSMarshallerException;
+import org.testng.annotations.Test;
+import org.xml.sax.SAXException;
+
+import static org.testng.Assert.*;
+
+
+public class TestRecognitionAutomaton {
+
+    private static RecognitionTree loadTree() throws WSMarshallerException, IOException, SAXException {
+	LocalFileTree repo = new LocalFileTree(new JAXBMarshaller());
+	return repo.getRecognitionTree(null).getRecognitionTree();
+    }
+
+    @Test
+    public void testFailingCardSendsEachCommandOnce() throws Exception {
+	RecognitionAutomaton automaton = RecognitionAutomaton.Companion.compile(loadTree());
+	assertTrue(automaton.getNumCommands() > 0);
+
+	final List<ByteBuffer> sent = new ArrayList<>();
+	String type = automaton.recognize((cmd, trailers) -> {
+	    sent.add(ByteBuffer.wrap(cmd));
+	    return new byte[] { (byte) 0x6A, (byte) 0x82 };
+	});
+
+	assertNull(type);
+	assertFalse(sent.isEmpty());
+	// all branches start with the same selects, so every distinct command reaches the card only once
+	assertEquals(new HashSet<>(sent).size(), sent.size());
+    }
+
+    @Test
+    public void testSkippedCommandsAreReplayed() throws Exception {
+	RecognitionAutomaton automaton = RecognitionAutomaton.Companion.compile(loadTree());
+
+	// selects succeed, everything else is not found
+	final List<byte[]> sent = new ArrayList<>();
+	String type = automaton.recognize((cmd, trailers) -> {
+	    sent.add(cmd);
+	    if (cmd[1] == (byte) 0xA4) {
+		return new byte[] { (byte) 0x90, (byte) 0x00 };
+	    } else {
+		return new byte[] { (byte) 0x6A, (byte) 0x82 };
+	    }
+	});
+
+	assertNull(type);
+	// no command other than a select may be sent without a preceding select
+	assertEquals(sent.get(0)[1], (byte) 0xA4);
+    }
+
+    @Test
+    public void testSharedSelectionSentOnce() throws Exception {
+	RecognitionAutomaton automaton = compileSiblingTree();
+
+	// card answering 02 to every READ BINARY
+	final List<String> sent = new ArrayList<>();
+	String type = automaton.recognize((cmd, trailers) -> {
+	    sent.add(ByteUtils.toHexString(cmd));
+	    if (cmd[1] == (byte) 0xA4) {
+		return new byte[] { (byte) 0x90, 0x00 };
+	    } else {
+		return new byte[] { 0x02, (byte) 0x90, 0x00 };
+	    }
+	});
+
+	assertNull(type);
+	// the READ BINARY commands do not change the selected file, so the MF is selected only once
+	assertEquals(sent, Arrays.asList("00A4000C023F00", "00B0810001", "00B0820001", "00B0830001", "00B0840001"));
+    }
+
+    @Test
+    public void testChangedSelectionIsRestored() throws Exception {
+	RecognitionAutomaton automaton = compile(
+		select("00A4000C023F00", select("00A4010C02DF01",
+			read("00B0810001", "01", "<iso:RecognizedCardType>urn:a</iso:RecognizedCardType>"))),
+		select("00A4000C023F00", select("00A4010C02DF01",
+			read("00B0820001", "01", "<iso:RecognizedCardType>urn:b</iso:RecognizedCardType>"))),
+		branch("00B0830001", "01", "<iso:RecognizedCardType>urn:c</iso:RecognizedCardType>"));
+
+	final List<String> sent = new ArrayList<>();
+	String type = automaton.recognize((cmd, trailers) -> {
+	    sent.add(ByteUtils.toHexString(cmd));
+	    if (cmd[1] == (byte) 0xA4) {
+		return new byte[] { (byte) 0x90, 0x00 };
+	    } else if (cmd[2] == (byte) 0x83) {
+		return new byte[] { 0x01, (byte) 0x90, 0x00 };
+	    } else {
+		return new byte[] { 0x02, (byte) 0x90, 0x00 };
+	    }
+	});
+
+	assertEquals(type, "urn:c");
+	// the second branch finds DF01 still selected, the third branch needs the MF selected again
+	assertEquals(sent, Arrays.asList("00A4000C023F00", "00A4010C02DF01", "00B0810001", "00B0820001",
+		"00A4000C023F00", "00B0830001"));
+    }
+
+    @Test
+    public void testConfirmation() throws Exception {
+	RecognitionAutomaton automaton = compileSiblingTree();
+
+	// card answering 01 to every READ BINARY and 03 to the condition of urn:c
+	RecognitionTransmitter card = (cmd, trailers) -> {
+	    if (cmd[1] == (byte) 0xA4) {
+		return new byte[] { (byte) 0x90, 0x00 };
+	    } else if (cmd[2] == (byte) 0x83) {
+		return new byte[] { 0x03, (byte) 0x90, 0x00 };
+	    } else {
+		return new byte[] { 0x01, (byte) 0x90, 0x00 };
+	    }
+	};
+	Recognition result = automaton.start(card).recognize();
+	assertNotNull(result);
+	assertEquals(result.getCardType(), "urn:a");
+	assertNotNull(result.getCheck());
+
+	// only the branch of the check is sent
+	final List<String> sent = new ArrayList<>();
+	RecognitionAutomaton.Run run = automaton.start(recording(card, sent));
+	assertTrue(run.confirm("urn:a", result.getCheck()));
+	assertEquals(sent, Arrays.asList("00A4000C023F00", "00B0810001"));
+
+	// checks of another card type or of another tree are rejected without talking to the card
+	assertFalse(run.confirm("urn:b", result.getCheck()));
+	assertFalse(run.confirm("urn:a", 42));
+	assertEquals(sent.size(), 2);
+    }
+
+    @Test
+    public void testFailedConfirmationSharesResponses() throws Exception {
+	RecognitionAutomaton automaton = compileSiblingTree();
+
+	// card only fulfilling the nested branch
+	RecognitionTransmitter nestedCard = (cmd, trailers) -> {
+	    if (cmd[1] == (byte) 0xA4) {
+		return new byte[] { (byte) 0x90, 0x00 };
+	    } else if (cmd[2] == (byte) 0x83) {
+		return new byte[] { 0x02, (byte) 0x90, 0x00 };
+	    } else if (cmd[2] == (byte) 0x84) {
+		return new byte[] { 0x01, (byte) 0x90, 0x00 };
+	    } else {
+		return new byte[] { (byte) 0x6A, (byte) 0x82 };
+	    }
+	};
+	Recognition a = automaton.start((cmd, trailers) -> new byte[] { 0x01, (byte) 0x90, 0x00 }).recognize();
+	assertNotNull(a);
+	assertEquals(a.getCardType(), "urn:a");
+
+	final List<String> sent = new ArrayList<>();
+	RecognitionAutomaton.Run run = automaton.start(recording(nestedCard, sent));
+	assertFalse(run.confirm("urn:a", a.getCheck()));
+	Recognition result = run.recognize();
+	assertNotNull(result);
+	assertEquals(result.getCardType(), "urn:c");
+	// the walk reuses the responses of the failed check
+	assertEquals(sent, Arrays.asList("00A4000C023F00", "00B0810001", "00B0820001", "00B0830001", "00B0840001"));
+    }
+
+    /**
+     * Creates a tree where urn:a and urn:b are siblings concluding on the same response and urn:c is nested below a
+     * condition.
+     */
+    private static RecognitionAutomaton compileSiblingTree() throws Exception {
+	return compile(
+		branch("00B0810001", "01", "<iso:RecognizedCardType>urn:a</iso:RecognizedCardType>"),
+		branch("00B0820001", "01", "<iso:RecognizedCardType>urn:b</iso:RecognizedCardType>"),
+		branch("00B0830001", "02",
+			branch("00B0840001", "01", "<iso:RecognizedCardType>urn:c</iso:RecognizedCardType>")));
+    }
+
+    private static RecognitionTransmitter recording(RecognitionTransmitter card, List<String> sent) {
+	return (cmd, trailers) -> {
+	    sent.add(ByteUtils.toHexString(cmd));
+	    return card.transmit(cmd, trailers);
+	};
+    }
+
+    private static RecognitionAutomaton compile(String... branches) throws Exception {
+	String tree = "<iso:RecognitionTree xmlns:iso=\"urn:iso:std:iso-iec:24727:tech:schema\">"
+		+ String.join("", branches)
+		+ "</iso:RecognitionTree>";
+	JAXBMarshaller m = new JAXBMarshaller();
+	RecognitionTree recTree = (RecognitionTree) m.unmarshal(m.str2doc(tree));
+	return RecognitionAutomaton.Companion.compile(recTree);
+    }
+
+    /**
+     * Creates a branch selecting the MF and reading a byte, which continues with the conclusion if the byte matches.
+     */
+    private static String branch(String readCommand, String value, String conclusion) {
+	return select("00A4000C023F00", read(readCommand, value, conclusion));
+    }
+
+    /**
+     * Creates a select call which continues with the next call if the selection succeeds.
+     */
+    private static String select(String selectCommand, String next) {
+	return "<iso:CardCall><iso:CommandAPDU>" + selectCommand + "</iso:CommandAPDU>"
+		+ "<iso:ResponseAPDU><iso:Trailer>9000</iso:Trailer><iso:Conclusion>"
+		+ next
+		+ "</iso:Conclusion></iso:ResponseAPDU></iso:CardCall>";
+    }
+
+    /**
+     * Creates a call reading a byte, which continues with the conclusion if the byte matches.
+     */
+    private static String read(String readCommand, String value, String conclusion) {
+	return "<iso:CardCall><iso:CommandAPDU>" + readCommand + "</iso:CommandAPDU>"
+		+ "<iso:ResponseAPDU><iso:Body><iso:MatchingData><iso:MatchingValue>" + value
+		+ "</iso:MatchingValue></iso:MatchingData></iso:Body><iso:Trailer>9000</iso:Trailer>"
+		+ "<iso:Conclusion>" + conclusion + "</iso:Conclusion></iso:ResponseAPDU>"
+		+ "</iso:CardCall>";
+    }
+
+    @Test
+    public void testCache() throws IOException {
+	File f = File.createTempFile("recognition-cache", ".properties");
+	f.deleteOnExit();
+	byte[] atr1 = new byte[] { 0x3B, 0x01 };
+	byte[] atr2 = new byte[] { 0x3B, 0x02 };
+	byte[] atr3 = new byte[] { 0x3B, 0x03 };
+	RecognitionCache.Entry type1 = new RecognitionCache.Entry("urn:type1", 1);
+	RecognitionCache.Entry type2 = new RecognitionCache.Entry("urn:type2", 2);
+	RecognitionCache.Entry type3 = new RecognitionCache.Entry("urn:type3", 3);
+
+	RecognitionCache cache = new RecognitionCache(2, f);
+	cache.put(atr1, type1);
+	cache.put(atr2, type2);
+	assertEquals(cache.lookup(atr1), Arrays.asList(type1));
+	// atr2 is the least recently used entry now
+	cache.put(atr3, type3);
+	assertTrue(cache.lookup(atr2).isEmpty());
+
+	// card types sharing an ATR are kept side by side, the last confirmed one first
+	cache.put(atr1, type2);
+	assertEquals(cache.lookup(atr1), Arrays.asList(type2, type1));
+	cache.confirmed(atr1, type1);
+	assertEquals(cache.lookup(atr1), Arrays.asList(type1, type2));
+
+	cache.missed();
+	assertEquals(cache.getHitCount(), 1);
+	assertEquals(cache.getMissCount(), 1);
+
+	// entries survive in the file
+	cache.flush();
+	RecognitionCache reloaded = new RecognitionCache(2, f);
+	assertEquals(reloaded.lookup(atr1), Arrays.asList(type1, type2));
+	assertEquals(reloaded.lookup(atr3), Arrays.asList(type3));
+    }
+
+    @Test(expectedExceptions = RecognitionException.class)
+    public void testTransmitErrorIsPropagated() throws Exception {
+	RecognitionAutomaton automaton = RecognitionAutomaton.Companion.compile(loadTree());
+	automaton.recognize((cmd, trailers) -> {
+	    throw new RecognitionException("Card is not available anymore.");
+	});
+    }
+
+}
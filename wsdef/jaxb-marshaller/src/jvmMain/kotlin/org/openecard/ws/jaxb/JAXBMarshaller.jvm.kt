@@ -38,11 +38,13 @@ import org.openecard.ws.soap.SOAPMessage
 import org.w3c.dom.Document
 import org.w3c.dom.Element
 import org.w3c.dom.Node
+import org.xml.sax.ContentHandler
 import org.xml.sax.InputSource
 import org.xml.sax.SAXException
 import java.io.ByteArrayOutputStream
 import java.io.IOException
 import java.io.InputStream
+import java.io.OutputStream
 import java.io.StringReader
 import java.io.UnsupportedEncodingException
 import javax.xml.XMLConstants
@@ -52,6 +54,10 @@ import javax.xml.transform.TransformerConfigurationException
 import javax.xml.transform.TransformerException
 import javax.xml.transform.TransformerFactory
 import javax.xml.transform.dom.DOMSource
+import javax.xml.stream.XMLEventFactory
+import javax.xml.stream.XMLEventReader
+import javax.xml.stream.XMLInputFactory
+import javax.xml.stream.XMLStreamException
 import javax.xml.transform.stream.StreamResult
 import kotlin.system.exitProcess
 
@@ -70,6 +76,8 @@ class JAXBMarshaller : WSMarshaller {
     private val w3Factory: DocumentBuilderFactory
     private val w3Builder: DocumentBuilder
     private val serializer: Transformer
+    private val staxFactory: XMLInputFactory
+    private val eventFactory: XMLEventFactory = XMLEventFactory.newInstance()
 
     // soap
     private val soapFactory: MessageFactory
@@ -83,6 +91,7 @@ class JAXBMarshaller : WSMarshaller {
         val tmpW3Factory: DocumentBuilderFactory
         val tmpW3Builder: DocumentBuilder
         val tmpSerializer: Transformer
+        val tmpStaxFactory: XMLInputFactory
         val tmpSoapFactory: MessageFactory
 
         try {
@@ -156,6 +165,19 @@ class JAXBMarshaller : WSMarshaller {
                 //LOG.warn { "Failed to configure output formatting." }
             }
 
+            // instantiate StAX stuff
+            tmpStaxFactory = XMLInputFactory.newInstance()
+            tmpStaxFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true)
+            tmpStaxFactory.setProperty(XMLInputFactory.IS_COALESCING, true)
+            // XXE countermeasures
+            tmpStaxFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false)
+            tmpStaxFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false)
+            try {
+                tmpStaxFactory.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "")
+            } catch (ex: IllegalArgumentException) {
+                //LOG.warn { "Failed to disallow external DTD access." }
+            }
+
             // instantiate soap stuff
             tmpSoapFactory = MessageFactory.newInstance()
         } catch (ex: ParserConfigurationException) {
@@ -176,6 +198,7 @@ class JAXBMarshaller : WSMarshaller {
         w3Factory = tmpW3Factory
         w3Builder = tmpW3Builder
         serializer = tmpSerializer
+        staxFactory = tmpStaxFactory
         soapFactory = tmpSoapFactory
     }
 
@@ -293,6 +316,71 @@ class JAXBMarshaller : WSMarshaller {
         }
     }
 
+    @kotlin.jvm.Synchronized
+    @kotlin.Throws(MarshallingTypeException::class)
+    override fun marshal(o: Any, out: OutputStream) {
+        try {
+            marshaller.getMarshaller().marshal(o, out)
+        } catch (ex: JAXBException) {
+            throw MarshallingTypeException(ex)
+        }
+    }
+
+    @kotlin.jvm.Synchronized
+    @kotlin.Throws(MarshallingTypeException::class)
+    override fun marshal(o: Any, handler: ContentHandler) {
+        try {
+            marshaller.getMarshaller().marshal(o, handler)
+        } catch (ex: JAXBException) {
+            throw MarshallingTypeException(ex)
+        }
+    }
+
+    @kotlin.jvm.Synchronized
+    @kotlin.Throws(MarshallingTypeException::class, WSMarshallerException::class)
+    override fun unmarshal(input: InputStream): Any {
+        val reader = createStreamReader(input)
+        try {
+            return marshaller.getUnmarshaller().unmarshal(reader)
+        } catch (ex: JAXBException) {
+            throw MarshallingTypeException(ex)
+        } finally {
+            closeStreamReader(reader)
+        }
+    }
+
+    @kotlin.jvm.Synchronized
+    @kotlin.Throws(MarshallingTypeException::class, WSMarshallerException::class)
+    override fun <T> unmarshal(input: InputStream, c: Class<T>): JAXBElement<T> {
+        val reader = createStreamReader(input)
+        try {
+            return marshaller.getUnmarshaller().unmarshal(reader, c)
+        } catch (ex: JAXBException) {
+            throw MarshallingTypeException(ex)
+        } finally {
+            closeStreamReader(reader)
+        }
+    }
+
+    @kotlin.Throws(WSMarshallerException::class)
+    private fun createStreamReader(input: InputStream): XMLEventReader {
+        try {
+            val reader = staxFactory.createXMLEventReader(input)
+            // trim and drop whitespace the same way the WhitespaceFilter does for DOM trees
+            return WhitespaceFilteringReader(reader, eventFactory)
+        } catch (ex: XMLStreamException) {
+            throw WSMarshallerException("Failed to read XML document from stream.", ex)
+        }
+    }
+
+    private fun closeStreamReader(reader: XMLEventReader) {
+        try {
+            reader.close()
+        } catch (ex: XMLStreamException) {
+            LOG.debug(ex) { "Failed to close XML stream reader." }
+        }
+    }
+
     @kotlin.jvm.Synchronized
     @kotlin.Throws(SOAPException::class)
     override fun doc2soap(envDoc: Document): SOAPMessage {
@@ -137,15 +137,7 @@ class MarshallerImpl {
                 }
             }
         } else {
-            try {
-                jaxbCtx = baseJaxbContext.get()
-            } catch (ex: ExecutionException) {
-                LOG.error(ex) { "Failed to create JAXBContext instance." }
-                throw RuntimeException("Failed to create JAXBContext.")
-            } catch (ex: InterruptedException) {
-                LOG.error(ex) { "Thread terminated waiting for the JAXBContext to be created.." }
-                throw RuntimeException("Thread interrupted during waiting on the creation of the JAXBContext.")
-            }
+            jaxbCtx = getBaseContext().context
         }
         marshaller = jaxbCtx.createMarshaller()
         unmarshaller = jaxbCtx.createUnmarshaller()
@@ -166,19 +158,25 @@ class MarshallerImpl {
     }
 
     companion object {
-        private val baseXmlElementClasses = arrayListOf<Class<*>>()
-        private val baseJaxbContext: FutureTask<JAXBContext>
+        private val baseJaxbContext: FutureTask<BaseContext>
         private val specificContexts: HashMap<String, JAXBContext>
 
         init {
-            // load predefined classes
-            baseXmlElementClasses.addAll(jaxbClasses)
-
-            baseJaxbContext = FutureTask(object : Callable<JAXBContext> {
+            // loading the predefined classes and creating the context is done in the background, so that creating a
+            // marshaller instance does not block
+            baseJaxbContext = FutureTask(object : Callable<BaseContext> {
                 @kotlin.Throws(Exception::class)
-                override fun call(): JAXBContext {
+                override fun call(): BaseContext {
                     try {
-                        return JAXBContext.newInstance(*jaxbClasses)
+                        val start = System.nanoTime()
+                        val classes = jaxbClasses
+                        val loaded = System.nanoTime()
+                        val ctx = JAXBContext.newInstance(*classes)
+                        LOG.info {
+                            "Created JAXBContext with ${classes.size} classes in ${(System.nanoTime() - start) / 1_000_000} ms " +
+                                "(loading classes took ${(loaded - start) / 1_000_000} ms)."
+                        }
+                        return BaseContext(classes, ctx)
                     } catch (ex: JAXBException) {
                         LOG.error(ex) { "Failed to create JAXBContext instance." }
                         throw RuntimeException("Failed to create JAXBContext.")
@@ -190,6 +188,21 @@ class MarshallerImpl {
             specificContexts = HashMap()
         }
 
+        private val baseXmlElementClasses: Array<Class<*>>
+            get() = getBaseContext().classes
+
+        private fun getBaseContext(): BaseContext {
+            try {
+                return baseJaxbContext.get()
+            } catch (ex: ExecutionException) {
+                LOG.error(ex) { "Failed to create JAXBContext instance." }
+                throw RuntimeException("Failed to create JAXBContext.")
+            } catch (ex: InterruptedException) {
+                LOG.error(ex) { "Thread terminated waiting for the JAXBContext to be created.." }
+                throw RuntimeException("Thread interrupted during waiting on the creation of the JAXBContext.")
+            }
+        }
+
 
         private val jaxbClasses: Array<Class<*>>
             get() {
@@ -229,6 +242,8 @@ class MarshallerImpl {
                     c.isAnnotationPresent(XmlRegistry::class.java)
         }
 
+        private class BaseContext(val classes: Array<Class<*>>, val context: JAXBContext)
+
         private fun toHexString(bytes: ByteArray): String {
             val writer = StringWriter(bytes.size * 2)
             val out = PrintWriter(writer)
@@ -0,0 +1,164 @@
+/****************************************************************************
+ * Copyright (C) 2026 ecsec GmbH.
+ * All rights reserved.
+ * Contact: ecsec GmbH (info@ecsec.de)
+ *
+ * This file is part of the Open eCard App.
+ *
+ * GNU General Public License Usage
+ * This file may be used under the terms of the GNU General Public
+ * License version 3.0 as published by the Free Software Foundation
+ * and appearing in the file LICENSE.GPL included in the packaging of
+ * this file. Please review the following information to ensure the
+ * GNU General Public License version 3.0 requirements will be met:
+ * http://www.gnu.org/copyleft/gpl.html.
+ *
+ * Other Usage
+ * Alternatively, this file may be used in accordance with the terms
+ * and conditions contained in a signed written agreement between
+ * you and ecsec GmbH.
+ *
+ ***************************************************************************/
+
+package org.openecard.ws.jaxb
+
+import jakarta.xml.bind.JAXBElement
+import org.openecard.ws.marshal.MarshallingTypeException
+import org.openecard.ws.marshal.WSMarshaller
+import org.openecard.ws.marshal.WSMarshallerException
+import org.openecard.ws.soap.SOAPException
+import org.openecard.ws.soap.SOAPMessage
+import org.w3c.dom.Document
+import org.w3c.dom.Node
+import org.xml.sax.ContentHandler
+import org.xml.sax.SAXException
+import java.io.IOException
+import java.io.InputStream
+import java.io.OutputStream
+import javax.xml.transform.TransformerException
+
+/**
+ * WSMarshaller implementation which can be used concurrently without serializing all threads through one lock.
+ * Each thread using an instance of this class gets its own [JAXBMarshaller] with its own JAXB marshaller,
+ * unmarshaller, DOM builder and serializer. All of them are created from the JAXB contexts shared by
+ * [MarshallerImpl], so the expensive context creation still happens only once per set of classes.
+ *
+ * Changes to the supported JAXB types are recorded and replayed on the per thread instances before their next use.
+ *
+ * This implementation can be selected by setting `org.openecard.ws.marshaller.impl` to
+ * `org.openecard.ws.jaxb.PooledJAXBMarshaller`.
+ */
+class PooledJAXBMarshaller : WSMarshaller {
+
+	@Volatile
+	private var typeChanges: List<TypeChange> = listOf()
+	private val delegates: ThreadLocal<Delegate> = ThreadLocal.withInitial { Delegate(JAXBMarshaller()) }
+
+	private fun marshaller(): JAXBMarshaller {
+		val d = delegates.get()
+		val changes = typeChanges
+		if (d.appliedChanges < changes.size) {
+			for (i in d.appliedChanges until changes.size) {
+				changes[i].applyTo(d.marshaller)
+			}
+			d.appliedChanges = changes.size
+		}
+		return d.marshaller
+	}
+
+	@Synchronized
+	@Throws(MarshallingTypeException::class)
+	override fun addXmlTypeClass(xmlTypeClass: Class<*>) {
+		// apply to the instance of the calling thread first, so invalid classes are rejected before they are recorded
+		marshaller().addXmlTypeClass(xmlTypeClass)
+		typeChanges = typeChanges + TypeChange.Add(xmlTypeClass)
+		delegates.get().appliedChanges = typeChanges.size
+	}
+
+	@Synchronized
+	override fun removeAllTypeClasses() {
+		marshaller().removeAllTypeClasses()
+		typeChanges = typeChanges + TypeChange.RemoveAll
+		delegates.get().appliedChanges = typeChanges.size
+	}
+
+	@Throws(SAXException::class)
+	override fun str2doc(docStr: String): Document {
+		return marshaller().str2doc(docStr)
+	}
+
+	@Throws(SAXException::class, IOException::class)
+	override fun str2doc(docStr: InputStream): Document {
+		return marshaller().str2doc(docStr)
+	}
+
+	@Throws(TransformerException::class)
+	override fun doc2str(doc: Node): String {
+		return marshaller().doc2str(doc)
+	}
+
+	@Throws(MarshallingTypeException::class, WSMarshallerException::class)
+	override fun unmarshal(n: Node): Any {
+		return marshaller().unmarshal(n)
+	}
+
+	@Throws(MarshallingTypeException::class, WSMarshallerException::class)
+	override fun <T> unmarshal(n: Node, c: Class<T>): JAXBElement<T> {
+		return marshaller().unmarshal(n, c)
+	}
+
+	@Throws(MarshallingTypeException::class)
+	override fun marshal(o: Any): Document {
+		return marshaller().marshal(o)
+	}
+
+	@Throws(MarshallingTypeException::class)
+	override fun marshal(o: Any, out: OutputStream) {
+		marshaller().marshal(o, out)
+	}
+
+	@Throws(MarshallingTypeException::class)
+	override fun marshal(o: Any, handler: ContentHandler) {
+		marshaller().marshal(o, handler)
+	}
+
+	@Throws(MarshallingTypeException::class, WSMarshallerException::class)
+	override fun unmarshal(input: InputStream): Any {
+		return marshaller().unmarshal(input)
+	}
+
+	@Throws(MarshallingTypeException::class, WSMarshallerException::class)
+	override fun <T> unmarshal(input: InputStream, c: Class<T>): JAXBElement<T> {
+		return marshaller().unmarshal(input, c)
+	}
+
+	@Throws(SOAPException::class)
+	override fun doc2soap(envDoc: Document): SOAPMessage {
+		return marshaller().doc2soap(envDoc)
+	}
+
+	@Throws(SOAPException::class)
+	override fun add2soap(content: Document): SOAPMessage {
+		return marshaller().add2soap(content)
+	}
+
+	private class Delegate(val marshaller: JAXBMarshaller) {
+		var appliedChanges = 0
+	}
+
+	private sealed class TypeChange {
+		abstract fun applyTo(m: JAXBMarshaller)
+
+		class Add(private val xmlTypeClass: Class<*>) : TypeChange() {
+			override fun applyTo(m: JAXBMarshaller) {
+				m.addXmlTypeClass(xmlTypeClass)
+			}
+		}
+
+		data object RemoveAll : TypeChange() {
+			override fun applyTo(m: JAXBMarshaller) {
+				m.removeAllTypeClasses()
+			}
+		}
+	}
+}
@@ -0,0 +1,125 @@
+/****************************************************************************
+ * Copyright (C) 2026 ecsec GmbH.
+ * All rights reserved.
+ * Contact: ecsec GmbH (info@ecsec.de)
+ *
+ * This file is part of the Open eCard App.
+ *
+ * GNU General Public License Usage
+ * This file may be used under the terms of the GNU General Public
+ * License version 3.0 as published by the Free Software Foundation
+ * and appearing in the file LICENSE.GPL included in the packaging of
+ * this file. Please review the following information to ensure the
+ * GNU General Public License version 3.0 requirements will be met:
+ * http://www.gnu.org/copyleft/gpl.html.
+ *
+ * Other Usage
+ * Alternatively, this file may be used in accordance with the terms
+ * and conditions contained in a signed written agreement between
+ * you and ecsec GmbH.
+ *
+ ***************************************************************************/
+package org.openecard.ws.jaxb
+
+import javax.xml.stream.XMLEventFactory
+import javax.xml.stream.XMLEventReader
+import javax.xml.stream.XMLStreamConstants
+import javax.xml.stream.XMLStreamException
+import javax.xml.stream.events.XMLEvent
+
+/**
+ * Event reader applying the rules of [org.openecard.ws.marshal.WhitespaceFilter] to a stream.
+ * Text which is the only content of an element is trimmed, whitespace-only text next to other nodes is dropped. The
+ * parent reader must be coalescing, so that the text of an element arrives in a single event.
+ */
+internal class WhitespaceFilteringReader(
+	private val parent: XMLEventReader,
+	private val events: XMLEventFactory,
+) : XMLEventReader {
+	private var previous: XMLEvent? = null
+	private var pending: XMLEvent? = null
+
+	@Throws(XMLStreamException::class)
+	private fun fill(): XMLEvent? {
+		while (pending == null && parent.hasNext()) {
+			val next = parent.nextEvent()
+			if (next.isCharacters) {
+				val text = next.asCharacters().data
+				val trimmed = text.trim { it <= ' ' }
+				if (previous?.isStartElement == true && parent.peek()?.isEndElement == true) {
+					// only text node of the element
+					pending = if (trimmed.length == text.length) next else events.createCharacters(trimmed)
+				} else if (trimmed.isNotEmpty()) {
+					pending = next
+				}
+			} else {
+				pending = next
+			}
+		}
+		return pending
+	}
+
+	@Throws(XMLStreamException::class)
+	override fun nextEvent(): XMLEvent {
+		val next = fill() ?: throw NoSuchElementException("No more events in the XML stream.")
+		pending = null
+		previous = next
+		return next
+	}
+
+	override fun hasNext(): Boolean {
+		return try {
+			fill() != null
+		} catch (ex: XMLStreamException) {
+			throw IllegalStateException("Failed to read XML stream.", ex)
+		}
+	}
+
+	override fun next(): Any = nextEvent()
+
+	@Throws(XMLStreamException::class)
+	override fun peek(): XMLEvent? = fill()
+
+	@Throws(XMLStreamException::class)
+	override fun getElementText(): String {
+		if (previous?.isStartElement != true) {
+			throw XMLStreamException("Reader is not positioned on a start element.")
+		}
+		val text = StringBuilder()
+		while (true) {
+			val next = nextEvent()
+			when (next.eventType) {
+				XMLStreamConstants.END_ELEMENT -> return text.toString()
+				XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA, XMLStreamConstants.SPACE,
+				XMLStreamConstants.ENTITY_REFERENCE -> text.append(next.asCharacters().data)
+				XMLStreamConstants.COMMENT, XMLStreamConstants.PROCESSING_INSTRUCTION -> Unit
+				else -> throw XMLStreamException("Element text contains a nested element.", next.location)
+			}
+		}
+	}
+
+	@Throws(XMLStreamException::class)
+	override fun nextTag(): XMLEvent {
+		while (true) {
+			val next = nextEvent()
+			when (next.eventType) {
+				XMLStreamConstants.START_ELEMENT, XMLStreamConstants.END_ELEMENT -> return next
+				XMLStreamConstants.COMMENT, XMLStreamConstants.PROCESSING_INSTRUCTION -> Unit
+				else -> if (!next.isCharacters || !next.asCharacters().isWhiteSpace) {
+					throw XMLStreamException("Expected a start or end tag.", next.location)
+				}
+			}
+		}
+	}
+
+	override fun getProperty(name: String): Any? = parent.getProperty(name)
+
+	@Throws(XMLStreamException::class)
+	override fun close() {
+		parent.close()
+	}
+
+	override fun remove() {
+		throw UnsupportedOperationException("Events can not be removed from the XML stream.")
+	}
+}
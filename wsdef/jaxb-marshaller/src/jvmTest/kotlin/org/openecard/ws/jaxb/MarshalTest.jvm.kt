@@ -24,16 +24,22 @@ package org.openecard.ws.jaxb
 import de.bund.bsi.ecard.api._1.InitializeFrameworkResponse
 import iso.std.iso_iec._24727.tech.schema.DIDAuthenticateResponse
 import iso.std.iso_iec._24727.tech.schema.EAC2OutputType
+import iso.std.iso_iec._24727.tech.schema.StartPAOS
 import oasis.names.tc.dss._1_0.core.schema.InternationalStringType
 import oasis.names.tc.dss._1_0.core.schema.Result
 import org.openecard.ws.marshal.MarshallingTypeException
+import org.openecard.ws.marshal.WSMarshallerException
 import org.openecard.ws.soap.MessageFactory
 import org.openecard.ws.soap.SOAPException
 import org.testng.Assert
 import org.testng.annotations.Test
 import org.w3c.dom.Element
 import org.w3c.dom.Node
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
 import java.math.BigInteger
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
 import javax.xml.namespace.QName
 import javax.xml.parsers.DocumentBuilderFactory
 import javax.xml.parsers.ParserConfigurationException
@@ -195,4 +201,79 @@ class MarshalTest {
 
         println(m.doc2str(msg.document))
     }
+
+    @Test
+    @Throws(Exception::class)
+    fun testStreamConversion() {
+        val m = JAXBMarshaller()
+        val doc = m.str2doc(xmlStr)
+        val msg = m.doc2soap(doc)
+        val o = m.unmarshal(msg.soapBody.childElements[0])
+
+        val out = ByteArrayOutputStream()
+        m.marshal(o, out)
+        val data = out.toByteArray()
+        // compact output must not contain indentation
+        Assert.assertFalse(String(data, Charsets.UTF_8).contains("\n "))
+
+        val o2 = m.unmarshal(ByteArrayInputStream(data))
+        Assert.assertEquals(o2.javaClass, o.javaClass)
+        Assert.assertEquals(m.doc2str(m.marshal(o2)), m.doc2str(m.marshal(o)))
+    }
+
+    @Test
+    @Throws(Exception::class)
+    fun testStreamTrimsText() {
+        val m = JAXBMarshaller()
+        val xml = """<iso:StartPAOS xmlns:iso="urn:iso:std:iso-iec:24727:tech:schema">
+	<iso:SessionIdentifier>
+		0123456789
+	</iso:SessionIdentifier>
+	<iso:ConnectionHandle>
+		<iso:IFDName> Reader </iso:IFDName>
+	</iso:ConnectionHandle>
+</iso:StartPAOS>"""
+        val fromStream = m.unmarshal(ByteArrayInputStream(xml.toByteArray())) as StartPAOS
+        Assert.assertEquals(fromStream.sessionIdentifier, "0123456789")
+        Assert.assertEquals(fromStream.connectionHandle[0].ifdName, "Reader")
+
+        // same result as the DOM based path
+        val fromDom = m.unmarshal(m.str2doc(xml))
+        Assert.assertEquals(m.doc2str(m.marshal(fromStream)), m.doc2str(m.marshal(fromDom)))
+    }
+
+    @Test(expectedExceptions = [WSMarshallerException::class])
+    @Throws(Exception::class)
+    fun testStreamRejectsDoctype() {
+        val m = JAXBMarshaller()
+        val xml = """<?xml version="1.0"?>
+<!DOCTYPE foo [ <!ENTITY xxe SYSTEM "file:///etc/passwd"> ]>
+<iso:StartPAOS xmlns:iso="urn:iso:std:iso-iec:24727:tech:schema"><iso:SessionIdentifier>&xxe;</iso:SessionIdentifier></iso:StartPAOS>"""
+        m.unmarshal(ByteArrayInputStream(xml.toByteArray()))
+    }
+
+    @Test
+    @Throws(Exception::class)
+    fun testConcurrentUse() {
+        val numThreads = 8
+        val numRounds = 200
+        for (m in listOf(JAXBMarshaller(), PooledJAXBMarshaller())) {
+            val expected = m.doc2str(m.marshal(m.unmarshal(m.doc2soap(m.str2doc(xmlStr)).soapBody.childElements[0])))
+            val pool = Executors.newFixedThreadPool(numThreads)
+            try {
+                val tasks = (1..numThreads).map {
+                    pool.submit(Callable {
+                        repeat(numRounds) {
+                            val msg = m.doc2soap(m.str2doc(xmlStr))
+                            val o = m.unmarshal(msg.soapBody.childElements[0])
+                            Assert.assertEquals(m.doc2str(m.marshal(o)), expected)
+                        }
+                    })
+                }
+                tasks.forEach { it.get() }
+            } finally {
+                pool.shutdown()
+            }
+        }
+    }
 }
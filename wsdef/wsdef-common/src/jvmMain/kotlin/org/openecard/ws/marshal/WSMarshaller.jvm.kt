@@ -26,9 +26,11 @@ import org.openecard.ws.soap.SOAPException
 import org.openecard.ws.soap.SOAPMessage
 import org.w3c.dom.Document
 import org.w3c.dom.Node
+import org.xml.sax.ContentHandler
 import org.xml.sax.SAXException
 import java.io.IOException
 import java.io.InputStream
+import java.io.OutputStream
 import javax.xml.transform.TransformerException
 
 /**
@@ -126,6 +128,56 @@ interface WSMarshaller {
     @Throws(MarshallingTypeException::class)
     fun marshal(o: Any): Document
 
+    /**
+     * Marshal the given JAXB object directly into the given stream.
+     * The document is written as compact UTF-8 encoded XML without indentation. No DOM tree is created in the process.
+     *
+     * @param o JAXB object to marshal.
+     * @param out Stream receiving the serialized document. The stream is not closed by this method.
+     * @throws MarshallingTypeException If the given object is an unsupported JAXB type or writing to the stream failed.
+     */
+    @Throws(MarshallingTypeException::class)
+    fun marshal(o: Any, out: OutputStream)
+
+    /**
+     * Marshal the given JAXB object as a stream of SAX events into the given handler.
+     * This makes it possible to process the document in the same pass as it is produced, for example to validate it
+     * while building the final representation.
+     *
+     * @param o JAXB object to marshal.
+     * @param handler Handler receiving the SAX events of the document.
+     * @throws MarshallingTypeException If the given object is an unsupported JAXB type or the handler failed.
+     */
+    @Throws(MarshallingTypeException::class)
+    fun marshal(o: Any, handler: ContentHandler)
+
+    /**
+     * Unmarshal the XML document contained in the given stream without creating a DOM tree first.
+     * The same restrictions regarding DTDs and external entities apply as for [str2doc]. Text nodes consisting only of
+     * whitespace are ignored.
+     *
+     * @param input The stream containing the XML document. The stream is not closed by this method.
+     * @return The JAXB object representing the given document.
+     * @throws MarshallingTypeException If the document represents an unsupported JAXB type.
+     * @throws WSMarshallerException If the document could not be parsed.
+     */
+    @Throws(MarshallingTypeException::class, WSMarshallerException::class)
+    fun unmarshal(input: InputStream): Any
+
+    /**
+     * Unmarshal the XML document contained in the given stream without creating a DOM tree first.
+     *
+     * @param T JAXB type of the root element.
+     * @param input The stream containing the XML document. The stream is not closed by this method.
+     * @param c Class instance of the root element's type.
+     * @return The JAXB object representing the given document.
+     * @throws MarshallingTypeException If the document represents an unsupported JAXB type.
+     * @throws WSMarshallerException If the document could not be parsed.
+     * @see unmarshal
+     */
+    @Throws(MarshallingTypeException::class, WSMarshallerException::class)
+    fun <T> unmarshal(input: InputStream, c: Class<T>): JAXBElement<T>
+
     /**
      * Converts a DOM document representing a SOAP message to a SOAPMessage instance.
      * The SOAPMessage type is similar to the one in [SAAJ](http://saaj.java.net/).